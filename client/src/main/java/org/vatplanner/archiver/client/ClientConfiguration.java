@@ -2,6 +2,8 @@ package org.vatplanner.archiver.client;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.RawDataFile;
 
 public class ClientConfiguration {
 
@@ -15,6 +17,10 @@ public class ClientConfiguration {
 
     private String requestsExchange;
 
+    private BufferPool bufferPool;
+
+    private boolean deduplicate = true;
+
     public String getAmqpHost() {
         return amqpHost;
     }
@@ -75,4 +81,57 @@ public class ClientConfiguration {
         return this;
     }
 
+    /**
+     * Returns the pool to rent buffers from when decoding responses.
+     *
+     * @return pool to rent buffers from; null if disabled
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Sets a pool to rent buffers from when decoding responses. If set, received
+     * data files hold their data in pooled buffers which are longer than the
+     * actual data; applications should access it through
+     * {@link RawDataFile#getDataBuffer()} and {@link RawDataFile#getDataLength()}
+     * and call {@link RawDataFile#clear()} when done to return the buffer for
+     * reuse. If not set, data files hold exact-size arrays as returned by
+     * {@link RawDataFile#getData()}.
+     *
+     * @param bufferPool pool to rent buffers from; null to disable
+     * @return this instance for method-chaining
+     */
+    public ClientConfiguration setBufferPool(BufferPool bufferPool) {
+        LOGGER.debug("setting bufferPool to {}", bufferPool);
+        this.bufferPool = bufferPool;
+        return this;
+    }
+
+    /**
+     * Returns if the server is asked to transfer identical content only once.
+     *
+     * @return true if deduplication is requested, false if not
+     */
+    public boolean isDeduplicate() {
+        return deduplicate;
+    }
+
+    /**
+     * Sets if the server should be asked to transfer identical content only once
+     * per response. Deduplicated content is restored by the client, so received
+     * data files are the same either way. Deduplication makes the server hash
+     * all content with SHA-256, trading that CPU time for a smaller transfer, so
+     * it may be worth disabling if content rarely repeats or bandwidth is
+     * plentiful. Enabled by default.
+     *
+     * @param deduplicate true to request deduplication, false to request all
+     *        content to be transferred
+     * @return this instance for method-chaining
+     */
+    public ClientConfiguration setDeduplicate(boolean deduplicate) {
+        LOGGER.debug("setting deduplicate to {}", deduplicate);
+        this.deduplicate = deduplicate;
+        return this;
+    }
 }
@@ -1,34 +1,33 @@
 package org.vatplanner.archiver.client;
 
 import static java.util.Collections.emptyList;
+import static java.util.Collections.emptyMap;
 
-import java.io.BufferedInputStream;
-import java.io.ByteArrayInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
 import java.util.ArrayList;
 import java.util.Collection;
-import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeoutException;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
-import org.apache.commons.compress.compressors.CompressorInputStream;
-import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.CommonConstants;
 import org.vatplanner.archiver.common.DataFileRequestJsonKey;
+import org.vatplanner.archiver.common.DataFileRequestType;
+import org.vatplanner.archiver.common.DataFileStatistics;
+import org.vatplanner.archiver.common.DataFileStatisticsJsonKey;
 import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.PackingGoal;
 import org.vatplanner.archiver.common.RawDataFile;
-import org.vatplanner.archiver.common.RemoteMetaDataContainerJsonKey;
-import org.vatplanner.archiver.common.RemoteMetaDataFileJsonKey;
 
 import com.github.cliftonlabs.json_simple.JsonArray;
 import com.github.cliftonlabs.json_simple.JsonObject;
@@ -46,12 +45,25 @@ public class RawDataFileClient {
 
     private final Connection connection;
     private final String exchange;
+    private final BufferPool bufferPool;
+    private final boolean deduplicate;
     private final Duration timeout = Duration.ofMinutes(2); // FIXME: make config option
 
     public RawDataFileClient(ClientConfiguration config) throws IOException, TimeoutException {
         // FIXME: use dedicated configuration
         // FIXME: do not throw raw exceptions
+        this(config, connect(config));
+    }
+
+    RawDataFileClient(ClientConfiguration config, Connection connection) {
+        this.connection = connection;
+
+        exchange = config.getRequestsExchange();
+        bufferPool = config.getBufferPool();
+        deduplicate = config.isDeduplicate();
+    }
 
+    private static Connection connect(ClientConfiguration config) throws IOException, TimeoutException {
         ConnectionFactory connectionFactory = new ConnectionFactory();
         connectionFactory.setHost(config.getAmqpHost());
         connectionFactory.setPort(config.getAmqpPort());
@@ -59,9 +71,7 @@ public class RawDataFileClient {
         connectionFactory.setPassword(config.getAmqpPassword());
         connectionFactory.setVirtualHost(config.getAmqpVirtualHost());
 
-        connection = connectionFactory.newConnection();
-
-        exchange = config.getRequestsExchange();
+        return connectionFactory.newConnection();
     }
 
     public CompletableFuture<Collection<RawDataFile>> request(PackerMethod packerMethod, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit) {
@@ -69,38 +79,38 @@ public class RawDataFileClient {
     }
 
     public CompletableFuture<Collection<RawDataFile>> request(PackerMethod packerMethod, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Collection<String> wantedFormats) {
-        CompletableFuture<Collection<RawDataFile>> future = new CompletableFuture<>();
+        return request(packerMethod, earliestFetchTime, latestFetchTime, fileLimit, wantedFormats, null);
+    }
 
-        final Channel channel;
-        try {
-            channel = connection.createChannel();
-            channel.exchangeDeclarePassive(exchange); // passive: just check that the exchange exists
-        } catch (IOException ex) {
-            LOGGER.warn("Failed to open AMQP channel.", ex);
-            future.completeExceptionally(ex);
-            return future;
-        }
+    public CompletableFuture<Collection<RawDataFile>> request(PackerMethod packerMethod, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Collection<String> wantedFormats, Duration sampleInterval) {
+        return requestPage(packerMethod, earliestFetchTime, latestFetchTime, fileLimit, wantedFormats, sampleInterval, null)
+            .thenApply(RawDataFilePage::getDataFiles);
+    }
+
+    public CompletableFuture<RawDataFilePage> requestPage(PackerMethod packerMethod, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Collection<String> wantedFormats, Duration sampleInterval, String continuationToken) {
+        return requestPage(packerMethod, null, 0, earliestFetchTime, latestFetchTime, fileLimit, wantedFormats, sampleInterval, continuationToken);
+    }
+
+    // bandwidth in bytes per second helps the server to choose, 0 if unknown
+    public CompletableFuture<RawDataFilePage> requestPage(PackingGoal packingGoal, long bandwidth, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Collection<String> wantedFormats, Duration sampleInterval, String continuationToken) {
+        return requestPage(PackerMethod.AUTO, packingGoal, bandwidth, earliestFetchTime, latestFetchTime, fileLimit, wantedFormats, sampleInterval, continuationToken);
+    }
+
+    private CompletableFuture<RawDataFilePage> requestPage(PackerMethod packerMethod, PackingGoal packingGoal, long bandwidth, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Collection<String> wantedFormats, Duration sampleInterval, String continuationToken) {
+        CompletableFuture<RawDataFilePage> future = new CompletableFuture<>();
 
         // FIXME: extract class or method
         new Thread(() -> {
             Set<String> wantedFormatsAsSet = new HashSet<String>(wantedFormats);
 
             try {
-                RpcClient rpc = new RpcClient(
-                    new RpcClientParams()
-                        .channel(channel)
-                        .exchange(exchange)
-                        .timeout((int) timeout.toMillis())
-                        .routingKey("")
-                        .useMandatory() //
-                );
-
                 JsonObject jsonRequest = new JsonObject();
                 jsonRequest
                     .putChain(DataFileRequestJsonKey.EARLIEST_FETCH_TIME.getKey(), earliestFetchTime.toString())
                     .putChain(DataFileRequestJsonKey.LATEST_FETCH_TIME.getKey(), latestFetchTime.toString())
                     .putChain(DataFileRequestJsonKey.PACKER_METHOD.getKey(), packerMethod.getRequestShortCode())
-                    .putChain(DataFileRequestJsonKey.FILE_LIMIT.getKey(), fileLimit);
+                    .putChain(DataFileRequestJsonKey.FILE_LIMIT.getKey(), fileLimit)
+                    .putChain(DataFileRequestJsonKey.DEDUPLICATE.getKey(), deduplicate);
 
                 if (!wantedFormatsAsSet.isEmpty()) {
                     jsonRequest.put(
@@ -109,14 +119,34 @@ public class RawDataFileClient {
                     );
                 }
 
-                String jsonRequestString = jsonRequest.toJson();
-                LOGGER.debug("sending RPC request to AMQP: {}", jsonRequestString);
-                RpcClient.Response response = rpc.responseCall(jsonRequestString.getBytes());
+                if (sampleInterval != null) {
+                    jsonRequest.put(DataFileRequestJsonKey.SAMPLE_INTERVAL.getKey(), sampleInterval.toString());
+                }
+
+                if (continuationToken != null) {
+                    jsonRequest.put(DataFileRequestJsonKey.CONTINUATION_TOKEN.getKey(), continuationToken);
+                }
+
+                if (packingGoal != null) {
+                    jsonRequest.put(DataFileRequestJsonKey.PACKING_GOAL.getKey(), packingGoal.getShortCode());
+                }
 
-                // FIXME: use server-submitted header for packer method
-                String responsePackerMethodString = (String) response.getProperties()
-                    .getHeaders()
-                    .getOrDefault("packerMethod", packerMethod.getPackedShortCode());
+                if (bandwidth > 0) {
+                    jsonRequest.put(DataFileRequestJsonKey.BANDWIDTH.getKey(), bandwidth);
+                }
+
+                RpcClient.Response response = call(jsonRequest);
+
+                Map<String, Object> responseHeaders = response.getProperties().getHeaders();
+                if (responseHeaders == null) {
+                    responseHeaders = emptyMap();
+                }
+                // servers may not indicate the packer method if it was not chosen automatically
+                Object responsePackerMethodHeader = responseHeaders.get(CommonConstants.RESPONSE_HEADER_PACKER_METHOD);
+                String responsePackerMethodString = (responsePackerMethodHeader != null)
+                    ? responsePackerMethodHeader.toString()
+                    : packerMethod.getPackedShortCode();
+                Object nextContinuationToken = responseHeaders.get(CommonConstants.RESPONSE_HEADER_CONTINUATION_TOKEN);
                 byte[] responseBody = response.getBody();
                 LOGGER.debug(
                     "AMQP RPC response arrived, packer method {}, encoded length {}",
@@ -124,111 +154,70 @@ public class RawDataFileClient {
                     responseBody.length //
                 );
                 PackerMethod responsePackerMethod = PackerMethod.byPackedShortCode(responsePackerMethodString);
-                BufferedInputStream bis = new BufferedInputStream(new ByteArrayInputStream(responseBody));
-                /*
-                 * FIXME: do not save byte[] to variable, just forward to BAIS if debug output
-                 * no longer needed
-                 */
-                responseBody = null;
-
-                rpc.close();
-                channel.close();
-
-                Map<String, RawDataFile> rawDataFiles = new HashMap<>();
-                Collection<String> unwantedEntryKeys = new ArrayList<String>();
-
-                boolean needsExplicitDecompression = //
-                    !(responsePackerMethod.isUncompressed() || responsePackerMethod.isZipMethod());
-                if (needsExplicitDecompression) {
-                    try {
-                        CompressorInputStream cis = new CompressorStreamFactory().createCompressorInputStream(bis);
-                        bis = new BufferedInputStream(cis);
-                    } catch (Exception ex) {
-                        throw new RuntimeException(
-                            "response packer method "
-                                + responsePackerMethod
-                                + " requires explicit decompression but setting up stream failed",
-                            ex //
-                        );
-                    }
-                }
-                ArchiveInputStream ais = new ArchiveStreamFactory().createArchiveInputStream(bis);
+                Collection<RawDataFile> rawDataFiles = new ResponseDecoder(wantedFormats, bufferPool).decode(
+                    responsePackerMethod,
+                    responseBody //
+                );
 
-                ArchiveEntry entry;
-                while ((entry = ais.getNextEntry()) != null) {
-                    String name = entry.getName();
+                future.complete(new RawDataFilePage(
+                    rawDataFiles,
+                    (nextContinuationToken != null) ? nextContinuationToken.toString() : null //
+                ));
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        }).start();
 
-                    int size = (int) entry.getSize();
-                    byte[] data = new byte[size];
-                    int read = 0;
-                    while (read < size) {
-                        read += ais.read(data, read, size - read);
-                    }
+        return future;
+    }
 
-                    LOGGER.trace("reading {}", name);
-
-                    if (name.equals("meta.json")) { // FIXME: use common constant
-                        InputStreamReader dataReader = new InputStreamReader(new ByteArrayInputStream(data));
-                        JsonObject meta = (JsonObject) Jsoner.deserialize(dataReader);
-                        dataReader.close();
-
-                        Map<String, JsonObject> fileMetas = meta.getMapOrDefault(RemoteMetaDataContainerJsonKey.FILES);
-                        for (Map.Entry<String, JsonObject> fileMeta : fileMetas.entrySet()) {
-                            String fileName = fileMeta.getKey();
-                            JsonObject fields = fileMeta.getValue();
-
-                            String formatName = fields.getString(RemoteMetaDataFileJsonKey.FORMAT_NAME);
-                            boolean isWantedFormat = wantedFormatsAsSet.isEmpty() || wantedFormats.contains(formatName);
-                            if (!isWantedFormat) {
-                                LOGGER.debug(
-                                    "received unwanted format \"{}\" from server, response may hold less files than requested",
-                                    formatName //
-                                );
-
-                                unwantedEntryKeys.add(fileName);
-
-                                continue;
-                            }
-
-                            RawDataFile rawDataFile = rawDataFiles.computeIfAbsent(
-                                fileName,
-                                n -> new RawDataFile(null) //
-                            );
-                            rawDataFile.setFormatName(formatName);
-                            rawDataFile.setFetchTime(Instant.parse(
-                                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_TIME) //
-                            ));
-                            rawDataFile.setFetchNode(
-                                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_NODE) //
-                            );
-                            rawDataFile.setFetchUrlRequested(
-                                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_URL_REQUESTED) //
-                            );
-                            rawDataFile.setFetchUrlRetrieved(
-                                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_URL_RETRIEVED) //
-                            );
-                        }
-                    } else {
-                        RawDataFile rawDataFile = rawDataFiles.computeIfAbsent(name, n -> new RawDataFile(null));
-                        rawDataFile.setData(data);
-                    }
-                }
+    public CompletableFuture<List<DataFileStatistics>> requestStatistics(Instant earliestFetchTime, Instant latestFetchTime, Collection<String> wantedFormats) {
+        CompletableFuture<List<DataFileStatistics>> future = new CompletableFuture<>();
 
-                ais.close();
-                bis.close();
+        new Thread(() -> {
+            try {
+                JsonObject jsonRequest = new JsonObject();
+                jsonRequest
+                    .putChain(DataFileRequestJsonKey.REQUEST_TYPE.getKey(), DataFileRequestType.STATISTICS.getShortCode())
+                    .putChain(DataFileRequestJsonKey.EARLIEST_FETCH_TIME.getKey(), earliestFetchTime.toString())
+                    .putChain(DataFileRequestJsonKey.LATEST_FETCH_TIME.getKey(), latestFetchTime.toString());
 
-                if (!unwantedEntryKeys.isEmpty()) {
-                    LOGGER.warn(
-                        "Received {} unwanted entries from server, number of returned files is reduced.",
-                        unwantedEntryKeys.size() //
+                if (!wantedFormats.isEmpty()) {
+                    jsonRequest.put(
+                        DataFileRequestJsonKey.DATA_FILE_FORMATS.getKey(),
+                        new JsonArray(new HashSet<String>(wantedFormats)) //
                     );
+                }
+
+                RpcClient.Response response = call(jsonRequest);
+
+                JsonObject json = Jsoner.deserialize(
+                    new String(response.getBody(), StandardCharsets.UTF_8),
+                    new JsonObject() //
+                );
 
-                    unwantedEntryKeys.forEach(rawDataFiles::remove);
+                List<DataFileStatistics> statistics = new ArrayList<>();
+                Map<String, JsonObject> days = json.getMapOrDefault(DataFileStatisticsJsonKey.DAYS);
+                for (Map.Entry<String, JsonObject> day : days.entrySet()) {
+                    LocalDate date = LocalDate.parse(day.getKey());
+                    for (Map.Entry<String, Object> format : day.getValue().entrySet()) {
+                        JsonObject fields = (JsonObject) format.getValue();
+                        statistics.add(
+                            new DataFileStatistics(date, format.getKey())
+                                .setNumberOfFiles(fields.getInteger(DataFileStatisticsJsonKey.FILES))
+                                .setTotalDataSize(fields.getLong(DataFileStatisticsJsonKey.SIZE))
+                                .setEarliestFetchTime(Instant.parse(
+                                    fields.getString(DataFileStatisticsJsonKey.EARLIEST_FETCH_TIME) //
+                                ))
+                                .setLatestFetchTime(Instant.parse(
+                                    fields.getString(DataFileStatisticsJsonKey.LATEST_FETCH_TIME) //
+                                )) //
+                        );
+                    }
                 }
 
-                future.complete(rawDataFiles.values());
+                future.complete(statistics);
             } catch (Exception ex) {
-                // FIXME: close resources
                 future.completeExceptionally(ex);
             }
         }).start();
@@ -236,4 +225,41 @@ public class RawDataFileClient {
         return future;
     }
 
+    /**
+     * Sends the given request to the server and waits for the response. Each
+     * request uses its own channel which is closed again (together with the
+     * consumer waiting for the response) before returning.
+     *
+     * @param jsonRequest request to send
+     * @return response of server
+     * @throws IOException if communication fails
+     * @throws TimeoutException if no response arrived in time
+     */
+    private RpcClient.Response call(JsonObject jsonRequest) throws IOException, TimeoutException {
+        String jsonRequestString = jsonRequest.toJson();
+
+        try (Channel channel = connection.createChannel()) {
+            channel.exchangeDeclarePassive(exchange); // passive: just check that the exchange exists
+
+            RpcClient rpc = new RpcClient(
+                new RpcClientParams()
+                    .channel(channel)
+                    .exchange(exchange)
+                    .timeout((int) timeout.toMillis())
+                    .routingKey("")
+                    .useMandatory() //
+            );
+
+            try {
+                LOGGER.debug("sending RPC request to AMQP: {}", jsonRequestString);
+                return rpc.responseCall(jsonRequestString.getBytes());
+            } finally {
+                // consumer cannot be cancelled if the channel has been closed by
+                // the broker already
+                if (channel.isOpen()) {
+                    rpc.close();
+                }
+            }
+        }
+    }
 }
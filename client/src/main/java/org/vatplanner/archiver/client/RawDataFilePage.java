@@ -0,0 +1,34 @@
+package org.vatplanner.archiver.client;
+
+import java.util.Collection;
+
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * A single page of {@link RawDataFile}s received in response to a paginated
+ * request.
+ */
+public class RawDataFilePage {
+
+    private final Collection<RawDataFile> dataFiles;
+    private final String continuationToken;
+
+    public RawDataFilePage(Collection<RawDataFile> dataFiles, String continuationToken) {
+        this.dataFiles = dataFiles;
+        this.continuationToken = continuationToken;
+    }
+
+    public Collection<RawDataFile> getDataFiles() {
+        return dataFiles;
+    }
+
+    /**
+     * Returns the token to request the next page with. The token is opaque and
+     * must be sent along with otherwise identical request parameters.
+     *
+     * @return token to request next page with; null if this is the last page
+     */
+    public String getContinuationToken() {
+        return continuationToken;
+    }
+}
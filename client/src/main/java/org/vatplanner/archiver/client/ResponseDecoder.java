@@ -0,0 +1,260 @@
+package org.vatplanner.archiver.client;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveException;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.compressors.CompressorException;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.common.RemoteMetaDataContainerJsonKey;
+import org.vatplanner.archiver.common.RemoteMetaDataFileJsonKey;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * Decodes the body of a data file response to {@link RawDataFile}s.
+ *
+ * <p>
+ * ZIP files are written as a stream by the server, so deflated entries may be
+ * followed by data descriptors and do not indicate their size before their
+ * data. ZIP responses are therefore read through their central directory. All
+ * other archives are read as a stream.
+ * </p>
+ *
+ * <p>
+ * Each instance decodes a single response only.
+ * </p>
+ */
+class ResponseDecoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ResponseDecoder.class);
+
+    private final Set<String> wantedFormats;
+    private final BufferPool bufferPool;
+
+    private final Map<String, RawDataFile> rawDataFiles = new HashMap<>();
+    private final Collection<String> unwantedEntryKeys = new ArrayList<String>();
+    private final Map<String, String> contentFileNames = new HashMap<>();
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param wantedFormats formats requested from server; empty for all
+     * @param bufferPool pool to rent data buffers from; null to allocate them
+     */
+    ResponseDecoder(Collection<String> wantedFormats, BufferPool bufferPool) {
+        this.wantedFormats = new HashSet<>(wantedFormats);
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Decodes the given response body. If decoding fails, buffers of all data
+     * files read so far are returned to the pool.
+     *
+     * @param packerMethod method the response has been packed with
+     * @param body response body
+     * @return all data files of wanted formats held by the response
+     * @throws IOException if the response cannot be read
+     * @throws JsonException if meta data cannot be parsed
+     */
+    Collection<RawDataFile> decode(PackerMethod packerMethod, byte[] body) throws IOException, JsonException {
+        try {
+            if (packerMethod.isZipMethod()) {
+                decodeZip(body);
+            } else {
+                decodeStream(packerMethod, body);
+            }
+
+            resolveContentFiles();
+        } catch (IOException | JsonException | RuntimeException ex) {
+            rawDataFiles.values().forEach(RawDataFile::clear);
+            throw ex;
+        }
+
+        if (!unwantedEntryKeys.isEmpty()) {
+            LOGGER.warn(
+                "Received {} unwanted entries from server, number of returned files is reduced.",
+                unwantedEntryKeys.size() //
+            );
+
+            for (String unwantedEntryKey : unwantedEntryKeys) {
+                RawDataFile unwanted = rawDataFiles.remove(unwantedEntryKey);
+                if (unwanted != null) {
+                    unwanted.clear();
+                }
+            }
+        }
+
+        return rawDataFiles.values();
+    }
+
+    /**
+     * Copies content of files transferred only once to all files referencing it.
+     * Each file needs its own copy as buffers are returned to the pool when files
+     * are cleared.
+     *
+     * @throws IOException if referenced content is missing
+     */
+    private void resolveContentFiles() throws IOException {
+        for (Map.Entry<String, String> contentFileName : contentFileNames.entrySet()) {
+            RawDataFile content = rawDataFiles.get(contentFileName.getValue());
+            if ((content == null) || (content.getDataBuffer() == null)) {
+                throw new IOException(
+                    "response references missing content " + contentFileName.getValue() + " for "
+                        + contentFileName.getKey() //
+                );
+            }
+
+            int size = content.getDataLength();
+            byte[] data = (bufferPool != null) ? bufferPool.rent(size) : new byte[size];
+            System.arraycopy(content.getDataBuffer(), 0, data, 0, size);
+            rawDataFiles.get(contentFileName.getKey()).setData(data, size, bufferPool);
+        }
+    }
+
+    private void decodeZip(byte[] body) throws IOException, JsonException {
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(body))) {
+            Enumeration<ZipArchiveEntry> entries = zipFile.getEntriesInPhysicalOrder();
+            while (entries.hasMoreElements()) {
+                ZipArchiveEntry entry = entries.nextElement();
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    readEntry(entry.getName(), is, entry.getSize());
+                }
+            }
+        }
+    }
+
+    private void decodeStream(PackerMethod packerMethod, byte[] body) throws IOException, JsonException {
+        InputStream is = new BufferedInputStream(new ByteArrayInputStream(body));
+
+        if (!packerMethod.isUncompressed()) {
+            try {
+                is = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(is));
+            } catch (CompressorException ex) {
+                throw new IOException(
+                    "response packer method "
+                        + packerMethod
+                        + " requires explicit decompression but setting up stream failed",
+                    ex //
+                );
+            }
+        }
+
+        try (ArchiveInputStream ais = new ArchiveStreamFactory().createArchiveInputStream(is)) {
+            ArchiveEntry entry;
+            while ((entry = ais.getNextEntry()) != null) {
+                readEntry(entry.getName(), ais, entry.getSize());
+            }
+        } catch (ArchiveException ex) {
+            throw new IOException("response could not be read as an archive", ex);
+        }
+    }
+
+    private void readEntry(String name, InputStream is, long size) throws IOException, JsonException {
+        if (size < 0) {
+            throw new IOException("size of archive entry " + name + " is unknown");
+        }
+
+        LOGGER.trace("reading {}", name);
+
+        int length = (int) size;
+        byte[] data = (bufferPool != null) ? bufferPool.rent(length) : new byte[length];
+        try {
+            int read = IOUtils.readFully(is, data, 0, length);
+            if (read < length) {
+                throw new EOFException("archive entry " + name + " ended after " + read + " of " + size + " bytes");
+            }
+        } catch (IOException ex) {
+            release(data);
+            throw ex;
+        }
+
+        if (!name.equals("meta.json")) { // FIXME: use common constant
+            RawDataFile rawDataFile = rawDataFiles.computeIfAbsent(name, n -> new RawDataFile(null));
+            rawDataFile.setData(data, length, bufferPool);
+            return;
+        }
+
+        JsonObject meta;
+        try (InputStreamReader dataReader = new InputStreamReader(new ByteArrayInputStream(data, 0, length))) {
+            meta = (JsonObject) Jsoner.deserialize(dataReader);
+        } finally {
+            release(data);
+        }
+
+        Map<String, JsonObject> fileMetas = meta.getMapOrDefault(RemoteMetaDataContainerJsonKey.FILES);
+        for (Map.Entry<String, JsonObject> fileMeta : fileMetas.entrySet()) {
+            String fileName = fileMeta.getKey();
+            JsonObject fields = fileMeta.getValue();
+
+            String formatName = fields.getString(RemoteMetaDataFileJsonKey.FORMAT_NAME);
+            boolean isWantedFormat = wantedFormats.isEmpty() || wantedFormats.contains(formatName);
+            if (!isWantedFormat) {
+                LOGGER.debug(
+                    "received unwanted format \"{}\" from server, response may hold less files than requested",
+                    formatName //
+                );
+
+                unwantedEntryKeys.add(fileName);
+
+                continue;
+            }
+
+            RawDataFile rawDataFile = rawDataFiles.computeIfAbsent(
+                fileName,
+                n -> new RawDataFile(null) //
+            );
+            rawDataFile.setFormatName(formatName);
+            rawDataFile.setFetchTime(Instant.parse(
+                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_TIME) //
+            ));
+            rawDataFile.setFetchNode(
+                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_NODE) //
+            );
+            rawDataFile.setFetchUrlRequested(
+                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_URL_REQUESTED) //
+            );
+            rawDataFile.setFetchUrlRetrieved(
+                fields.getStringOrDefault(RemoteMetaDataFileJsonKey.FETCH_URL_RETRIEVED) //
+            );
+
+            // identical content is only transferred once
+            String contentFileName = fields.getStringOrDefault(RemoteMetaDataFileJsonKey.CONTENT_FILE);
+            if (contentFileName != null) {
+                contentFileNames.put(fileName, contentFileName);
+            }
+        }
+    }
+
+    private void release(byte[] buffer) {
+        if (bufferPool != null) {
+            bufferPool.release(buffer);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package org.vatplanner.archiver.client;
+
+import static java.util.Collections.emptyList;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.vatplanner.archiver.common.PackerMethod;
+
+import com.rabbitmq.client.AMQP;
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+import com.rabbitmq.client.Consumer;
+
+public class RawDataFileClientTest {
+
+    private static final String CONSUMER_TAG = "reply-consumer";
+    private static final Instant EARLIEST_FETCH_TIME = Instant.parse("2021-01-02T00:00:00Z");
+    private static final Instant LATEST_FETCH_TIME = Instant.parse("2021-01-03T00:00:00Z");
+
+    private Connection connection;
+    private Channel channel;
+    private RawDataFileClient client;
+
+    @BeforeEach
+    public void setUp() throws Exception {
+        connection = mock(Connection.class);
+        channel = mock(Channel.class);
+        when(connection.createChannel()).thenReturn(channel);
+        when(channel.isOpen()).thenReturn(true);
+
+        // RpcClient only learns the tag it needs to cancel from the broker
+        doAnswer(invocation -> {
+            Consumer consumer = invocation.getArgument(2);
+            consumer.handleConsumeOk(CONSUMER_TAG);
+            return CONSUMER_TAG;
+        }).when(channel).basicConsume(anyString(), anyBoolean(), any(Consumer.class));
+
+        client = new RawDataFileClient(new ClientConfiguration().setRequestsExchange("requests"), connection);
+    }
+
+    private void failPublishing() throws IOException {
+        doThrow(new IOException("publishing failed on purpose"))
+            .when(channel)
+            .basicPublish(anyString(), anyString(), anyBoolean(), any(AMQP.BasicProperties.class), any(byte[].class));
+    }
+
+    @Test
+    public void testRequest_publishingFails_cancelsConsumerAndClosesChannel() throws Exception {
+        // Arrange
+        failPublishing();
+
+        // Act
+        Throwable thrown = catchThrowable(
+            () -> client.request(PackerMethod.ZIP_DEFLATE, EARLIEST_FETCH_TIME, LATEST_FETCH_TIME, 10)
+                        .get(5, TimeUnit.SECONDS) //
+        );
+
+        // Assert
+        assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IOException.class);
+        verify(channel).basicCancel(CONSUMER_TAG);
+        verify(channel).close();
+    }
+
+    @Test
+    public void testRequestStatistics_publishingFails_cancelsConsumerAndClosesChannel() throws Exception {
+        // Arrange
+        failPublishing();
+
+        // Act
+        Throwable thrown = catchThrowable(
+            () -> client.requestStatistics(EARLIEST_FETCH_TIME, LATEST_FETCH_TIME, emptyList())
+                        .get(5, TimeUnit.SECONDS) //
+        );
+
+        // Assert
+        assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IOException.class);
+        verify(channel).basicCancel(CONSUMER_TAG);
+        verify(channel).close();
+    }
+
+    @Test
+    public void testRequest_channelClosedByBroker_closesChannelWithoutCancellingConsumer() throws Exception {
+        // Arrange
+        failPublishing();
+        when(channel.isOpen()).thenReturn(false);
+
+        // Act
+        Throwable thrown = catchThrowable(
+            () -> client.request(PackerMethod.ZIP_DEFLATE, EARLIEST_FETCH_TIME, LATEST_FETCH_TIME, 10)
+                        .get(5, TimeUnit.SECONDS) //
+        );
+
+        // Assert
+        assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IOException.class);
+        verify(channel, never()).basicCancel(anyString());
+        verify(channel).close();
+    }
+
+    @Test
+    public void testRequest_exchangeMissing_closesChannel() throws Exception {
+        // Arrange
+        when(channel.exchangeDeclarePassive("requests")).thenThrow(new IOException("no exchange on purpose"));
+
+        // Act
+        Throwable thrown = catchThrowable(
+            () -> client.request(PackerMethod.ZIP_DEFLATE, EARLIEST_FETCH_TIME, LATEST_FETCH_TIME, 10)
+                        .get(5, TimeUnit.SECONDS) //
+        );
+
+        // Assert
+        assertThat(thrown).isInstanceOf(ExecutionException.class).hasCauseInstanceOf(IOException.class);
+        verify(channel, never()).basicConsume(anyString(), anyBoolean(), any(Consumer.class));
+        verify(channel).close();
+    }
+}
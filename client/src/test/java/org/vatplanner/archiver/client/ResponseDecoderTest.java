@@ -0,0 +1,152 @@
+package org.vatplanner.archiver.client;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * Decodes responses packed by the server's packers from the data files created
+ * by {@link #createDataFiles()}. The packed responses are kept as resources so
+ * the client does not depend on the server; they need to be regenerated with
+ * the server's {@code PackerFactory} if test data or packers change.
+ */
+public class ResponseDecoderTest {
+
+    private static final String CONTENT = "{\"general\": {\"update\": \"20210102000000\"}, \"pilots\": []}";
+
+    private static List<RawDataFile> createDataFiles() {
+        List<RawDataFile> out = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            // content should be compressible to actually deflate entries
+            StringBuilder sb = new StringBuilder();
+            for (int j = 0; j <= i * 20; j++) {
+                sb.append(CONTENT);
+            }
+
+            out.add(createDataFile(Instant.parse("2021-01-02T00:00:00Z").plusSeconds(i * 15L), "json3", sb.toString()));
+        }
+        out.add(createDataFile(Instant.parse("2021-01-02T00:00:00Z"), "legacy", "legacy"));
+        return out;
+    }
+
+    private static RawDataFile createDataFile(Instant fetchTime, String formatName, String content) {
+        RawDataFile dataFile = new RawDataFile(fetchTime)
+            .setFetchNode("node")
+            .setFetchUrlRequested("http://requested/" + formatName)
+            .setFetchUrlRetrieved("http://retrieved/" + formatName)
+            .setData(content.getBytes(StandardCharsets.UTF_8));
+        dataFile.setFormatName(formatName);
+        return dataFile;
+    }
+
+    private static List<String> describe(Collection<RawDataFile> dataFiles) {
+        return dataFiles.stream()
+                        .map(x -> x.getFetchTime() + " " + x.getFormatName() + " " + x.getFetchNode() + " "
+                            + x.getFetchUrlRequested() + " " + x.getFetchUrlRetrieved() + " "
+                            + new String(x.getData(), StandardCharsets.UTF_8))
+                        .sorted()
+                        .collect(Collectors.toList());
+    }
+
+    private static byte[] loadPacked(PackerMethod method) throws IOException {
+        return loadPacked(method, false);
+    }
+
+    private static byte[] loadPacked(PackerMethod method, boolean deduplicated) throws IOException {
+        String name = "responses/" + method.name().toLowerCase().replace('_', '-')
+            + (deduplicated ? "-deduplicated" : "") + ".bin";
+        try (InputStream is = ResponseDecoderTest.class.getClassLoader().getResourceAsStream(name)) {
+            if (is == null) {
+                throw new IOException("missing test resource " + name);
+            }
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    private static PackerMethod getPackedMethod(PackerMethod method) {
+        // client only learns about the packed format
+        return PackerMethod.byPackedShortCode(method.getPackedShortCode());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, mode = EnumSource.Mode.EXCLUDE, names = { "AUTO" })
+    public void testDecode_packedByServer_returnsAllDataFiles(PackerMethod method) throws Exception {
+        // Arrange
+        List<RawDataFile> dataFiles = createDataFiles();
+        List<String> expected = describe(dataFiles);
+        byte[] packed = loadPacked(method);
+        ResponseDecoder decoder = new ResponseDecoder(Collections.emptyList(), null);
+
+        // Act
+        Collection<RawDataFile> result = decoder.decode(getPackedMethod(method), packed);
+
+        // Assert
+        assertThat(describe(result)).containsExactlyElementsOf(expected);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, mode = EnumSource.Mode.EXCLUDE, names = { "AUTO" })
+    public void testDecode_unwantedFormat_omitsDataFiles(PackerMethod method) throws Exception {
+        // Arrange
+        List<RawDataFile> dataFiles = createDataFiles();
+        List<String> expected = describe(dataFiles.subList(3, 4));
+        byte[] packed = loadPacked(method);
+        ResponseDecoder decoder = new ResponseDecoder(Arrays.asList("legacy"), null);
+
+        // Act
+        Collection<RawDataFile> result = decoder.decode(getPackedMethod(method), packed);
+
+        // Assert
+        assertThat(describe(result)).containsExactlyElementsOf(expected);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, mode = EnumSource.Mode.EXCLUDE, names = { "AUTO" })
+    public void testDecode_pooledBuffers_returnsAllDataFiles(PackerMethod method) throws Exception {
+        // Arrange
+        List<RawDataFile> dataFiles = createDataFiles();
+        List<String> expected = describe(dataFiles);
+        byte[] packed = loadPacked(method);
+        ResponseDecoder decoder = new ResponseDecoder(Collections.emptyList(), new BufferPool(1024 * 1024));
+
+        // Act
+        Collection<RawDataFile> result = decoder.decode(getPackedMethod(method), packed);
+
+        // Assert
+        assertThat(describe(result)).containsExactlyElementsOf(expected);
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, mode = EnumSource.Mode.EXCLUDE, names = { "AUTO" })
+    public void testDecode_deduplicatedContent_restoresContentOfAllDataFiles(PackerMethod method) throws Exception {
+        // Arrange
+        List<RawDataFile> dataFiles = createDataFiles();
+        dataFiles.add(createDataFile(Instant.parse("2021-01-02T00:00:15Z"), "legacy", "legacy"));
+        dataFiles.add(createDataFile(Instant.parse("2021-01-02T00:00:30Z"), "legacy", "legacy"));
+        List<String> expected = describe(dataFiles);
+        byte[] packed = loadPacked(method, true);
+        ResponseDecoder decoder = new ResponseDecoder(Collections.emptyList(), new BufferPool(1024 * 1024));
+
+        // Act
+        Collection<RawDataFile> result = decoder.decode(getPackedMethod(method), packed);
+
+        // Assert
+        assertThat(describe(result)).containsExactlyElementsOf(expected);
+    }
+}
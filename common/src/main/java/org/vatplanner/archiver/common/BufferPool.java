@@ -0,0 +1,174 @@
+package org.vatplanner.archiver.common;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pool of byte arrays to be reused for reading entries of varying size, in
+ * order to reduce allocation rate and heap fragmentation. Entries of VATSIM
+ * data files easily exceed the size at which garbage collectors such as G1
+ * treat arrays as "humongous" objects, which are expensive to allocate and
+ * reclaim.
+ *
+ * <p>
+ * Buffers are organized in size classes growing by a quarter per step, so
+ * rented buffers are at most 25% larger than requested. Rented buffers are
+ * therefore usually longer than the data they hold; the actual length needs to
+ * be tracked separately (see {@link RawDataFile#setData(byte[], int, BufferPool)}).
+ * </p>
+ *
+ * <p>
+ * Returning buffers is optional; buffers which are not returned are simply
+ * garbage collected. Returned buffers are only retained up to a total size,
+ * further buffers are dropped. Requests exceeding the largest size class are
+ * allocated at exact size and not pooled.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class BufferPool {
+
+    private static final int MINIMUM_CLASS_SIZE = 1024;
+    private static final int MAXIMUM_CLASS_SIZE = 64 * 1024 * 1024;
+    private static final int STEPS_PER_DOUBLING = 4;
+
+    private static final int[] CLASS_SIZES = createClassSizes();
+
+    private final long maximumRetainedBytes;
+    private final AtomicLong retainedBytes = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final List<Deque<byte[]>> available = new ArrayList<>();
+
+    /**
+     * Creates a new pool.
+     *
+     * @param maximumRetainedBytes maximum total size of buffers to retain for
+     *        reuse; 0 to disable pooling
+     */
+    public BufferPool(long maximumRetainedBytes) {
+        this.maximumRetainedBytes = maximumRetainedBytes;
+
+        for (int i = 0; i < CLASS_SIZES.length; i++) {
+            available.add(new ArrayDeque<>());
+        }
+    }
+
+    private static int[] createClassSizes() {
+        List<Integer> sizes = new ArrayList<>();
+        for (long base = MINIMUM_CLASS_SIZE; base < MAXIMUM_CLASS_SIZE; base *= 2) {
+            for (int step = 0; step < STEPS_PER_DOUBLING; step++) {
+                sizes.add((int) (base + base * step / STEPS_PER_DOUBLING));
+            }
+        }
+        sizes.add(MAXIMUM_CLASS_SIZE);
+
+        return sizes.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Rents a buffer of at least the given length. Buffers may hold data of
+     * previous use.
+     *
+     * @param minimumLength minimum length of buffer
+     * @return buffer of at least requested length
+     */
+    public byte[] rent(int minimumLength) {
+        int classIndex = findClassIndex(minimumLength);
+        if (classIndex < 0) {
+            return new byte[minimumLength];
+        }
+
+        if (maximumRetainedBytes > 0) {
+            Deque<byte[]> buffers = available.get(classIndex);
+            byte[] buffer;
+            synchronized (buffers) {
+                buffer = buffers.pollFirst();
+            }
+
+            if (buffer != null) {
+                retainedBytes.addAndGet(-buffer.length);
+                hits.incrementAndGet();
+                return buffer;
+            }
+        }
+
+        misses.incrementAndGet();
+        return new byte[CLASS_SIZES[classIndex]];
+    }
+
+    /**
+     * Returns a buffer to the pool. The buffer must not be used by the caller
+     * afterwards. Buffers not originating from a pool are accepted but may be
+     * dropped.
+     *
+     * @param buffer buffer to return; ignored if null
+     */
+    public void release(byte[] buffer) {
+        if ((buffer == null) || (maximumRetainedBytes <= 0)) {
+            return;
+        }
+
+        int classIndex = Arrays.binarySearch(CLASS_SIZES, buffer.length);
+        if (classIndex < 0) {
+            return;
+        }
+
+        if (retainedBytes.addAndGet(buffer.length) > maximumRetainedBytes) {
+            retainedBytes.addAndGet(-buffer.length);
+            return;
+        }
+
+        Deque<byte[]> buffers = available.get(classIndex);
+        synchronized (buffers) {
+            buffers.addFirst(buffer);
+        }
+    }
+
+    private int findClassIndex(int minimumLength) {
+        if (minimumLength > MAXIMUM_CLASS_SIZE) {
+            return -1;
+        }
+
+        int index = Arrays.binarySearch(CLASS_SIZES, minimumLength);
+        if (index < 0) {
+            // binary search returns (-(insertion point) - 1) if not found
+            index = -index - 1;
+        }
+
+        return index;
+    }
+
+    /**
+     * Returns the total size of buffers currently retained for reuse.
+     *
+     * @return retained buffers in bytes
+     */
+    public long getRetainedBytes() {
+        return retainedBytes.get();
+    }
+
+    /**
+     * Returns the number of rented buffers which have been reused.
+     *
+     * @return number of rentals served from pool
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Returns the number of rented buffers which had to be allocated.
+     *
+     * @return number of rentals requiring a new allocation
+     */
+    public long getMisses() {
+        return misses.get();
+    }
+}
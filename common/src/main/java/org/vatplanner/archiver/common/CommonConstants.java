@@ -5,4 +5,18 @@ package org.vatplanner.archiver.common;
  */
 public interface CommonConstants {
     public static String DATA_FILE_FORMAT_NAME_LEGACY = "legacy";
+
+    /**
+     * Name of the response message header holding the continuation token to
+     * request the next page of data files. Absent if the response holds the last
+     * page.
+     */
+    public static String RESPONSE_HEADER_CONTINUATION_TOKEN = "continuationToken";
+
+    /**
+     * Name of the response message header holding the packed short code of the
+     * {@link PackerMethod} used to pack data files, see
+     * {@link PackerMethod#getPackedShortCode()}.
+     */
+    public static String RESPONSE_HEADER_PACKER_METHOD = "packerMethod";
 }
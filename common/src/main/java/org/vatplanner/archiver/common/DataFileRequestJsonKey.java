@@ -8,11 +8,17 @@ import com.github.cliftonlabs.json_simple.JsonKey;
  * JSON keys describing request parameters for data files.
  */
 public enum DataFileRequestJsonKey implements JsonKey {
+    REQUEST_TYPE("requestType", DataFileRequestType.DATA_FILES.getShortCode()),
     DATA_FILE_FORMATS("dataFileFormats", Collections.emptyList()),
     PACKER_METHOD("packerMethod"),
     FILE_LIMIT("fileLimit", 1000),
     EARLIEST_FETCH_TIME("earliestFetchTime"),
-    LATEST_FETCH_TIME("latestFetchTime");
+    LATEST_FETCH_TIME("latestFetchTime"),
+    SAMPLE_INTERVAL("sampleInterval"),
+    CONTINUATION_TOKEN("continuationToken"),
+    PACKING_GOAL("packingGoal", PackingGoal.LATENCY.getShortCode()),
+    BANDWIDTH("bandwidth", 0L),
+    DEDUPLICATE("deduplicate", false);
 
     private final String key;
     private final Object defaultValue;
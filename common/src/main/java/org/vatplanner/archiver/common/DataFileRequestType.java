@@ -0,0 +1,66 @@
+package org.vatplanner.archiver.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Types of requests which can be sent to the server. The type determines what
+ * will be contained in the response.
+ */
+public enum DataFileRequestType {
+    /**
+     * Requests actual data files to be loaded and packed according to the
+     * requested {@link PackerMethod}.
+     */
+    DATA_FILES("dataFiles"),
+
+    /**
+     * Requests only statistics about available data files per day and format
+     * without loading any actual content. The response is a UTF8-encoded JSON
+     * object described by {@link DataFileStatisticsJsonKey}.
+     */
+    STATISTICS("statistics");
+
+    private final String shortCode;
+
+    private static final Map<String, DataFileRequestType> BY_SHORT_CODE = new HashMap<>();
+
+    static {
+        for (DataFileRequestType type : values()) {
+            BY_SHORT_CODE.put(type.shortCode, type);
+        }
+    }
+
+    private DataFileRequestType(String shortCode) {
+        this.shortCode = shortCode;
+    }
+
+    /**
+     * Returns the short code used to identify the type on requests.
+     *
+     * @return short code identifying type on requests
+     */
+    public String getShortCode() {
+        return shortCode;
+    }
+
+    /**
+     * Resolves the given short code used during requests to a type.
+     *
+     * @param shortCode short code identifying requested type
+     * @return matching type
+     * @throws IllegalArgumentException if short code is unknown or null
+     */
+    public static DataFileRequestType byShortCode(String shortCode) {
+        if (shortCode == null) {
+            throw new IllegalArgumentException("short code must not be null");
+        }
+
+        DataFileRequestType type = BY_SHORT_CODE.get(shortCode);
+        if (type == null) {
+            throw new IllegalArgumentException("unknown request type short code \"" + shortCode + "\"");
+        }
+
+        return type;
+    }
+}
@@ -0,0 +1,99 @@
+package org.vatplanner.archiver.common;
+
+import java.time.Instant;
+import java.time.LocalDate;
+
+/**
+ * Describes data files available for one data file format on a single day
+ * (UTC) without holding any actual content.
+ */
+public class DataFileStatistics {
+
+    private final LocalDate date;
+    private final String formatName;
+    private int numberOfFiles;
+    private long totalDataSize;
+    private Instant earliestFetchTime;
+    private Instant latestFetchTime;
+
+    public DataFileStatistics(LocalDate date, String formatName) {
+        this.date = date;
+        this.formatName = formatName;
+    }
+
+    /**
+     * Returns the UTC date of all described data files.
+     *
+     * @return UTC date of described data files
+     */
+    public LocalDate getDate() {
+        return date;
+    }
+
+    /**
+     * Returns the application-internal name of the data file format.
+     *
+     * @return application-internal name of data file format
+     * @see RawDataFile#getFormatName()
+     */
+    public String getFormatName() {
+        return formatName;
+    }
+
+    /**
+     * Returns the number of available data files.
+     *
+     * @return number of available data files
+     */
+    public int getNumberOfFiles() {
+        return numberOfFiles;
+    }
+
+    public DataFileStatistics setNumberOfFiles(int numberOfFiles) {
+        this.numberOfFiles = numberOfFiles;
+        return this;
+    }
+
+    /**
+     * Returns the total size of raw data in bytes (uncompressed, excluding meta
+     * data) as it would be returned by {@link RawDataFile#getData()}.
+     *
+     * @return total size of raw data in bytes
+     */
+    public long getTotalDataSize() {
+        return totalDataSize;
+    }
+
+    public DataFileStatistics setTotalDataSize(long totalDataSize) {
+        this.totalDataSize = totalDataSize;
+        return this;
+    }
+
+    /**
+     * Returns the fetch time of the earliest available data file.
+     *
+     * @return fetch time of earliest available data file
+     */
+    public Instant getEarliestFetchTime() {
+        return earliestFetchTime;
+    }
+
+    public DataFileStatistics setEarliestFetchTime(Instant earliestFetchTime) {
+        this.earliestFetchTime = earliestFetchTime;
+        return this;
+    }
+
+    /**
+     * Returns the fetch time of the latest available data file.
+     *
+     * @return fetch time of latest available data file
+     */
+    public Instant getLatestFetchTime() {
+        return latestFetchTime;
+    }
+
+    public DataFileStatistics setLatestFetchTime(Instant latestFetchTime) {
+        this.latestFetchTime = latestFetchTime;
+        return this;
+    }
+}
@@ -0,0 +1,83 @@
+package org.vatplanner.archiver.common;
+
+import java.util.Collections;
+import java.util.HashMap;
+
+import com.github.cliftonlabs.json_simple.JsonKey;
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+/**
+ * {@link JsonKey}s to address data file statistics sent in response to
+ * {@link DataFileRequestType#STATISTICS} requests.
+ *
+ * <p>
+ * Statistics are structured as a container ({@link #FORMAT_VERSION},
+ * {@link #DAYS}) holding an object per day (indexed by ISO date) which in turn
+ * holds an object per data file format (indexed by format name) with the
+ * remaining keys.
+ * </p>
+ */
+public enum DataFileStatisticsJsonKey implements JsonKey {
+    /**
+     * Version of statistics format. Only to be incremented if incompatible with
+     * previous versions.
+     */
+    FORMAT_VERSION("formatVersion"),
+
+    /**
+     * Statistics for all days, indexed by ISO date (UTC).
+     */
+    DAYS("days", Collections.unmodifiableMap(new HashMap<String, JsonObject>())),
+
+    /**
+     * Number of data files available.
+     *
+     * @see DataFileStatistics#getNumberOfFiles()
+     */
+    FILES("files"),
+
+    /**
+     * Total size of raw data in bytes.
+     *
+     * @see DataFileStatistics#getTotalDataSize()
+     */
+    SIZE("size"),
+
+    /**
+     * Fetch time of earliest available data file.
+     *
+     * @see DataFileStatistics#getEarliestFetchTime()
+     */
+    EARLIEST_FETCH_TIME("earliestFetchTime"),
+
+    /**
+     * Fetch time of latest available data file.
+     *
+     * @see DataFileStatistics#getLatestFetchTime()
+     */
+    LATEST_FETCH_TIME("latestFetchTime");
+
+    private final String key;
+    private final Object defaultValue;
+
+    private DataFileStatisticsJsonKey(String key) {
+        this.key = key;
+        this.defaultValue = null;
+    }
+
+    private DataFileStatisticsJsonKey(String key, Object defaultValue) {
+        this.key = key;
+        this.defaultValue = defaultValue;
+    }
+
+    @Override
+    public String getKey() {
+        return key;
+    }
+
+    @Override
+    public Object getValue() {
+        return defaultValue;
+    }
+
+}
@@ -8,8 +8,7 @@ import java.util.Map;
  * <p>
  * ZIP methods are useful to offer maximum compatibility with minimum or no
  * dependencies required to uncompress the result on a remote client. Files can
- * be accessed randomly, which might be useful for some clients. Encoding ZIP
- * files requires an estimated result size to be pre-allocated in memory.
+ * be accessed randomly, which might be useful for some clients.
  * </p>
  * <p>
  * TAR methods result in a continuous data stream. This means clients need to
@@ -35,6 +34,11 @@ import java.util.Map;
  * these algorithms should only be chosen if network bandwidth is very low or
  * data volume has to be conserved.</li>
  * </ul>
+ * <p>
+ * Instead of choosing a method, clients may request {@link #AUTO} and state a
+ * {@link PackingGoal} to let the server choose a method based on its own
+ * measurements.
+ * </p>
  */
 public enum PackerMethod {
     /**
@@ -110,7 +114,16 @@ public enum PackerMethod {
      * this algorithm to transport data is only feasible if bandwidth or data volume
      * is of very high concern.
      */
-    TAR_LZMA("tar+lzma");
+    TAR_LZMA("tar+lzma"),
+
+    /**
+     * Lets the server choose a method according to the {@link PackingGoal}
+     * indicated on request, based on compression ratio and throughput measured on
+     * previous requests. Only available to requests; the method actually used for
+     * packing is indicated on the response by message header
+     * {@link CommonConstants#RESPONSE_HEADER_PACKER_METHOD}.
+     */
+    AUTO("auto", null);
 
     private final String requestShortCode;
     private final String packedShortCode;
@@ -122,7 +135,7 @@ public enum PackerMethod {
         for (PackerMethod method : values()) {
             BY_REQUEST_SHORT_CODE.put(method.requestShortCode, method);
 
-            if (!method.aliasesOtherPackedShortCode()) {
+            if ((method.packedShortCode != null) && !method.aliasesOtherPackedShortCode()) {
                 BY_PACKED_SHORT_CODE.put(method.packedShortCode, method);
             }
         }
@@ -141,7 +154,8 @@ public enum PackerMethod {
     /**
      * Returns the short code used to identify the method after packing.
      *
-     * @return short code identifying method after packing
+     * @return short code identifying method after packing; null for
+     *         {@link #AUTO}
      */
     public String getPackedShortCode() {
         return packedShortCode;
@@ -0,0 +1,65 @@
+package org.vatplanner.archiver.common;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Goals a client can indicate when requesting {@link PackerMethod#AUTO}, so the
+ * server can choose an appropriate method.
+ */
+public enum PackingGoal {
+    /**
+     * Minimizes the time until the response has been received. If the client
+     * indicates its bandwidth, the time needed to transfer the packed result is
+     * considered in addition to the time needed for packing.
+     */
+    LATENCY("latency"),
+
+    /**
+     * Minimizes the size of the packed result, regardless of time needed.
+     */
+    SIZE("size");
+
+    private final String shortCode;
+
+    private static final Map<String, PackingGoal> BY_SHORT_CODE = new HashMap<>();
+
+    static {
+        for (PackingGoal goal : values()) {
+            BY_SHORT_CODE.put(goal.shortCode, goal);
+        }
+    }
+
+    private PackingGoal(String shortCode) {
+        this.shortCode = shortCode;
+    }
+
+    /**
+     * Returns the short code used to identify the goal on requests.
+     *
+     * @return short code identifying goal on requests
+     */
+    public String getShortCode() {
+        return shortCode;
+    }
+
+    /**
+     * Resolves the given short code used during requests to a goal.
+     *
+     * @param shortCode short code identifying requested goal
+     * @return matching goal
+     * @throws IllegalArgumentException if short code is unknown or null
+     */
+    public static PackingGoal byShortCode(String shortCode) {
+        if (shortCode == null) {
+            throw new IllegalArgumentException("short code must not be null");
+        }
+
+        PackingGoal goal = BY_SHORT_CODE.get(shortCode);
+        if (goal == null) {
+            throw new IllegalArgumentException("unknown packing goal short code \"" + shortCode + "\"");
+        }
+
+        return goal;
+    }
+}
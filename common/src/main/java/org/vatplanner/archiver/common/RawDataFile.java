@@ -1,6 +1,7 @@
 package org.vatplanner.archiver.common;
 
 import java.time.Instant;
+import java.util.Arrays;
 
 /**
  * Holds all information readable for an archived data file.
@@ -10,6 +11,21 @@ import java.time.Instant;
  * conserve memory. {@link #getData()} and {@link #setData(byte[])} will fail
  * afterwards.
  * </p>
+ *
+ * <p>
+ * Data may be held in a buffer rented from a {@link BufferPool} which is
+ * usually longer than the actual data. Such buffers are returned to their pool
+ * on {@link #clear()}. Code aware of pooling should access data through
+ * {@link #getDataBuffer()} and {@link #getDataLength()} which never copy;
+ * {@link #getData()} has to copy pooled data into an array of exact size
+ * instead or, if the buffer already is of exact size, stop pooling it.
+ * </p>
+ *
+ * <p>
+ * Data may additionally be provided as a raw "deflate" stream (e.g. taken from
+ * a file compressed at rest) which can be stored as is by packers using the
+ * same compression. Such data is discarded when data is set again.
+ * </p>
  */
 public class RawDataFile {
 
@@ -19,6 +35,12 @@ public class RawDataFile {
     private String fetchNode;
     private String formatName;
     private byte[] data;
+    private int dataLength;
+    private BufferPool dataPool;
+    private byte[] deflatedData;
+    private int deflatedDataLength;
+    private long dataCrc32;
+    private BufferPool deflatedDataPool;
     private boolean isCleared = false;
 
     public RawDataFile(Instant fetchTime) {
@@ -103,37 +125,210 @@ public class RawDataFile {
     }
 
     /**
-     * Returns the fetched data.
+     * Returns the fetched data as an array of exact size. If data is held in a
+     * buffer of different length, it is copied and a pooled buffer is returned
+     * to its pool immediately. A pooled buffer of exact length is handed out as
+     * is but detached from its pool, so it will not be reused elsewhere while
+     * the caller still holds it.
      *
      * @return fetched data
      * @throws RuntimeException if {@link #clear()} has been called to evict data
      *         from memory
      */
     public byte[] getData() {
-        if (isCleared) {
-            throw new RuntimeException("attempted access to explicitely evicted byte array");
+        checkNotCleared();
+
+        if ((data != null) && (data.length != dataLength)) {
+            byte[] exact = Arrays.copyOf(data, dataLength);
+            releaseData();
+            data = exact;
         }
 
+        // caller may keep the array beyond clear()
+        dataPool = null;
+
         return data;
     }
 
+    /**
+     * Returns the buffer holding fetched data. The buffer may be longer than the
+     * actual data, only the first {@link #getDataLength()} bytes are valid. The
+     * buffer must not be used after calling {@link #clear()} as it may be reused
+     * elsewhere.
+     *
+     * @return buffer holding fetched data
+     * @throws RuntimeException if {@link #clear()} has been called to evict data
+     *         from memory
+     */
+    public byte[] getDataBuffer() {
+        checkNotCleared();
+
+        return data;
+    }
+
+    /**
+     * Returns the length of fetched data.
+     *
+     * @return length of fetched data in bytes
+     * @throws RuntimeException if {@link #clear()} has been called to evict data
+     *         from memory
+     */
+    public int getDataLength() {
+        checkNotCleared();
+
+        return dataLength;
+    }
+
+    private void checkNotCleared() {
+        if (isCleared) {
+            throw new RuntimeException("attempted access to explicitely evicted byte array");
+        }
+    }
+
     public RawDataFile setData(byte[] data) {
+        return setData(data, (data != null) ? data.length : 0, null);
+    }
+
+    /**
+     * Sets fetched data held in a buffer which may be longer than the actual
+     * data.
+     *
+     * @param buffer buffer holding fetched data starting at index 0
+     * @param length length of fetched data in bytes
+     * @param pool pool to return the buffer to when no longer needed; null if
+     *        not pooled
+     * @return this instance for method-chaining
+     */
+    public RawDataFile setData(byte[] buffer, int length, BufferPool pool) {
         if (isCleared) {
             throw new RuntimeException(
                 "recycling partially evicted instances seems like an error and thus is not allowed" //
             );
         }
 
-        this.data = data;
+        releaseData();
+        releaseDeflatedData();
+
+        this.data = buffer;
+        this.dataLength = length;
+        this.dataPool = pool;
 
         return this;
     }
 
     /**
-     * Marks fetched data to be cleared from memory.
+     * Provides data additionally compressed as a raw "deflate" stream (RFC
+     * 1951, without any header or trailer). Must be called after data has been
+     * set and must represent exactly that data.
+     *
+     * @param buffer buffer holding compressed data starting at index 0
+     * @param length length of compressed data in bytes
+     * @param dataCrc32 CRC32 checksum of uncompressed data
+     * @param pool pool to return the buffer to when no longer needed; null if
+     *        not pooled
+     * @return this instance for method-chaining
+     */
+    public RawDataFile setDeflatedData(byte[] buffer, int length, long dataCrc32, BufferPool pool) {
+        checkNotCleared();
+
+        releaseDeflatedData();
+
+        this.deflatedData = buffer;
+        this.deflatedDataLength = length;
+        this.dataCrc32 = dataCrc32;
+        this.deflatedDataPool = pool;
+
+        return this;
+    }
+
+    /**
+     * Checks if data is also available as a raw "deflate" stream.
+     *
+     * @return true if {@link #getDeflatedDataBuffer()} provides compressed data,
+     *         false if not
+     * @throws RuntimeException if {@link #clear()} has been called to evict data
+     *         from memory
+     */
+    public boolean hasDeflatedData() {
+        checkNotCleared();
+
+        return deflatedData != null;
+    }
+
+    /**
+     * Returns the buffer holding data compressed as a raw "deflate" stream. The
+     * buffer may be longer than the actual data, only the first
+     * {@link #getDeflatedDataLength()} bytes are valid. The buffer must not be
+     * used after calling {@link #clear()} as it may be reused elsewhere.
+     *
+     * @return buffer holding compressed data; null if not available
+     * @throws RuntimeException if {@link #clear()} has been called to evict data
+     *         from memory
+     */
+    public byte[] getDeflatedDataBuffer() {
+        checkNotCleared();
+
+        return deflatedData;
+    }
+
+    /**
+     * Returns the length of data compressed as a raw "deflate" stream.
+     *
+     * @return length of compressed data in bytes; 0 if not available
+     * @throws RuntimeException if {@link #clear()} has been called to evict data
+     *         from memory
+     */
+    public int getDeflatedDataLength() {
+        checkNotCleared();
+
+        return deflatedDataLength;
+    }
+
+    /**
+     * Returns the CRC32 checksum of uncompressed data as provided together with
+     * compressed data.
+     *
+     * @return CRC32 checksum of uncompressed data; only valid if
+     *         {@link #hasDeflatedData()}
+     * @throws RuntimeException if {@link #clear()} has been called to evict data
+     *         from memory
+     */
+    public long getDataCrc32() {
+        checkNotCleared();
+
+        return dataCrc32;
+    }
+
+    private void releaseDeflatedData() {
+        if (deflatedDataPool != null) {
+            deflatedDataPool.release(deflatedData);
+            deflatedDataPool = null;
+        }
+
+        deflatedData = null;
+        deflatedDataLength = 0;
+    }
+
+    private void releaseData() {
+        if (dataPool != null) {
+            dataPool.release(data);
+            dataPool = null;
+        }
+    }
+
+    /**
+     * Marks fetched data to be cleared from memory. Pooled buffers are returned
+     * to their pool.
      */
     public void clear() {
+        if (isCleared) {
+            return;
+        }
+
+        releaseData();
+        releaseDeflatedData();
         data = null;
+        dataLength = 0;
         isCleared = true;
     }
 }
@@ -42,7 +42,16 @@ public enum RemoteMetaDataFileJsonKey implements JsonKey {
      *
      * @see RawDataFile#getFetchNode()
      */
-    FETCH_NODE("fetchNode");
+    FETCH_NODE("fetchNode"),
+
+    /**
+     * Holds the name of the container entry holding the content of this file if
+     * the server deduplicated identical content; absent if the content is stored
+     * in the file's own entry. Only provided if deduplication has been requested.
+     *
+     * @see DataFileRequestJsonKey#DEDUPLICATE
+     */
+    CONTENT_FILE("contentFile");
 
     private final String key;
     private final Object defaultValue;
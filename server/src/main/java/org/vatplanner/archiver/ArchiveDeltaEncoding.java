@@ -0,0 +1,148 @@
+package org.vatplanner.archiver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.local.ArchiveSplitter;
+import org.vatplanner.archiver.local.DeltaArchiveEncoder;
+import org.vatplanner.archiver.local.StorageConfiguration;
+import org.vatplanner.archiver.util.BoundedArrayCache;
+import org.vatplanner.archiver.util.NamedDaemonThreadFactory;
+
+/**
+ * Rewrites transitioned archives to store data files as deltas between full
+ * keyframes (see {@link DeltaArchiveEncoder}). Archives are encoded
+ * concurrently.
+ *
+ * <p>
+ * Usage: {@code ArchiveDeltaEncoding [configPath] [--threads=N] [--keyframe-interval=N] [--reencode]}
+ * </p>
+ *
+ * <ul>
+ * <li>{@code configPath}: local configuration file as used by {@link Main},
+ * defining the transitioned archives base path and default keyframe
+ * interval</li>
+ * <li>{@code --threads=N}: number of archives to encode concurrently, defaults
+ * to the number of processors</li>
+ * <li>{@code --keyframe-interval=N}: number of data files per format after
+ * which a full keyframe is stored again, overrides configuration; 1 restores
+ * regular archives</li>
+ * <li>{@code --reencode}: also encode archives which already are in the
+ * requested form, e.g. to change the keyframe interval</li>
+ * </ul>
+ *
+ * <p>
+ * Deltas are only stored if enabled by {@code storage.deltaEncoding}. Regular
+ * archives can always be restored by using a keyframe interval of 1.
+ * </p>
+ *
+ * <p>
+ * The encoding can be run while the server is online and may be repeated at
+ * any time, e.g. after each transition, as only archives not yet encoded are
+ * processed by default.
+ * </p>
+ */
+public class ArchiveDeltaEncoding {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveDeltaEncoding.class);
+
+    private static final String ARGUMENT_THREADS = "--threads=";
+    private static final String ARGUMENT_KEYFRAME_INTERVAL = "--keyframe-interval=";
+    private static final String ARGUMENT_REENCODE = "--reencode";
+
+    public static void main(String[] args) throws Exception {
+        String configPath = null;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        Integer keyframeIntervalOverride = null;
+        boolean shouldReencode = false;
+        for (String arg : args) {
+            if (arg.startsWith(ARGUMENT_THREADS)) {
+                numThreads = Integer.parseInt(arg.substring(ARGUMENT_THREADS.length()));
+            } else if (arg.startsWith(ARGUMENT_KEYFRAME_INTERVAL)) {
+                keyframeIntervalOverride = Integer.parseInt(arg.substring(ARGUMENT_KEYFRAME_INTERVAL.length()));
+            } else if (arg.equals(ARGUMENT_REENCODE)) {
+                shouldReencode = true;
+            } else if (configPath == null) {
+                configPath = arg;
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+
+        StorageConfiguration storageConfig = new Configuration(configPath).getStorageConfig();
+        File transitionedBasePath = storageConfig.getTransitionedArchivesBasePath();
+        int keyframeInterval = (keyframeIntervalOverride != null)
+            ? keyframeIntervalOverride
+            : storageConfig.getDeltaKeyframeInterval();
+
+        if ((keyframeInterval > 1) && !storageConfig.isDeltaEncodingEnabled()) {
+            LOGGER.error(
+                "Delta encoding is disabled by storage.deltaEncoding, only {}1 is allowed to restore regular archives",
+                ARGUMENT_KEYFRAME_INTERVAL //
+            );
+            System.exit(1);
+        }
+
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(
+            new BoundedArrayCache(storageConfig.getXzArrayCacheMegabytes() * 1024L * 1024L),
+            keyframeInterval //
+        );
+
+        List<File> archiveFiles = ArchiveSplitter.findArchives(transitionedBasePath);
+        LOGGER.info(
+            "Encoding {} archives in {} with keyframe interval {} using {} threads",
+            archiveFiles.size(), transitionedBasePath, keyframeInterval, numThreads //
+        );
+
+        // archives holding deltas need to be decoded if no deltas are wanted
+        boolean shouldBeEncoded = keyframeInterval > 1;
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new NamedDaemonThreadFactory("encoding"));
+        boolean reencode = shouldReencode;
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (File archiveFile : archiveFiles) {
+            futures.add(executor.submit(() -> {
+                if (!reencode && (encoder.isEncoded(archiveFile) == shouldBeEncoded)) {
+                    LOGGER.debug("Skipping {}", archiveFile);
+                    return false;
+                }
+
+                long originalLength = archiveFile.length();
+                encoder.encode(archiveFile);
+                LOGGER.info("Encoded {} ({} to {} bytes)", archiveFile, originalLength, archiveFile.length());
+
+                return true;
+            }));
+        }
+
+        int numEncoded = 0;
+        int numFailed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                if (futures.get(i).get()) {
+                    numEncoded++;
+                }
+            } catch (ExecutionException ex) {
+                LOGGER.error("Failed to encode " + archiveFiles.get(i), ex.getCause());
+                numFailed++;
+            }
+        }
+
+        executor.shutdown();
+
+        LOGGER.info(
+            "Encoding finished, {} of {} archives encoded, {} failed",
+            numEncoded, archiveFiles.size(), numFailed //
+        );
+        if (numFailed > 0) {
+            System.exit(1);
+        }
+    }
+}
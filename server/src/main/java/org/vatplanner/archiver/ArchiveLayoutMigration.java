@@ -0,0 +1,108 @@
+package org.vatplanner.archiver;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.local.ArchiveSplitter;
+import org.vatplanner.archiver.local.StorageConfiguration;
+import org.vatplanner.archiver.util.BoundedArrayCache;
+import org.vatplanner.archiver.util.NamedDaemonThreadFactory;
+
+/**
+ * Migrates transitioned archives holding all data file formats of a day to one
+ * archive per format (see {@link ArchiveSplitter}). Archives are split
+ * concurrently.
+ *
+ * <p>
+ * Usage: {@code ArchiveLayoutMigration [configPath] [--threads=N] [--delete-originals]}
+ * </p>
+ *
+ * <ul>
+ * <li>{@code configPath}: local configuration file as used by {@link Main},
+ * defining the transitioned archives base path</li>
+ * <li>{@code --threads=N}: number of archives to split concurrently, defaults
+ * to the number of processors</li>
+ * <li>{@code --delete-originals}: delete original archives once they have been
+ * split; the server keeps reading original archives as long as they exist</li>
+ * </ul>
+ *
+ * <p>
+ * The migration can be run while the server is online and may be repeated at
+ * any time, e.g. after each daily transition, as only remaining original
+ * archives are processed when originals are deleted.
+ * </p>
+ */
+public class ArchiveLayoutMigration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveLayoutMigration.class);
+
+    private static final String ARGUMENT_THREADS = "--threads=";
+    private static final String ARGUMENT_DELETE_ORIGINALS = "--delete-originals";
+
+    public static void main(String[] args) throws Exception {
+        String configPath = null;
+        int numThreads = Runtime.getRuntime().availableProcessors();
+        boolean shouldDeleteOriginals = false;
+        for (String arg : args) {
+            if (arg.startsWith(ARGUMENT_THREADS)) {
+                numThreads = Integer.parseInt(arg.substring(ARGUMENT_THREADS.length()));
+            } else if (arg.equals(ARGUMENT_DELETE_ORIGINALS)) {
+                shouldDeleteOriginals = true;
+            } else if (configPath == null) {
+                configPath = arg;
+            } else {
+                throw new IllegalArgumentException("Unexpected argument: " + arg);
+            }
+        }
+
+        StorageConfiguration storageConfig = new Configuration(configPath).getStorageConfig();
+        File transitionedBasePath = storageConfig.getTransitionedArchivesBasePath();
+
+        List<File> archiveFiles = ArchiveSplitter.findCombinedArchives(transitionedBasePath);
+        LOGGER.info("Splitting {} archives in {} using {} threads", archiveFiles.size(), transitionedBasePath, numThreads);
+
+        ArchiveSplitter splitter = new ArchiveSplitter(
+            new BoundedArrayCache(storageConfig.getXzArrayCacheMegabytes() * 1024L * 1024L) //
+        );
+
+        ExecutorService executor = Executors.newFixedThreadPool(numThreads, new NamedDaemonThreadFactory("migration"));
+        boolean deleteOriginals = shouldDeleteOriginals;
+        List<Future<?>> futures = new ArrayList<>();
+        for (File archiveFile : archiveFiles) {
+            futures.add(executor.submit(() -> {
+                List<File> written = splitter.split(archiveFile);
+                LOGGER.info("Split {} into {} archives", archiveFile, written.size());
+
+                if (deleteOriginals && !archiveFile.delete()) {
+                    LOGGER.warn("Failed to delete {}", archiveFile);
+                }
+
+                return null;
+            }));
+        }
+
+        int numFailed = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                futures.get(i).get();
+            } catch (ExecutionException ex) {
+                LOGGER.error("Failed to split " + archiveFiles.get(i), ex.getCause());
+                numFailed++;
+            }
+        }
+
+        executor.shutdown();
+
+        LOGGER.info("Migration finished, {} of {} archives failed", numFailed, archiveFiles.size());
+        if (numFailed > 0) {
+            System.exit(1);
+        }
+    }
+}
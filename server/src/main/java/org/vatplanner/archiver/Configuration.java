@@ -8,14 +8,22 @@ import java.net.URL;
 import java.time.Duration;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Properties;
 import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vatplanner.archiver.camel.CamelConfiguration;
+import org.vatplanner.archiver.camel.RequestExecutionMode;
+import org.vatplanner.archiver.common.PackerMethod;
 import org.vatplanner.archiver.local.StorageConfiguration;
+import org.vatplanner.archiver.metrics.MetricsConfiguration;
 import org.vatplanner.archiver.remote.PackerConfiguration;
+import org.vatplanner.archiver.scheduling.SchedulingConfiguration;
+import org.vatplanner.archiver.tracing.SpanExporterType;
+import org.vatplanner.archiver.tracing.TracingConfiguration;
 
 /**
  * Loads all configuration for the application.
@@ -27,6 +35,9 @@ public class Configuration {
     private final StorageConfiguration storageConfig;
     private final PackerConfiguration packerConfig;
     private final CamelConfiguration camelConfig;
+    private final SchedulingConfiguration schedulingConfig;
+    private final MetricsConfiguration metricsConfig;
+    private final TracingConfiguration tracingConfig;
 
     private static final String LOCAL_PROPERTIES_DIRECTORY_NAME = ".vatplanner";
     private static final String LOCAL_PROPERTIES_FILE_NAME = "raw-data-archiver.properties";
@@ -52,6 +63,9 @@ public class Configuration {
         storageConfig = parseStorageConfiguration(properties);
         packerConfig = parsePackerConfiguration(properties);
         camelConfig = parseCamelConfiguration(properties);
+        schedulingConfig = parseSchedulingConfiguration(properties);
+        metricsConfig = parseMetricsConfiguration(properties);
+        tracingConfig = parseTracingConfiguration(properties);
     }
 
     /**
@@ -133,6 +147,16 @@ public class Configuration {
         setZoneId(properties, "storage.transitionTimeZone", config::setTransitionTimeZone);
         setDuration(properties, "storage.transitionPrelude", config::setTransitionPrelude);
         setDuration(properties, "storage.transitionCooldown", config::setTransitionCooldown);
+        setInteger(properties, "storage.archiveBucketHours", config::setArchiveBucketHours);
+        setDuration(properties, "storage.transitionBucketDelay", config::setTransitionBucketDelay);
+        setDuration(properties, "storage.archiveEntryOrderTolerance", config::setArchiveEntryOrderTolerance);
+        setInteger(properties, "storage.archiveIndexCacheSize", config::setArchiveIndexCacheSize);
+        setString(properties, "storage.archiveCatalogFile", config::setArchiveCatalogFile);
+        setInteger(properties, "storage.bufferPoolMegabytes", config::setBufferPoolMegabytes);
+        setInteger(properties, "storage.xzArrayCacheMegabytes", config::setXzArrayCacheMegabytes);
+        setInteger(properties, "storage.prefetchMegabytes", config::setPrefetchMegabytes);
+        setBoolean(properties, "storage.deltaEncoding", config::setDeltaEncoding);
+        setInteger(properties, "storage.deltaKeyframeInterval", config::setDeltaKeyframeInterval);
 
         return config;
     }
@@ -141,10 +165,25 @@ public class Configuration {
         PackerConfiguration config = new PackerConfiguration();
 
         setBoolean(properties, "packer.autoSelectMultiThreading", config::setAutoSelectMultiThreading);
+        setInteger(properties, "packer.packingThreads", config::setPackingThreads);
+        setInteger(properties, "packer.compressionThreads", config::setCompressionThreads);
+        setString(properties, "packer.scatterDirectory", config::setScatterDirectory);
+        setInteger(properties, "packer.scatterSpillThresholdKilobytes", config::setScatterSpillThresholdKilobytes);
+        setBoolean(properties, "packer.pipelined", config::setPipelined);
+        setInteger(properties, "packer.pipelineBufferMegabytes", config::setPipelineBufferMegabytes);
+        setString(properties, "packer.autoCandidates", s -> config.setAutoCandidates(parsePackerMethods(s)));
 
         return config;
     }
 
+    private List<PackerMethod> parsePackerMethods(String s) {
+        List<PackerMethod> methods = new ArrayList<>();
+        for (String requestShortCode : s.split(",")) {
+            methods.add(PackerMethod.byRequestShortCode(requestShortCode.trim()));
+        }
+        return methods;
+    }
+
     private CamelConfiguration parseCamelConfiguration(Properties properties) {
         CamelConfiguration config = new CamelConfiguration();
 
@@ -158,6 +197,44 @@ public class Configuration {
         setString(properties, "camel.requests.queue", config::setRequestsQueue);
         setDuration(properties, "camel.requests.queueTTL", config::setRequestsQueueTTL);
         setInteger(properties, "camel.requests.consumers", config::setRequestsConsumers);
+        setString(
+            properties,
+            "camel.requests.executionMode",
+            s -> config.setRequestsExecutionMode(RequestExecutionMode.byConfigName(s)) //
+        );
+        setInteger(properties, "camel.requests.maximumInFlight", config::setRequestsMaximumInFlight);
+
+        return config;
+    }
+
+    private SchedulingConfiguration parseSchedulingConfiguration(Properties properties) {
+        SchedulingConfiguration config = new SchedulingConfiguration();
+
+        setInteger(properties, "scheduling.memoryBudgetMegabytes", config::setMemoryBudgetMegabytes);
+        setDuration(properties, "scheduling.starvationTimeout", config::setStarvationTimeout);
+        setInteger(properties, "scheduling.initialAverageDataFileSize", config::setInitialAverageDataFileSize);
+
+        return config;
+    }
+
+    private MetricsConfiguration parseMetricsConfiguration(Properties properties) {
+        MetricsConfiguration config = new MetricsConfiguration();
+
+        setInteger(properties, "metrics.httpPort", config::setHttpPort);
+        setString(properties, "metrics.httpBindAddress", config::setHttpBindAddress);
+
+        return config;
+    }
+
+    private TracingConfiguration parseTracingConfiguration(Properties properties) {
+        TracingConfiguration config = new TracingConfiguration();
+
+        setString(
+            properties,
+            "tracing.exporter",
+            s -> config.setExporter(SpanExporterType.byConfigName(s)) //
+        );
+        setString(properties, "tracing.filePath", config::setFilePath);
 
         return config;
     }
@@ -170,6 +247,18 @@ public class Configuration {
         return packerConfig;
     }
 
+    public SchedulingConfiguration getSchedulingConfig() {
+        return schedulingConfig;
+    }
+
+    public MetricsConfiguration getMetricsConfig() {
+        return metricsConfig;
+    }
+
+    public TracingConfiguration getTracingConfig() {
+        return tracingConfig;
+    }
+
     public StorageConfiguration getStorageConfig() {
         return storageConfig;
     }
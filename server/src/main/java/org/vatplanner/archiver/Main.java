@@ -1,13 +1,27 @@
 package org.vatplanner.archiver;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.apache.camel.CamelContext;
 import org.apache.camel.impl.DefaultCamelContext;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.vatplanner.archiver.camel.RawDataArchiverRouteBuilder;
+import org.vatplanner.archiver.camel.RequestExecutionMode;
 import org.vatplanner.archiver.local.Loader;
 import org.vatplanner.archiver.local.TransitionChecker;
+import org.vatplanner.archiver.metrics.ArchiverMetrics;
+import org.vatplanner.archiver.metrics.MetricsHttpServer;
+import org.vatplanner.archiver.metrics.MetricsRegistry;
 import org.vatplanner.archiver.remote.PackerFactory;
+import org.vatplanner.archiver.remote.PackerSelector;
+import org.vatplanner.archiver.scheduling.AdmissionController;
+import org.vatplanner.archiver.scheduling.RequestCostEstimator;
+import org.vatplanner.archiver.tracing.Tracing;
+import org.vatplanner.archiver.util.BoundedArrayCache;
+import org.vatplanner.archiver.util.FairExecutor;
+import org.vatplanner.archiver.util.NamedDaemonThreadFactory;
 
 public class Main {
 
@@ -21,10 +35,51 @@ public class Main {
         }
         Configuration config = new Configuration(configPath);
 
+        Tracing.configure(config.getTracingConfig());
+
         // set up services
         TransitionChecker transitionChecker = new TransitionChecker(config.getStorageConfig());
-        Loader loader = new Loader(config.getStorageConfig(), transitionChecker);
-        PackerFactory packerFactory = new PackerFactory(config.getPackerConfig());
+        BoundedArrayCache xzArrayCache = new BoundedArrayCache(
+            config.getStorageConfig().getXzArrayCacheMegabytes() * 1024L * 1024L //
+        );
+        Loader loader = new Loader(config.getStorageConfig(), transitionChecker, xzArrayCache);
+
+        // archives are resolved from the catalog, so it should be up to date
+        // before the first requests need to wait for it
+        loader.synchronizeArchiveCatalogInBackground();
+
+        FairExecutor compressionExecutor = new FairExecutor(
+            config.getPackerConfig().getCompressionThreads(),
+            new NamedDaemonThreadFactory("compression") //
+        );
+        PackerFactory packerFactory = new PackerFactory(config.getPackerConfig(), compressionExecutor, xzArrayCache);
+        PackerSelector packerSelector = new PackerSelector(packerFactory, config.getPackerConfig());
+        AdmissionController admissionController = new AdmissionController(
+            config.getSchedulingConfig(),
+            config.getStorageConfig().getCacheMemory() //
+        );
+        RequestCostEstimator costEstimator = new RequestCostEstimator(config.getSchedulingConfig());
+
+        // set up metrics
+        MetricsRegistry metricsRegistry = new MetricsRegistry();
+        ArchiverMetrics metrics = new ArchiverMetrics(metricsRegistry);
+        metrics.register(loader);
+        metrics.register(xzArrayCache);
+        metrics.register(admissionController);
+        if (config.getMetricsConfig().isHttpEnabled()) {
+            new MetricsHttpServer(config.getMetricsConfig(), metricsRegistry).start();
+        }
+
+        // packing is only dispatched to a dedicated pool if requests are not
+        // processed on consumer threads or run concurrently to loading
+        ExecutorService packingExecutor = null;
+        if ((config.getCamelConfig().getRequestsExecutionMode() == RequestExecutionMode.DISPATCHED)
+            || config.getPackerConfig().isPipelined()) {
+            packingExecutor = Executors.newFixedThreadPool(
+                config.getPackerConfig().getPackingThreads(),
+                new NamedDaemonThreadFactory("packing") //
+            );
+        }
 
         // start Camel
         CamelContext camelContext = null;
@@ -32,7 +87,18 @@ public class Main {
             LOGGER.info("Configuring Camel...");
             camelContext = new DefaultCamelContext();
             camelContext.addRoutes(
-                new RawDataArchiverRouteBuilder(camelContext, config.getCamelConfig(), loader, packerFactory) //
+                new RawDataArchiverRouteBuilder(
+                    camelContext,
+                    config.getCamelConfig(),
+                    loader,
+                    packerFactory,
+                    config.getPackerConfig(),
+                    packerSelector,
+                    admissionController,
+                    costEstimator,
+                    packingExecutor,
+                    metrics //
+                ) //
             );
 
             LOGGER.info("Starting Camel...");
@@ -22,6 +22,8 @@ public class CamelConfiguration {
     private String requestsQueue;
     private Duration requestsQueueTTL;
     private int requestsConsumers;
+    private RequestExecutionMode requestsExecutionMode = RequestExecutionMode.CONSUMER;
+    private int requestsMaximumInFlight;
 
     public String getAmqpHost() {
         return amqpHost;
@@ -113,4 +115,36 @@ public class CamelConfiguration {
         return this;
     }
 
+    /**
+     * Returns how requests should be executed after they have been received.
+     *
+     * @return request execution mode
+     */
+    public RequestExecutionMode getRequestsExecutionMode() {
+        return requestsExecutionMode;
+    }
+
+    public CamelConfiguration setRequestsExecutionMode(RequestExecutionMode requestsExecutionMode) {
+        LOGGER.debug("setting requestsExecutionMode to {}", requestsExecutionMode);
+        this.requestsExecutionMode = requestsExecutionMode;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of requests being processed concurrently when
+     * requests are dispatched (see {@link RequestExecutionMode#DISPATCHED}).
+     * Consumers stop receiving further requests while this limit is reached.
+     *
+     * @return maximum number of requests processed concurrently
+     */
+    public int getRequestsMaximumInFlight() {
+        return requestsMaximumInFlight;
+    }
+
+    public CamelConfiguration setRequestsMaximumInFlight(int requestsMaximumInFlight) {
+        LOGGER.debug("setting requestsMaximumInFlight to {}", requestsMaximumInFlight);
+        this.requestsMaximumInFlight = requestsMaximumInFlight;
+        return this;
+    }
+
 }
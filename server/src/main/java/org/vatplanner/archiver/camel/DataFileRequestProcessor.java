@@ -1,28 +1,50 @@
 package org.vatplanner.archiver.camel;
 
+import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.common.CommonConstants;
 import org.vatplanner.archiver.common.DataFileRequestJsonKey;
+import org.vatplanner.archiver.common.DataFileRequestType;
+import org.vatplanner.archiver.common.DataFileStatistics;
 import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.PackingGoal;
 import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.local.ContinuationToken;
+import org.vatplanner.archiver.local.DataFilePage;
 import org.vatplanner.archiver.local.Loader;
+import org.vatplanner.archiver.metrics.ArchiverMetrics;
+import org.vatplanner.archiver.pipeline.DataFilePipe;
+import org.vatplanner.archiver.remote.DataFileStatisticsEncoder;
 import org.vatplanner.archiver.remote.Packer;
+import org.vatplanner.archiver.remote.PackerConfiguration;
 import org.vatplanner.archiver.remote.PackerFactory;
+import org.vatplanner.archiver.remote.PackerSelector;
+import org.vatplanner.archiver.scheduling.AdmissionController;
+import org.vatplanner.archiver.scheduling.RequestCost;
+import org.vatplanner.archiver.scheduling.RequestCostEstimator;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
 
 import com.github.cliftonlabs.json_simple.JsonObject;
 import com.github.cliftonlabs.json_simple.Jsoner;
 
 /**
- * Processes requests for raw data files.
+ * Processes requests for raw data files or statistics about them.
  */
 public class DataFileRequestProcessor implements Processor {
 
@@ -30,10 +52,42 @@ public class DataFileRequestProcessor implements Processor {
 
     private final Loader loader;
     private final PackerFactory packerFactory;
+    private final PackerConfiguration packerConfig;
+    private final PackerSelector packerSelector;
+    private final AdmissionController admissionController;
+    private final RequestCostEstimator costEstimator;
+    private final ExecutorService packingExecutor;
+    private final ArchiverMetrics metrics;
+    private final DataFileStatisticsEncoder statisticsEncoder = new DataFileStatisticsEncoder();
+
+    private static final String CONTENT_TYPE_JSON = "application/json";
+
+    /**
+     * Creates a new processor.
+     *
+     * @param loader loads requested data
+     * @param packerFactory provides packers for requested methods
+     * @param packerConfig packer configuration
+     * @param packerSelector chooses packer methods for automatic selection
+     * @param admissionController admits requests before loading data
+     * @param costEstimator estimates request cost for admission
+     * @param packingExecutor executes CPU-bound packing; null to pack on the
+     *        calling thread (not possible if pipelined)
+     * @param metrics records request metrics
+     */
+    public DataFileRequestProcessor(Loader loader, PackerFactory packerFactory, PackerConfiguration packerConfig, PackerSelector packerSelector, AdmissionController admissionController, RequestCostEstimator costEstimator, ExecutorService packingExecutor, ArchiverMetrics metrics) {
+        if (packerConfig.isPipelined() && (packingExecutor == null)) {
+            throw new IllegalArgumentException("Pipelined packing requires a packing executor");
+        }
 
-    public DataFileRequestProcessor(Loader loader, PackerFactory packerFactory) {
         this.loader = loader;
         this.packerFactory = packerFactory;
+        this.packerConfig = packerConfig;
+        this.packerSelector = packerSelector;
+        this.admissionController = admissionController;
+        this.costEstimator = costEstimator;
+        this.packingExecutor = packingExecutor;
+        this.metrics = metrics;
     }
 
     @Override
@@ -43,8 +97,28 @@ public class DataFileRequestProcessor implements Processor {
         String body = (String) in.getBody(String.class);
         JsonObject json = Jsoner.deserialize(body, new JsonObject());
 
+        metrics.requestStarted();
+        DataFileRequestType requestType = null;
+        boolean success = false;
+        try (Span span = Tracing.startSpan("request")) {
+            requestType = DataFileRequestType.byShortCode(
+                json.getStringOrDefault(DataFileRequestJsonKey.REQUEST_TYPE) //
+            );
+            span.setAttribute("requestType", requestType.getShortCode());
+            if (requestType == DataFileRequestType.STATISTICS) {
+                processStatisticsRequest(exchange, json);
+            } else {
+                processDataFilesRequest(exchange, json);
+            }
+            success = true;
+        } finally {
+            metrics.requestFinished(requestType, success);
+        }
+    }
+
+    private void processDataFilesRequest(Exchange exchange, JsonObject json) throws Exception {
         // read request configuration
-        PackerMethod packerMethod = PackerMethod.byRequestShortCode(
+        PackerMethod requestedPackerMethod = PackerMethod.byRequestShortCode(
             json.getString(DataFileRequestJsonKey.PACKER_METHOD) //
         );
         Instant earliestFetchTime = Instant.parse(json.getString(DataFileRequestJsonKey.EARLIEST_FETCH_TIME));
@@ -53,44 +127,272 @@ public class DataFileRequestProcessor implements Processor {
         Set<String> wantedDataFileFormats = new HashSet<String>(
             json.getCollectionOrDefault(DataFileRequestJsonKey.DATA_FILE_FORMATS) //
         );
+        String sampleIntervalString = json.getStringOrDefault(DataFileRequestJsonKey.SAMPLE_INTERVAL);
+        Duration sampleInterval = (sampleIntervalString != null) ? Duration.parse(sampleIntervalString) : null;
+        String continuationTokenString = json.getStringOrDefault(DataFileRequestJsonKey.CONTINUATION_TOKEN);
+        ContinuationToken continuationToken = (continuationTokenString != null)
+            ? ContinuationToken.decode(continuationTokenString)
+            : null;
+        boolean deduplicate = json.getBooleanOrDefault(DataFileRequestJsonKey.DEDUPLICATE);
+
+        // choose actual method to pack with
+        PackerMethod packerMethod;
+        if (requestedPackerMethod == PackerMethod.AUTO) {
+            PackingGoal packingGoal = PackingGoal.byShortCode(
+                json.getStringOrDefault(DataFileRequestJsonKey.PACKING_GOAL) //
+            );
+            long bandwidth = json.getLongOrDefault(DataFileRequestJsonKey.BANDWIDTH);
+            packerMethod = packerSelector.select(packingGoal, bandwidth, wantedDataFileFormats);
+        } else {
+            packerMethod = packerFactory.resolve(requestedPackerMethod);
+        }
 
         LOGGER.info(
-            "Processing data file request: earliest {}, latest {}, packer {}, file limit {}, data file formats {}",
-            earliestFetchTime, latestFetchTime, packerMethod, fileLimit, wantedDataFileFormats //
+            "Processing data file request: earliest {}, latest {}, packer {} (requested {}), file limit {}, data file formats {}, sample interval {}, continuing after {}",
+            earliestFetchTime, latestFetchTime, packerMethod, requestedPackerMethod, fileLimit, wantedDataFileFormats,
+            sampleInterval, continuationToken //
         );
 
-        // load data
-        Instant beforeLoading = Instant.now();
-        List<RawDataFile> loaded = loader.load(
-            earliestFetchTime,
-            latestFetchTime,
-            fileLimit,
-            wantedDataFileFormats //
+        // wait for enough resources to be available before loading anything
+        RequestCost cost = costEstimator.estimate(
+            loader.estimateDataFileCount(
+                earliestFetchTime,
+                latestFetchTime,
+                fileLimit,
+                wantedDataFileFormats,
+                sampleInterval //
+            ),
+            packerMethod //
         );
-        Instant afterLoading = Instant.now();
+        Span span = Tracing.currentSpan();
+        span.setAttribute("packerMethod", packerMethod.name());
+        span.setAttribute("packerMethodRequested", requestedPackerMethod.getRequestShortCode());
+        span.setAttribute("fileLimit", fileLimit);
+        span.setAttribute("deduplicate", deduplicate);
+        span.setAttribute("estimatedMemory", cost.getMemory());
+
+        Instant beforeAdmission = Instant.now();
+
+        ContinuationToken nextContinuationToken;
+        int numDataFiles;
+        long loadedBytes;
+        byte[] packed;
+        Instant beforeLoading;
+        Instant afterLoading;
+        Instant beforePacking;
+        Instant afterPacking;
+        AdmissionController.Admission admission = admit(cost);
+        try {
+            Packer packer = packerFactory.createPacker(packerMethod, deduplicate);
+
+            if (packerConfig.isPipelined()) {
+                // load and pack concurrently
+                DataFilePipe pipe = new DataFilePipe(packerConfig.getPipelineBufferSize());
+                beforeLoading = Instant.now();
+                beforePacking = beforeLoading;
+                Future<byte[]> packing = packingExecutor.submit(() -> packPipelined(packer, pipe, span));
+                try {
+                    nextContinuationToken = loader.streamPage(
+                        earliestFetchTime,
+                        latestFetchTime,
+                        fileLimit,
+                        wantedDataFileFormats,
+                        sampleInterval,
+                        continuationToken,
+                        pipe //
+                    );
+                    pipe.finish();
+                } catch (Exception ex) {
+                    pipe.fail(ex);
+
+                    // loading stops if packing failed, which is the actual cause then
+                    if (packing.isDone()) {
+                        await(packing);
+                    }
+
+                    packing.cancel(true);
+                    throw ex;
+                }
+                afterLoading = Instant.now();
+
+                numDataFiles = pipe.getNumTransferred();
+                loadedBytes = pipe.getTransferredBytes();
+                costEstimator.record(numDataFiles, loadedBytes);
+
+                packed = await(packing);
+                afterPacking = Instant.now();
+            } else {
+                // load data
+                beforeLoading = Instant.now();
+                DataFilePage page = loader.loadPage(
+                    earliestFetchTime,
+                    latestFetchTime,
+                    fileLimit,
+                    wantedDataFileFormats,
+                    sampleInterval,
+                    continuationToken //
+                );
+                if (page == null) {
+                    throw new IOException("Failed to load data files");
+                }
+                List<RawDataFile> loaded = page.getDataFiles();
+                nextContinuationToken = page.getNextContinuationToken();
+                numDataFiles = loaded.size();
+                loadedBytes = getTotalDataSize(loaded);
+                afterLoading = Instant.now();
 
-        // pack result
-        Instant beforePacking = Instant.now();
-        Packer packer = packerFactory.createPacker(packerMethod);
-        byte[] packed = packer.pack(loaded);
-        Instant afterPacking = Instant.now();
+                costEstimator.record(numDataFiles, loadedBytes);
+
+                // pack result
+                beforePacking = Instant.now();
+                packed = pack(packer, loaded, span);
+                afterPacking = Instant.now();
+            }
+        } finally {
+            admission.close();
+        }
+
+        span.setAttribute("dataFiles", numDataFiles);
+        span.setAttribute("bytesIn", loadedBytes);
+        span.setAttribute("bytesOut", packed.length);
 
         LOGGER.info(
-            "Finished data file request: earliest {}, latest {}, packer {}, file limit {} [{} files, loaded {}ms, packed {}ms, total {}ms, size {}kB]",
+            "Finished data file request: earliest {}, latest {}, packer {}, file limit {} [{} files, waited {}ms, loaded {}ms, packed {}ms, total {}ms, size {}kB, estimated {}]",
             earliestFetchTime, latestFetchTime, packerMethod, fileLimit,
-            loaded.size(),
+            numDataFiles,
+            Duration.between(beforeAdmission, beforeLoading).toMillis(),
             Duration.between(beforeLoading, afterLoading).toMillis(),
             Duration.between(beforePacking, afterPacking).toMillis(),
-            Duration.between(beforeLoading, afterPacking).toMillis(),
-            packed.length / 1024 //
+            Duration.between(beforeAdmission, afterPacking).toMillis(),
+            packed.length / 1024,
+            cost //
+        );
+
+        // throughput cannot be measured if packing overlapped with loading
+        packerSelector.record(
+            packerMethod,
+            wantedDataFileFormats,
+            loadedBytes,
+            packed.length,
+            packerConfig.isPipelined() ? null : Duration.between(beforePacking, afterPacking) //
+        );
+
+        metrics.recordDataFileRequest(
+            packerMethod,
+            Duration.between(beforeAdmission, beforeLoading),
+            Duration.between(beforeLoading, afterLoading),
+            Duration.between(beforePacking, afterPacking),
+            Duration.between(beforeAdmission, afterPacking),
+            numDataFiles,
+            loadedBytes,
+            packed.length //
         );
 
         // assemble response message
         Message out = exchange.getIn().copy();
         out.setBody(packed);
+        out.setHeader(CommonConstants.RESPONSE_HEADER_PACKER_METHOD, packerMethod.getPackedShortCode());
+        if (nextContinuationToken != null) {
+            out.setHeader(CommonConstants.RESPONSE_HEADER_CONTINUATION_TOKEN, nextContinuationToken.encode());
+        }
         exchange.setMessage(out);
+    }
+
+    private AdmissionController.Admission admit(RequestCost cost) throws InterruptedException {
+        try (Span span = Tracing.startSpan("request.admission")) {
+            span.setAttribute("memory", cost.getMemory());
+            span.setAttribute("work", cost.getWork());
+            return admissionController.admit(cost);
+        }
+    }
+
+    private byte[] pack(Packer packer, List<RawDataFile> dataFiles, Span parentSpan) throws Exception {
+        if (packingExecutor == null) {
+            return tracePacking(packer, parentSpan, () -> packer.pack(dataFiles));
+        }
+
+        return await(packingExecutor.submit(() -> tracePacking(packer, parentSpan, () -> packer.pack(dataFiles))));
+    }
+
+    private byte[] tracePacking(Packer packer, Span parentSpan, Callable<byte[]> packing) throws Exception {
+        // packing may run on another thread, so the parent needs to be set explicitly
+        try (Span span = Tracing.startSpan("packer.pack", parentSpan)) {
+            span.setAttribute("packer", packer.getClass().getSimpleName());
+            byte[] packed = packing.call();
+            span.setAttribute("bytesOut", packed.length);
+            return packed;
+        }
+    }
 
-        // TODO: indicate packed method in message header
+    private long getTotalDataSize(List<RawDataFile> dataFiles) {
+        long size = 0;
+        for (RawDataFile dataFile : dataFiles) {
+            size += dataFile.getDataLength();
+        }
+        return size;
+    }
+
+    private byte[] packPipelined(Packer packer, DataFilePipe pipe, Span parentSpan) throws Exception {
+        try {
+            return tracePacking(packer, parentSpan, () -> packer.pack(pipe));
+        } finally {
+            // loader must not wait for a packer which stopped reading
+            pipe.cancel();
+        }
+    }
+
+    private byte[] await(Future<byte[]> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw ex;
+        }
+    }
+
+    private void processStatisticsRequest(Exchange exchange, JsonObject json) throws Exception {
+        // read request configuration
+        Instant earliestFetchTime = Instant.parse(json.getString(DataFileRequestJsonKey.EARLIEST_FETCH_TIME));
+        Instant latestFetchTime = Instant.parse(json.getString(DataFileRequestJsonKey.LATEST_FETCH_TIME));
+        Set<String> wantedDataFileFormats = new HashSet<String>(
+            json.getCollectionOrDefault(DataFileRequestJsonKey.DATA_FILE_FORMATS) //
+        );
+
+        LOGGER.info(
+            "Processing statistics request: earliest {}, latest {}, data file formats {}",
+            earliestFetchTime, latestFetchTime, wantedDataFileFormats //
+        );
+
+        Instant before = Instant.now();
+        Tracing.currentSpan().setAttribute("dataFileFormats", wantedDataFileFormats.size());
+        List<DataFileStatistics> statistics = loader.summarize(
+            earliestFetchTime,
+            latestFetchTime,
+            wantedDataFileFormats //
+        );
+        if (statistics == null) {
+            throw new IOException("Failed to summarize data files");
+        }
+        byte[] encoded = statisticsEncoder.encode(statistics);
+        Instant after = Instant.now();
+
+        metrics.recordStatisticsRequest(Duration.between(before, after));
+
+        LOGGER.info(
+            "Finished statistics request: earliest {}, latest {} [{} entries, total {}ms]",
+            earliestFetchTime, latestFetchTime,
+            statistics.size(),
+            Duration.between(before, after).toMillis() //
+        );
+
+        // assemble response message
+        Message out = exchange.getIn().copy();
+        out.setBody(encoded);
+        out.setHeader(RabbitMQConstants.CONTENT_TYPE, CONTENT_TYPE_JSON);
+        exchange.setMessage(out);
     }
 
 }
@@ -5,6 +5,7 @@ import java.util.Map;
 import org.apache.camel.Exchange;
 import org.apache.camel.Message;
 import org.apache.camel.Processor;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
 
 /**
  * Camel Processor to turn a message received by a RabbitMQ endpoint into a
@@ -14,6 +15,10 @@ import org.apache.camel.Processor;
  */
 public class RabbitMQReplyMessageProcessor implements Processor {
 
+    private static final String LEGACY_HEADER_REPLY_TO = "rabbitmq.REPLY_TO";
+    private static final String LEGACY_HEADER_EXPIRATION = "rabbitmq.EXPIRATION";
+    private static final String LEGACY_HEADER_ROUTING_KEY = "rabbitmq.ROUTING_KEY";
+
     private static RabbitMQReplyMessageProcessor instance = null;
 
     /**
@@ -37,16 +42,28 @@ public class RabbitMQReplyMessageProcessor implements Processor {
         Message out = in.copy();
         Map<String, Object> headersIn = in.getHeaders();
 
-        // remove headers unsuitable for replies
-        out.removeHeader("rabbitmq.REPLY_TO");
-        out.removeHeader("rabbitmq.EXPIRATION");
+        // remove headers unsuitable for replies; names changed with Camel 3
+        out.removeHeader(LEGACY_HEADER_REPLY_TO);
+        out.removeHeader(LEGACY_HEADER_EXPIRATION);
+        out.removeHeader(RabbitMQConstants.REPLY_TO);
+        out.removeHeader(RabbitMQConstants.EXPIRATION);
 
         // force default exchange, workaround for bug CAMEL-8270
         // out.setHeader("rabbitmq.EXCHANGE_NAME", "");
         // default exchange routes messages to queue = routing_key
-        String replyQueueName = (String) headersIn.getOrDefault("rabbitmq.REPLY_TO", "amq.rabbitmq.reply-to");
-        out.setHeader("rabbitmq.ROUTING_KEY", replyQueueName);
+        String replyQueueName = getReplyTo(headersIn);
+        out.setHeader(LEGACY_HEADER_ROUTING_KEY, replyQueueName);
+        out.setHeader(RabbitMQConstants.ROUTING_KEY, replyQueueName);
 
         exchange.setMessage(out);
     }
+
+    private String getReplyTo(Map<String, Object> headers) {
+        Object replyTo = headers.get(RabbitMQConstants.REPLY_TO);
+        if (replyTo == null) {
+            replyTo = headers.get(LEGACY_HEADER_REPLY_TO);
+        }
+
+        return (replyTo != null) ? (String) replyTo : RabbitMQConstants.RABBITMQ_DIRECT_REPLY_ROUTING_KEY;
+    }
 }
@@ -1,11 +1,18 @@
 package org.vatplanner.archiver.camel;
 
+import java.util.concurrent.ExecutorService;
+
 import org.apache.camel.CamelContext;
 import org.apache.camel.ExchangePattern;
 import org.apache.camel.builder.RouteBuilder;
 import org.apache.camel.component.rabbitmq.RabbitMQEndpoint;
 import org.vatplanner.archiver.local.Loader;
+import org.vatplanner.archiver.metrics.ArchiverMetrics;
+import org.vatplanner.archiver.remote.PackerConfiguration;
 import org.vatplanner.archiver.remote.PackerFactory;
+import org.vatplanner.archiver.remote.PackerSelector;
+import org.vatplanner.archiver.scheduling.AdmissionController;
+import org.vatplanner.archiver.scheduling.RequestCostEstimator;
 
 /**
  * Configures all message routes for Camel.
@@ -14,16 +21,28 @@ public class RawDataArchiverRouteBuilder extends RouteBuilder {
 
     private final Loader loader;
     private final PackerFactory packerFactory;
+    private final PackerConfiguration packerConfig;
+    private final PackerSelector packerSelector;
+    private final AdmissionController admissionController;
+    private final RequestCostEstimator costEstimator;
+    private final ExecutorService packingExecutor;
+    private final ArchiverMetrics metrics;
     private final CamelConfiguration config;
     private final CamelContext context;
 
-    public RawDataArchiverRouteBuilder(CamelContext context, CamelConfiguration config, Loader loader, PackerFactory packerFactory) {
+    public RawDataArchiverRouteBuilder(CamelContext context, CamelConfiguration config, Loader loader, PackerFactory packerFactory, PackerConfiguration packerConfig, PackerSelector packerSelector, AdmissionController admissionController, RequestCostEstimator costEstimator, ExecutorService packingExecutor, ArchiverMetrics metrics) {
         super(context);
 
         this.context = context;
         this.config = config;
         this.loader = loader;
         this.packerFactory = packerFactory;
+        this.packerConfig = packerConfig;
+        this.packerSelector = packerSelector;
+        this.admissionController = admissionController;
+        this.costEstimator = costEstimator;
+        this.packingExecutor = packingExecutor;
+        this.metrics = metrics;
     }
 
     private void configureCommonSettings(RabbitMQEndpoint endpoint) {
@@ -66,11 +85,31 @@ public class RawDataArchiverRouteBuilder extends RouteBuilder {
         amqpInRequests.setQueue(config.getRequestsQueue());
         amqpInRequests.getArgs().put("arg.queue.x-message-ttl", config.getRequestsQueueTTL().toMillis()); // TODO: test
 
-        DataFileRequestProcessor dataFileRequestProcessor = new DataFileRequestProcessor(loader, packerFactory);
-        from(amqpInRequests)
-            .process(dataFileRequestProcessor)
-            .process(RabbitMQReplyMessageProcessor.getInstance())
-            .to(ExchangePattern.InOnly, amqpOutDirect);
+        DataFileRequestProcessor dataFileRequestProcessor = new DataFileRequestProcessor(
+            loader,
+            packerFactory,
+            packerConfig,
+            packerSelector,
+            admissionController,
+            costEstimator,
+            packingExecutor,
+            metrics //
+        );
+        if (config.getRequestsExecutionMode() == RequestExecutionMode.DISPATCHED) {
+            from(amqpInRequests)
+                .process(new RequestDispatchingProcessor(
+                    dataFileRequestProcessor,
+                    amqpInRequests,
+                    context.createProducerTemplate(),
+                    amqpOutDirect,
+                    config.getRequestsMaximumInFlight() //
+                ));
+        } else {
+            from(amqpInRequests)
+                .process(dataFileRequestProcessor)
+                .process(RabbitMQReplyMessageProcessor.getInstance())
+                .to(ExchangePattern.InOnly, amqpOutDirect);
+        }
 
         // TODO: test response to RPC
     }
@@ -0,0 +1,232 @@
+package org.vatplanner.archiver.camel;
+
+import java.io.IOException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Endpoint;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+import org.apache.camel.component.rabbitmq.RabbitMQEndpoint;
+import org.apache.camel.spi.ShutdownStrategy;
+import org.apache.camel.support.service.ServiceSupport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.util.NamedDaemonThreadFactory;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+/**
+ * Hands off requests received by a RabbitMQ consumer to a pool of request
+ * threads, see {@link RequestExecutionMode#DISPATCHED}. Consumer
+ * threads are only blocked while the maximum number of requests in flight is
+ * reached, which stops further requests from being received until capacity is
+ * available again.
+ *
+ * <p>
+ * As processing completes after the consumer has finished handling the
+ * message, the consumer must not reply on its own. Instead, request threads
+ * reply the same way the consumer route does: the reply is prepared by
+ * {@link RabbitMQReplyMessageProcessor}, sent to the reply endpoint of the
+ * route and published to the reply queue indicated by the request, using the
+ * same conventions (e.g. for direct reply-to) as the RabbitMQ consumer would.
+ * </p>
+ *
+ * <p>
+ * The processor is a Camel service and thus started and stopped along with the
+ * route it is used in. Stopping waits for requests in flight to complete
+ * (limited by the shutdown timeout of the {@link CamelContext}) before the
+ * connection used to publish replies is closed.
+ * </p>
+ */
+public class RequestDispatchingProcessor extends ServiceSupport implements Processor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(RequestDispatchingProcessor.class);
+
+    private final Processor requestProcessor;
+    private final RabbitMQEndpoint requestsEndpoint;
+    private final ProducerTemplate replyTemplate;
+    private final Endpoint replyEndpoint;
+    private final int maximumInFlight;
+    private final Semaphore inFlight;
+    private volatile ThreadPoolExecutor requestExecutor;
+
+    private final Object replyLock = new Object();
+    private Connection replyConnection;
+    private Channel replyChannel;
+    private boolean replyClosed = false;
+
+    /**
+     * Creates a new dispatching processor.
+     *
+     * @param requestProcessor processes the actual request and sets the reply
+     *        message; called on request threads
+     * @param requestsEndpoint endpoint requests have been received from, used to
+     *        publish replies to the reply queue
+     * @param replyTemplate template to send replies to reply endpoint with
+     * @param replyEndpoint endpoint replies are sent to by the consumer route
+     * @param maximumInFlight maximum number of requests processed concurrently
+     */
+    public RequestDispatchingProcessor(Processor requestProcessor, RabbitMQEndpoint requestsEndpoint, ProducerTemplate replyTemplate, Endpoint replyEndpoint, int maximumInFlight) {
+        this.requestProcessor = requestProcessor;
+        this.requestsEndpoint = requestsEndpoint;
+        this.replyTemplate = replyTemplate;
+        this.replyEndpoint = replyEndpoint;
+        this.maximumInFlight = maximumInFlight;
+        this.inFlight = new Semaphore(maximumInFlight, true);
+    }
+
+    @Override
+    protected void doStart() {
+        // capacity is limited by inFlight, so the queue never grows beyond that
+        requestExecutor = new ThreadPoolExecutor(
+            maximumInFlight, maximumInFlight,
+            60, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(),
+            new NamedDaemonThreadFactory("request") //
+        );
+        requestExecutor.allowCoreThreadTimeOut(true);
+
+        synchronized (replyLock) {
+            replyClosed = false;
+        }
+    }
+
+    @Override
+    protected void doStop() throws InterruptedException {
+        if (requestExecutor != null) {
+            requestExecutor.shutdown();
+
+            ShutdownStrategy shutdownStrategy = replyTemplate.getCamelContext().getShutdownStrategy();
+            if (!requestExecutor.awaitTermination(shutdownStrategy.getTimeout(), shutdownStrategy.getTimeUnit())) {
+                LOGGER.warn(
+                    "Requests still in flight after {} {}, interrupting",
+                    shutdownStrategy.getTimeout(), shutdownStrategy.getTimeUnit() //
+                );
+                requestExecutor.shutdownNow();
+            }
+
+            requestExecutor = null;
+        }
+
+        // requests interrupted above must not open a new connection
+        synchronized (replyLock) {
+            replyClosed = true;
+            closeReplyChannel();
+        }
+    }
+
+    @Override
+    public void process(Exchange exchange) throws Exception {
+        inFlight.acquire();
+
+        Exchange dispatched = exchange.copy();
+
+        // consumer would otherwise reply with the unprocessed request
+        exchange.setPattern(ExchangePattern.InOnly);
+
+        try {
+            ThreadPoolExecutor executor = requestExecutor;
+            if (executor == null) {
+                throw new IllegalStateException("dispatching processor has not been started");
+            }
+
+            executor.execute(() -> processDispatched(dispatched));
+        } catch (RuntimeException ex) {
+            inFlight.release();
+            throw ex;
+        }
+    }
+
+    private void processDispatched(Exchange exchange) {
+        try {
+            requestProcessor.process(exchange);
+            reply(exchange);
+        } catch (Exception ex) {
+            LOGGER.warn("Failed to process dispatched request " + exchange.getExchangeId(), ex);
+        } finally {
+            inFlight.release();
+        }
+    }
+
+    private void reply(Exchange exchange) throws Exception {
+        String replyTo = exchange.getMessage().getHeader(RabbitMQConstants.REPLY_TO, String.class);
+        if (replyTo == null) {
+            LOGGER.debug("Request {} did not indicate a reply queue, not replying", exchange.getExchangeId());
+            return;
+        }
+
+        // same steps as the consumer route
+        RabbitMQReplyMessageProcessor.getInstance().process(exchange);
+        exchange.setPattern(ExchangePattern.InOnly);
+        replyTemplate.send(replyEndpoint, exchange);
+        if (exchange.getException() != null) {
+            throw exchange.getException();
+        }
+
+        publishToReplyQueue(exchange, replyTo);
+    }
+
+    /**
+     * Publishes the reply to the reply queue indicated by the request, as the
+     * RabbitMQ consumer would have done if the request had been processed on
+     * the consumer thread.
+     *
+     * @param exchange exchange holding the reply
+     * @param replyTo reply queue indicated by the request
+     * @throws IOException
+     */
+    void publishToReplyQueue(Exchange exchange, String replyTo) throws IOException {
+        // channels must not be used concurrently
+        synchronized (replyLock) {
+            try {
+                requestsEndpoint.publishExchangeToChannel(exchange, getReplyChannel(), replyTo);
+            } catch (IOException | RuntimeException ex) {
+                closeReplyChannel();
+                throw ex;
+            }
+        }
+    }
+
+    private Channel getReplyChannel() throws IOException {
+        if ((replyChannel != null) && replyChannel.isOpen()) {
+            return replyChannel;
+        }
+
+        closeReplyChannel();
+
+        if (replyClosed) {
+            throw new IOException("Processor has been stopped, not opening a new channel for replies");
+        }
+
+        try {
+            replyConnection = requestsEndpoint.connect(requestExecutor);
+            replyChannel = replyConnection.createChannel();
+        } catch (Exception ex) {
+            closeReplyChannel();
+            throw new IOException("Failed to open channel for replies", ex);
+        }
+
+        return replyChannel;
+    }
+
+    private void closeReplyChannel() {
+        if (replyConnection != null) {
+            try {
+                replyConnection.abort();
+            } catch (RuntimeException ex) {
+                LOGGER.debug("Failed to abort reply connection", ex);
+            }
+        }
+
+        replyConnection = null;
+        replyChannel = null;
+    }
+}
@@ -0,0 +1,65 @@
+package org.vatplanner.archiver.camel;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Determines how requests received from AMQP are executed.
+ */
+public enum RequestExecutionMode {
+    /**
+     * Requests are processed completely on the consumer thread they have been
+     * received on. Concurrency is only available through multiple consumers
+     * which are blocked for the whole time of processing, including both I/O
+     * while loading and CPU work while packing.
+     */
+    CONSUMER("consumer"),
+
+    /**
+     * Consumer threads only receive requests and hand them off to an elastic
+     * pool of request threads, limited to a maximum number of requests in
+     * flight. Loading is performed on request threads so waits for I/O overlap
+     * freely, while packing is dispatched to a separately sized bounded pool of
+     * packing threads. Replies are sent from request threads.
+     */
+    DISPATCHED("dispatched");
+
+    private final String configName;
+
+    private static final Map<String, RequestExecutionMode> BY_CONFIG_NAME = new HashMap<>();
+
+    static {
+        for (RequestExecutionMode mode : values()) {
+            BY_CONFIG_NAME.put(mode.configName, mode);
+        }
+    }
+
+    private RequestExecutionMode(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Returns the name used to select this mode by configuration.
+     *
+     * @return name used in configuration
+     */
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * Resolves the mode for the given configuration name.
+     *
+     * @param configName name used in configuration
+     * @return mode of given name
+     * @throws IllegalArgumentException if name is unknown
+     */
+    public static RequestExecutionMode byConfigName(String configName) {
+        RequestExecutionMode mode = BY_CONFIG_NAME.get(configName);
+        if (mode == null) {
+            throw new IllegalArgumentException("Unknown request execution mode: \"" + configName + "\"");
+        }
+
+        return mode;
+    }
+}
@@ -0,0 +1,235 @@
+package org.vatplanner.archiver.local;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Objects;
+
+/**
+ * Describes the period of fetch times covered by a transitioned archive. By
+ * default archives cover a whole UTC day; archives may also be configured to
+ * cover a fraction of a day (e.g. 1 or 6 hours). Buckets always start at a
+ * multiple of their duration counted from start of the UTC day, so a day is
+ * split into buckets of equal size.
+ *
+ * <p>
+ * Archives of daily buckets are named {@code YYYYMMDD.tar.xz}, archives of
+ * sub-daily buckets additionally hold the start hour: {@code YYYYMMDDTHH.tar.xz}.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and thus thread-safe.
+ * </p>
+ */
+class ArchiveBucket implements Comparable<ArchiveBucket> {
+
+    static final int HOURS_PER_DAY = 24;
+
+    private static final DateTimeFormatter FORMATTER_DAILY_NAME = DateTimeFormatter.ofPattern("yyyyMMdd");
+    private static final DateTimeFormatter FORMATTER_SUB_DAILY_NAME = DateTimeFormatter.ofPattern("yyyyMMdd'T'HH");
+
+    private static final String HOURS_SEPARATOR = "/";
+
+    private final LocalDateTime start;
+    private final int hours;
+
+    /**
+     * Creates a new bucket.
+     *
+     * @param start start of bucket (UTC)
+     * @param hours duration of bucket in hours; must divide a day
+     * @throws IllegalArgumentException if the duration does not divide a day or
+     *         the bucket does not start at a multiple of its duration
+     */
+    ArchiveBucket(LocalDateTime start, int hours) {
+        Objects.requireNonNull(start);
+
+        if (!isValidHours(hours)) {
+            throw new IllegalArgumentException("archive buckets must divide a day, got " + hours + " hours");
+        }
+
+        if ((start.getHour() % hours != 0) || !start.toLocalTime().equals(LocalTime.of(start.getHour(), 0))) {
+            throw new IllegalArgumentException("archive bucket of " + hours + " hours cannot start at " + start);
+        }
+
+        this.start = start;
+        this.hours = hours;
+    }
+
+    /**
+     * Returns the daily bucket of given date.
+     *
+     * @param date UTC date
+     * @return bucket covering the whole day
+     */
+    static ArchiveBucket ofDay(LocalDate date) {
+        return new ArchiveBucket(date.atStartOfDay(), HOURS_PER_DAY);
+    }
+
+    /**
+     * Returns the bucket of given duration holding the given time.
+     *
+     * @param time UTC time to look up bucket for
+     * @param hours duration of bucket in hours; must divide a day
+     * @return bucket holding given time
+     * @throws IllegalArgumentException if the duration does not divide a day
+     */
+    static ArchiveBucket containing(LocalDateTime time, int hours) {
+        if (!isValidHours(hours)) {
+            throw new IllegalArgumentException("archive buckets must divide a day, got " + hours + " hours");
+        }
+
+        int startHour = time.getHour() - (time.getHour() % hours);
+        return new ArchiveBucket(time.toLocalDate().atTime(startHour, 0), hours);
+    }
+
+    /**
+     * Checks if buckets of given duration split a day into equal parts.
+     *
+     * @param hours duration of bucket in hours
+     * @return true if valid, false if not
+     */
+    static boolean isValidHours(int hours) {
+        return (hours > 0) && (hours <= HOURS_PER_DAY) && (HOURS_PER_DAY % hours == 0);
+    }
+
+    /**
+     * Returns the start of the bucket (inclusive).
+     *
+     * @return start of bucket (UTC)
+     */
+    LocalDateTime getStart() {
+        return start;
+    }
+
+    /**
+     * Returns the end of the bucket (exclusive), i.e. the start of the following
+     * bucket.
+     *
+     * @return end of bucket (UTC)
+     */
+    LocalDateTime getEnd() {
+        return start.plusHours(hours);
+    }
+
+    /**
+     * Returns the duration of the bucket.
+     *
+     * @return duration of bucket in hours
+     */
+    int getHours() {
+        return hours;
+    }
+
+    /**
+     * Returns the UTC date the bucket belongs to.
+     *
+     * @return UTC date of bucket
+     */
+    LocalDate getDate() {
+        return start.toLocalDate();
+    }
+
+    /**
+     * Checks if the given time falls within the bucket.
+     *
+     * @param time UTC time to check
+     * @return true if within bucket, false if not
+     */
+    boolean contains(LocalDateTime time) {
+        return !time.isBefore(start) && time.isBefore(getEnd());
+    }
+
+    /**
+     * Checks if the bucket covers a whole day.
+     *
+     * @return true if bucket covers a whole day, false if only a part of a day
+     */
+    boolean isDaily() {
+        return hours == HOURS_PER_DAY;
+    }
+
+    /**
+     * Returns the following bucket of same duration.
+     *
+     * @return following bucket
+     */
+    ArchiveBucket next() {
+        return new ArchiveBucket(getEnd(), hours);
+    }
+
+    /**
+     * Returns the name of archive files holding data of this bucket.
+     *
+     * @param extension file name extension to append
+     * @return archive file name
+     */
+    String getArchiveFileName(String extension) {
+        DateTimeFormatter formatter = isDaily() ? FORMATTER_DAILY_NAME : FORMATTER_SUB_DAILY_NAME;
+        return formatter.format(start) + extension;
+    }
+
+    /**
+     * Encodes the bucket to a string which can be parsed by {@link #parse(String)}.
+     * Daily buckets are encoded as ISO date only.
+     *
+     * @return encoded bucket
+     */
+    String encode() {
+        if (isDaily()) {
+            return start.toLocalDate().toString();
+        }
+
+        return start.toString() + HOURS_SEPARATOR + hours;
+    }
+
+    /**
+     * Parses a bucket previously encoded by {@link #encode()}.
+     *
+     * @param s encoded bucket
+     * @return decoded bucket
+     * @throws RuntimeException if malformed
+     */
+    static ArchiveBucket parse(String s) {
+        int separatorIndex = s.indexOf(HOURS_SEPARATOR);
+        if (separatorIndex < 0) {
+            return ofDay(LocalDate.parse(s));
+        }
+
+        return new ArchiveBucket(
+            LocalDateTime.parse(s.substring(0, separatorIndex)),
+            Integer.parseInt(s.substring(separatorIndex + 1)) //
+        );
+    }
+
+    @Override
+    public int compareTo(ArchiveBucket other) {
+        int startComparison = start.compareTo(other.start);
+        if (startComparison != 0) {
+            return startComparison;
+        }
+
+        return Integer.compare(hours, other.hours);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof ArchiveBucket)) {
+            return false;
+        }
+
+        ArchiveBucket other = (ArchiveBucket) obj;
+        return start.equals(other.start) && (hours == other.hours);
+    }
+
+    @Override
+    public int hashCode() {
+        return start.hashCode() * 31 + hours;
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,1245 @@
+package org.vatplanner.archiver.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.regex.Matcher;
+import java.util.zip.CRC32;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Persistent catalog of {@link ArchiveIndex}es of all transitioned archives.
+ * Indexes stay available across restarts, so archives do not need to be
+ * decompressed again just to find out what they contain. Additionally, all
+ * data files of all cataloged archives are kept as one time series per data
+ * file format in memory, so counting data files in a time range or finding the
+ * data file nearest to a point in time only takes a binary search. Archives are
+ * also held per {@link ArchiveBucket}, so the archives to read for a time range
+ * can be resolved without looking at the file system.
+ *
+ * <p>
+ * The catalog file is only appended to: each record replaces earlier records
+ * of the same archive. Records are checksummed, so an incomplete last record
+ * (e.g. after a crash) is discarded on load. The file is rewritten once it
+ * holds a lot more records than archives. Only the time series is held in
+ * memory; indexes are read back from the file on request.
+ * </p>
+ *
+ * <p>
+ * Records are kept per archive rather than as one file of fixed-size records
+ * sorted by format and fetch time: archives are added, replaced (e.g. when
+ * split per format) and removed one at a time and not necessarily in order of
+ * time, so a sorted file would need to be rewritten on each change while a
+ * record per archive is simply appended. Lookups never search the file; time
+ * ranges are resolved from memory and the file is only read to restore the
+ * index of a single archive, which a record per archive provides in a single
+ * read. Delta encoding keeps entries at about 10 bytes instead of 27 bytes in
+ * fixed size, which matters as the file is read completely on startup.
+ * </p>
+ *
+ * <p>
+ * The time series does not check if archives still exist or are unchanged.
+ * Data of replaced archives is equal, so results only go stale if archives
+ * are added or removed, which is tracked by {@link #getLastSynchronized()}.
+ * Data moved to other archives (e.g. after splitting) is counted twice until
+ * the catalog is synchronized again.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe and synchronized on the
+ * catalog. Only {@link #get(File)} reads from the catalog file on the request
+ * path; it does so without holding the lock, so concurrent requests do not
+ * wait for each other's disk reads. Each catalog file must only be written by a
+ * single instance at a time.
+ * </p>
+ *
+ * <p>
+ * Memory held in the catalog grows with the number of archived data files,
+ * about 32 bytes each (roughly 70 MB per year of one format fetched every 15
+ * seconds). It is not accounted for by admission control, so the heap needs to
+ * be sized accordingly.
+ * </p>
+ */
+public class ArchiveCatalog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveCatalog.class);
+
+    private static final int MAGIC = 0x56504143; // VPAC
+    private static final int FORMAT_VERSION = 2;
+    private static final int FILE_HEADER_LENGTH = 8;
+
+    // length before and checksum after each payload
+    private static final int RECORD_FRAME_LENGTH = 8;
+
+    private static final byte RECORD_ARCHIVE = 1;
+    private static final byte RECORD_REMOVED = 2;
+    private static final byte RECORD_SYNCHRONIZED = 3;
+
+    private static final int MAXIMUM_RECORD_LENGTH = 256 * 1024 * 1024;
+
+    // small catalogs are not worth rewriting
+    private static final int COMPACTION_SLACK_RECORDS = 64;
+
+    private static final FetchedFileType[] FILE_TYPES = FetchedFileType.values();
+    private static final SnapshotDelta.Kind[] SNAPSHOT_KINDS = SnapshotDelta.Kind.values();
+
+    private final File catalogFile;
+    private final Path basePath;
+    private final int archiveBucketHours;
+
+    private final Map<String, CatalogedArchive> archivesByKey = new HashMap<>();
+    private final List<String> formatNames = new ArrayList<>();
+    private final Map<String, Integer> formatIdsByName = new HashMap<>();
+    private Instant lastSynchronized;
+
+    private long fileLength;
+    private int numRecords;
+    private boolean isWritable = true;
+
+    private TimeSeries[] timeSeriesByFormatId;
+    private TreeMap<ArchiveBucket, List<CatalogedArchive>> archivesByBucket;
+
+    /**
+     * Describes the location of a single cataloged data file.
+     */
+    public static class Location {
+
+        private final File archiveFile;
+        private final int entryIndex;
+        private final String formatName;
+        private final Instant fetchTime;
+
+        private Location(File archiveFile, int entryIndex, String formatName, Instant fetchTime) {
+            this.archiveFile = archiveFile;
+            this.entryIndex = entryIndex;
+            this.formatName = formatName;
+            this.fetchTime = fetchTime;
+        }
+
+        /**
+         * Returns the archive holding the data file.
+         *
+         * @return archive holding the data file
+         */
+        public File getArchiveFile() {
+            return archiveFile;
+        }
+
+        /**
+         * Returns the index of the entry within the {@link ArchiveIndex} of the
+         * archive, providing size and position of the data file.
+         *
+         * @return index of entry in {@link ArchiveIndex}
+         */
+        public int getEntryIndex() {
+            return entryIndex;
+        }
+
+        /**
+         * Returns the data file format name.
+         *
+         * @return data file format name
+         */
+        public String getFormatName() {
+            return formatName;
+        }
+
+        /**
+         * Returns the fetch time of the data file.
+         *
+         * @return fetch time of data file
+         */
+        public Instant getFetchTime() {
+            return fetchTime;
+        }
+    }
+
+    private static class CatalogedArchive {
+        private final String key;
+        private final File file;
+        private final long lastModified;
+        private final long length;
+
+        // null if not stored according to layout of transitioned archives
+        private final TransitionedArchive transitionedArchive;
+
+        // position of record payload in catalog file; negative if only held in
+        // memory because the catalog could not be written
+        private long recordOffset = -1;
+        private int recordLength;
+        private ArchiveIndex unpersistedIndex;
+
+        // data files only, in order of archive entries
+        private int[] dataFormatIds;
+        private long[] dataFetchTimes;
+        private int[] dataEntryIndexes;
+
+        private CatalogedArchive(String key, File file, long lastModified, long length, TransitionedArchive transitionedArchive) {
+            this.key = key;
+            this.file = file;
+            this.lastModified = lastModified;
+            this.length = length;
+            this.transitionedArchive = transitionedArchive;
+        }
+    }
+
+    private static class TimeSeries {
+        private final long[] fetchTimes;
+        private final CatalogedArchive[] archives;
+        private final int[] entryIndexes;
+
+        private TimeSeries(int size) {
+            fetchTimes = new long[size];
+            archives = new CatalogedArchive[size];
+            entryIndexes = new int[size];
+        }
+
+        /**
+         * Finds the first position holding a fetch time at or after the given
+         * time.
+         *
+         * @param epochSecond fetch time in seconds since epoch
+         * @return first position at or after given time; size if none
+         */
+        private int lowerBound(long epochSecond) {
+            int low = 0;
+            int high = fetchTimes.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (fetchTimes[middle] < epochSecond) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+    }
+
+    /**
+     * Opens the given catalog file. Missing or unreadable files result in an
+     * empty catalog; the file will be (re)created on the first update.
+     *
+     * @param catalogFile file to persist the catalog to
+     * @param transitionedBasePath base directory of transitioned archives;
+     *        archives are recorded relative to it
+     * @param archiveBucketHours configured duration of archive buckets; archives
+     *        named by hour are assumed to cover buckets of this duration
+     */
+    public ArchiveCatalog(File catalogFile, File transitionedBasePath, int archiveBucketHours) {
+        this.catalogFile = catalogFile;
+        this.basePath = transitionedBasePath.toPath().toAbsolutePath().normalize();
+        this.archiveBucketHours = archiveBucketHours;
+
+        load();
+    }
+
+    /**
+     * Returns the persisted index of the given archive file.
+     *
+     * @param archiveFile archive to look up index for
+     * @return index of given archive; null if not cataloged or outdated (see
+     *         {@link ArchiveIndex#isValidFor(File)})
+     */
+    public ArchiveIndex get(File archiveFile) {
+        String key = getKey(archiveFile);
+
+        // the catalog file is only appended to or replaced as a whole, so
+        // records can be read without blocking other requests; a record moved
+        // by a concurrent rewrite fails verification and is read again while
+        // holding the lock
+        RecordPosition position;
+        synchronized (this) {
+            position = findRecord(key, archiveFile);
+            if ((position == null) || (position.unpersistedIndex != null)) {
+                return (position != null) ? position.unpersistedIndex : null;
+            }
+        }
+
+        try {
+            ArchiveIndex index = readRecord(position);
+            if (index != null) {
+                return index;
+            }
+
+            synchronized (this) {
+                position = findRecord(key, archiveFile);
+                if ((position == null) || (position.unpersistedIndex != null)) {
+                    return (position != null) ? position.unpersistedIndex : null;
+                }
+
+                index = readRecord(position);
+                if (index == null) {
+                    throw new IOException("record does not match");
+                }
+                return index;
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to read index of " + archiveFile + " from archive catalog " + catalogFile, ex);
+            return null;
+        }
+    }
+
+    /**
+     * Snapshot of where to find the record of an archive, taken while holding
+     * the lock.
+     */
+    private static class RecordPosition {
+        private final String key;
+        private final long offset;
+        private final int length;
+        private final long lastModified;
+        private final long archiveLength;
+        private final ArchiveIndex unpersistedIndex;
+
+        private RecordPosition(String key, CatalogedArchive archive) {
+            this.key = key;
+            this.offset = archive.recordOffset;
+            this.length = archive.recordLength;
+            this.lastModified = archive.lastModified;
+            this.archiveLength = archive.length;
+            this.unpersistedIndex = archive.unpersistedIndex;
+        }
+    }
+
+    /**
+     * Looks up the record of the given archive. Must be called while holding
+     * the lock.
+     *
+     * @param key key of archive
+     * @param archiveFile archive to check for modifications
+     * @return position of record; null if not cataloged or outdated
+     */
+    private RecordPosition findRecord(String key, File archiveFile) {
+        CatalogedArchive archive = archivesByKey.get(key);
+        if ((archive == null) || (archiveFile.lastModified() != archive.lastModified)
+            || (archiveFile.length() != archive.length)) {
+            return null;
+        }
+
+        return new RecordPosition(key, archive);
+    }
+
+    /**
+     * Reads and verifies an archive record from the catalog file.
+     *
+     * @param position position of record
+     * @return index read from record; null if the record found at given
+     *         position does not match (e.g. because the file has been rewritten)
+     * @throws IOException
+     */
+    private ArchiveIndex readRecord(RecordPosition position) throws IOException {
+        byte[] payload = new byte[position.length];
+        int checksum;
+        try (RandomAccessFile raf = new RandomAccessFile(catalogFile, "r")) {
+            if (position.offset + position.length + 4 > raf.length()) {
+                return null;
+            }
+
+            raf.seek(position.offset - 4);
+            if (raf.readInt() != position.length) {
+                return null;
+            }
+            raf.readFully(payload);
+            checksum = raf.readInt();
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+        if ((dis.readByte() != RECORD_ARCHIVE) || !position.key.equals(dis.readUTF())) {
+            return null;
+        }
+
+        return readArchiveIndex(dis, position.lastModified, position.archiveLength, null);
+    }
+
+    /**
+     * Records the index of the given archive file, replacing any previous index
+     * of the same file.
+     *
+     * @param archiveFile archive described by the index
+     * @param index index to record
+     */
+    public synchronized void put(File archiveFile, ArchiveIndex index) {
+        String key = getKey(archiveFile);
+        CatalogedArchive previous = archivesByKey.get(key);
+        if ((previous != null) && (previous.lastModified == index.getArchiveLastModified())
+            && (previous.length == index.getArchiveLength())) {
+            return;
+        }
+
+        CatalogedArchive archive = new CatalogedArchive(key, archiveFile, index.getArchiveLastModified(),
+            index.getArchiveLength(), toTransitionedArchive(key, archiveFile));
+        setDataFiles(archive, index);
+
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.writeByte(RECORD_ARCHIVE);
+            dos.writeUTF(key);
+            writeArchiveIndex(dos, index);
+            dos.flush();
+
+            archive.recordOffset = append(baos.toByteArray());
+            archive.recordLength = baos.size();
+        } catch (IOException ex) {
+            logWriteFailure(ex);
+            archive.recordOffset = -1;
+            archive.unpersistedIndex = index;
+        }
+
+        archivesByKey.put(key, archive);
+        timeSeriesByFormatId = null;
+        archivesByBucket = null;
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Removes all archives from the catalog which are not listed.
+     *
+     * @param archiveFiles all archives which still exist
+     */
+    public synchronized void retainOnly(Collection<File> archiveFiles) {
+        Set<String> keys = new HashSet<>();
+        for (File archiveFile : archiveFiles) {
+            keys.add(getKey(archiveFile));
+        }
+
+        List<String> removedKeys = new ArrayList<>();
+        for (String key : archivesByKey.keySet()) {
+            if (!keys.contains(key)) {
+                removedKeys.add(key);
+            }
+        }
+
+        if (removedKeys.isEmpty()) {
+            return;
+        }
+
+        for (String key : removedKeys) {
+            archivesByKey.remove(key);
+
+            try {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                DataOutputStream dos = new DataOutputStream(baos);
+                dos.writeByte(RECORD_REMOVED);
+                dos.writeUTF(key);
+                dos.flush();
+                append(baos.toByteArray());
+            } catch (IOException ex) {
+                logWriteFailure(ex);
+            }
+        }
+
+        timeSeriesByFormatId = null;
+        archivesByBucket = null;
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Records that all archives existing at the given time have been cataloged.
+     *
+     * @param synchronizedAt time at which the list of archives has been
+     *        retrieved
+     */
+    public synchronized void markSynchronized(Instant synchronizedAt) {
+        lastSynchronized = synchronizedAt;
+
+        try {
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            DataOutputStream dos = new DataOutputStream(baos);
+            dos.writeByte(RECORD_SYNCHRONIZED);
+            dos.writeLong(synchronizedAt.getEpochSecond());
+            dos.flush();
+            append(baos.toByteArray());
+        } catch (IOException ex) {
+            logWriteFailure(ex);
+        }
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Returns when the catalog has last been confirmed to hold all archives.
+     *
+     * @return time of last synchronization; null if never synchronized
+     */
+    public synchronized Instant getLastSynchronized() {
+        return lastSynchronized;
+    }
+
+    /**
+     * Returns the number of cataloged archives.
+     *
+     * @return number of cataloged archives
+     */
+    public synchronized int size() {
+        return archivesByKey.size();
+    }
+
+    /**
+     * Counts cataloged data files fetched within the given time range.
+     *
+     * @param earliestFetchTime earliest fetch time to count (inclusive)
+     * @param latestFetchTime latest fetch time to count (inclusive)
+     * @param wantedDataFileFormatNames names of data file formats to count; all
+     *        formats if empty
+     * @return number of data files
+     */
+    public synchronized int countDataFiles(Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames) {
+        // fetch times only have a resolution of seconds
+        long earliestEpochSecond = earliestFetchTime.getEpochSecond() + ((earliestFetchTime.getNano() > 0) ? 1 : 0);
+        long latestEpochSecond = latestFetchTime.getEpochSecond();
+        if (latestEpochSecond < earliestEpochSecond) {
+            return 0;
+        }
+
+        TimeSeries[] timeSeries = getTimeSeries();
+        long count = 0;
+        for (int formatId = 0; formatId < timeSeries.length; formatId++) {
+            if (!wantedDataFileFormatNames.isEmpty()
+                && !wantedDataFileFormatNames.contains(formatNames.get(formatId))) {
+                continue;
+            }
+
+            TimeSeries series = timeSeries[formatId];
+            count += series.lowerBound(latestEpochSecond + 1) - series.lowerBound(earliestEpochSecond);
+        }
+
+        return (int) Long.min(count, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Finds the cataloged data file of given format fetched closest to the given
+     * time. If two data files are equally close, the earlier one is returned.
+     *
+     * @param formatName data file format name
+     * @param fetchTime time to find nearest data file for
+     * @return location of nearest data file; null if no data file of given
+     *         format is cataloged
+     */
+    public synchronized Location findNearestDataFile(String formatName, Instant fetchTime) {
+        Integer formatId = formatIdsByName.get(formatName);
+        if (formatId == null) {
+            return null;
+        }
+
+        TimeSeries series = getTimeSeries()[formatId];
+        if (series.fetchTimes.length == 0) {
+            return null;
+        }
+
+        long epochSecond = fetchTime.getEpochSecond();
+        int i = series.lowerBound(epochSecond);
+        if ((i == series.fetchTimes.length)
+            || ((i > 0) && (epochSecond - series.fetchTimes[i - 1] <= series.fetchTimes[i] - epochSecond))) {
+            i--;
+        }
+
+        return new Location(
+            series.archives[i].file,
+            series.entryIndexes[i],
+            formatName,
+            Instant.ofEpochSecond(series.fetchTimes[i]) //
+        );
+    }
+
+    /**
+     * Finds the earliest cataloged bucket which holds data of the given time or
+     * later, i.e. the bucket containing the given time or the next one holding
+     * any archive.
+     *
+     * @param time UTC time to find bucket for
+     * @return earliest cataloged bucket ending after given time; null if none
+     */
+    synchronized ArchiveBucket findBucket(LocalDateTime time) {
+        TreeMap<ArchiveBucket, List<CatalogedArchive>> buckets = getArchivesByBucket();
+
+        ArchiveBucket probe = ArchiveBucket.containing(time, 1);
+        ArchiveBucket containing = buckets.floorKey(probe);
+        if ((containing != null) && containing.getEnd().isAfter(time)) {
+            return containing;
+        }
+
+        return buckets.higherKey(probe);
+    }
+
+    /**
+     * Returns the cataloged archives to read for given bucket. Archives holding
+     * all data file formats are preferred; otherwise archives stored per data
+     * file format are returned for wanted formats only.
+     *
+     * @param bucket archive bucket to look up archives for
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats if empty
+     * @return archives to read, ordered by format name; empty if none
+     */
+    synchronized List<TransitionedArchive> getArchives(ArchiveBucket bucket, Set<String> wantedDataFileFormatNames) {
+        List<CatalogedArchive> archives = getArchivesByBucket().get(bucket);
+        if (archives == null) {
+            return Collections.emptyList();
+        }
+
+        List<TransitionedArchive> out = new ArrayList<>();
+        for (CatalogedArchive archive : archives) {
+            String formatName = archive.transitionedArchive.getFormatName();
+            if (formatName == null) {
+                return Collections.singletonList(archive.transitionedArchive);
+            }
+
+            if (wantedDataFileFormatNames.isEmpty() || wantedDataFileFormatNames.contains(formatName)) {
+                out.add(archive.transitionedArchive);
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Returns all archives stored according to the layout of transitioned
+     * archives by bucket, building the map if outdated. Archives of each bucket
+     * are ordered by format name, archives holding all formats first.
+     *
+     * @return archives by bucket
+     */
+    private TreeMap<ArchiveBucket, List<CatalogedArchive>> getArchivesByBucket() {
+        if (archivesByBucket != null) {
+            return archivesByBucket;
+        }
+
+        TreeMap<ArchiveBucket, List<CatalogedArchive>> out = new TreeMap<>();
+        for (CatalogedArchive archive : archivesByKey.values()) {
+            if (archive.transitionedArchive != null) {
+                out.computeIfAbsent(archive.transitionedArchive.getBucket(), x -> new ArrayList<>()).add(archive);
+            }
+        }
+
+        Comparator<CatalogedArchive> byFormatName = Comparator.comparing(
+            archive -> archive.transitionedArchive.getFormatName(),
+            Comparator.nullsFirst(Comparator.naturalOrder()) //
+        );
+        for (List<CatalogedArchive> archives : out.values()) {
+            archives.sort(byFormatName);
+        }
+
+        archivesByBucket = out;
+        return out;
+    }
+
+    /**
+     * Describes the given archive by the layout of transitioned archives, i.e.
+     * {@code YYYY/MM/YYYYMMDD[THH].tar.xz} holding all formats or
+     * {@code YYYY/MM/<format>/YYYYMMDD[THH].tar.xz} holding a single format.
+     *
+     * @param key key of the archive
+     * @param archiveFile archive file
+     * @return archive with its bucket; null if not stored according to layout
+     */
+    private TransitionedArchive toTransitionedArchive(String key, File archiveFile) {
+        String[] parts = key.split("/");
+        if (((parts.length != 3) && (parts.length != 4))
+            || !Loader.PATTERN_DIRECTORY_YEAR.matcher(parts[0]).matches()
+            || !Loader.PATTERN_DIRECTORY_MONTH.matcher(parts[1]).matches()) {
+            return null;
+        }
+
+        String formatName = null;
+        if (parts.length == 4) {
+            formatName = parts[2];
+            if (!Validation.validateDataFileFormatName(formatName)) {
+                return null;
+            }
+        }
+
+        Matcher matcher = Loader.PATTERN_ARCHIVE.matcher(parts[parts.length - 1]);
+        if (!matcher.matches()) {
+            return null;
+        }
+
+        LocalDateTime start = Loader.getArchiveStart(matcher);
+        ArchiveBucket bucket = Loader.isDailyArchive(matcher)
+            ? ArchiveBucket.ofDay(start.toLocalDate())
+            : ArchiveBucket.containing(start, archiveBucketHours);
+
+        return new TransitionedArchive(bucket, formatName, archiveFile);
+    }
+
+    private String getKey(File archiveFile) {
+        Path path = archiveFile.toPath().toAbsolutePath().normalize();
+        if (!path.startsWith(basePath)) {
+            return path.toString();
+        }
+
+        return basePath.relativize(path).toString().replace(File.separatorChar, '/');
+    }
+
+    private int getFormatId(String formatName) {
+        return formatIdsByName.computeIfAbsent(formatName, x -> {
+            formatNames.add(x);
+            return formatNames.size() - 1;
+        });
+    }
+
+    private void setDataFiles(CatalogedArchive archive, ArchiveIndex index) {
+        int numDataFiles = 0;
+        for (int i = 0; i < index.size(); i++) {
+            if (index.getFileType(i) == FetchedFileType.RAW_VATSIM_DATA_FILE) {
+                numDataFiles++;
+            }
+        }
+
+        archive.dataFormatIds = new int[numDataFiles];
+        archive.dataFetchTimes = new long[numDataFiles];
+        archive.dataEntryIndexes = new int[numDataFiles];
+
+        int j = 0;
+        for (int i = 0; i < index.size(); i++) {
+            if (index.getFileType(i) == FetchedFileType.RAW_VATSIM_DATA_FILE) {
+                archive.dataFormatIds[j] = getFormatId(index.getFormatName(i));
+                archive.dataFetchTimes[j] = index.getFetchEpochSecond(i);
+                archive.dataEntryIndexes[j] = i;
+                j++;
+            }
+        }
+    }
+
+    /**
+     * Returns the time series of all data file formats, building them if
+     * outdated. Archives are merged in order of their keys, so data files of
+     * equal fetch time are ordered the same on each build.
+     *
+     * @return time series indexed by format ID
+     */
+    private TimeSeries[] getTimeSeries() {
+        if (timeSeriesByFormatId != null) {
+            return timeSeriesByFormatId;
+        }
+
+        List<CatalogedArchive> archives = new ArrayList<>(archivesByKey.values());
+        archives.sort(Comparator.comparing(archive -> archive.key));
+
+        int[] sizes = new int[formatNames.size()];
+        for (CatalogedArchive archive : archives) {
+            for (int formatId : archive.dataFormatIds) {
+                sizes[formatId]++;
+            }
+        }
+
+        TimeSeries[] out = new TimeSeries[sizes.length];
+        for (int formatId = 0; formatId < sizes.length; formatId++) {
+            out[formatId] = new TimeSeries(sizes[formatId]);
+        }
+
+        int[] positions = new int[sizes.length];
+        for (CatalogedArchive archive : archives) {
+            for (int i = 0; i < archive.dataFormatIds.length; i++) {
+                TimeSeries series = out[archive.dataFormatIds[i]];
+                int position = positions[archive.dataFormatIds[i]]++;
+                series.fetchTimes[position] = archive.dataFetchTimes[i];
+                series.archives[position] = archive;
+                series.entryIndexes[position] = archive.dataEntryIndexes[i];
+            }
+        }
+
+        for (TimeSeries series : out) {
+            sortByFetchTime(series);
+        }
+
+        timeSeriesByFormatId = out;
+        return out;
+    }
+
+    /**
+     * Sorts the given time series by fetch time, keeping the current order of
+     * data files with equal fetch time.
+     *
+     * @param series time series to sort
+     */
+    private void sortByFetchTime(TimeSeries series) {
+        int size = series.fetchTimes.length;
+        if (size < 2) {
+            return;
+        }
+
+        long minimum = Long.MAX_VALUE;
+        long maximum = Long.MIN_VALUE;
+        boolean isSorted = true;
+        for (int i = 0; i < size; i++) {
+            long fetchTime = series.fetchTimes[i];
+            minimum = Long.min(minimum, fetchTime);
+            maximum = Long.max(maximum, fetchTime);
+            isSorted &= (i == 0) || (series.fetchTimes[i - 1] <= fetchTime);
+        }
+
+        if (isSorted) {
+            return;
+        }
+
+        int[] order = new int[size];
+        if (maximum - minimum < Integer.MAX_VALUE) {
+            // sorting primitive keys holding position in the lower bits is a lot
+            // faster than sorting boxed positions with a comparator
+            long[] keys = new long[size];
+            for (int i = 0; i < size; i++) {
+                keys[i] = ((series.fetchTimes[i] - minimum) << 32) | i;
+            }
+            Arrays.sort(keys);
+            for (int i = 0; i < size; i++) {
+                order[i] = (int) keys[i];
+            }
+        } else {
+            Integer[] boxed = new Integer[size];
+            for (int i = 0; i < size; i++) {
+                boxed[i] = i;
+            }
+            Arrays.sort(boxed, Comparator.comparingLong(i -> series.fetchTimes[i]));
+            for (int i = 0; i < size; i++) {
+                order[i] = boxed[i];
+            }
+        }
+
+        long[] fetchTimes = series.fetchTimes.clone();
+        CatalogedArchive[] archives = series.archives.clone();
+        int[] entryIndexes = series.entryIndexes.clone();
+        for (int i = 0; i < size; i++) {
+            series.fetchTimes[i] = fetchTimes[order[i]];
+            series.archives[i] = archives[order[i]];
+            series.entryIndexes[i] = entryIndexes[order[i]];
+        }
+    }
+
+    private void load() {
+        if (!catalogFile.exists()) {
+            return;
+        }
+
+        long validLength = 0;
+        try (DataInputStream dis = new DataInputStream(new BufferedInputStream(new FileInputStream(catalogFile)))) {
+            if ((dis.readInt() != MAGIC) || (dis.readInt() != FORMAT_VERSION)) {
+                // file will be replaced on first update
+                LOGGER.warn("Archive catalog {} has an unsupported format, starting a new catalog", catalogFile);
+                return;
+            }
+            validLength = FILE_HEADER_LENGTH;
+
+            while (true) {
+                byte[] payload = readRecord(dis);
+                if (payload == null) {
+                    break;
+                }
+
+                applyRecord(payload, validLength + 4);
+                validLength += payload.length + RECORD_FRAME_LENGTH;
+                numRecords++;
+            }
+        } catch (IOException ex) {
+            LOGGER.warn("Failed to read archive catalog " + catalogFile + ", continuing with "
+                + archivesByKey.size() + " archives read so far", ex);
+        }
+
+        fileLength = validLength;
+
+        // an incomplete record would corrupt all following records
+        if (validLength < catalogFile.length()) {
+            LOGGER.warn("Discarding incomplete records at end of archive catalog {}", catalogFile);
+            try (RandomAccessFile raf = new RandomAccessFile(catalogFile, "rw")) {
+                raf.setLength(validLength);
+            } catch (IOException ex) {
+                logWriteFailure(ex);
+            }
+        }
+
+        LOGGER.info("Loaded archive catalog {} holding {} archives", catalogFile, archivesByKey.size());
+
+        compactIfNeeded();
+    }
+
+    /**
+     * Reads the payload of the next record.
+     *
+     * @param dis stream to read from
+     * @return payload of record; null if there are no more complete records
+     * @throws IOException
+     */
+    private byte[] readRecord(DataInputStream dis) throws IOException {
+        int length;
+        try {
+            length = dis.readInt();
+        } catch (EOFException ex) {
+            return null;
+        }
+
+        if ((length <= 0) || (length > MAXIMUM_RECORD_LENGTH)) {
+            return null;
+        }
+
+        byte[] payload = new byte[length];
+        int checksum;
+        try {
+            dis.readFully(payload);
+            checksum = dis.readInt();
+        } catch (EOFException ex) {
+            return null;
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        if ((int) crc.getValue() != checksum) {
+            return null;
+        }
+
+        return payload;
+    }
+
+    private void applyRecord(byte[] payload, long payloadOffset) throws IOException {
+        DataInputStream dis = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = dis.readByte();
+        switch (type) {
+            case RECORD_ARCHIVE:
+                String key = dis.readUTF();
+                long lastModified = dis.readLong();
+                long length = dis.readLong();
+
+                File file = resolve(key);
+                CatalogedArchive archive = new CatalogedArchive(key, file, lastModified, length,
+                    toTransitionedArchive(key, file));
+                archive.recordOffset = payloadOffset;
+                archive.recordLength = payload.length;
+                readArchiveIndex(dis, lastModified, length, archive);
+                archivesByKey.put(key, archive);
+                break;
+
+            case RECORD_REMOVED:
+                archivesByKey.remove(dis.readUTF());
+                break;
+
+            case RECORD_SYNCHRONIZED:
+                lastSynchronized = Instant.ofEpochSecond(dis.readLong());
+                break;
+
+            default:
+                throw new IOException("unknown record type " + type);
+        }
+    }
+
+    private File resolve(String key) {
+        Path path = basePath.getFileSystem().getPath(key.replace('/', File.separatorChar));
+        return path.isAbsolute() ? path.toFile() : basePath.resolve(path).toFile();
+    }
+
+    /**
+     * Appends a record with given payload to the catalog file.
+     *
+     * @param payload payload of record
+     * @return offset of payload within the file
+     * @throws IOException
+     */
+    private long append(byte[] payload) throws IOException {
+        if (!isWritable) {
+            throw new IOException("archive catalog is not writable");
+        }
+
+        if (fileLength == 0) {
+            rewrite();
+        }
+
+        byte[] record = frame(payload);
+        try (OutputStream os = new FileOutputStream(catalogFile, true)) {
+            os.write(record);
+        }
+
+        long payloadOffset = fileLength + 4;
+        fileLength += record.length;
+        numRecords++;
+
+        return payloadOffset;
+    }
+
+    private byte[] frame(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream(payload.length + RECORD_FRAME_LENGTH);
+        try (DataOutputStream dos = new DataOutputStream(baos)) {
+            dos.writeInt(payload.length);
+            dos.write(payload);
+            dos.writeInt((int) crc.getValue());
+        } catch (IOException ex) {
+            // not possible in memory
+            throw new IllegalStateException(ex);
+        }
+
+        return baos.toByteArray();
+    }
+
+    private void compactIfNeeded() {
+        if (!isWritable || (numRecords <= 2 * archivesByKey.size() + COMPACTION_SLACK_RECORDS)) {
+            return;
+        }
+
+        LOGGER.info("Compacting archive catalog {} ({} records for {} archives)", catalogFile, numRecords,
+            archivesByKey.size());
+
+        try {
+            rewrite();
+        } catch (IOException ex) {
+            logWriteFailure(ex);
+        }
+    }
+
+    /**
+     * Writes a new catalog file holding a single record per archive and replaces
+     * the current file.
+     *
+     * @throws IOException
+     */
+    private void rewrite() throws IOException {
+        File temporaryFile = new File(catalogFile.getPath() + ".tmp");
+        File directory = catalogFile.getAbsoluteFile().getParentFile();
+        if (directory != null) {
+            directory.mkdirs();
+        }
+
+        List<CatalogedArchive> archives = new ArrayList<>(archivesByKey.values());
+        archives.sort(Comparator.comparing(archive -> archive.key));
+
+        long[] newOffsets = new long[archives.size()];
+        int[] newLengths = new int[archives.size()];
+        long length = FILE_HEADER_LENGTH;
+        int records = 0;
+        try (
+            RandomAccessFile source = catalogFile.exists() ? new RandomAccessFile(catalogFile, "r") : null;
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temporaryFile))) //
+        ) {
+            dos.writeInt(MAGIC);
+            dos.writeInt(FORMAT_VERSION);
+
+            for (int i = 0; i < archives.size(); i++) {
+                CatalogedArchive archive = archives.get(i);
+                byte[] payload;
+                if (archive.unpersistedIndex != null) {
+                    ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                    DataOutputStream payloadStream = new DataOutputStream(baos);
+                    payloadStream.writeByte(RECORD_ARCHIVE);
+                    payloadStream.writeUTF(archive.key);
+                    writeArchiveIndex(payloadStream, archive.unpersistedIndex);
+                    payloadStream.flush();
+                    payload = baos.toByteArray();
+                } else if (source == null) {
+                    throw new IOException("archive catalog " + catalogFile + " has been removed");
+                } else {
+                    payload = new byte[archive.recordLength];
+                    source.seek(archive.recordOffset);
+                    source.readFully(payload);
+                }
+
+                byte[] record = frame(payload);
+                dos.write(record);
+                newOffsets[i] = length + 4;
+                newLengths[i] = payload.length;
+                length += record.length;
+                records++;
+            }
+
+            if (lastSynchronized != null) {
+                ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                DataOutputStream payloadStream = new DataOutputStream(baos);
+                payloadStream.writeByte(RECORD_SYNCHRONIZED);
+                payloadStream.writeLong(lastSynchronized.getEpochSecond());
+                payloadStream.flush();
+
+                byte[] record = frame(baos.toByteArray());
+                dos.write(record);
+                length += record.length;
+                records++;
+            }
+        } catch (IOException ex) {
+            temporaryFile.delete();
+            throw ex;
+        }
+
+        Files.move(temporaryFile.toPath(), catalogFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+            StandardCopyOption.ATOMIC_MOVE);
+
+        for (int i = 0; i < archives.size(); i++) {
+            CatalogedArchive archive = archives.get(i);
+            archive.recordOffset = newOffsets[i];
+            archive.recordLength = newLengths[i];
+            archive.unpersistedIndex = null;
+        }
+
+        fileLength = length;
+        numRecords = records;
+    }
+
+    private void logWriteFailure(IOException ex) {
+        if (isWritable) {
+            LOGGER.warn("Failed to write archive catalog " + catalogFile
+                + ", indexes will only be kept in memory until restart", ex);
+        }
+        isWritable = false;
+    }
+
+    private static void writeArchiveIndex(DataOutputStream dos, ArchiveIndex index) throws IOException {
+        dos.writeLong(index.getArchiveLastModified());
+        dos.writeLong(index.getArchiveLength());
+
+        List<String> localFormatNames = new ArrayList<>();
+        Map<String, Integer> localFormatIds = new HashMap<>();
+        int[] entryFormatIds = new int[index.size()];
+        for (int i = 0; i < index.size(); i++) {
+            entryFormatIds[i] = localFormatIds.computeIfAbsent(index.getFormatName(i), x -> {
+                localFormatNames.add(x);
+                return localFormatNames.size() - 1;
+            });
+        }
+
+        writeVarLong(dos, localFormatNames.size());
+        for (String formatName : localFormatNames) {
+            dos.writeUTF(formatName);
+        }
+
+        // consecutive entries are close in time and position, so deltas are
+        // stored to keep records small
+        writeVarLong(dos, index.size());
+        long previousFetchTime = 0;
+        long previousHeaderOffset = 0;
+        for (int i = 0; i < index.size(); i++) {
+            writeVarLong(dos, entryFormatIds[i]);
+            writeVarLong(dos, zigZag(index.getFetchEpochSecond(i) - previousFetchTime));
+            dos.writeByte(index.getFileType(i).ordinal());
+            dos.writeByte(index.getSnapshotKind(i).ordinal());
+            writeVarLong(dos, index.getSize(i));
+            writeVarLong(dos, zigZag(index.getHeaderOffset(i) - previousHeaderOffset));
+
+            previousFetchTime = index.getFetchEpochSecond(i);
+            previousHeaderOffset = index.getHeaderOffset(i);
+        }
+    }
+
+    /**
+     * Reads an {@link ArchiveIndex} following the archive state of a record.
+     * Data files are recorded to the given archive if one is provided.
+     *
+     * @param dis stream positioned after archive state of a record
+     * @param lastModified last modification timestamp of archive
+     * @param length length of archive
+     * @param archive receives data files; null if not needed
+     * @return index read from stream
+     * @throws IOException
+     */
+    private ArchiveIndex readArchiveIndex(DataInputStream dis, long lastModified, long length, CatalogedArchive archive) throws IOException {
+        if (archive == null) {
+            // state has already been verified by caller
+            dis.readLong();
+            dis.readLong();
+        }
+
+        int numFormats = readVarInt(dis);
+        String[] localFormatNames = new String[numFormats];
+        for (int i = 0; i < numFormats; i++) {
+            localFormatNames[i] = dis.readUTF();
+        }
+
+        ArchiveIndex.Builder builder = new ArchiveIndex.Builder(lastModified, length);
+        int numEntries = readVarInt(dis);
+        long fetchTime = 0;
+        long headerOffset = 0;
+        for (int i = 0; i < numEntries; i++) {
+            int formatId = readVarInt(dis);
+            fetchTime += unZigZag(readVarLong(dis));
+            int fileType = dis.readUnsignedByte();
+            int snapshotKind = dis.readUnsignedByte();
+            long size = readVarLong(dis);
+            headerOffset += unZigZag(readVarLong(dis));
+
+            if ((formatId >= numFormats) || (fileType >= FILE_TYPES.length)
+                || (snapshotKind >= SNAPSHOT_KINDS.length)) {
+                throw new IOException("malformed archive catalog record");
+            }
+
+            builder.add(localFormatNames[formatId], fetchTime, FILE_TYPES[fileType], size, headerOffset,
+                SNAPSHOT_KINDS[snapshotKind]);
+        }
+
+        ArchiveIndex index = builder.build();
+        if (archive != null) {
+            setDataFiles(archive, index);
+        }
+
+        return index;
+    }
+
+    private static long zigZag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unZigZag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= ((long) (b & 0x7F)) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("malformed variable-length number");
+    }
+
+    private static int readVarInt(DataInput in) throws IOException {
+        long value = readVarLong(in);
+        if ((value < 0) || (value > Integer.MAX_VALUE)) {
+            throw new IOException("malformed variable-length number");
+        }
+        return (int) value;
+    }
+}
@@ -0,0 +1,315 @@
+package org.vatplanner.archiver.local;
+
+import java.io.File;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of all supported entries contained in a single transitioned archive.
+ * The index only holds information which can be gathered from entry headers
+ * (name, size and position), so it can be used to answer questions about available data
+ * without reading any actual content.
+ *
+ * <p>
+ * Entries are kept in the order they appear in the archive. To keep memory
+ * footprint low, all information is held in primitive arrays; format names are
+ * deduplicated.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and thus thread-safe; use {@link Builder} to create
+ * new indexes.
+ * </p>
+ */
+public class ArchiveIndex {
+
+    private static final FetchedFileType[] FILE_TYPES = FetchedFileType.values();
+    private static final SnapshotDelta.Kind[] SNAPSHOT_KINDS = SnapshotDelta.Kind.values();
+
+    private final long archiveLastModified;
+    private final long archiveLength;
+
+    private final String[] formatNames;
+    private final int[] formatIds;
+    private final long[] fetchTimes;
+    private final byte[] fileTypes;
+    private final long[] sizes;
+    private final long[] headerOffsets;
+    private final byte[] snapshotKinds;
+    private final int[] chainStarts;
+
+    private ArchiveIndex(Builder builder) {
+        archiveLastModified = builder.archiveLastModified;
+        archiveLength = builder.archiveLength;
+
+        int numEntries = builder.numEntries;
+        formatNames = builder.formatNames.toArray(new String[0]);
+        formatIds = Arrays.copyOf(builder.formatIds, numEntries);
+        fetchTimes = Arrays.copyOf(builder.fetchTimes, numEntries);
+        fileTypes = Arrays.copyOf(builder.fileTypes, numEntries);
+        sizes = Arrays.copyOf(builder.sizes, numEntries);
+        headerOffsets = Arrays.copyOf(builder.headerOffsets, numEntries);
+        snapshotKinds = Arrays.copyOf(builder.snapshotKinds, numEntries);
+        chainStarts = builder.hasDeltas ? findChainStarts() : null;
+    }
+
+    private int[] findChainStarts() {
+        int[] out = new int[snapshotKinds.length];
+        int[] lastKeyframes = new int[formatNames.length];
+        Arrays.fill(lastKeyframes, -1);
+
+        for (int i = 0; i < snapshotKinds.length; i++) {
+            out[i] = i;
+
+            if (snapshotKinds[i] == SnapshotDelta.Kind.KEYFRAME.ordinal()) {
+                lastKeyframes[formatIds[i]] = i;
+            } else if (snapshotKinds[i] == SnapshotDelta.Kind.DELTA.ordinal()) {
+                // malformed chains can only be told by reading all entries
+                out[i] = Integer.max(0, lastKeyframes[formatIds[i]]);
+            }
+        }
+
+        return out;
+    }
+
+    /**
+     * Checks if this index still describes the given archive file. Archives are
+     * not supposed to change once written but they may be replaced, in which case
+     * the index needs to be rebuilt.
+     *
+     * @param archiveFile archive file to check
+     * @return true if the index is applicable to the given file, false if outdated
+     */
+    public boolean isValidFor(File archiveFile) {
+        return (archiveFile.lastModified() == archiveLastModified) && (archiveFile.length() == archiveLength);
+    }
+
+    /**
+     * Returns the length of the indexed archive file in bytes.
+     *
+     * @return length of indexed archive file in bytes
+     */
+    public long getArchiveLength() {
+        return archiveLength;
+    }
+
+    /**
+     * Returns the last modification timestamp of the indexed archive file.
+     *
+     * @return last modification timestamp as given by {@link File#lastModified()}
+     */
+    long getArchiveLastModified() {
+        return archiveLastModified;
+    }
+
+    /**
+     * Returns the number of indexed entries.
+     *
+     * @return number of indexed entries
+     */
+    public int size() {
+        return fetchTimes.length;
+    }
+
+    /**
+     * Returns the data file format name of the given entry.
+     *
+     * @param i index of entry
+     * @return data file format name of entry
+     */
+    public String getFormatName(int i) {
+        return formatNames[formatIds[i]];
+    }
+
+    /**
+     * Returns the fetch time of the given entry.
+     *
+     * @param i index of entry
+     * @return fetch time of entry
+     */
+    public Instant getFetchTime(int i) {
+        return Instant.ofEpochSecond(fetchTimes[i]);
+    }
+
+    /**
+     * Returns the fetch time of the given entry in seconds since epoch.
+     *
+     * @param i index of entry
+     * @return fetch time of entry in seconds since epoch
+     */
+    public long getFetchEpochSecond(int i) {
+        return fetchTimes[i];
+    }
+
+    /**
+     * Returns the file type of the given entry.
+     *
+     * @param i index of entry
+     * @return file type of entry
+     */
+    public FetchedFileType getFileType(int i) {
+        return FILE_TYPES[fileTypes[i]];
+    }
+
+    /**
+     * Returns the uncompressed size of the given entry in bytes. Entries stored
+     * as deltas are indexed by the size of the reconstructed data file.
+     *
+     * @param i index of entry
+     * @return uncompressed size of entry in bytes
+     */
+    public long getSize(int i) {
+        return sizes[i];
+    }
+
+    /**
+     * Returns the uncompressed offset of the given entry within the TAR stream.
+     * The offset points to the first header record describing the entry,
+     * including any extended headers preceding the actual entry header, so TAR
+     * reading can be started at that position.
+     *
+     * @param i index of entry
+     * @return uncompressed offset of entry headers in bytes
+     */
+    public long getHeaderOffset(int i) {
+        return headerOffsets[i];
+    }
+
+    /**
+     * Returns how the given entry is stored in a delta archive.
+     *
+     * @param i index of entry
+     * @return kind of entry; {@link SnapshotDelta.Kind#PLAIN} if not part of a
+     *         delta chain
+     */
+    SnapshotDelta.Kind getSnapshotKind(int i) {
+        return SNAPSHOT_KINDS[snapshotKinds[i]];
+    }
+
+    /**
+     * Finds the entry reading needs to start at in order to reconstruct the
+     * given entry. Deltas require the preceding keyframe of the same format and
+     * all deltas in between to be read first.
+     *
+     * @param i index of entry
+     * @return index of keyframe preceding a delta (first entry if there is
+     *         none); given index for all other entries
+     */
+    int findChainStart(int i) {
+        return (chainStarts != null) ? chainStarts[i] : i;
+    }
+
+    /**
+     * Collects entries to build a new {@link ArchiveIndex}. Entries must be added
+     * in the order they appear in the archive.
+     */
+    public static class Builder {
+
+        private static final int INITIAL_CAPACITY = 2048;
+
+        private final long archiveLastModified;
+        private final long archiveLength;
+
+        private final List<String> formatNames = new ArrayList<>();
+        private final Map<String, Integer> formatIdsByName = new HashMap<>();
+
+        private int numEntries = 0;
+        private int[] formatIds = new int[INITIAL_CAPACITY];
+        private long[] fetchTimes = new long[INITIAL_CAPACITY];
+        private byte[] fileTypes = new byte[INITIAL_CAPACITY];
+        private long[] sizes = new long[INITIAL_CAPACITY];
+        private long[] headerOffsets = new long[INITIAL_CAPACITY];
+        private byte[] snapshotKinds = new byte[INITIAL_CAPACITY];
+        private boolean hasDeltas = false;
+
+        /**
+         * Starts a new index for the given archive file.
+         *
+         * @param archiveFile archive file to be indexed
+         */
+        public Builder(File archiveFile) {
+            this(archiveFile.lastModified(), archiveFile.length());
+        }
+
+        /**
+         * Starts a new index for an archive file of given state, e.g. to restore
+         * a persisted index.
+         *
+         * @param archiveLastModified last modification timestamp of archive file
+         *        as given by {@link File#lastModified()}
+         * @param archiveLength length of archive file in bytes
+         */
+        Builder(long archiveLastModified, long archiveLength) {
+            this.archiveLastModified = archiveLastModified;
+            this.archiveLength = archiveLength;
+        }
+
+        /**
+         * Adds an entry to the index.
+         *
+         * @param formatName data file format name
+         * @param fetchEpochSecond fetch time in seconds since epoch
+         * @param fileType file type
+         * @param size uncompressed size in bytes
+         * @param headerOffset uncompressed offset of entry headers within the TAR
+         *        stream
+         * @return this instance for method-chaining
+         */
+        public Builder add(String formatName, long fetchEpochSecond, FetchedFileType fileType, long size, long headerOffset) {
+            return add(formatName, fetchEpochSecond, fileType, size, headerOffset, SnapshotDelta.Kind.PLAIN);
+        }
+
+        /**
+         * Adds an entry of a delta archive to the index.
+         *
+         * @param formatName data file format name
+         * @param fetchEpochSecond fetch time in seconds since epoch
+         * @param fileType file type
+         * @param size uncompressed size in bytes (of reconstructed data file for
+         *        deltas)
+         * @param headerOffset uncompressed offset of entry headers within the TAR
+         *        stream
+         * @param snapshotKind how the entry is stored
+         * @return this instance for method-chaining
+         */
+        Builder add(String formatName, long fetchEpochSecond, FetchedFileType fileType, long size, long headerOffset, SnapshotDelta.Kind snapshotKind) {
+            if (numEntries == fetchTimes.length) {
+                grow();
+            }
+
+            int formatId = formatIdsByName.computeIfAbsent(formatName, x -> {
+                formatNames.add(x);
+                return formatNames.size() - 1;
+            });
+
+            formatIds[numEntries] = formatId;
+            fetchTimes[numEntries] = fetchEpochSecond;
+            fileTypes[numEntries] = (byte) fileType.ordinal();
+            sizes[numEntries] = size;
+            headerOffsets[numEntries] = headerOffset;
+            snapshotKinds[numEntries] = (byte) snapshotKind.ordinal();
+            hasDeltas |= (snapshotKind == SnapshotDelta.Kind.DELTA);
+            numEntries++;
+
+            return this;
+        }
+
+        private void grow() {
+            int newCapacity = fetchTimes.length * 2;
+            formatIds = Arrays.copyOf(formatIds, newCapacity);
+            fetchTimes = Arrays.copyOf(fetchTimes, newCapacity);
+            fileTypes = Arrays.copyOf(fileTypes, newCapacity);
+            sizes = Arrays.copyOf(sizes, newCapacity);
+            headerOffsets = Arrays.copyOf(headerOffsets, newCapacity);
+            snapshotKinds = Arrays.copyOf(snapshotKinds, newCapacity);
+        }
+
+        public ArchiveIndex build() {
+            return new ArchiveIndex(this);
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.vatplanner.archiver.local;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Keeps {@link ArchiveIndex}es of recently accessed transitioned archives in
+ * memory. Least recently used indexes are evicted once the configured maximum
+ * number of indexes is exceeded. Indexes can additionally be persisted to an
+ * {@link ArchiveCatalog} which is consulted if an index is not held in memory.
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class ArchiveIndexCache {
+
+    private final int maximumSize;
+    private final ArchiveCatalog catalog;
+    private final Map<String, ArchiveIndex> indexesByPath;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maximumSize maximum number of archive indexes to hold; 0 disables
+     *        caching
+     */
+    public ArchiveIndexCache(int maximumSize) {
+        this(maximumSize, null);
+    }
+
+    /**
+     * Creates a new cache backed by the given catalog.
+     *
+     * @param maximumSize maximum number of archive indexes to hold in memory; 0
+     *        disables caching in memory
+     * @param catalog catalog to look up and persist indexes; null to only cache
+     *        in memory
+     */
+    public ArchiveIndexCache(int maximumSize, ArchiveCatalog catalog) {
+        this.maximumSize = maximumSize;
+        this.catalog = catalog;
+
+        indexesByPath = new LinkedHashMap<String, ArchiveIndex>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, ArchiveIndex> eldest) {
+                return size() > ArchiveIndexCache.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * Returns the cached index for the given archive file, falling back to the
+     * catalog if not held in memory. Outdated indexes (see
+     * {@link ArchiveIndex#isValidFor(File)}) are evicted and not returned.
+     *
+     * @param archiveFile archive to look up index for
+     * @return index of given archive; null if not cached
+     */
+    public ArchiveIndex get(File archiveFile) {
+        String key = archiveFile.getAbsolutePath();
+
+        ArchiveIndex index;
+        synchronized (indexesByPath) {
+            index = indexesByPath.get(key);
+            if ((index != null) && !index.isValidFor(archiveFile)) {
+                indexesByPath.remove(key);
+                index = null;
+            }
+
+            if (index != null) {
+                hits.increment();
+                return index;
+            }
+        }
+
+        if (catalog != null) {
+            index = catalog.get(archiveFile);
+            if (index != null) {
+                hits.increment();
+                putInMemory(key, index);
+                return index;
+            }
+        }
+
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Stores the index for the given archive file, also persisting it to the
+     * catalog if available.
+     *
+     * @param archiveFile archive described by the index
+     * @param index index to store
+     */
+    public void put(File archiveFile, ArchiveIndex index) {
+        putInMemory(archiveFile.getAbsolutePath(), index);
+
+        if (catalog != null) {
+            catalog.put(archiveFile, index);
+        }
+    }
+
+    private void putInMemory(String key, ArchiveIndex index) {
+        if (maximumSize <= 0) {
+            return;
+        }
+
+        synchronized (indexesByPath) {
+            indexesByPath.put(key, index);
+        }
+    }
+
+    /**
+     * Returns the number of lookups which have been answered from cache.
+     *
+     * @return number of cache hits
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups for which no (valid) index was cached.
+     *
+     * @return number of cache misses
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of indexes currently held.
+     *
+     * @return number of cached indexes
+     */
+    public int size() {
+        synchronized (indexesByPath) {
+            return indexesByPath.size();
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package org.vatplanner.archiver.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads compressed transitioned archives into memory ahead of time, so disk
+ * I/O for the next archive of a request overlaps with decompression of the
+ * current one.
+ *
+ * <p>
+ * Each call to {@link #prefetch(File)} which returned true must be followed by
+ * {@link #release(File)} once the archive is no longer needed; archives
+ * requested by multiple callers are only read once and held until released by
+ * all of them. The total size of archives being read or held is limited;
+ * archives which do not fit are not prefetched and will simply be read from
+ * disk when needed.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class ArchivePrefetcher {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchivePrefetcher.class);
+
+    private final long maximumBytes;
+    private final Executor executor;
+
+    private final Map<String, Prefetch> prefetchesByPath = new HashMap<>();
+    private long heldBytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder unused = new LongAdder();
+
+    private enum State {
+        QUEUED,
+        READING,
+        COMPLETED,
+        CANCELLED
+    }
+
+    private static class Prefetch {
+        private final File file;
+        private final long length;
+        private final long lastModified;
+        private int numUsers = 1;
+        private State state = State.QUEUED;
+        private byte[] data;
+        private boolean isUsed;
+
+        private Prefetch(File file, long length, long lastModified) {
+            this.file = file;
+            this.length = length;
+            this.lastModified = lastModified;
+        }
+
+        private boolean isUnchanged() {
+            return (file.length() == length) && (file.lastModified() == lastModified);
+        }
+    }
+
+    /**
+     * Creates a new prefetcher.
+     *
+     * @param maximumBytes maximum total size of archives to read ahead; 0
+     *        disables prefetching
+     * @param executor runs reads in background; unused if prefetching is
+     *        disabled
+     */
+    public ArchivePrefetcher(long maximumBytes, Executor executor) {
+        this.maximumBytes = maximumBytes;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts reading the given archive in background if it fits into the
+     * remaining budget.
+     *
+     * @param archiveFile archive to read ahead
+     * @return true if the archive is being prefetched and needs to be released
+     *         by {@link #release(File)}, false if not
+     */
+    public boolean prefetch(File archiveFile) {
+        if (maximumBytes <= 0) {
+            return false;
+        }
+
+        // length is 0 for missing files
+        long length = archiveFile.length();
+        if ((length <= 0) || (length > Integer.MAX_VALUE)) {
+            return false;
+        }
+
+        String key = archiveFile.getAbsolutePath();
+        Prefetch prefetch;
+        synchronized (prefetchesByPath) {
+            prefetch = prefetchesByPath.get(key);
+            if (prefetch != null) {
+                prefetch.numUsers++;
+                return true;
+            }
+
+            if (heldBytes + length > maximumBytes) {
+                LOGGER.debug("not prefetching {}, budget exhausted", archiveFile);
+                return false;
+            }
+
+            prefetch = new Prefetch(archiveFile, length, archiveFile.lastModified());
+            prefetchesByPath.put(key, prefetch);
+            heldBytes += length;
+        }
+
+        Prefetch queued = prefetch;
+        try {
+            executor.execute(() -> read(queued));
+        } catch (RejectedExecutionException ex) {
+            LOGGER.warn("prefetching {} was rejected", archiveFile, ex);
+            release(archiveFile);
+            return false;
+        }
+
+        return true;
+    }
+
+    private void read(Prefetch prefetch) {
+        synchronized (prefetch) {
+            if (prefetch.state != State.QUEUED) {
+                return;
+            }
+            prefetch.state = State.READING;
+        }
+
+        byte[] data = null;
+        try {
+            LOGGER.debug("prefetching {}", prefetch.file);
+            data = Files.readAllBytes(prefetch.file.toPath());
+        } catch (IOException ex) {
+            LOGGER.debug("prefetching {} failed", prefetch.file, ex);
+        }
+
+        synchronized (prefetch) {
+            // released while reading, data is no longer wanted
+            if (prefetch.state == State.READING) {
+                prefetch.data = data;
+                prefetch.state = State.COMPLETED;
+            }
+            prefetch.notifyAll();
+        }
+    }
+
+    /**
+     * Returns the prefetched contents of the given archive. Waits if the archive
+     * is currently being read. Archives which have not started to be read yet
+     * are not waited for, so the caller reads them directly instead of queuing
+     * behind other prefetches. Their read is cancelled unless other callers
+     * still requested the archive.
+     *
+     * @param archiveFile archive to get contents of
+     * @return complete contents of archive; null if not available
+     */
+    public byte[] get(File archiveFile) {
+        Prefetch prefetch;
+        boolean isShared;
+        synchronized (prefetchesByPath) {
+            prefetch = prefetchesByPath.get(archiveFile.getAbsolutePath());
+            if (prefetch == null) {
+                return null;
+            }
+
+            // users are only added while holding the lock
+            isShared = (prefetch.numUsers > 1);
+        }
+
+        synchronized (prefetch) {
+            if (prefetch.state == State.QUEUED) {
+                if (!isShared) {
+                    prefetch.state = State.CANCELLED;
+                }
+                return null;
+            }
+
+            while (prefetch.state == State.READING) {
+                try {
+                    prefetch.wait();
+                } catch (InterruptedException ex) {
+                    Thread.currentThread().interrupt();
+                    return null;
+                }
+            }
+
+            if ((prefetch.data == null) || (prefetch.data.length != prefetch.length) || !prefetch.isUnchanged()) {
+                return null;
+            }
+
+            hits.increment();
+            prefetch.isUsed = true;
+            return prefetch.data;
+        }
+    }
+
+    /**
+     * Releases the given archive, as previously requested by
+     * {@link #prefetch(File)}. Data is dropped once released by all callers.
+     *
+     * @param archiveFile archive to release
+     */
+    public void release(File archiveFile) {
+        Prefetch prefetch;
+        synchronized (prefetchesByPath) {
+            String key = archiveFile.getAbsolutePath();
+            prefetch = prefetchesByPath.get(key);
+            if ((prefetch == null) || (--prefetch.numUsers > 0)) {
+                return;
+            }
+
+            prefetchesByPath.remove(key);
+            heldBytes -= prefetch.length;
+        }
+
+        synchronized (prefetch) {
+            if (prefetch.state != State.COMPLETED) {
+                prefetch.state = State.CANCELLED;
+            }
+
+            if (!prefetch.isUsed) {
+                unused.increment();
+            }
+
+            prefetch.data = null;
+        }
+    }
+
+    /**
+     * Returns the number of archive reads which have been served from
+     * prefetched data.
+     *
+     * @return number of reads served from memory
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of prefetched archives which have been released without
+     * being used, e.g. because requests were already satisfied by earlier data.
+     *
+     * @return number of unused prefetches
+     */
+    public long getUnused() {
+        return unused.sum();
+    }
+
+    /**
+     * Returns the total size of archives currently being read ahead or held.
+     *
+     * @return size of prefetched archives in bytes
+     */
+    public long getHeldBytes() {
+        synchronized (prefetchesByPath) {
+            return heldBytes;
+        }
+    }
+}
@@ -0,0 +1,330 @@
+package org.vatplanner.archiver.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+/**
+ * Splits transitioned archives holding all data file formats of a day
+ * ({@code YYYY/MM/YYYYMMDD.tar.xz}) into one archive per format
+ * ({@code YYYY/MM/<format>/YYYYMMDD.tar.xz}), so requests for specific formats
+ * only need to decompress data of those formats. See {@link TransitionedArchive}
+ * for details on both layouts.
+ *
+ * <p>
+ * Entries are copied unchanged and in their original order, only distributed
+ * to the archives of their formats. New archives are written to temporary files
+ * first and verified to hold exactly the entries of the original archive before
+ * they are moved into place. Archives are compressed to multiple XZ blocks so
+ * paginated requests are able to resume reading within an archive.
+ * </p>
+ *
+ * <p>
+ * Each archive is split by a single thread; methods are thread-safe and
+ * multiple archives may be split concurrently. Each concurrent split requires
+ * memory for one XZ encoder per data file format.
+ * </p>
+ */
+public class ArchiveSplitter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ArchiveSplitter.class);
+
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    // same block size as recommended for archives written by xz
+    private static final long XZ_BLOCK_SIZE = 4 * 1024 * 1024;
+
+    private final ArrayCache arrayCache;
+
+    private static class Entry {
+        private final String name;
+        private final long size;
+
+        private Entry(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+
+            Entry other = (Entry) obj;
+            return name.equals(other.name) && (size == other.size);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + Long.hashCode(size);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + size + " bytes)";
+        }
+    }
+
+    private static class Output {
+        private final File temporaryFile;
+        private final File targetFile;
+        private final XZOutputStream xzos;
+        private final TarArchiveOutputStream taos;
+        private final List<Entry> entries = new ArrayList<>();
+        private long blockBytes = 0;
+
+        private Output(File temporaryFile, File targetFile, XZOutputStream xzos) {
+            this.temporaryFile = temporaryFile;
+            this.targetFile = targetFile;
+            this.xzos = xzos;
+
+            taos = new TarArchiveOutputStream(xzos);
+            taos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            taos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+        }
+    }
+
+    /**
+     * Creates a new splitter.
+     *
+     * @param arrayCache provides arrays to XZ encoders and decoders
+     */
+    public ArchiveSplitter(ArrayCache arrayCache) {
+        this.arrayCache = arrayCache;
+    }
+
+    /**
+     * Lists all transitioned archives which hold all data file formats of a day
+     * and thus can be split.
+     *
+     * @param transitionedBasePath base directory of transitioned archives
+     * @return archives holding all data file formats of a day, ordered by path
+     */
+    public static List<File> findCombinedArchives(File transitionedBasePath) {
+        List<File> archives = new ArrayList<>();
+        for (File yearDirectory : listSorted(transitionedBasePath)) {
+            if (!yearDirectory.isDirectory()
+                || !Loader.PATTERN_DIRECTORY_YEAR.matcher(yearDirectory.getName()).matches()) {
+                continue;
+            }
+
+            for (File monthDirectory : listSorted(yearDirectory)) {
+                if (!monthDirectory.isDirectory()
+                    || !Loader.PATTERN_DIRECTORY_MONTH.matcher(monthDirectory.getName()).matches()) {
+                    continue;
+                }
+
+                for (File file : listSorted(monthDirectory)) {
+                    if (file.isFile() && Loader.PATTERN_ARCHIVE.matcher(file.getName()).matches()) {
+                        archives.add(file);
+                    }
+                }
+            }
+        }
+
+        return archives;
+    }
+
+    /**
+     * Lists all transitioned archives in both combined and per-format layout.
+     *
+     * @param transitionedBasePath base directory of transitioned archives
+     * @return all transitioned archives, ordered by path
+     */
+    public static List<File> findArchives(File transitionedBasePath) {
+        List<File> archives = findCombinedArchives(transitionedBasePath);
+
+        for (File yearDirectory : listSorted(transitionedBasePath)) {
+            if (!yearDirectory.isDirectory()
+                || !Loader.PATTERN_DIRECTORY_YEAR.matcher(yearDirectory.getName()).matches()) {
+                continue;
+            }
+
+            for (File monthDirectory : listSorted(yearDirectory)) {
+                if (!monthDirectory.isDirectory()
+                    || !Loader.PATTERN_DIRECTORY_MONTH.matcher(monthDirectory.getName()).matches()) {
+                    continue;
+                }
+
+                for (File formatDirectory : listSorted(monthDirectory)) {
+                    if (!formatDirectory.isDirectory()
+                        || !Validation.validateDataFileFormatName(formatDirectory.getName())) {
+                        continue;
+                    }
+
+                    for (File file : listSorted(formatDirectory)) {
+                        if (file.isFile() && Loader.PATTERN_ARCHIVE.matcher(file.getName()).matches()) {
+                            archives.add(file);
+                        }
+                    }
+                }
+            }
+        }
+
+        Collections.sort(archives);
+
+        return archives;
+    }
+
+    private static List<File> listSorted(File directory) {
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        Arrays.sort(files);
+        return Arrays.asList(files);
+    }
+
+    /**
+     * Splits the given archive into one archive per data file format, stored in
+     * sub-directories of the archive's directory named by format. Existing
+     * archives of the same name are replaced. The original archive is kept.
+     *
+     * @param archiveFile archive holding all data file formats of a day
+     * @return archives which have been written, ordered by format name
+     * @throws IOException if reading, writing or verification fails; no archive
+     *         has been replaced in that case
+     */
+    public List<File> split(File archiveFile) throws IOException {
+        LOGGER.debug("splitting {}", archiveFile);
+
+        File directory = archiveFile.getParentFile();
+        String archiveName = archiveFile.getName();
+        Map<String, Output> outputsByFormat = new LinkedHashMap<>();
+
+        try {
+            try (
+                InputStream is = new BufferedInputStream(new FileInputStream(archiveFile));
+                XZInputStream xzis = new XZInputStream(is, -1, arrayCache);
+                TarArchiveInputStream tais = new TarArchiveInputStream(xzis) //
+            ) {
+                TarArchiveEntry entry;
+                while ((entry = tais.getNextTarEntry()) != null) {
+                    String formatName = Loader.getArchiveEntryDataFileFormat(entry.getName());
+
+                    Output output = outputsByFormat.get(formatName);
+                    if (output == null) {
+                        output = createOutput(new File(new File(directory, formatName), archiveName));
+                        outputsByFormat.put(formatName, output);
+                    }
+
+                    copyEntry(entry, tais, output);
+                }
+            }
+
+            for (Output output : outputsByFormat.values()) {
+                output.taos.close();
+            }
+
+            for (Output output : outputsByFormat.values()) {
+                verify(output);
+            }
+
+            List<String> formatNames = new ArrayList<>(outputsByFormat.keySet());
+            Collections.sort(formatNames);
+
+            List<File> written = new ArrayList<>();
+            for (String formatName : formatNames) {
+                Output output = outputsByFormat.get(formatName);
+                Files.move(output.temporaryFile.toPath(), output.targetFile.toPath(),
+                    StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                written.add(output.targetFile);
+            }
+
+            LOGGER.debug("split {} into {}", archiveFile, written);
+
+            return written;
+        } finally {
+            for (Output output : outputsByFormat.values()) {
+                IOUtils.closeQuietly(output.taos);
+                Files.deleteIfExists(output.temporaryFile.toPath());
+            }
+        }
+    }
+
+    private Output createOutput(File targetFile) throws IOException {
+        File formatDirectory = targetFile.getParentFile();
+        if (!formatDirectory.isDirectory() && !formatDirectory.mkdir()) {
+            throw new IOException("failed to create directory " + formatDirectory);
+        }
+
+        File temporaryFile = new File(formatDirectory, targetFile.getName() + TEMPORARY_EXTENSION);
+        OutputStream os = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+        try {
+            return new Output(temporaryFile, targetFile, new XZOutputStream(os, new LZMA2Options(), arrayCache));
+        } catch (IOException ex) {
+            os.close();
+            throw ex;
+        }
+    }
+
+    private void copyEntry(TarArchiveEntry entry, InputStream is, Output output) throws IOException {
+        output.taos.putArchiveEntry(entry);
+        long copied = IOUtils.copy(is, output.taos);
+        output.taos.closeArchiveEntry();
+
+        if (copied != entry.getSize()) {
+            throw new IOException(
+                "entry " + entry.getName() + " has " + copied + " bytes, expected " + entry.getSize() //
+            );
+        }
+
+        output.entries.add(new Entry(entry.getName(), entry.getSize()));
+
+        // start a new XZ block from time to time so archives can be read from
+        // within instead of having to decompress everything from start
+        output.blockBytes += entry.getSize();
+        if (output.blockBytes >= XZ_BLOCK_SIZE) {
+            output.xzos.endBlock();
+            output.blockBytes = 0;
+        }
+    }
+
+    private void verify(Output output) throws IOException {
+        List<Entry> actual = new ArrayList<>();
+        try (
+            InputStream is = new BufferedInputStream(new FileInputStream(output.temporaryFile));
+            XZInputStream xzis = new XZInputStream(is, -1, arrayCache);
+            TarArchiveInputStream tais = new TarArchiveInputStream(xzis) //
+        ) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                long size = IOUtils.skip(tais, Long.MAX_VALUE);
+                actual.add(new Entry(entry.getName(), size));
+            }
+        }
+
+        if (!actual.equals(output.entries)) {
+            throw new IOException(
+                "verification of " + output.temporaryFile + " failed, expected " + output.entries.size()
+                    + " entries, found " + actual.size() //
+            );
+        }
+    }
+}
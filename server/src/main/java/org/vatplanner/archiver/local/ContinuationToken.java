@@ -0,0 +1,268 @@
+package org.vatplanner.archiver.local;
+
+import static org.vatplanner.archiver.local.Validation.validateDataFileFormatName;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.Base64;
+import java.util.Objects;
+
+/**
+ * Marks the position to resume loading at for the next page of a paginated
+ * request. Data files are returned ordered by fetch time and format name, so
+ * the last returned fetch time and format name describe the position
+ * unambiguously. Tokens are opaque to clients and transmitted as URL-safe
+ * Base64 strings.
+ *
+ * <p>
+ * If the last data file was loaded from a transitioned archive, the token
+ * additionally holds a hint where to resume reading that archive: the
+ * uncompressed offset of the first relevant TAR entry, together with the
+ * archive's length to detect replaced archives. If archives are stored per
+ * data file format, the hint also names the format of the archive. Archives
+ * covering less than a day are identified by their {@link ArchiveBucket}; hints
+ * for daily archives are encoded the same way as before sub-daily archives
+ * were supported. Hints are only an optimization; archives are read from the
+ * start if the hint cannot be used.
+ * </p>
+ *
+ * <p>
+ * Instances are immutable and thus thread-safe.
+ * </p>
+ */
+public class ContinuationToken {
+
+    private static final String VERSION = "v2";
+    private static final String SEPARATOR = "|";
+    private static final String NO_VALUE = "-";
+    private static final String NO_FORMAT = ""; // "-" is a valid format name
+    private static final int NUM_FIELDS = 7;
+
+    // tokens issued before archives could be stored per format lack the format
+    // of the hinted archive
+    private static final String VERSION_WITHOUT_ARCHIVE_FORMAT = "v1";
+    private static final int NUM_FIELDS_WITHOUT_ARCHIVE_FORMAT = 6;
+
+    private final Instant lastFetchTime;
+    private final String lastFormatName;
+    private final ArchiveBucket archiveBucket;
+    private final String archiveFormatName;
+    private final long archiveLength;
+    private final long archiveOffset;
+
+    /**
+     * Creates a new token without any archive position hint.
+     *
+     * @param lastFetchTime fetch time of last returned data file
+     * @param lastFormatName format name of last returned data file
+     */
+    public ContinuationToken(Instant lastFetchTime, String lastFormatName) {
+        this(lastFetchTime, lastFormatName, null, -1, -1);
+    }
+
+    /**
+     * Creates a new token with a position hint for an archive holding all data
+     * file formats of a day.
+     *
+     * @param lastFetchTime fetch time of last returned data file
+     * @param lastFormatName format name of last returned data file
+     * @param archiveDate date of transitioned archive to resume reading; null if
+     *        no hint is provided
+     * @param archiveLength length of transitioned archive file in bytes
+     * @param archiveOffset uncompressed offset of first TAR entry to read
+     */
+    public ContinuationToken(Instant lastFetchTime, String lastFormatName, LocalDate archiveDate, long archiveLength, long archiveOffset) {
+        this(lastFetchTime, lastFormatName, archiveDate, null, archiveLength, archiveOffset);
+    }
+
+    /**
+     * Creates a new token with an archive position hint.
+     *
+     * @param lastFetchTime fetch time of last returned data file
+     * @param lastFormatName format name of last returned data file
+     * @param archiveDate date of transitioned archive to resume reading; null if
+     *        no hint is provided
+     * @param archiveFormatName data file format of transitioned archive to
+     *        resume reading; null if the archive holds all formats of a day
+     * @param archiveLength length of transitioned archive file in bytes
+     * @param archiveOffset uncompressed offset of first TAR entry to read
+     */
+    public ContinuationToken(Instant lastFetchTime, String lastFormatName, LocalDate archiveDate, String archiveFormatName, long archiveLength, long archiveOffset) {
+        this(lastFetchTime, lastFormatName, (archiveDate != null) ? ArchiveBucket.ofDay(archiveDate) : null,
+            archiveFormatName, archiveLength, archiveOffset);
+    }
+
+    /**
+     * Creates a new token with a position hint for an archive of any bucket
+     * duration.
+     *
+     * @param lastFetchTime fetch time of last returned data file
+     * @param lastFormatName format name of last returned data file
+     * @param archiveBucket bucket of transitioned archive to resume reading; null
+     *        if no hint is provided
+     * @param archiveFormatName data file format of transitioned archive to
+     *        resume reading; null if the archive holds all formats of a bucket
+     * @param archiveLength length of transitioned archive file in bytes
+     * @param archiveOffset uncompressed offset of first TAR entry to read
+     */
+    ContinuationToken(Instant lastFetchTime, String lastFormatName, ArchiveBucket archiveBucket, String archiveFormatName, long archiveLength, long archiveOffset) {
+        this.lastFetchTime = Objects.requireNonNull(lastFetchTime);
+        this.lastFormatName = Objects.requireNonNull(lastFormatName);
+        this.archiveBucket = archiveBucket;
+        this.archiveFormatName = archiveFormatName;
+        this.archiveLength = archiveLength;
+        this.archiveOffset = archiveOffset;
+    }
+
+    /**
+     * Returns the fetch time of the last data file returned on the previous page.
+     *
+     * @return fetch time of last returned data file
+     */
+    public Instant getLastFetchTime() {
+        return lastFetchTime;
+    }
+
+    /**
+     * Returns the format name of the last data file returned on the previous
+     * page.
+     *
+     * @return format name of last returned data file
+     */
+    public String getLastFormatName() {
+        return lastFormatName;
+    }
+
+    /**
+     * Checks if the given data file has already been returned on a previous page,
+     * i.e. it is ordered at or before the position described by this token.
+     *
+     * @param fetchTime fetch time of data file
+     * @param formatName format name of data file
+     * @return true if already returned, false if it is ordered after this token
+     */
+    public boolean isPassed(Instant fetchTime, String formatName) {
+        int timeComparison = fetchTime.compareTo(lastFetchTime);
+        return (timeComparison < 0) || ((timeComparison == 0) && (formatName.compareTo(lastFormatName) <= 0));
+    }
+
+    /**
+     * Returns the uncompressed offset to resume reading the transitioned archive
+     * holding all data file formats of the given date at.
+     *
+     * @param date date of transitioned archive about to be read
+     * @param actualArchiveLength actual length of the archive file in bytes
+     * @return uncompressed offset of first TAR entry to read; 0 if the archive
+     *         has to be read from start
+     */
+    public long getArchiveOffset(LocalDate date, long actualArchiveLength) {
+        return getArchiveOffset(date, null, actualArchiveLength);
+    }
+
+    /**
+     * Returns the uncompressed offset to resume reading the given transitioned
+     * archive at.
+     *
+     * @param date date of transitioned archive about to be read
+     * @param formatName data file format of transitioned archive about to be
+     *        read; null if the archive holds all formats of a day
+     * @param actualArchiveLength actual length of the archive file in bytes
+     * @return uncompressed offset of first TAR entry to read; 0 if the archive
+     *         has to be read from start
+     */
+    public long getArchiveOffset(LocalDate date, String formatName, long actualArchiveLength) {
+        return getArchiveOffset(ArchiveBucket.ofDay(date), formatName, actualArchiveLength);
+    }
+
+    /**
+     * Returns the uncompressed offset to resume reading the given transitioned
+     * archive at.
+     *
+     * @param bucket bucket of transitioned archive about to be read
+     * @param formatName data file format of transitioned archive about to be
+     *        read; null if the archive holds all formats of a bucket
+     * @param actualArchiveLength actual length of the archive file in bytes
+     * @return uncompressed offset of first TAR entry to read; 0 if the archive
+     *         has to be read from start
+     */
+    long getArchiveOffset(ArchiveBucket bucket, String formatName, long actualArchiveLength) {
+        if ((archiveBucket == null) || !archiveBucket.equals(bucket) || !Objects.equals(archiveFormatName, formatName)
+            || (archiveLength != actualArchiveLength)) {
+            return 0;
+        }
+
+        return Long.max(0, archiveOffset);
+    }
+
+    /**
+     * Encodes this token to an opaque string for transmission to clients.
+     *
+     * @return encoded token
+     */
+    public String encode() {
+        String plain = String.join(
+            SEPARATOR,
+            VERSION,
+            Long.toString(lastFetchTime.getEpochSecond()),
+            lastFormatName,
+            (archiveBucket != null) ? archiveBucket.encode() : NO_VALUE,
+            (archiveFormatName != null) ? archiveFormatName : NO_FORMAT,
+            Long.toString(archiveLength),
+            Long.toString(archiveOffset) //
+        );
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Decodes a token previously encoded by {@link #encode()}.
+     *
+     * @param encoded encoded token
+     * @return decoded token
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static ContinuationToken decode(String encoded) {
+        String plain;
+        try {
+            plain = new String(Base64.getUrlDecoder().decode(encoded), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException ex) {
+            throw new IllegalArgumentException("Malformed continuation token: \"" + encoded + "\"", ex);
+        }
+
+        String[] fields = plain.split("\\" + SEPARATOR, -1);
+        if ((fields.length == NUM_FIELDS_WITHOUT_ARCHIVE_FORMAT) && VERSION_WITHOUT_ARCHIVE_FORMAT.equals(fields[0])) {
+            fields = new String[] { VERSION, fields[1], fields[2], fields[3], NO_FORMAT, fields[4], fields[5] };
+        }
+
+        if ((fields.length != NUM_FIELDS) || !VERSION.equals(fields[0])) {
+            throw new IllegalArgumentException("Unsupported continuation token: \"" + encoded + "\"");
+        }
+
+        String formatName = fields[2];
+        String archiveFormatName = NO_FORMAT.equals(fields[4]) ? null : fields[4];
+        if (!validateDataFileFormatName(formatName)
+            || ((archiveFormatName != null) && !validateDataFileFormatName(archiveFormatName))) {
+            throw new IllegalArgumentException("Illegal data file format in continuation token: \"" + encoded + "\"");
+        }
+
+        try {
+            return new ContinuationToken(
+                Instant.ofEpochSecond(Long.parseLong(fields[1])),
+                formatName,
+                NO_VALUE.equals(fields[3]) ? null : ArchiveBucket.parse(fields[3]),
+                archiveFormatName,
+                Long.parseLong(fields[5]),
+                Long.parseLong(fields[6]) //
+            );
+        } catch (RuntimeException ex) {
+            throw new IllegalArgumentException("Malformed continuation token: \"" + encoded + "\"", ex);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ContinuationToken(" + lastFetchTime + ", " + lastFormatName + ", " + archiveBucket
+            + ((archiveFormatName != null) ? "/" + archiveFormatName : "") + "@" + archiveOffset + ")";
+    }
+}
@@ -0,0 +1,47 @@
+package org.vatplanner.archiver.local;
+
+import java.util.List;
+
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * A single page of data files loaded for a paginated request.
+ */
+public class DataFilePage {
+
+    private final List<RawDataFile> dataFiles;
+    private final ContinuationToken nextContinuationToken;
+
+    /**
+     * Creates a new page.
+     *
+     * @param dataFiles data files of this page (ascending order)
+     * @param nextContinuationToken token to request the next page with; null if
+     *        there are no more pages
+     */
+    public DataFilePage(List<RawDataFile> dataFiles, ContinuationToken nextContinuationToken) {
+        this.dataFiles = dataFiles;
+        this.nextContinuationToken = nextContinuationToken;
+    }
+
+    /**
+     * Returns the data files of this page, ordered by fetch time and format name.
+     *
+     * @return data files of this page (ascending order)
+     */
+    public List<RawDataFile> getDataFiles() {
+        return dataFiles;
+    }
+
+    /**
+     * Returns the token to request the next page with. A token is provided
+     * whenever the page has been filled up to the file limit, so the next page
+     * may turn out to be empty.
+     *
+     * @return token to request the next page with; null if there are no more
+     *         pages
+     */
+    public ContinuationToken getNextContinuationToken() {
+        return nextContinuationToken;
+    }
+}
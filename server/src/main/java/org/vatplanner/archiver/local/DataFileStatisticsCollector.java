@@ -0,0 +1,88 @@
+package org.vatplanner.archiver.local;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.vatplanner.archiver.common.DataFileStatistics;
+
+/**
+ * Aggregates {@link DataFileStatistics} per UTC day and data file format from
+ * single stored files. Files sharing the same fetch time and format (actual
+ * data and meta data) are counted as one data file.
+ *
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class DataFileStatisticsCollector {
+
+    private final Map<String, Accumulator> accumulators = new HashMap<>();
+
+    /**
+     * Adds a single stored file to the statistics.
+     *
+     * @param formatName data file format name
+     * @param fetchTime fetch time
+     * @param fileType file type
+     * @param size size of stored file in bytes
+     */
+    public void add(String formatName, Instant fetchTime, FetchedFileType fileType, long size) {
+        LocalDate date = fetchTime.atOffset(ZoneOffset.UTC).toLocalDate();
+        Accumulator accumulator = accumulators.computeIfAbsent(
+            date.toString() + " " + formatName,
+            x -> new Accumulator(date, formatName) //
+        );
+
+        accumulator.fetchTimes.add(fetchTime);
+
+        if (fileType == FetchedFileType.RAW_VATSIM_DATA_FILE) {
+            accumulator.totalDataSize += size;
+        }
+    }
+
+    /**
+     * Returns all collected statistics ordered by date and format name.
+     *
+     * @return collected statistics ordered by date and format name
+     */
+    public List<DataFileStatistics> getStatistics() {
+        List<DataFileStatistics> out = new ArrayList<>();
+
+        for (Accumulator accumulator : accumulators.values()) {
+            out.add(
+                new DataFileStatistics(accumulator.date, accumulator.formatName)
+                    .setNumberOfFiles(accumulator.fetchTimes.size())
+                    .setTotalDataSize(accumulator.totalDataSize)
+                    .setEarliestFetchTime(accumulator.fetchTimes.stream().min(Comparator.naturalOrder()).orElse(null))
+                    .setLatestFetchTime(accumulator.fetchTimes.stream().max(Comparator.naturalOrder()).orElse(null)) //
+            );
+        }
+
+        out.sort(
+            Comparator.comparing(DataFileStatistics::getDate)
+                .thenComparing(DataFileStatistics::getFormatName) //
+        );
+
+        return out;
+    }
+
+    private static class Accumulator {
+        private final LocalDate date;
+        private final String formatName;
+        private final Set<Instant> fetchTimes = new HashSet<>();
+        private long totalDataSize = 0;
+
+        private Accumulator(LocalDate date, String formatName) {
+            this.date = date;
+            this.formatName = formatName;
+        }
+    }
+}
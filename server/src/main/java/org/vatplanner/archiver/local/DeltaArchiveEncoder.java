@@ -0,0 +1,360 @@
+package org.vatplanner.archiver.local;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+import org.vatplanner.archiver.common.BufferPool;
+
+/**
+ * Rewrites transitioned archives to store data files as deltas to the previous
+ * data file of the same format (see {@link SnapshotDelta}). A full keyframe is
+ * stored every N data files per format, so reading a data file requires at
+ * most N - 1 deltas to be applied. Larger intervals result in smaller archives
+ * but need more data to be decompressed and reconstructed when only a short
+ * time range is read.
+ *
+ * <p>
+ * Entry names, order and meta data files remain unchanged, so delta archives
+ * can be read by the {@link Loader} just like regular archives and can still
+ * be split by {@link ArchiveSplitter}. Delta chains are only continued while
+ * fetch times of a format increase; other data files start a new chain.
+ * Archives which already hold deltas are decoded first, so the keyframe
+ * interval can be changed by encoding them again; an interval of 1 restores
+ * regular archives.
+ * </p>
+ *
+ * <p>
+ * As with {@link ArchiveSplitter}, the new archive is written to a temporary
+ * file and verified to reconstruct exactly the original data files before it
+ * replaces the original archive. Methods are thread-safe and multiple archives
+ * may be encoded concurrently.
+ * </p>
+ */
+public class DeltaArchiveEncoder {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DeltaArchiveEncoder.class);
+
+    private static final String TEMPORARY_EXTENSION = ".tmp";
+
+    // same block size as recommended for archives written by xz
+    private static final long XZ_BLOCK_SIZE = 4 * 1024 * 1024;
+    private static final long XZ_MINIMUM_KEYFRAME_BLOCK_SIZE = 256 * 1024;
+
+    private final ArrayCache arrayCache;
+    private final int keyframeInterval;
+
+    // buffers are only used for reconstruction, so they do not need to be retained
+    private final BufferPool bufferPool = new BufferPool(0);
+
+    private static class Entry {
+        private final String name;
+        private final long size;
+        private final long crc;
+
+        private Entry(String name, long size, long crc) {
+            this.name = name;
+            this.size = size;
+            this.crc = crc;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Entry)) {
+                return false;
+            }
+
+            Entry other = (Entry) obj;
+            return name.equals(other.name) && (size == other.size) && (crc == other.crc);
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode() * 31 + Long.hashCode(crc);
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + size + " bytes)";
+        }
+    }
+
+    private static class Previous {
+        private byte[] data;
+        private long fetchEpochSecond;
+        private int numSinceKeyframe;
+    }
+
+    /**
+     * Creates a new encoder.
+     *
+     * @param arrayCache provides arrays to XZ encoders and decoders
+     * @param keyframeInterval number of data files per format after which a new
+     *        keyframe is stored; 1 to not store any deltas
+     * @throws IllegalArgumentException if interval is less than 1
+     */
+    public DeltaArchiveEncoder(ArrayCache arrayCache, int keyframeInterval) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("keyframe interval must be at least 1, got " + keyframeInterval);
+        }
+
+        this.arrayCache = arrayCache;
+        this.keyframeInterval = keyframeInterval;
+    }
+
+    /**
+     * Checks if the given archive holds any deltas. Only entries up to the
+     * first data file need to be read.
+     *
+     * @param archiveFile archive to check
+     * @return true if data files are stored as deltas, false if not
+     * @throws IOException
+     */
+    public boolean isEncoded(File archiveFile) throws IOException {
+        try (
+            InputStream is = new BufferedInputStream(new FileInputStream(archiveFile));
+            XZInputStream xzis = new XZInputStream(is, -1, arrayCache);
+            TarArchiveInputStream tais = new TarArchiveInputStream(xzis) //
+        ) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                if (FetchedFileType.byFileName(entry.getName()) == FetchedFileType.RAW_VATSIM_DATA_FILE) {
+                    return SnapshotDelta.Kind.of(entry) != SnapshotDelta.Kind.PLAIN;
+                }
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Encodes the given archive, replacing the original archive.
+     *
+     * @param archiveFile archive to encode
+     * @throws IOException if reading, writing or verification fails; the
+     *         original archive has not been replaced in that case
+     */
+    public void encode(File archiveFile) throws IOException {
+        LOGGER.debug("encoding {} with keyframe interval {}", archiveFile, keyframeInterval);
+
+        File temporaryFile = new File(archiveFile.getParentFile(), archiveFile.getName() + TEMPORARY_EXTENSION);
+        try {
+            List<Entry> expected = write(archiveFile, temporaryFile);
+            List<Entry> actual = read(temporaryFile);
+            if (!actual.equals(expected)) {
+                throw new IOException(
+                    "verification of " + temporaryFile + " failed, expected " + expected.size()
+                        + " entries, found " + actual.size() //
+                );
+            }
+
+            Files.move(temporaryFile.toPath(), archiveFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporaryFile.toPath());
+        }
+    }
+
+    private List<Entry> write(File archiveFile, File temporaryFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Map<String, SnapshotChain> inputChains = new HashMap<>();
+        Map<String, Previous> previousByFormat = new HashMap<>();
+
+        try (
+            InputStream is = new BufferedInputStream(new FileInputStream(archiveFile));
+            XZInputStream xzis = new XZInputStream(is, -1, arrayCache);
+            TarArchiveInputStream tais = new TarArchiveInputStream(xzis);
+            OutputStream os = new BufferedOutputStream(new FileOutputStream(temporaryFile));
+            XZOutputStream xzos = new XZOutputStream(os, new LZMA2Options(), arrayCache);
+            TarArchiveOutputStream taos = new TarArchiveOutputStream(xzos) //
+        ) {
+            taos.setLongFileMode(TarArchiveOutputStream.LONGFILE_POSIX);
+            taos.setBigNumberMode(TarArchiveOutputStream.BIGNUMBER_POSIX);
+
+            long blockBytes = 0;
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                String name = entry.getName();
+                byte[] data = readData(tais, entry, inputChains);
+
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                entries.add(new Entry(name, data.length, crc.getValue()));
+
+                TarArchiveEntry outputEntry = createOutputEntry(entry);
+
+                long fetchEpochSecond = FetchedFileNames.parseFetchEpochSecond(name);
+                boolean isChainable = (keyframeInterval > 1)
+                    && (fetchEpochSecond != FetchedFileNames.NO_FETCH_TIME)
+                    && (FetchedFileType.byFileName(name) == FetchedFileType.RAW_VATSIM_DATA_FILE);
+                if (isChainable) {
+                    data = encodeData(outputEntry, data, fetchEpochSecond,
+                        previousByFormat.computeIfAbsent(Loader.getArchiveEntryDataFileFormat(name), x -> new Previous()));
+                }
+
+                // start a new XZ block from time to time so archives can be read
+                // from within instead of having to decompress everything from
+                // start; reading always starts at keyframes, so blocks preferably
+                // start right before them unless they would get too small to
+                // compress well
+                boolean isKeyframe = SnapshotDelta.Kind.of(outputEntry) == SnapshotDelta.Kind.KEYFRAME;
+                if ((isKeyframe && (blockBytes >= XZ_MINIMUM_KEYFRAME_BLOCK_SIZE)) || (blockBytes >= XZ_BLOCK_SIZE)) {
+                    xzos.endBlock();
+                    blockBytes = 0;
+                }
+
+                outputEntry.setSize(data.length);
+                taos.putArchiveEntry(outputEntry);
+                taos.write(data);
+                taos.closeArchiveEntry();
+                blockBytes += data.length;
+            }
+        } finally {
+            for (SnapshotChain chain : inputChains.values()) {
+                chain.clear();
+            }
+        }
+
+        return entries;
+    }
+
+    private byte[] encodeData(TarArchiveEntry entry, byte[] data, long fetchEpochSecond, Previous previous) {
+        byte[] encoded = null;
+        boolean isDeltaAllowed = (previous.data != null)
+            && (previous.numSinceKeyframe < keyframeInterval)
+            && (fetchEpochSecond > previous.fetchEpochSecond);
+        if (isDeltaAllowed) {
+            encoded = SnapshotDelta.encode(previous.data, previous.data.length, data, data.length);
+        }
+
+        previous.fetchEpochSecond = fetchEpochSecond;
+        previous.data = data;
+
+        // deltas of completely changed data files may exceed the original size
+        if ((encoded == null) || (encoded.length >= data.length)) {
+            setSnapshotHeaders(entry, SnapshotDelta.Kind.KEYFRAME, data.length);
+            previous.numSinceKeyframe = 1;
+            return data;
+        }
+
+        setSnapshotHeaders(entry, SnapshotDelta.Kind.DELTA, data.length);
+        previous.numSinceKeyframe++;
+        return encoded;
+    }
+
+    /**
+     * Creates a copy of the given entry to be written to the new archive. Any
+     * extended headers are kept except for those describing delta chains.
+     *
+     * @param entry entry read from original archive
+     * @return entry to write, size still needs to be set
+     */
+    private TarArchiveEntry createOutputEntry(TarArchiveEntry entry) {
+        TarArchiveEntry outputEntry = new TarArchiveEntry(entry.getName());
+        outputEntry.setModTime(entry.getModTime());
+        outputEntry.setMode(entry.getMode());
+        outputEntry.setUserId(entry.getLongUserId());
+        outputEntry.setGroupId(entry.getLongGroupId());
+        outputEntry.setUserName(entry.getUserName());
+        outputEntry.setGroupName(entry.getGroupName());
+
+        for (Map.Entry<String, String> header : entry.getExtraPaxHeaders().entrySet()) {
+            String key = header.getKey();
+            if (!key.equals(SnapshotDelta.PAX_HEADER_SNAPSHOT) && !key.equals(SnapshotDelta.PAX_HEADER_SIZE)) {
+                outputEntry.addPaxHeader(key, header.getValue());
+            }
+        }
+
+        return outputEntry;
+    }
+
+    private void setSnapshotHeaders(TarArchiveEntry entry, SnapshotDelta.Kind kind, long reconstructedSize) {
+        entry.addPaxHeader(SnapshotDelta.PAX_HEADER_SNAPSHOT, kind.getHeaderValue());
+
+        if (kind == SnapshotDelta.Kind.DELTA) {
+            entry.addPaxHeader(SnapshotDelta.PAX_HEADER_SIZE, Long.toString(reconstructedSize));
+        }
+    }
+
+    private List<Entry> read(File archiveFile) throws IOException {
+        List<Entry> entries = new ArrayList<>();
+        Map<String, SnapshotChain> chains = new HashMap<>();
+
+        try (
+            InputStream is = new BufferedInputStream(new FileInputStream(archiveFile));
+            XZInputStream xzis = new XZInputStream(is, -1, arrayCache);
+            TarArchiveInputStream tais = new TarArchiveInputStream(xzis) //
+        ) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                byte[] data = readData(tais, entry, chains);
+                if (data.length != SnapshotDelta.getReconstructedSize(entry)) {
+                    throw new IOException("size of " + entry.getName() + " is not recorded correctly");
+                }
+
+                CRC32 crc = new CRC32();
+                crc.update(data);
+                entries.add(new Entry(entry.getName(), data.length, crc.getValue()));
+            }
+        } finally {
+            for (SnapshotChain chain : chains.values()) {
+                chain.clear();
+            }
+        }
+
+        return entries;
+    }
+
+    /**
+     * Reads the data of the current entry, reconstructing it if stored as part
+     * of a delta chain.
+     *
+     * @param tais archive to read from
+     * @param entry current entry
+     * @param chains chains of data files by format name
+     * @return data of current entry, of exact size
+     * @throws IOException
+     */
+    private byte[] readData(TarArchiveInputStream tais, TarArchiveEntry entry, Map<String, SnapshotChain> chains) throws IOException {
+        byte[] data = IOUtils.toByteArray(tais);
+        if (data.length != entry.getSize()) {
+            throw new IOException(
+                "entry " + entry.getName() + " has " + data.length + " bytes, expected " + entry.getSize() //
+            );
+        }
+
+        SnapshotDelta.Kind kind = SnapshotDelta.Kind.of(entry);
+        if (kind == SnapshotDelta.Kind.PLAIN) {
+            return data;
+        }
+
+        String formatName = Loader.getArchiveEntryDataFileFormat(entry.getName());
+        SnapshotChain chain = chains.computeIfAbsent(formatName, x -> new SnapshotChain(bufferPool));
+        chain.advance(kind, data, data.length);
+
+        return Arrays.copyOf(chain.getSnapshot(), chain.getSnapshotLength());
+    }
+}
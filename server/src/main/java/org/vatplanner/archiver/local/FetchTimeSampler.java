@@ -0,0 +1,98 @@
+package org.vatplanner.archiver.local;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Downsamples data files by selecting at most one fetch time per data file
+ * format and time bucket. Buckets have the length of the configured interval
+ * and are aligned to the given origin (usually the start of the requested time
+ * range). Within each bucket the file closest to the start of the bucket (i.e.
+ * the earliest fetch time) is selected.
+ *
+ * <p>
+ * Selection can be decided solely by fetch times and format names, so it is
+ * meant to be applied before any file content is read. Files should be offered
+ * in ascending order of fetch time; if they are offered out of order, earlier
+ * fetch times replace previous candidates and {@link #isSelected(String, Instant)}
+ * has to be checked once all files have been offered.
+ * </p>
+ *
+ * <p>
+ * Instances are not thread-safe.
+ * </p>
+ */
+public class FetchTimeSampler {
+
+    private final Instant origin;
+    private final long intervalMillis;
+
+    private final Map<String, Instant> selectedByBucket = new HashMap<>();
+
+    /**
+     * Creates a new sampler.
+     *
+     * @param origin timestamp to align buckets to
+     * @param interval length of each bucket; must be at least one millisecond
+     * @throws IllegalArgumentException if interval is too short
+     */
+    public FetchTimeSampler(Instant origin, Duration interval) {
+        this.origin = origin;
+        this.intervalMillis = interval.toMillis();
+
+        if (intervalMillis <= 0) {
+            throw new IllegalArgumentException("sample interval must be at least 1ms, got " + interval);
+        }
+    }
+
+    /**
+     * Offers the given fetch time for selection. Multiple files sharing the same
+     * format and fetch time (e.g. meta data and actual data) are accepted alike.
+     *
+     * @param formatName data file format name
+     * @param fetchTime fetch time to offer
+     * @return true if the fetch time is currently selected for its bucket and
+     *         should be loaded, false if it can be skipped
+     */
+    public boolean offer(String formatName, Instant fetchTime) {
+        String key = getBucketKey(formatName, fetchTime);
+
+        Instant previous = selectedByBucket.get(key);
+        if ((previous != null) && !fetchTime.isBefore(previous)) {
+            return fetchTime.equals(previous);
+        }
+
+        selectedByBucket.put(key, fetchTime);
+        return true;
+    }
+
+    /**
+     * Checks if the given fetch time is the final selection for its bucket. Only
+     * meaningful after all candidates have been offered.
+     *
+     * @param formatName data file format name
+     * @param fetchTime fetch time to check
+     * @return true if selected, false if the file should be discarded
+     */
+    public boolean isSelected(String formatName, Instant fetchTime) {
+        return fetchTime.equals(selectedByBucket.get(getBucketKey(formatName, fetchTime)));
+    }
+
+    /**
+     * Returns the start of the bucket the given fetch time falls into.
+     *
+     * @param fetchTime fetch time to locate bucket for
+     * @return start of bucket holding given fetch time
+     */
+    public Instant getBucketStart(Instant fetchTime) {
+        long bucket = Math.floorDiv(Duration.between(origin, fetchTime).toMillis(), intervalMillis);
+        return origin.plusMillis(bucket * intervalMillis);
+    }
+
+    private String getBucketKey(String formatName, Instant fetchTime) {
+        long bucket = Math.floorDiv(Duration.between(origin, fetchTime).toMillis(), intervalMillis);
+        return bucket + " " + formatName;
+    }
+}
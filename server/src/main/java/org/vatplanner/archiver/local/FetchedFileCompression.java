@@ -0,0 +1,164 @@
+package org.vatplanner.archiver.local;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorInputStream;
+
+/**
+ * Identifies how fetched files are compressed at rest. Compressed files carry
+ * an additional extension after their regular name, e.g.
+ * {@code 20210102T111009Z_vatsim-data.json.lz4}.
+ *
+ * <p>
+ * LZ4 (frame format as written by the {@code lz4} command line tool) is
+ * cheapest to decompress. Gzip is slower to decompress but holds a raw deflate
+ * stream which can be used as is by packers writing deflate compressed entries.
+ * </p>
+ */
+public enum FetchedFileCompression {
+    NONE(""),
+    GZIP(".gz"),
+    LZ4(".lz4");
+
+    // values() copies the array on each call
+    private static final FetchedFileCompression[] VALUES = values();
+
+    private static final int GZIP_TRAILER_LENGTH = 8;
+
+    private static final int LZ4_FRAME_MAGIC = 0x184D2204;
+    private static final int LZ4_FLAG_CONTENT_SIZE = 0x08;
+
+    // magic (4 bytes), flags, block descriptor, content size (8 bytes)
+    private static final int LZ4_HEADER_LENGTH_WITH_CONTENT_SIZE = 14;
+
+    private final String extension;
+
+    private FetchedFileCompression(String extension) {
+        this.extension = extension;
+    }
+
+    /**
+     * Returns the extension appended to names of files compressed this way.
+     *
+     * @return file name extension including leading dot; empty if uncompressed
+     */
+    public String getExtension() {
+        return extension;
+    }
+
+    /**
+     * Determines the compression of a file by its name.
+     *
+     * @param fileName name of file
+     * @return compression of file; {@link #NONE} if not compressed
+     */
+    public static FetchedFileCompression byFileName(CharSequence fileName) {
+        for (FetchedFileCompression compression : VALUES) {
+            if ((compression != NONE) && FetchedFileNames.endsWith(fileName, compression.extension)) {
+                return compression;
+            }
+        }
+
+        return NONE;
+    }
+
+    /**
+     * Wraps the given stream to decompress data.
+     *
+     * @param is stream providing compressed data
+     * @return stream providing decompressed data; given stream if not compressed
+     * @throws IOException
+     */
+    public InputStream decompress(InputStream is) throws IOException {
+        switch (this) {
+            case GZIP:
+                return new GZIPInputStream(is);
+
+            case LZ4:
+                return new FramedLZ4CompressorInputStream(is);
+
+            default:
+                return is;
+        }
+    }
+
+    /**
+     * Returns the size of the given compressed data once decompressed, if
+     * recorded by the compression format. Gzip records the size (modulo 4 GB)
+     * in its trailer (of the last member only, files are expected to consist of
+     * a single member), LZ4 frames only if written with content size (e.g.
+     * {@code lz4 --content-size}).
+     *
+     * @param data compressed data
+     * @param length length of compressed data
+     * @return size of decompressed data in bytes; -1 if unknown
+     */
+    public long getDecompressedSize(byte[] data, int length) {
+        switch (this) {
+            case NONE:
+                return length;
+
+            case GZIP:
+                if (length < GZIP_TRAILER_LENGTH) {
+                    return -1;
+                }
+                return readIntLittleEndian(data, length - 4) & 0xFFFFFFFFL;
+
+            case LZ4:
+                if ((length < LZ4_HEADER_LENGTH_WITH_CONTENT_SIZE) || (readIntLittleEndian(data, 0) != LZ4_FRAME_MAGIC)
+                    || ((data[4] & LZ4_FLAG_CONTENT_SIZE) == 0)) {
+                    return -1;
+                }
+                return (readIntLittleEndian(data, 6) & 0xFFFFFFFFL) | (((long) readIntLittleEndian(data, 10)) << 32);
+
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Returns the size of the given file once decompressed, if recorded by the
+     * compression format (see {@link #getDecompressedSize(byte[], int)}). Only
+     * the header or trailer of the file is read.
+     *
+     * @param file file to check
+     * @return size of decompressed data in bytes; -1 if unknown
+     * @throws IOException
+     */
+    public long getDecompressedSize(File file) throws IOException {
+        if (this == NONE) {
+            return file.length();
+        }
+
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            long fileLength = raf.length();
+            byte[] buffer;
+            if (this == GZIP) {
+                buffer = new byte[GZIP_TRAILER_LENGTH];
+                if (fileLength < buffer.length) {
+                    return -1;
+                }
+                raf.seek(fileLength - buffer.length);
+                raf.readFully(buffer);
+            } else {
+                buffer = new byte[(int) Long.min(LZ4_HEADER_LENGTH_WITH_CONTENT_SIZE, fileLength)];
+                raf.readFully(buffer);
+            }
+
+            // gzip sizes are read from the end of the buffer, so the trailer is
+            // sufficient
+            return getDecompressedSize(buffer, buffer.length);
+        }
+    }
+
+    private static int readIntLittleEndian(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+            | ((data[offset + 1] & 0xFF) << 8)
+            | ((data[offset + 2] & 0xFF) << 16)
+            | ((data[offset + 3] & 0xFF) << 24);
+    }
+}
@@ -0,0 +1,310 @@
+package org.vatplanner.archiver.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.zip.CRC32;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
+
+import com.github.cliftonlabs.json_simple.JsonException;
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+/**
+ * Decodes fetched files as stored at rest (transitional files or entries of
+ * transitioned archives) to {@link RawDataFile}s. All buffers are rented from
+ * and returned to a shared {@link BufferPool}.
+ */
+class FetchedFileDecoder {
+
+    private static final Charset CHARACTER_SET_META_DATA = StandardCharsets.UTF_8;
+
+    private final BufferPool bufferPool;
+
+    /**
+     * Creates a new decoder.
+     *
+     * @param bufferPool pool to rent data buffers from
+     */
+    FetchedFileDecoder(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Creates a new, empty chain to reconstruct data files of delta archives
+     * with. The chain shares the {@link #bufferPool} of this decoder, so buffers
+     * returned by {@link #read(InputStream, int)} can be handed to it.
+     *
+     * @return new snapshot chain
+     */
+    SnapshotChain createSnapshotChain() {
+        return new SnapshotChain(bufferPool);
+    }
+
+    /**
+     * Reads the given number of bytes from a stream into a buffer rented from
+     * {@link #bufferPool}. The buffer is returned to the pool if reading fails.
+     *
+     * @param is stream to read from
+     * @param length number of bytes to read
+     * @return buffer holding read data at start, may be longer than data
+     * @throws EOFException if the stream ends before all bytes have been read
+     * @throws IOException
+     */
+    byte[] read(InputStream is, int length) throws IOException {
+        byte[] buffer = bufferPool.rent(length);
+        try {
+            int read = IOUtils.readFully(is, buffer, 0, length);
+            if (read < length) {
+                throw new EOFException("stream ended after " + read + " of " + length + " bytes");
+            }
+        } catch (IOException | RuntimeException ex) {
+            bufferPool.release(buffer);
+            throw ex;
+        }
+
+        return buffer;
+    }
+
+    /**
+     * Decodes a fetched file of given type onto the given {@link RawDataFile}.
+     *
+     * @param rawDataFile file to set data or meta data on
+     * @param fileType type of fetched file
+     * @param compression compression of fetched file at rest
+     * @param buffer holds (compressed) content at start, rented from
+     *        {@link #bufferPool}; ownership is taken
+     * @param length length of (compressed) content
+     * @return true if decoded, false if file type is not supported
+     * @throws IOException if content cannot be decompressed or parsed
+     */
+    boolean decode(RawDataFile rawDataFile, FetchedFileType fileType, FetchedFileCompression compression, byte[] buffer, int length) throws IOException {
+        switch (fileType) {
+            case META_DATA:
+                ByteBuffer metaData = decompress(compression, buffer, length);
+                try {
+                    loadMetaData(rawDataFile, metaData.array(), metaData.limit());
+                } finally {
+                    bufferPool.release(metaData.array());
+                }
+                return true;
+
+            case RAW_VATSIM_DATA_FILE:
+                setData(rawDataFile, compression, buffer, length);
+                return true;
+
+            default:
+                bufferPool.release(buffer);
+                return false;
+        }
+    }
+
+    /**
+     * Sets data of a fetched file, decompressing it if it has been compressed at
+     * rest. The deflate stream of single-member gzip files is kept as well, so
+     * packers using "deflate" can store it without compressing again.
+     *
+     * @param rawDataFile file to set data on
+     * @param compression compression of data
+     * @param buffer holds (compressed) data at start, rented from
+     *        {@link #bufferPool}; ownership is taken
+     * @param length length of (compressed) data
+     * @throws IOException if data cannot be decompressed
+     */
+    private void setData(RawDataFile rawDataFile, FetchedFileCompression compression, byte[] buffer, int length) throws IOException {
+        GzipMember gzipMember;
+        ByteBuffer data;
+        try {
+            gzipMember = (compression == FetchedFileCompression.GZIP) ? GzipMember.parse(buffer, length) : null;
+            data = (gzipMember != null) ? inflate(gzipMember, buffer) : null;
+        } catch (IOException | RuntimeException ex) {
+            bufferPool.release(buffer);
+            throw ex;
+        }
+
+        if (data == null) {
+            data = decompress(compression, buffer, length);
+            rawDataFile.setData(data.array(), data.limit(), bufferPool);
+            return;
+        }
+
+        // buffers always hold data from start
+        System.arraycopy(buffer, gzipMember.getDeflateOffset(), buffer, 0, gzipMember.getDeflateLength());
+
+        rawDataFile.setData(data.array(), data.limit(), bufferPool);
+        rawDataFile.setDeflatedData(buffer, gzipMember.getDeflateLength(), gzipMember.getCrc32(), bufferPool);
+    }
+
+    /**
+     * Decompresses data of a file compressed at rest into a buffer rented from
+     * {@link #bufferPool}. The given buffer is returned to the pool.
+     *
+     * @param compression compression of data
+     * @param buffer holds compressed data at start
+     * @param length length of compressed data
+     * @return decompressed data from start of backing array up to limit; backing
+     *         array is rented from {@link #bufferPool}; given buffer if not
+     *         compressed
+     * @throws IOException if data cannot be decompressed
+     */
+    private ByteBuffer decompress(FetchedFileCompression compression, byte[] buffer, int length) throws IOException {
+        if (compression == FetchedFileCompression.NONE) {
+            return ByteBuffer.wrap(buffer, 0, length);
+        }
+
+        Tracing.currentSpan().addToAttribute("payloadsDecompressed", 1);
+
+        // size is only a hint; if unknown, typical JSON compression ratios are
+        // assumed to avoid growing too often
+        long expectedSize = compression.getDecompressedSize(buffer, length);
+        int initialSize = ((expectedSize >= 0) && (expectedSize < Integer.MAX_VALUE))
+            ? (int) expectedSize
+            : length * 8;
+
+        try (InputStream is = compression.decompress(new ByteArrayInputStream(buffer, 0, length))) {
+            return readFully(is, initialSize);
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Inflates the deflate stream of a gzip file consisting of a single member
+     * into a buffer rented from {@link #bufferPool}. Checksum and size are
+     * verified against the trailer. The given buffer is left untouched.
+     *
+     * @param gzipMember header and trailer information of gzip data
+     * @param buffer holds gzip data at start
+     * @return inflated data from start of backing array up to limit; backing
+     *         array is rented from {@link #bufferPool}; null if further members
+     *         follow the deflate stream
+     * @throws IOException if data cannot be inflated or is corrupt
+     */
+    private ByteBuffer inflate(GzipMember gzipMember, byte[] buffer) throws IOException {
+        Tracing.currentSpan().addToAttribute("payloadsDecompressed", 1);
+
+        Inflater inflater = new Inflater(true);
+        try {
+            ByteArrayInputStream bais = new ByteArrayInputStream(
+                buffer, gzipMember.getDeflateOffset(), gzipMember.getDeflateLength() //
+            );
+            ByteBuffer data = readFully(
+                new InflaterInputStream(bais, inflater),
+                (int) Long.min(gzipMember.getSizeModulo(), Integer.MAX_VALUE / 2) //
+            );
+
+            if ((inflater.getRemaining() > 0) || (bais.available() > 0)) {
+                bufferPool.release(data.array());
+                return null;
+            }
+
+            CRC32 crc = new CRC32();
+            crc.update(data.array(), 0, data.limit());
+            if ((crc.getValue() != gzipMember.getCrc32()) || ((data.limit() & 0xFFFFFFFFL) != gzipMember.getSizeModulo())) {
+                bufferPool.release(data.array());
+                throw new IOException("gzip data is corrupt (checksum or size mismatch)");
+            }
+
+            return data;
+        } finally {
+            inflater.end();
+        }
+    }
+
+    /**
+     * Reads the given stream until it ends into a buffer rented from
+     * {@link #bufferPool}, growing the buffer as needed. The stream is not
+     * closed.
+     *
+     * @param is stream to read
+     * @param initialSize expected length of data
+     * @return data from start of backing array up to limit; backing array is
+     *         rented from {@link #bufferPool}
+     * @throws IOException if reading fails
+     */
+    private ByteBuffer readFully(InputStream is, int initialSize) throws IOException {
+        byte[] out = bufferPool.rent(initialSize);
+        int outLength = 0;
+        try {
+            while (true) {
+                if (outLength == out.length) {
+                    // only grow if there actually is more data
+                    int next = is.read();
+                    if (next < 0) {
+                        break;
+                    }
+
+                    byte[] grown = bufferPool.rent(Integer.max(out.length * 2, 1));
+                    System.arraycopy(out, 0, grown, 0, outLength);
+                    bufferPool.release(out);
+                    out = grown;
+                    out[outLength++] = (byte) next;
+                }
+
+                int read = is.read(out, outLength, out.length - outLength);
+                if (read < 0) {
+                    break;
+                }
+                outLength += read;
+            }
+        } catch (IOException | RuntimeException ex) {
+            bufferPool.release(out);
+            throw ex;
+        }
+
+        return ByteBuffer.wrap(out, 0, outLength);
+    }
+
+    /**
+     * Loads meta data from the file whose contents are given as a byte array and
+     * copies available information to the {@link RawDataFile}. Since meta data
+     * contains the fetch time again, it will be used to verify the previously
+     * initialized value of {@link RawDataFile#fetchTime} for consistency. An
+     * exception will be raised in case of an inconsistency.
+     *
+     * @param rawDataFile file linked to meta data
+     * @param buffer holds content of meta data file at start
+     * @param length length of meta data file content
+     * @throws IOException
+     */
+    private void loadMetaData(RawDataFile rawDataFile, byte[] buffer, int length) throws IOException {
+        Span span = Tracing.currentSpan();
+        long startNanos = span.isRecording() ? System.nanoTime() : 0;
+
+        try (ByteArrayInputStream bais = new ByteArrayInputStream(buffer, 0, length);
+            InputStreamReader isr = new InputStreamReader(bais, CHARACTER_SET_META_DATA); //
+        ) {
+            JsonObject json = (JsonObject) Jsoner.deserialize(isr);
+
+            rawDataFile.setFetchUrlRequested(json.getString(LocalMetaDataJsonKey.FETCH_URL_REQUESTED));
+
+            String actualFetchTimestampString = json.getString(LocalMetaDataJsonKey.FETCH_TIME);
+            Instant actualFetchTime = Instant.parse(actualFetchTimestampString);
+            if (!rawDataFile.getFetchTime().equals(actualFetchTime)) {
+                throw new IOException(
+                    "inconsistent data; fetch time was " + actualFetchTime
+                        + " according to meta data but has been indexed as " + rawDataFile.getFetchTime() //
+                );
+            }
+        } catch (JsonException ex) {
+            throw new IOException("failed to deserialize meta data", ex);
+        } finally {
+            if (span.isRecording()) {
+                span.addToAttribute("metaDataParseNanos", System.nanoTime() - startNanos);
+            }
+        }
+    }
+}
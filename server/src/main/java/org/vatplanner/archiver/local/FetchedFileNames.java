@@ -0,0 +1,207 @@
+package org.vatplanner.archiver.local;
+
+import java.time.DateTimeException;
+
+/**
+ * Decodes information from names of fetched files.
+ *
+ * <p>
+ * File names start with the fetch timestamp in format
+ * {@code yyyyMMdd'T'HHmmss'Z_'}, optionally preceded by directories. Names are
+ * parsed character by character without allocating any objects as this is
+ * performed on every file and archive entry encountered while loading,
+ * including those immediately discarded for being out of requested range.
+ * </p>
+ *
+ * <p>
+ * Results are equivalent to the regular expressions used before: The
+ * timestamp may follow the start of the name or any slash (the start is
+ * preferred, then the deepest directory), all fields must be within their
+ * formally valid ranges and names containing line terminators never match.
+ * </p>
+ */
+public class FetchedFileNames {
+
+    /**
+     * Returned by {@link #parseFetchEpochSecond(CharSequence)} if a name does
+     * not start with a fetch timestamp.
+     */
+    public static final long NO_FETCH_TIME = Long.MIN_VALUE;
+
+    private static final int TIMESTAMP_LENGTH = "yyyyMMddTHHmmssZ_".length();
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    /**
+     * Days from 0000-03-01 (start of proleptic Gregorian era used for
+     * calculation) to 1970-01-01.
+     */
+    private static final long DAYS_0000_03_01_TO_EPOCH = 719468;
+
+    private static final long DAYS_PER_400_YEARS = 146097;
+
+    private FetchedFileNames() {
+        // utility class, hide constructor
+    }
+
+    /**
+     * Extracts the fetch timestamp from the given file name.
+     *
+     * @param fileName name of file, may include directories
+     * @return fetch timestamp in seconds since epoch; {@link #NO_FETCH_TIME} if
+     *         file name does not start with a fetch timestamp
+     * @throws DateTimeException if the timestamp is formally valid but does not
+     *         refer to an existing date (e.g. 30th of February)
+     */
+    public static long parseFetchEpochSecond(CharSequence fileName) {
+        int length = fileName.length();
+        if (containsLineTerminator(fileName, 0, length)) {
+            return NO_FETCH_TIME;
+        }
+
+        // start of name is preferred, then directories from deepest to outermost
+        long epochSecond = parseTimestamp(fileName, 0);
+        for (int i = length - 1; (epochSecond == NO_FETCH_TIME) && (i >= 0); i--) {
+            if (fileName.charAt(i) == '/') {
+                epochSecond = parseTimestamp(fileName, i + 1);
+            }
+        }
+
+        return epochSecond;
+    }
+
+    /**
+     * Checks if the given file name ends with the given suffix and is a valid
+     * file name otherwise (i.e. does not contain any line terminators).
+     *
+     * @param fileName name of file
+     * @param suffix expected end of file name
+     * @return true if file name ends with suffix, false if not
+     */
+    static boolean endsWith(CharSequence fileName, String suffix) {
+        int length = fileName.length();
+        int suffixLength = suffix.length();
+        if (length < suffixLength) {
+            return false;
+        }
+
+        int offset = length - suffixLength;
+        for (int i = 0; i < suffixLength; i++) {
+            if (fileName.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+
+        return !containsLineTerminator(fileName, 0, offset);
+    }
+
+    private static boolean containsLineTerminator(CharSequence s, int start, int end) {
+        for (int i = start; i < end; i++) {
+            char ch = s.charAt(i);
+
+            // line terminators as recognized by java.util.regex.Pattern
+            boolean isLineTerminator = (ch == '\n') || (ch == '\r') || (ch == '\u0085')
+                || (ch == '\u2028') || (ch == '\u2029');
+            if (isLineTerminator) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static long parseTimestamp(CharSequence s, int offset) {
+        if (s.length() - offset < TIMESTAMP_LENGTH) {
+            return NO_FETCH_TIME;
+        }
+
+        int year = parseDigits(s, offset, 4);
+        int month = parseDigits(s, offset + 4, 2);
+        int day = parseDigits(s, offset + 6, 2);
+        int hour = parseDigits(s, offset + 9, 2);
+        int minute = parseDigits(s, offset + 11, 2);
+        int second = parseDigits(s, offset + 13, 2);
+
+        boolean isValid = (year >= 0)
+            && (month >= 1) && (month <= 12)
+            && (day >= 1) && (day <= 31)
+            && (s.charAt(offset + 8) == 'T')
+            && (hour >= 0) && (hour <= 23)
+            && (minute >= 0) && (minute <= 59)
+            && (second >= 0) && (second <= 59)
+            && (s.charAt(offset + 15) == 'Z')
+            && (s.charAt(offset + 16) == '_');
+        if (!isValid) {
+            return NO_FETCH_TIME;
+        }
+
+        if (day > getLengthOfMonth(year, month)) {
+            throw new DateTimeException(
+                "Invalid date: day " + day + " does not exist in month " + month + " of year " + year //
+            );
+        }
+
+        return toEpochDay(year, month, day) * SECONDS_PER_DAY + hour * 3600 + minute * 60 + second;
+    }
+
+    /**
+     * Parses the given number of ASCII digits.
+     *
+     * @param s characters to parse
+     * @param offset index of first digit
+     * @param numDigits number of digits to parse
+     * @return parsed value; negative if any character is not a digit
+     */
+    private static int parseDigits(CharSequence s, int offset, int numDigits) {
+        int value = 0;
+        for (int i = offset; i < offset + numDigits; i++) {
+            char ch = s.charAt(i);
+            if ((ch < '0') || (ch > '9')) {
+                return -1;
+            }
+
+            value = value * 10 + (ch - '0');
+        }
+
+        return value;
+    }
+
+    private static int getLengthOfMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean isLeapYear = ((year % 4) == 0) && (((year % 100) != 0) || ((year % 400) == 0));
+                return isLeapYear ? 29 : 28;
+
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+
+            default:
+                return 31;
+        }
+    }
+
+    /**
+     * Calculates the number of days since epoch for the given date of the
+     * proleptic Gregorian calendar. Years are counted starting in March so leap
+     * days fall on the end of a year.
+     *
+     * @param year year, 0 or later
+     * @param month month, 1-12
+     * @param day day of month
+     * @return days since 1970-01-01
+     */
+    private static long toEpochDay(int year, int month, int day) {
+        int marchBasedYear = (month <= 2) ? year - 1 : year;
+        int marchBasedMonth = (month <= 2) ? month + 9 : month - 3;
+
+        long era = Math.floorDiv(marchBasedYear, 400);
+        long yearOfEra = marchBasedYear - era * 400;
+        long dayOfYear = (153 * marchBasedMonth + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+
+        return era * DAYS_PER_400_YEARS + dayOfEra - DAYS_0000_03_01_TO_EPOCH;
+    }
+}
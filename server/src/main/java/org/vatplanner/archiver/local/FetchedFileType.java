@@ -1,23 +1,34 @@
 package org.vatplanner.archiver.local;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
- * Identifies file types related to fetched data.
+ * Identifies file types related to fetched data. Files may be compressed at
+ * rest, indicated by an additional extension (see
+ * {@link FetchedFileCompression}).
  */
 public enum FetchedFileType {
-    RAW_VATSIM_DATA_FILE(".*vatsim-data\\.(txt|json)$"),
-    META_DATA(".*meta\\.json$");
+    RAW_VATSIM_DATA_FILE("vatsim-data.txt", "vatsim-data.json"),
+    META_DATA("meta.json");
+
+    // values() copies the array on each call
+    private static final FetchedFileType[] VALUES = values();
 
-    private final Pattern fileNamePattern;
+    private final String[] fileNameSuffixes;
 
-    private FetchedFileType(String fileNamePattern) {
-        this.fileNamePattern = Pattern.compile(fileNamePattern);
+    private FetchedFileType(String... fileNameSuffixes) {
+        // compressed variants are listed as well to match names without
+        // allocating any objects
+        FetchedFileCompression[] compressions = FetchedFileCompression.values();
+        this.fileNameSuffixes = new String[fileNameSuffixes.length * compressions.length];
+        for (int i = 0; i < fileNameSuffixes.length; i++) {
+            for (int j = 0; j < compressions.length; j++) {
+                this.fileNameSuffixes[i * compressions.length + j] = fileNameSuffixes[i]
+                    + compressions[j].getExtension();
+            }
+        }
     }
 
-    public static FetchedFileType byFileName(String fileName) {
-        for (FetchedFileType type : FetchedFileType.values()) {
+    public static FetchedFileType byFileName(CharSequence fileName) {
+        for (FetchedFileType type : VALUES) {
             if (type.matchesFileName(fileName)) {
                 return type;
             }
@@ -26,8 +37,13 @@ public enum FetchedFileType {
         return null;
     }
 
-    private boolean matchesFileName(String fileName) {
-        Matcher matcher = fileNamePattern.matcher(fileName);
-        return matcher.matches();
+    private boolean matchesFileName(CharSequence fileName) {
+        for (String suffix : fileNameSuffixes) {
+            if (FetchedFileNames.endsWith(fileName, suffix)) {
+                return true;
+            }
+        }
+
+        return false;
     }
 }
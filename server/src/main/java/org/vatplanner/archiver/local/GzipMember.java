@@ -0,0 +1,147 @@
+package org.vatplanner.archiver.local;
+
+/**
+ * Locates the raw "deflate" stream and checksum of a gzip file (RFC 1952)
+ * consisting of a single member. Only header and trailer are parsed; the
+ * deflate stream needs to be checked to end right before the trailer when
+ * inflated, as further members may follow otherwise.
+ */
+final class GzipMember {
+
+    private static final int MAGIC_1 = 0x1F;
+    private static final int MAGIC_2 = 0x8B;
+    private static final int METHOD_DEFLATE = 8;
+
+    private static final int FLAG_HEADER_CRC = 0x02;
+    private static final int FLAG_EXTRA = 0x04;
+    private static final int FLAG_NAME = 0x08;
+    private static final int FLAG_COMMENT = 0x10;
+    private static final int FLAGS_RESERVED = 0xE0;
+
+    private static final int FIXED_HEADER_LENGTH = 10;
+    private static final int TRAILER_LENGTH = 8;
+
+    private final int deflateOffset;
+    private final int deflateLength;
+    private final long crc32;
+    private final long sizeModulo;
+
+    private GzipMember(int deflateOffset, int deflateLength, long crc32, long sizeModulo) {
+        this.deflateOffset = deflateOffset;
+        this.deflateLength = deflateLength;
+        this.crc32 = crc32;
+        this.sizeModulo = sizeModulo;
+    }
+
+    /**
+     * Parses header and trailer of the given gzip data.
+     *
+     * @param data gzip data
+     * @param length length of gzip data
+     * @return member information; null if data does not start with a gzip
+     *         header using "deflate" or is too short to hold a trailer
+     */
+    static GzipMember parse(byte[] data, int length) {
+        if ((length < FIXED_HEADER_LENGTH + TRAILER_LENGTH)
+            || ((data[0] & 0xFF) != MAGIC_1)
+            || ((data[1] & 0xFF) != MAGIC_2)
+            || (data[2] != METHOD_DEFLATE)
+            || ((data[3] & FLAGS_RESERVED) != 0)) {
+            return null;
+        }
+
+        int flags = data[3];
+        int offset = FIXED_HEADER_LENGTH;
+        int trailerOffset = length - TRAILER_LENGTH;
+
+        if ((flags & FLAG_EXTRA) != 0) {
+            if (offset + 2 > trailerOffset) {
+                return null;
+            }
+            offset += 2 + ((data[offset] & 0xFF) | ((data[offset + 1] & 0xFF) << 8));
+        }
+
+        if ((flags & FLAG_NAME) != 0) {
+            offset = skipZeroTerminated(data, offset, trailerOffset);
+        }
+
+        if ((flags & FLAG_COMMENT) != 0) {
+            offset = skipZeroTerminated(data, offset, trailerOffset);
+        }
+
+        if ((flags & FLAG_HEADER_CRC) != 0) {
+            offset += 2;
+        }
+
+        if ((offset < 0) || (offset >= trailerOffset)) {
+            return null;
+        }
+
+        return new GzipMember(
+            offset,
+            trailerOffset - offset,
+            readIntLittleEndian(data, trailerOffset) & 0xFFFFFFFFL,
+            readIntLittleEndian(data, trailerOffset + 4) & 0xFFFFFFFFL //
+        );
+    }
+
+    private static int skipZeroTerminated(byte[] data, int offset, int end) {
+        if (offset < 0) {
+            return offset;
+        }
+
+        for (int i = offset; i < end; i++) {
+            if (data[i] == 0) {
+                return i + 1;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int readIntLittleEndian(byte[] data, int offset) {
+        return (data[offset] & 0xFF)
+            | ((data[offset + 1] & 0xFF) << 8)
+            | ((data[offset + 2] & 0xFF) << 16)
+            | ((data[offset + 3] & 0xFF) << 24);
+    }
+
+    /**
+     * Returns the offset of the raw deflate stream within gzip data.
+     *
+     * @return offset of deflate stream in bytes
+     */
+    int getDeflateOffset() {
+        return deflateOffset;
+    }
+
+    /**
+     * Returns the length of the raw deflate stream, assuming it ends right
+     * before the trailer.
+     *
+     * @return length of deflate stream in bytes
+     */
+    int getDeflateLength() {
+        return deflateLength;
+    }
+
+    /**
+     * Returns the CRC32 checksum of uncompressed data as recorded in the
+     * trailer.
+     *
+     * @return CRC32 checksum of uncompressed data
+     */
+    long getCrc32() {
+        return crc32;
+    }
+
+    /**
+     * Returns the size of uncompressed data modulo 2<sup>32</sup> as recorded in
+     * the trailer.
+     *
+     * @return size of uncompressed data modulo 2<sup>32</sup>
+     */
+    long getSizeModulo() {
+        return sizeModulo;
+    }
+}
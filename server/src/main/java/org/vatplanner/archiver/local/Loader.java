@@ -3,46 +3,45 @@ package org.vatplanner.archiver.local;
 import static java.util.Collections.emptySet;
 import static org.vatplanner.archiver.local.Validation.validateDataFileFormatName;
 
-import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.Charset;
-import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.time.Instant;
-import java.time.LocalDate;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 import java.util.OptionalInt;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.function.Predicate;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
-import org.apache.commons.compress.archivers.ArchiveEntry;
-import org.apache.commons.compress.archivers.ArchiveInputStream;
-import org.apache.commons.compress.archivers.ArchiveStreamFactory;
-import org.apache.commons.compress.compressors.CompressorInputStream;
-import org.apache.commons.compress.compressors.CompressorStreamFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.tukaani.xz.ArrayCache;
+import org.vatplanner.archiver.common.BufferPool;
 import org.vatplanner.archiver.common.CommonConstants;
+import org.vatplanner.archiver.common.DataFileStatistics;
 import org.vatplanner.archiver.common.RawDataFile;
-
-import com.github.cliftonlabs.json_simple.JsonException;
-import com.github.cliftonlabs.json_simple.JsonObject;
-import com.github.cliftonlabs.json_simple.Jsoner;
+import org.vatplanner.archiver.pipeline.DataFileSink;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
+import org.vatplanner.archiver.util.NamedDaemonThreadFactory;
 
 /**
  * Loads previously fetched data from storage back into memory.
@@ -68,8 +67,18 @@ import com.github.cliftonlabs.json_simple.Jsoner;
  * </ol>
  *
  * <p>
+ * Archives may also be configured to cover only a part of a day, e.g. one or
+ * six hours, in which case each {@link ArchiveBucket} is compressed shortly
+ * after it ended. Archives are looked up per bucket of the configured duration;
+ * days still archived as a whole remain readable after the duration has been
+ * reduced.
+ * </p>
+ *
+ * <p>
  * Loading data from storage requires both locations/formats to be taken into
- * account and meta data to be reintegrated.
+ * account and meta data to be reintegrated. This class resolves which files
+ * and archives hold requested data and hands data out page by page; reading of
+ * single archives is left to {@link TransitionedArchiveReader}.
  * </p>
  *
  * <p>
@@ -84,33 +93,33 @@ public class Loader {
     private static final Logger LOGGER = LoggerFactory.getLogger(Loader.class);
 
     private final int maximumDataFilesPerRequest;
+    private final int archiveBucketHours;
     private final TransitionChecker transitionChecker;
     private final File transitionedBasePath;
     private final File transitionalBasePath;
-
-    private final CompressorStreamFactory compressorStreamFactory = new CompressorStreamFactory();
-    private final ArchiveStreamFactory archiveStreamFactory = new ArchiveStreamFactory();
-
-    private static final Pattern PATTERN_FETCHED_FILENAME = Pattern.compile(
-        "^(|.*/)(\\d{4})(0[1-9]|1[0-2])(0[1-9]|[12][0-9]|3[01])T([01][0-9]|2[0-3])([0-5][0-9])([0-5][0-9])Z_.*" //
-    );
-    private static final int PATTERN_FETCHED_FILENAME_YEAR = 2;
-    private static final int PATTERN_FETCHED_FILENAME_MONTH = 3;
-    private static final int PATTERN_FETCHED_FILENAME_DAY = 4;
-    private static final int PATTERN_FETCHED_FILENAME_HOUR = 5;
-    private static final int PATTERN_FETCHED_FILENAME_MINUTE = 6;
-    private static final int PATTERN_FETCHED_FILENAME_SECOND = 7;
-
-    private static final Pattern PATTERN_DIRECTORY_YEAR = Pattern.compile("^\\d{4}$");
-
-    private static final Pattern PATTERN_DIRECTORY_MONTH = Pattern.compile("^(0[1-9]|1[0-2])$");
-
-    private static final Pattern PATTERN_ARCHIVE = Pattern.compile(
-        "^(\\d{4})(0[1-9]|1[0-2])(0[1-9]|[12][0-9]|3[01])\\.tar\\.xz$" //
+    private final ArchiveIndexCache archiveIndexCache;
+    private final ArchiveCatalog archiveCatalog;
+    private final ExecutorService archiveCatalogExecutor;
+    private final AtomicBoolean isSynchronizingArchiveCatalog = new AtomicBoolean();
+    private final Object archiveCatalogSynchronizationLock = new Object();
+    private volatile Instant lastArchiveCatalogSynchronizationStart;
+    private final BufferPool bufferPool;
+    private final ArchivePrefetcher archivePrefetcher;
+    private final FetchedFileDecoder decoder;
+    private final TransitionedArchiveReader archiveReader;
+
+    static final Pattern PATTERN_DIRECTORY_YEAR = Pattern.compile("^\\d{4}$");
+
+    static final Pattern PATTERN_DIRECTORY_MONTH = Pattern.compile("^(0[1-9]|1[0-2])$");
+
+    static final Pattern PATTERN_ARCHIVE = Pattern.compile(
+        "^(\\d{4})(0[1-9]|1[0-2])(0[1-9]|[12][0-9]|3[01])(T([01][0-9]|2[0-3]))?\\.tar\\.xz$" //
     );
+    private static final int PATTERN_ARCHIVE_YEAR = 1;
+    private static final int PATTERN_ARCHIVE_MONTH = 2;
     private static final int PATTERN_ARCHIVE_DAY = 3;
+    private static final int PATTERN_ARCHIVE_HOUR = 5;
 
-    private static final DateTimeFormatter FORMATTER_ARCHIVE_NAME = DateTimeFormatter.ofPattern("yyyyMMdd");
     private static final String ARCHIVE_EXTENSION = ".tar.xz";
 
     private static final Pattern PATTERN_FILE_DIRECTORY = Pattern.compile("^(.*)/.*?");
@@ -122,16 +131,272 @@ public class Loader {
         MAXIMUM_LOCAL_DATE_YEAR, 12, 31, 23, 59, 59, 0, ZoneId.of("UTC") //
     ).toInstant();
 
-    private static final Charset CHARACTER_SET_META_DATA = StandardCharsets.UTF_8;
+    /**
+     * Order in which data files are handed out. Format name needs to be included
+     * to define a stable order for pagination.
+     */
+    static final Comparator<RawDataFile> HAND_OUT_ORDER = Comparator.comparing(RawDataFile::getFetchTime)
+                                                                            .thenComparing(RawDataFile::getFormatName);
 
     private static final int MAXIMUM_FILE_RECURSION_DEPTH = 1;
 
     public Loader(StorageConfiguration config, TransitionChecker transitionChecker) {
+        this(config, transitionChecker, ArrayCache.getDummyCache());
+    }
+
+    /**
+     * Creates a new loader.
+     *
+     * @param config storage configuration
+     * @param transitionChecker checks if transitioned files may be accessed
+     * @param xzArrayCache provides arrays to XZ decoders when reading
+     *        transitioned archives
+     * @throws IllegalArgumentException if the configured archive bucket duration
+     *         does not divide a day
+     */
+    public Loader(StorageConfiguration config, TransitionChecker transitionChecker, ArrayCache xzArrayCache) {
         maximumDataFilesPerRequest = config.getMaximumDataFilesPerRequest();
+
+        archiveBucketHours = config.getArchiveBucketHours();
+        if (!ArchiveBucket.isValidHours(archiveBucketHours)) {
+            throw new IllegalArgumentException(
+                "archive bucket hours must divide a day, configured: " + archiveBucketHours //
+            );
+        }
         this.transitionChecker = transitionChecker;
 
         transitionalBasePath = config.getTransitionalFilesBasePath();
         transitionedBasePath = config.getTransitionedArchivesBasePath();
+
+        File archiveCatalogFile = config.getArchiveCatalogFile();
+        if (archiveCatalogFile == null) {
+            archiveCatalog = null;
+            archiveCatalogExecutor = null;
+        } else {
+            archiveCatalog = new ArchiveCatalog(archiveCatalogFile, transitionedBasePath, archiveBucketHours);
+            archiveCatalogExecutor = Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("catalog"));
+        }
+
+        archiveIndexCache = new ArchiveIndexCache(config.getArchiveIndexCacheSize(), archiveCatalog);
+        bufferPool = new BufferPool(config.getBufferPoolMegabytes() * 1024L * 1024L);
+
+        // a single thread reads sequentially, so disks are not made to seek
+        // between multiple archives
+        archivePrefetcher = new ArchivePrefetcher(
+            config.getPrefetchMegabytes() * 1024L * 1024L,
+            Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("prefetch")) //
+        );
+
+        decoder = new FetchedFileDecoder(bufferPool);
+        archiveReader = new TransitionedArchiveReader(archiveIndexCache, archivePrefetcher, xzArrayCache,
+            config.getArchiveEntryOrderTolerance(), decoder);
+    }
+
+    /**
+     * Returns the cache holding indexes of transitioned archives.
+     *
+     * @return archive index cache
+     */
+    public ArchiveIndexCache getArchiveIndexCache() {
+        return archiveIndexCache;
+    }
+
+    /**
+     * Returns the catalog persisting indexes of all transitioned archives.
+     *
+     * @return archive catalog; null if disabled
+     */
+    public ArchiveCatalog getArchiveCatalog() {
+        return archiveCatalog;
+    }
+
+    /**
+     * Synchronizes the {@link ArchiveCatalog} with all transitioned archives
+     * currently stored: archives no longer present are removed and archives not
+     * cataloged yet are indexed (requiring decompression). The catalog is only
+     * marked synchronized if all archives could be indexed. Only one
+     * synchronization runs at a time.
+     *
+     * @return number of archives which had to be indexed
+     */
+    public int synchronizeArchiveCatalog() {
+        if (archiveCatalog == null) {
+            return 0;
+        }
+
+        synchronized (archiveCatalogSynchronizationLock) {
+            Instant start = transitionChecker.getNow();
+            lastArchiveCatalogSynchronizationStart = start;
+            List<File> archiveFiles = ArchiveSplitter.findArchives(transitionedBasePath);
+            archiveCatalog.retainOnly(archiveFiles);
+
+            int numIndexed = 0;
+            int numFailed = 0;
+            try (Span span = Tracing.startSpan("loader.synchronizeArchiveCatalog")) {
+                for (File archiveFile : archiveFiles) {
+                    if (archiveCatalog.get(archiveFile) != null) {
+                        continue;
+                    }
+
+                    try {
+                        archiveReader.getArchiveIndex(archiveFile);
+                        numIndexed++;
+                    } catch (IOException | RuntimeException ex) {
+                        LOGGER.warn("Failed to index " + archiveFile + " for archive catalog", ex);
+                        numFailed++;
+                    }
+                }
+
+                span.setAttribute("archives", archiveFiles.size())
+                    .setAttribute("indexed", numIndexed)
+                    .setAttribute("failed", numFailed);
+            }
+
+            if (numFailed == 0) {
+                archiveCatalog.markSynchronized(start);
+            }
+
+            LOGGER.info("Synchronized archive catalog: {} archives, {} indexed, {} failed", archiveFiles.size(),
+                numIndexed, numFailed);
+
+            return numIndexed;
+        }
+    }
+
+    /**
+     * Synchronizes the {@link ArchiveCatalog} in background unless already in
+     * progress or the catalog is disabled.
+     */
+    public void synchronizeArchiveCatalogInBackground() {
+        if ((archiveCatalog == null) || !isSynchronizingArchiveCatalog.compareAndSet(false, true)) {
+            return;
+        }
+
+        archiveCatalogExecutor.execute(() -> {
+            try {
+                synchronizeArchiveCatalog();
+            } catch (Exception ex) {
+                LOGGER.warn("Failed to synchronize archive catalog", ex);
+            } finally {
+                isSynchronizingArchiveCatalog.set(false);
+            }
+        });
+    }
+
+    /**
+     * Checks if the {@link ArchiveCatalog} holds all archives of data fetched
+     * up to the given time, triggering synchronization in background if not.
+     *
+     * @param latestFetchTime latest fetch time to be covered
+     * @return true if catalog is complete for given range, false if not
+     */
+    private boolean isArchiveCatalogComplete(Instant latestFetchTime) {
+        if (archiveCatalog == null) {
+            return false;
+        }
+
+        ArchiveBucket latestBucket = ArchiveBucket.containing(toLocalDateTimeUTC(latestFetchTime), archiveBucketHours);
+        if (transitionChecker.isTransitional(latestBucket)) {
+            // transitional files are requested as well
+            return false;
+        }
+
+        return canResolveFromArchiveCatalog(latestFetchTime);
+    }
+
+    /**
+     * Checks if transitioned archives holding data up to the given time can be
+     * resolved from the {@link ArchiveCatalog}, i.e. if it has been synchronized
+     * after all of them have been written. Otherwise synchronization is
+     * triggered in background, unless it has already been attempted since (some
+     * archives may fail to be indexed). Requests do not wait for it but look up
+     * archives on the file system meanwhile.
+     *
+     * @param latestFetchTime latest fetch time to be covered
+     * @return true if archives can be resolved from the catalog, false if they
+     *         need to be looked up on the file system
+     */
+    private boolean canResolveFromArchiveCatalog(Instant latestFetchTime) {
+        if (archiveCatalog == null) {
+            return false;
+        }
+
+        if (isSynchronizedAfterTransition(archiveCatalog.getLastSynchronized(), latestFetchTime)) {
+            return true;
+        }
+
+        if (!isSynchronizedAfterTransition(lastArchiveCatalogSynchronizationStart, latestFetchTime)) {
+            synchronizeArchiveCatalogInBackground();
+        }
+
+        return false;
+    }
+
+    /**
+     * Checks if a synchronization of the {@link ArchiveCatalog} happened after
+     * the latest archive holding data up to the given time has been written.
+     * Buckets which are still in transition do not have their archive yet, so
+     * only the latest bucket whose transition has ended is relevant.
+     *
+     * @param synchronizedAt time of synchronization; null if never synchronized
+     * @param latestFetchTime latest fetch time to be covered
+     * @return true if synchronized after transition, false if not
+     */
+    private boolean isSynchronizedAfterTransition(Instant synchronizedAt, Instant latestFetchTime) {
+        if (synchronizedAt == null) {
+            return false;
+        }
+
+        Instant now = transitionChecker.getNow();
+        Instant effectiveLatestFetchTime = latestFetchTime.isBefore(now) ? latestFetchTime : now;
+        ArchiveBucket bucket = ArchiveBucket.containing(toLocalDateTimeUTC(effectiveLatestFetchTime),
+            archiveBucketHours);
+        Instant transitionEnd = transitionChecker.getTransitionEnd(bucket);
+        while (transitionEnd.isAfter(now)) {
+            bucket = ArchiveBucket.containing(bucket.getStart().minusHours(archiveBucketHours), archiveBucketHours);
+            transitionEnd = transitionChecker.getTransitionEnd(bucket);
+        }
+
+        return !synchronizedAt.isBefore(transitionEnd);
+    }
+
+    /**
+     * Returns the pool providing buffers to read data files into. Buffers are
+     * returned to the pool when loaded data files are {@link RawDataFile#clear()
+     * cleared}.
+     *
+     * @return pool of read buffers
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * Returns the prefetcher reading transitioned archives ahead of time.
+     *
+     * @return archive prefetcher
+     */
+    public ArchivePrefetcher getArchivePrefetcher() {
+        return archivePrefetcher;
+    }
+
+    /**
+     * Returns the number of times transitioned archives have been opened for
+     * decompression, either to load data or to index them.
+     *
+     * @return number of transitioned archives opened so far
+     */
+    public long getNumOpenedArchives() {
+        return archiveReader.getNumOpenedArchives();
+    }
+
+    /**
+     * Returns the total amount of data decompressed from transitioned archives.
+     *
+     * @return number of uncompressed bytes read from transitioned archives so far
+     */
+    public long getDecompressedArchiveBytes() {
+        return archiveReader.getDecompressedArchiveBytes();
     }
 
     /**
@@ -167,40 +432,98 @@ public class Loader {
      * @throws IllegalArgumentException if illegal data format name is requested
      */
     public List<RawDataFile> load(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames) {
-        // TODO: catch IOException, log and return null instead
-
-        int remainingFileLimit = Integer.min(fileLimit, maximumDataFilesPerRequest);
+        return load(earliestFetchTime, latestFetchTime, fileLimit, wantedDataFileFormatNames, null);
+    }
 
-        LOGGER.debug(
-            "Loading at most {} files (requested {}) fetched between {} and {}",
-            remainingFileLimit, fileLimit, earliestFetchTime, latestFetchTime //
+    /**
+     * Loads and returns data fetched between given timestamps, optionally
+     * downsampled to at most one file per data file format and sample interval.
+     * The specified maximum number of files is only effective if it is less than
+     * the hard maximum limit specified in application configuration. The result is
+     * ordered by oldest fetched entry first. If given, only the selected data file
+     * formats are returned with file limit not including any ignored formats.
+     *
+     * <p>
+     * When sampling, the requested time range is split into buckets of the given
+     * interval, starting at the earliest fetch time. For each bucket and format
+     * only the file closest to the start of the bucket is returned; see
+     * {@link FetchTimeSampler}. Files not selected are skipped before their
+     * content is read. The file limit applies to the sampled result.
+     * </p>
+     *
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param fileLimit maximum number of files to be returned; may be restricted
+     *        further by configuration
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampleInterval interval to downsample data to; null to load all data
+     * @return at most the requested number of files fetched between given
+     *         timestamps (ascending order); null on error
+     * @throws IllegalArgumentException if illegal data format name or sample
+     *         interval is requested
+     */
+    public List<RawDataFile> load(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames, Duration sampleInterval) {
+        DataFilePage page = loadPage(
+            earliestFetchTime,
+            latestFetchTime,
+            fileLimit,
+            wantedDataFileFormatNames,
+            sampleInterval,
+            null //
         );
 
-        for (String formatName : wantedDataFileFormatNames) {
-            if (!validateDataFileFormatName(formatName)) {
-                throw new IllegalArgumentException("Illegal data file format requested: \"" + formatName + "\"");
-            }
-        }
+        return (page != null) ? page.getDataFiles() : null;
+    }
+
+    /**
+     * Loads a single page of data fetched between given timestamps, optionally
+     * downsampled and resuming after the position described by a
+     * {@link ContinuationToken} returned with the previous page. Data files are
+     * ordered by fetch time and format name; see
+     * {@link #load(Instant, Instant, int, Set, Duration)} for details on all other
+     * parameters.
+     *
+     * <p>
+     * If the page gets filled up to the effective file limit, a token to request
+     * the next page is provided. Requests for following pages must use the same
+     * time range, formats and sample interval. Data files already returned on
+     * previous pages are skipped before their content is read. Transitioned
+     * archives of the bucket the previous page ended in are read starting at the
+     * position hinted by the token, so earlier entries do not need to be parsed
+     * again; skipping decompression as well requires archives to be compressed
+     * to multiple XZ blocks.
+     * </p>
+     *
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param fileLimit maximum number of files to be returned; may be restricted
+     *        further by configuration
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampleInterval interval to downsample data to; null to load all data
+     * @param continuationToken token returned with previous page; null to load
+     *        the first page
+     * @return requested page; null on error
+     * @throws IllegalArgumentException if illegal data format name or sample
+     *         interval is requested
+     */
+    public DataFilePage loadPage(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames, Duration sampleInterval, ContinuationToken continuationToken) {
+        // TODO: catch IOException, log and return null instead
 
         List<RawDataFile> loaded = new ArrayList<>();
 
+        ContinuationToken nextContinuationToken;
         try {
-            LocalDate transitionedFetchDate = findEffectiveEarliestTransitionedFetchDate(earliestFetchTime);
-            while ((remainingFileLimit > 0) && shouldLoadFromTransitionedFile(transitionedFetchDate, latestFetchTime)) {
-                Collection<RawDataFile> dataFiles = loadFromTransitionedFile(
-                    transitionedFetchDate,
-                    earliestFetchTime,
-                    latestFetchTime,
-                    wantedDataFileFormatNames //
-                );
-                loaded.addAll(dataFiles);
-
-                remainingFileLimit -= dataFiles.size();
-                transitionedFetchDate = transitionedFetchDate.plusDays(1);
-            }
-
-            loaded.addAll(loadFromTransitionalFiles(earliestFetchTime, latestFetchTime, remainingFileLimit,
-                wantedDataFileFormatNames));
+            nextContinuationToken = streamPage(
+                earliestFetchTime,
+                latestFetchTime,
+                fileLimit,
+                wantedDataFileFormatNames,
+                sampleInterval,
+                continuationToken,
+                loaded::add //
+            );
         } catch (IOException ex) {
             LOGGER.warn(
                 "Loading data failed; requested at most " + fileLimit
@@ -211,39 +534,534 @@ public class Loader {
             return null;
         }
 
-        loaded.sort(Comparator.comparing(RawDataFile::getFetchTime));
+        return new DataFilePage(loaded, nextContinuationToken);
+    }
+
+    /**
+     * Loads a single page of data like
+     * {@link #loadPage(Instant, Instant, int, Set, Duration, ContinuationToken)}
+     * but hands out data files to the given sink as soon as their order is
+     * final, instead of collecting the whole page first. This allows data files
+     * to be processed while further data is still being loaded.
+     *
+     * <p>
+     * Data files are provided in the same order as they would be returned on a
+     * page. Since entries of transitioned archives are not necessarily ordered,
+     * data files are handed out per transitioned archive bucket (i.e. per day by
+     * default) after it has been read completely, followed by all transitional
+     * files.
+     * </p>
+     *
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param fileLimit maximum number of files to be returned; may be restricted
+     *        further by configuration
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampleInterval interval to downsample data to; null to load all data
+     * @param continuationToken token returned with previous page; null to load
+     *        the first page
+     * @param sink receives all data files of the page (ascending order)
+     * @return token to request the next page with; null if there are no more
+     *         pages
+     * @throws IOException if loading fails or the sink does not accept further
+     *         data files
+     * @throws IllegalArgumentException if illegal data format name or sample
+     *         interval is requested
+     */
+    public ContinuationToken streamPage(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames, Duration sampleInterval, ContinuationToken continuationToken, DataFileSink sink) throws IOException {
+        int effectiveFileLimit = Integer.min(fileLimit, maximumDataFilesPerRequest);
+        int remainingFileLimit = effectiveFileLimit;
+
+        LOGGER.debug(
+            "Loading at most {} files (requested {}) fetched between {} and {}, sampled every {}, continuing after {}",
+            remainingFileLimit, fileLimit, earliestFetchTime, latestFetchTime, sampleInterval, continuationToken //
+        );
+
+        for (String formatName : wantedDataFileFormatNames) {
+            if (!validateDataFileFormatName(formatName)) {
+                throw new IllegalArgumentException("Illegal data file format requested: \"" + formatName + "\"");
+            }
+        }
+
+        FetchTimeSampler sampler = null;
+        if (sampleInterval != null) {
+            sampler = new FetchTimeSampler(earliestFetchTime, sampleInterval);
+        }
+
+        // Files already returned on previous pages do not need to be looked at
+        // again. When sampling, the whole bucket of the last returned file needs
+        // to be seen again to select the same files as before.
+        Instant scanStartTime = earliestFetchTime;
+        if (continuationToken != null) {
+            Instant resumeTime = continuationToken.getLastFetchTime();
+            if (sampler != null) {
+                resumeTime = sampler.getBucketStart(resumeTime);
+            }
+            if (resumeTime.isAfter(scanStartTime)) {
+                scanStartTime = resumeTime;
+            }
+        }
+
+        try (Span span = Tracing.startSpan("loader.page")) {
+            span.setAttribute("fileLimit", effectiveFileLimit);
+            if (sampleInterval != null) {
+                span.setAttribute("sampleInterval", sampleInterval.toString());
+            }
+            span.setAttribute("resumed", continuationToken != null);
+
+            Map<TransitionedArchive, ArchiveIndex> archiveIndexes = new HashMap<>();
+            RawDataFile lastDataFile = null;
+
+            boolean fromCatalog = canResolveFromArchiveCatalog(latestFetchTime);
+
+            // the next archive is read from disk while the current one is being
+            // decompressed; prefetched archives need to be released in any case
+            List<File> prefetchedArchives = new ArrayList<>();
+            try {
+                ArchiveBucket transitionedBucket = findEffectiveEarliestTransitionedBucket(scanStartTime, fromCatalog);
+                while ((remainingFileLimit > 0)
+                    && shouldLoadFromTransitionedFile(transitionedBucket, latestFetchTime)) {
+                    List<TransitionedArchive> archives = getTransitionedArchives(transitionedBucket,
+                        wantedDataFileFormatNames, fromCatalog);
+
+                    ArchiveBucket nextBucket = resolveTransitionedBucket(transitionedBucket.getEnd(), fromCatalog);
+                    if (shouldLoadFromTransitionedFile(nextBucket, latestFetchTime)) {
+                        archiveReader.prefetchNext(archives,
+                            getTransitionedArchives(nextBucket, wantedDataFileFormatNames, fromCatalog), scanStartTime,
+                            latestFetchTime, wantedDataFileFormatNames, sampler, continuationToken,
+                            remainingFileLimit, prefetchedArchives);
+                    }
+
+                    // each archive holds its own first files up to the limit, so the
+                    // first files of the whole bucket are among them
+                    Collection<RawDataFile> dataFiles = new ArrayList<>();
+                    for (TransitionedArchive archive : archives) {
+                        dataFiles.addAll(archiveReader.load(
+                            archive,
+                            scanStartTime,
+                            latestFetchTime,
+                            wantedDataFileFormatNames,
+                            sampler,
+                            continuationToken,
+                            remainingFileLimit,
+                            archiveIndexes //
+                        ));
+
+                        if (prefetchedArchives.remove(archive.getFile())) {
+                            archivePrefetcher.release(archive.getFile());
+                        }
+                    }
+
+                    lastDataFile = handOutOrdered(dataFiles, remainingFileLimit, sink, lastDataFile);
+                    remainingFileLimit -= Integer.min(dataFiles.size(), remainingFileLimit);
+                    transitionedBucket = nextBucket;
+                }
+            } finally {
+                for (File archiveFile : prefetchedArchives) {
+                    archivePrefetcher.release(archiveFile);
+                }
+            }
+
+            if (remainingFileLimit > 0) {
+                Collection<RawDataFile> dataFiles;
+                try (Span transitionalSpan = Tracing.startSpan("loader.transitional")) {
+                    dataFiles = loadFromTransitionalFiles(scanStartTime, latestFetchTime, remainingFileLimit,
+                        wantedDataFileFormatNames, sampler, continuationToken);
+                    transitionalSpan.setAttribute("dataFiles", dataFiles.size());
+                }
+
+                lastDataFile = handOutOrdered(dataFiles, remainingFileLimit, sink, lastDataFile);
+                remainingFileLimit -= Integer.min(dataFiles.size(), remainingFileLimit);
+            }
+
+            int numDataFiles = effectiveFileLimit - remainingFileLimit;
+
+            ContinuationToken nextContinuationToken = null;
+            if ((numDataFiles >= effectiveFileLimit) && (lastDataFile != null)) {
+                nextContinuationToken = createContinuationToken(lastDataFile, sampler, archiveIndexes);
+            }
+
+            span.setAttribute("dataFiles", numDataFiles);
+            span.setAttribute("continued", nextContinuationToken != null);
+
+            LOGGER.debug("Returning {} files, continuing after {}", numDataFiles, nextContinuationToken);
+
+            return nextContinuationToken;
+        }
+    }
+
+    /**
+     * Sorts the given data files and hands out at most the specified number of
+     * them to the sink. Format name needs to be included in sort order to define
+     * a stable order for pagination.
+     *
+     * @param dataFiles data files to hand out in random order
+     * @param limit maximum number of data files to hand out
+     * @param sink receives data files
+     * @param lastDataFile last data file handed out before; null if none
+     * @return last data file handed out; given previous data file if none
+     * @throws IOException if the sink does not accept further data files
+     */
+    private RawDataFile handOutOrdered(Collection<RawDataFile> dataFiles, int limit, DataFileSink sink, RawDataFile lastDataFile) throws IOException {
+        List<RawDataFile> ordered = new ArrayList<>(dataFiles);
+        try (Span span = Tracing.startSpan("loader.sort")) {
+            span.setAttribute("dataFiles", ordered.size());
+            ordered.sort(HAND_OUT_ORDER);
+        }
+
+        int numDataFiles = Integer.min(ordered.size(), limit);
+        for (int i = 0; i < numDataFiles; i++) {
+            lastDataFile = ordered.get(i);
+            sink.accept(lastDataFile);
+        }
+
+        // return buffers of data files exceeding the limit to the pool
+        for (int i = numDataFiles; i < ordered.size(); i++) {
+            ordered.get(i).clear();
+        }
+
+        return lastDataFile;
+    }
+
+    /**
+     * Creates a token to continue loading after the given last returned data
+     * file. If the data file has been loaded from a transitioned archive, the
+     * position of the first archive entry relevant to the next page is included
+     * as a hint.
+     *
+     * @param lastDataFile last data file returned on current page
+     * @param sampler sampler used for current page; null if not sampling
+     * @param archiveIndexes indexes of all transitioned archives read for current
+     *        page
+     * @return token to continue loading after given data file
+     */
+    private ContinuationToken createContinuationToken(RawDataFile lastDataFile, FetchTimeSampler sampler, Map<TransitionedArchive, ArchiveIndex> archiveIndexes) {
+        Instant lastFetchTime = lastDataFile.getFetchTime();
+        String lastFormatName = lastDataFile.getFormatName();
+
+        // hint refers to the archive holding the last data file
+        LocalDateTime time = toLocalDateTimeUTC(lastFetchTime);
+        TransitionedArchive archive = null;
+        ArchiveIndex index = null;
+        for (Map.Entry<TransitionedArchive, ArchiveIndex> entry : archiveIndexes.entrySet()) {
+            TransitionedArchive candidate = entry.getKey();
+            if (candidate.getBucket().contains(time)
+                && ((candidate.getFormatName() == null) || candidate.getFormatName().equals(lastFormatName)) //
+            ) {
+                archive = candidate;
+                index = entry.getValue();
+                break;
+            }
+        }
+
+        if (index == null) {
+            return new ContinuationToken(lastFetchTime, lastFormatName);
+        }
+
+        Instant nextScanStartTime = (sampler != null) ? sampler.getBucketStart(lastFetchTime) : lastFetchTime;
+
+        // archive entries may be unordered, so the first relevant entry may be
+        // located anywhere; deltas are resumed at their keyframe
+        long offset = -1;
+        for (int i = 0; i < index.size(); i++) {
+            long headerOffset = index.getHeaderOffset(index.findChainStart(i));
+            if (!index.getFetchTime(i).isBefore(nextScanStartTime) && ((offset < 0) || (headerOffset < offset))) {
+                offset = headerOffset;
+            }
+        }
+
+        if (offset < 0) {
+            return new ContinuationToken(lastFetchTime, lastFormatName);
+        }
+
+        return new ContinuationToken(lastFetchTime, lastFormatName, archive.getBucket(), archive.getFormatName(),
+            index.getArchiveLength(), offset);
+    }
+
+    /**
+     * Estimates the number of data files a request would load without reading
+     * any data. The estimate is an upper bound given by the effective file
+     * limit, the number of sampling buckets (if sampling) and the number of data
+     * files known from cached archive indexes (if all requested transitioned
+     * archives are indexed and no transitional files are requested). If the
+     * {@link ArchiveCatalog} is known to be complete for the requested range,
+     * data files are counted from the catalog without walking archives; if it
+     * is enabled but not complete yet, only the upper bound is returned.
+     *
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param fileLimit maximum number of files to be returned; may be restricted
+     *        further by configuration
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampleInterval interval to downsample data to; null to load all data
+     * @return estimated maximum number of data files to be loaded
+     */
+    public int estimateDataFileCount(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames, Duration sampleInterval) {
+        int estimate = Integer.max(0, Integer.min(fileLimit, maximumDataFilesPerRequest));
+
+        if ((sampleInterval != null) && !sampleInterval.isNegative() && !sampleInterval.isZero()) {
+            long numBuckets = Duration.between(earliestFetchTime, latestFetchTime).toMillis()
+                / Long.max(1, sampleInterval.toMillis()) + 1;
+            int numFormats = wantedDataFileFormatNames.isEmpty()
+                ? countTransitionalDataFileFormats()
+                : wantedDataFileFormatNames.size();
+            estimate = (int) Long.min(estimate, numBuckets * numFormats);
+        }
+
+        if (archiveCatalog != null) {
+            if (!isArchiveCatalogComplete(latestFetchTime)) {
+                return estimate;
+            }
+
+            return Integer.min(estimate,
+                archiveCatalog.countDataFiles(earliestFetchTime, latestFetchTime, wantedDataFileFormatNames));
+        }
+
+        try {
+            int known = 0;
+            ArchiveBucket transitionedBucket = findEffectiveEarliestTransitionedBucket(earliestFetchTime, false);
+            if (transitionedBucket == null) {
+                return estimate;
+            }
+
+            while ((known < estimate) && shouldLoadFromTransitionedFile(transitionedBucket, latestFetchTime)) {
+                List<TransitionedArchive> archives = getTransitionedArchives(transitionedBucket,
+                    wantedDataFileFormatNames, false);
+                transitionedBucket = resolveTransitionedBucket(transitionedBucket.getEnd(), false);
+
+                for (TransitionedArchive archive : archives) {
+                    ArchiveIndex index = archiveIndexCache.get(archive.getFile());
+                    if (index == null) {
+                        // unknown, do not open archives just to estimate
+                        return estimate;
+                    }
+
+                    for (int i = 0; i < index.size(); i++) {
+                        if ((index.getFileType(i) == FetchedFileType.RAW_VATSIM_DATA_FILE)
+                            && inRange(index.getFetchTime(i), earliestFetchTime, latestFetchTime)
+                            && isWantedFormat(wantedDataFileFormatNames, index.getFormatName(i)) //
+                        ) {
+                            known++;
+                        }
+                    }
+                }
+            }
+
+            if (!transitionedBucket.getStart().isAfter(toLocalDateTimeUTC(latestFetchTime))) {
+                // transitional files are requested as well, count is unknown
+                return estimate;
+            }
 
-        LOGGER.debug("Loaded total of {} files", loaded.size());
+            return Integer.min(estimate, known);
+        } catch (IOException ex) {
+            LOGGER.debug("failed to estimate number of data files", ex);
+            return estimate;
+        }
+    }
 
-        // FIXME: does not seem to be effective file limit (limit by min
-        // maximumDataFilesPerRequest?)
-        if (loaded.size() > fileLimit) {
-            loaded = loaded.subList(0, fileLimit);
+    /**
+     * Counts the number of data file formats currently stored as transitional
+     * files (i.e. sub-directories of transitional base path).
+     *
+     * @return number of data file formats, at least 1
+     */
+    private int countTransitionalDataFileFormats() {
+        File[] files = transitionalBasePath.listFiles();
+        if (files == null) {
+            return 1;
         }
 
-        LOGGER.debug("Returning {} files", loaded.size());
+        int count = 0;
+        for (File file : files) {
+            if (file.isDirectory() && validateDataFileFormatName(file.getName())) {
+                count++;
+            }
+        }
 
-        return loaded;
+        return Integer.max(1, count);
+    }
+
+    /**
+     * Summarizes all data fetched between given timestamps per UTC day and data
+     * file format without reading any actual content. Transitioned archives still
+     * need to be decompressed to list their entries unless their index is already
+     * known from previous requests.
+     *
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to summarize;
+     *        all formats will be summarized if empty
+     * @return statistics ordered by date and format name; null on error
+     * @throws IllegalArgumentException if illegal data format name is requested
+     */
+    public List<DataFileStatistics> summarize(Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames) {
+        LOGGER.debug("Summarizing files fetched between {} and {}", earliestFetchTime, latestFetchTime);
+
+        for (String formatName : wantedDataFileFormatNames) {
+            if (!validateDataFileFormatName(formatName)) {
+                throw new IllegalArgumentException("Illegal data file format requested: \"" + formatName + "\"");
+            }
+        }
+
+        DataFileStatisticsCollector collector = new DataFileStatisticsCollector();
+
+        try (Span span = Tracing.startSpan("loader.summarize")) {
+            boolean fromCatalog = canResolveFromArchiveCatalog(latestFetchTime);
+
+            ArchiveBucket transitionedBucket = findEffectiveEarliestTransitionedBucket(earliestFetchTime, fromCatalog);
+            while (shouldLoadFromTransitionedFile(transitionedBucket, latestFetchTime)) {
+                List<TransitionedArchive> archives = getTransitionedArchives(transitionedBucket,
+                    wantedDataFileFormatNames, fromCatalog);
+                transitionedBucket = resolveTransitionedBucket(transitionedBucket.getEnd(), fromCatalog);
+
+                for (TransitionedArchive archive : archives) {
+                    File archiveFile = archive.getFile();
+
+                    // missing buckets simply do not show up in statistics
+                    if (!archiveFile.exists()) {
+                        LOGGER.debug("no transitioned file {}, skipping for statistics", archiveFile);
+                        continue;
+                    }
+
+                    ArchiveIndex index = archiveReader.getArchiveIndex(archiveFile);
+                    span.addToAttribute("archives", 1);
+                    for (int i = 0; i < index.size(); i++) {
+                        String dataFileFormat = index.getFormatName(i);
+                        Instant fetchTime = index.getFetchTime(i);
+                        if (inRange(fetchTime, earliestFetchTime, latestFetchTime)
+                            && isWantedFormat(wantedDataFileFormatNames, dataFileFormat) //
+                        ) {
+                            collector.add(dataFileFormat, fetchTime, index.getFileType(i), index.getSize(i));
+                        }
+                    }
+                }
+            }
+
+            String transitionalBasePathCanonicalName = transitionalBasePath.getCanonicalPath();
+            for (File file : listOnlyFilesRecursive(transitionalBasePath, MAXIMUM_FILE_RECURSION_DEPTH)) {
+                String fileName = file.getName();
+                long fetchEpochSecond = FetchedFileNames.parseFetchEpochSecond(fileName);
+                FetchedFileType fileType = FetchedFileType.byFileName(fileName);
+                if ((fetchEpochSecond == FetchedFileNames.NO_FETCH_TIME) || (fileType == null)
+                    || !inRange(fetchEpochSecond, earliestFetchTime, latestFetchTime) //
+                ) {
+                    continue;
+                }
+
+                Instant fetchTime = Instant.ofEpochSecond(fetchEpochSecond);
+
+                String dataFileFormat = getTransitionalDataFileFormat(file, transitionalBasePathCanonicalName);
+                if (isWantedFormat(wantedDataFileFormatNames, dataFileFormat)) {
+                    // compressed files are counted by stored size if their
+                    // decompressed size is not recorded
+                    long size = FetchedFileCompression.byFileName(fileName).getDecompressedSize(file);
+                    collector.add(dataFileFormat, fetchTime, fileType, (size >= 0) ? size : file.length());
+                }
+            }
+        } catch (IOException ex) {
+            LOGGER.warn(
+                "Summarizing data failed; requested from "
+                    + (earliestFetchTime != null ? earliestFetchTime.toString() : "null")
+                    + " to " + (latestFetchTime != null ? latestFetchTime.toString() : "null"),
+                ex //
+            );
+            return null;
+        }
+
+        return collector.getStatistics();
     }
 
     /**
      * Limits the given timestamp for the earliest fetch time to be retrieved by the
      * oldest available transitioned (packed) archived file, returning only the
-     * date.
+     * archive bucket to start loading with.
      *
      * @param earliestFetchTime earliest fetch time to retrieve
-     * @return fetch date limited by available transitioned data
+     * @param fromCatalog true to look up the bucket from the
+     *        {@link ArchiveCatalog} only, false to look it up on the file system
+     * @return archive bucket limited by available transitioned data; null if no
+     *         transitioned data is available
      */
-    private LocalDate findEffectiveEarliestTransitionedFetchDate(Instant earliestFetchTime) {
-        LocalDate earliestArchivedFetchDate;
+    private ArchiveBucket findEffectiveEarliestTransitionedBucket(Instant earliestFetchTime, boolean fromCatalog) {
+        if (fromCatalog) {
+            return archiveCatalog.findBucket(toLocalDateTimeUTC(earliestFetchTime));
+        }
+
         try {
-            earliestArchivedFetchDate = findEarliestTransitionedFetchDate();
+            LocalDateTime earliestArchivedFetchTime = findEarliestTransitionedFetchTime();
+            LocalDateTime effectiveFetchTime = max(earliestFetchTime, earliestArchivedFetchTime);
+            if (effectiveFetchTime == null) {
+                return null;
+            }
+
+            return resolveTransitionedBucket(effectiveFetchTime, false);
         } catch (IOException ex) {
             LOGGER.warn("Unable to determine earliest transitioned fetch date, assuming no data.", ex);
             return null;
         }
+    }
+
+    /**
+     * Resolves the archive bucket holding transitioned data of given fetch time.
+     * Buckets of the configured duration are preferred; if archives cover less
+     * than a day but no such archive exists, a daily archive is used instead if
+     * available (e.g. for data archived before the bucket duration had been
+     * reduced). If no archive exists at all, the bucket of configured duration is
+     * returned (and will be reported as missing when read).
+     *
+     * <p>
+     * If resolved from the {@link ArchiveCatalog}, buckets are looked up from the
+     * catalog only, skipping buckets without any archive.
+     * </p>
+     *
+     * @param fetchTime UTC fetch time to resolve bucket for
+     * @param fromCatalog true to look up the bucket from the
+     *        {@link ArchiveCatalog} only, false to look it up on the file system
+     * @return archive bucket holding given fetch time; null if resolved from the
+     *         catalog and it holds no archives of that time or later
+     * @throws IOException
+     */
+    private ArchiveBucket resolveTransitionedBucket(LocalDateTime fetchTime, boolean fromCatalog) throws IOException {
+        if (fromCatalog) {
+            return archiveCatalog.findBucket(fetchTime);
+        }
+
+        ArchiveBucket bucket = ArchiveBucket.containing(fetchTime, archiveBucketHours);
+        if (bucket.isDaily() || hasTransitionedArchive(bucket)) {
+            return bucket;
+        }
+
+        ArchiveBucket dailyBucket = ArchiveBucket.containing(fetchTime, ArchiveBucket.HOURS_PER_DAY);
+        if (hasTransitionedArchive(dailyBucket)) {
+            return dailyBucket;
+        }
 
-        return max(earliestFetchTime, earliestArchivedFetchDate);
+        return bucket;
+    }
+
+    /**
+     * Checks if any transitioned archive exists for given bucket, in either
+     * storage layout.
+     *
+     * @param bucket archive bucket to check
+     * @return true if at least one archive exists, false if not
+     * @throws IOException
+     */
+    private boolean hasTransitionedArchive(ArchiveBucket bucket) throws IOException {
+        if (getTransitionedArchiveFile(bucket).exists()) {
+            return true;
+        }
+
+        LocalDateTime start = bucket.getStart();
+        for (String formatName : listPerFormatDirectoryNames(start.getYear(), start.getMonthValue())) {
+            if (getTransitionedArchiveFile(bucket, formatName).exists()) {
+                return true;
+            }
+        }
+
+        return false;
     }
 
     /**
@@ -259,14 +1077,15 @@ public class Loader {
     }
 
     /**
-     * Searches the earliest available date available from transitioned (packed)
-     * data. Later data may be available as transitional files.
+     * Searches the earliest available fetch time available from transitioned
+     * (packed) data, i.e. the start of the earliest archive bucket. Later data may
+     * be available as transitional files.
      *
-     * @return date of earliest available transitioned data; null if no transitioned
-     *         data available
+     * @return UTC start of earliest available transitioned data; null if no
+     *         transitioned data available
      * @throws IOException
      */
-    private LocalDate findEarliestTransitionedFetchDate() throws IOException {
+    private LocalDateTime findEarliestTransitionedFetchTime() throws IOException {
         int year = findNumericDirectoryNameMinimum(transitionedBasePath, PATTERN_DIRECTORY_YEAR)
             .orElse(-1);
         if (year < 0) {
@@ -286,10 +1105,17 @@ public class Loader {
             return null;
         }
 
-        int day = findNumericFileNameMinimum(getTransitionedDirectory(year, month), PATTERN_ARCHIVE,
-            PATTERN_ARCHIVE_DAY)
-                .orElse(-1);
-        if (day < 0) {
+        // archives may be stored per format in sub-directories
+        LocalDateTime earliest = findArchiveStartMinimum(getTransitionedDirectory(year, month)).orElse(null);
+        for (String formatName : listPerFormatDirectoryNames(year, month)) {
+            LocalDateTime formatEarliest = findArchiveStartMinimum(
+                new File(getTransitionedDirectory(year, month), formatName) //
+            ).orElse(null);
+            if ((formatEarliest != null) && ((earliest == null) || formatEarliest.isBefore(earliest))) {
+                earliest = formatEarliest;
+            }
+        }
+        if (earliest == null) {
             LOGGER.error(
                 "Transitioned data appears to be missing day files for month {}, year {}; this indicates corrupted folder structure! Data will be inaccessible.",
                 month, year //
@@ -297,7 +1123,7 @@ public class Loader {
             return null;
         }
 
-        return LocalDate.of(year, month, day);
+        return earliest;
     }
 
     /**
@@ -328,27 +1154,158 @@ public class Loader {
 
     /**
      * Returns a reference to the expected archive file holding transitioned data
-     * for given date.
+     * for given bucket.
+     *
+     * @param bucket archive bucket to reference file for
+     * @return reference to the expected archive file
+     * @throws IOException
+     */
+    private File getTransitionedArchiveFile(ArchiveBucket bucket) throws IOException {
+        LocalDateTime start = bucket.getStart();
+        return new File(
+            getTransitionedDirectory(start.getYear(), start.getMonthValue()),
+            bucket.getArchiveFileName(ARCHIVE_EXTENSION) //
+        );
+    }
+
+    /**
+     * Returns a reference to the expected archive file holding transitioned data
+     * of the given data file format for given bucket, if archives are stored per
+     * format.
      *
-     * @param fetchDate date to reference file for
+     * @param bucket archive bucket to reference file for
+     * @param formatName data file format to reference file for
      * @return reference to the expected archive file
      * @throws IOException
      */
-    private File getTransitionedArchiveFile(LocalDate fetchDate) throws IOException {
-        return new File(String.format("%s%s%04d%s%02d%s%s", transitionedBasePath.getCanonicalPath(), File.separator,
-            fetchDate.getYear(), File.separator, fetchDate.getMonthValue(), File.separator,
-            getTransitionedArchiveFileName(fetchDate)));
+    private File getTransitionedArchiveFile(ArchiveBucket bucket, String formatName) throws IOException {
+        LocalDateTime start = bucket.getStart();
+        return new File(
+            new File(getTransitionedDirectory(start.getYear(), start.getMonthValue()), formatName),
+            bucket.getArchiveFileName(ARCHIVE_EXTENSION) //
+        );
+    }
+
+    /**
+     * Returns the transitioned archives to read for given bucket. See
+     * {@link #findTransitionedArchives(ArchiveBucket, Set)} for how archives are
+     * looked up on the file system.
+     *
+     * <p>
+     * If resolved from the {@link ArchiveCatalog}, archives are looked up from
+     * the catalog only. Cataloged archives which no longer exist are skipped and
+     * cause the catalog to be synchronized in background. If they have been
+     * replaced (e.g. split per format), the archives found on the file system
+     * are read instead until the catalog has caught up.
+     * </p>
+     *
+     * @param bucket archive bucket to look up archives for
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats if empty
+     * @param fromCatalog true to look up archives from the {@link ArchiveCatalog},
+     *        false to look them up on the file system
+     * @return archives to read, ordered by format name; may be empty if
+     *         archives are stored per format but no wanted format exists
+     * @throws IOException
+     */
+    private List<TransitionedArchive> getTransitionedArchives(ArchiveBucket bucket, Set<String> wantedDataFileFormatNames, boolean fromCatalog) throws IOException {
+        if (!fromCatalog) {
+            return findTransitionedArchives(bucket, wantedDataFileFormatNames);
+        }
+
+        List<TransitionedArchive> archives = archiveCatalog.getArchives(bucket, wantedDataFileFormatNames);
+        List<TransitionedArchive> existing = new ArrayList<>(archives.size());
+        for (TransitionedArchive archive : archives) {
+            if (archive.getFile().exists()) {
+                existing.add(archive);
+            } else {
+                LOGGER.warn("Cataloged archive {} no longer exists, skipping", archive.getFile());
+            }
+        }
+
+        if (existing.size() < archives.size()) {
+            synchronizeArchiveCatalogInBackground();
+
+            List<TransitionedArchive> replacements = findTransitionedArchives(bucket, wantedDataFileFormatNames)
+                .stream()
+                .filter(archive -> archive.getFile().exists())
+                .collect(Collectors.toList());
+            if (!replacements.isEmpty()) {
+                return replacements;
+            }
+        }
+
+        return existing;
+    }
+
+    /**
+     * Looks up the transitioned archives to read for given bucket on the file
+     * system. Archives holding all data file formats are preferred; if no such
+     * archive exists, archives stored per data file format are looked up and
+     * only those of wanted formats are returned. If no archive exists in either
+     * layout, the expected archive holding all formats is returned (and will be
+     * reported as missing when read).
+     *
+     * @param bucket archive bucket to look up archives for
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats if empty
+     * @return archives to read, ordered by format name; may be empty if
+     *         archives are stored per format but no wanted format exists
+     * @throws IOException
+     */
+    private List<TransitionedArchive> findTransitionedArchives(ArchiveBucket bucket, Set<String> wantedDataFileFormatNames) throws IOException {
+        File combinedArchiveFile = getTransitionedArchiveFile(bucket);
+        if (combinedArchiveFile.exists()) {
+            return Collections.singletonList(new TransitionedArchive(bucket, null, combinedArchiveFile));
+        }
+
+        LocalDateTime start = bucket.getStart();
+        List<String> formatNames = listPerFormatDirectoryNames(start.getYear(), start.getMonthValue());
+        List<TransitionedArchive> archives = new ArrayList<>();
+        boolean hasAnyFormat = false;
+        for (String formatName : formatNames) {
+            File archiveFile = getTransitionedArchiveFile(bucket, formatName);
+            if (!archiveFile.exists()) {
+                continue;
+            }
+
+            hasAnyFormat = true;
+            if (isWantedFormat(wantedDataFileFormatNames, formatName)) {
+                archives.add(new TransitionedArchive(bucket, formatName, archiveFile));
+            }
+        }
+
+        if (!hasAnyFormat) {
+            return Collections.singletonList(new TransitionedArchive(bucket, null, combinedArchiveFile));
+        }
+
+        return archives;
     }
 
     /**
-     * Returns the expected archive file name to be used for data of given fetch
-     * date.
+     * Lists the names of all directories holding archives stored per data file
+     * format for given month.
      *
-     * @param fetchDate date to construct file name for
-     * @return expected archive file name for transitioned data of given date
+     * @param year year to list directories for
+     * @param month month to list directories for
+     * @return names of per-format directories in ascending order; empty if none
+     * @throws IOException
      */
-    private String getTransitionedArchiveFileName(LocalDate fetchDate) {
-        return FORMATTER_ARCHIVE_NAME.format(fetchDate) + ARCHIVE_EXTENSION;
+    private List<String> listPerFormatDirectoryNames(int year, int month) throws IOException {
+        File[] files = getTransitionedDirectory(year, month).listFiles();
+        if (files == null) {
+            return Collections.emptyList();
+        }
+
+        List<String> names = new ArrayList<>();
+        for (File file : files) {
+            if (file.isDirectory() && validateDataFileFormatName(file.getName())) {
+                names.add(file.getName());
+            }
+        }
+        Collections.sort(names);
+
+        return names;
     }
 
     /**
@@ -374,48 +1331,55 @@ public class Loader {
     }
 
     /**
-     * Searches the given directory for the file with smallest numeric name.
+     * Searches the given directory for the archive file covering the earliest
+     * fetch times, regardless of bucket duration.
      *
      * @param directory directory to search in
-     * @param pattern Pattern to apply to file names
-     * @param matcherGroupIndex Pattern Matcher group index to extract numeric value
-     *        from
-     * @return number of smallest extraction from file name; empty if not found,
-     *         never null
+     * @return UTC start of earliest archive bucket; empty if not found, never
+     *         null
      */
-    private OptionalInt findNumericFileNameMinimum(File directory, Pattern pattern, int matcherGroupIndex) {
+    private Optional<LocalDateTime> findArchiveStartMinimum(File directory) {
         if (!directory.exists() || !directory.isDirectory()) {
             LOGGER.warn("Directory for transitioned data does not exist: {}", directory);
-            return OptionalInt.empty();
+            return Optional.empty();
         }
 
         return Arrays.stream(directory.listFiles())
             .filter(File::isFile)
             .map(File::getName)
-            .map(pattern::matcher)
+            .map(PATTERN_ARCHIVE::matcher)
             .filter(Matcher::matches)
-            .map(m -> m.group(matcherGroupIndex))
-            .mapToInt(Integer::parseInt)
-            .min();
+            .map(Loader::getArchiveStart)
+            .min(Comparator.naturalOrder());
     }
 
     /**
-     * Returns the maximum (later point in time) of both inputs.
+     * Returns the start of the bucket covered by an archive file name matched by
+     * {@link #PATTERN_ARCHIVE}.
      *
-     * @param a first input
-     * @param b second input
-     * @return date of later input of both
+     * @param matcher matcher having matched an archive file name
+     * @return UTC start of archive bucket
      */
-    private LocalDate max(Instant a, LocalDate b) {
-        // TODO: move to utils
-
-        if ((a == null) || (b == null)) {
-            return null;
-        }
-
-        LocalDate aDate = toLocalDateUTC(a);
+    static LocalDateTime getArchiveStart(Matcher matcher) {
+        String hour = matcher.group(PATTERN_ARCHIVE_HOUR);
+        return LocalDateTime.of(
+            Integer.parseInt(matcher.group(PATTERN_ARCHIVE_YEAR)),
+            Integer.parseInt(matcher.group(PATTERN_ARCHIVE_MONTH)),
+            Integer.parseInt(matcher.group(PATTERN_ARCHIVE_DAY)),
+            (hour != null) ? Integer.parseInt(hour) : 0,
+            0 //
+        );
+    }
 
-        return max(aDate, b);
+    /**
+     * Checks if an archive file name matched by {@link #PATTERN_ARCHIVE} names
+     * a daily archive.
+     *
+     * @param matcher matcher having matched an archive file name
+     * @return true if archive covers a whole day, false if named by hour
+     */
+    static boolean isDailyArchive(Matcher matcher) {
+        return matcher.group(PATTERN_ARCHIVE_HOUR) == null;
     }
 
     /**
@@ -423,35 +1387,36 @@ public class Loader {
      *
      * @param a first input
      * @param b second input
-     * @return date of later input of both
+     * @return UTC date and time of later input of both
      */
-    private LocalDate max(LocalDate a, LocalDate b) {
+    private LocalDateTime max(Instant a, LocalDateTime b) {
         // TODO: move to utils
 
         if ((a == null) || (b == null)) {
             return null;
         }
 
-        if (a.isAfter(b)) {
-            return a;
+        LocalDateTime aDateTime = toLocalDateTimeUTC(a);
+        if (aDateTime.isAfter(b)) {
+            return aDateTime;
         }
 
         return b;
     }
 
     /**
-     * Returns the UTC date of given timestamp. An interesting quirk of the Java
-     * date/time API is that Instants can outgrow LocalDate so only a limited value
-     * range is supported on conversion to dates. The result of this method is
-     * therefore limited to a hard-coded range of dates.
+     * Returns the UTC date and time of given timestamp. An interesting quirk of
+     * the Java date/time API is that Instants can outgrow LocalDateTime so only a
+     * limited value range is supported on conversion to dates. The result of this
+     * method is therefore limited to a hard-coded range of dates.
      *
      * @param timestamp timestamp to convert
-     * @return UTC date of timestamp, limited to a reasonable value range
+     * @return UTC date and time of timestamp, limited to a reasonable value range
      */
-    private LocalDate toLocalDateUTC(Instant timestamp) {
+    private LocalDateTime toLocalDateTimeUTC(Instant timestamp) {
         // TODO: move to utils
 
-        // clamp to defined range because LocalDate is unable to represent full
+        // clamp to defined range because LocalDateTime is unable to represent full
         // value range of Instant
         if (MINIMUM_LOCAL_DATE_INSTANT.isAfter(timestamp)) {
             timestamp = MINIMUM_LOCAL_DATE_INSTANT;
@@ -459,93 +1424,97 @@ public class Loader {
             timestamp = MAXIMUM_LOCAL_DATE_INSTANT;
         }
 
-        return timestamp.atOffset(ZoneOffset.UTC).toLocalDate();
+        return LocalDateTime.ofInstant(timestamp, ZoneOffset.UTC);
     }
 
-    private Collection<RawDataFile> loadFromTransitionalFiles(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames) throws IOException {
+    private Collection<RawDataFile> loadFromTransitionalFiles(Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> wantedDataFileFormatNames, FetchTimeSampler sampler, ContinuationToken continuationToken) throws IOException {
         // TODO: documentation, random order
 
         String transitionalBasePathCanonicalName = transitionalBasePath.getCanonicalPath();
 
         Map<String, RawDataFile> loaded = new HashMap<>();
+        Instant latestLoadedFetchTime = null;
+
+        Span span = Tracing.currentSpan();
 
-        List<File> files = listOnlyFilesRecursive(transitionalBasePath, MAXIMUM_FILE_RECURSION_DEPTH);
+        List<File> files;
+        try (Span listingSpan = Tracing.startSpan("loader.listTransitionalFiles")) {
+            files = listOnlyFilesRecursive(transitionalBasePath, MAXIMUM_FILE_RECURSION_DEPTH);
 
-        // sort in order to be able to check file limit
-        files.sort(Comparator.comparing(File::getName));
+            // sort in order to be able to check file limit
+            files.sort(Comparator.comparing(File::getName));
+
+            listingSpan.setAttribute("files", files.size());
+        }
 
         for (File file : files) {
             // TODO: check if there is some readable way to de-duplicate this section
 
-            String fileName = file.getName();
-            Instant fetchTime = extractFileFetchTimestamp(fileName);
+            span.addToAttribute("filesScanned", 1);
 
-            // skip if out of requested range
-            if (!inRange(fetchTime, earliestFetchTime, latestFetchTime)) {
-                continue;
-            }
+            String fileName = file.getName();
+            long fetchEpochSecond = FetchedFileNames.parseFetchEpochSecond(fileName);
 
             // skip unsupported files
             FetchedFileType fileType = FetchedFileType.byFileName(fileName);
-            if (fileType == null) {
+            if ((fetchEpochSecond == FetchedFileNames.NO_FETCH_TIME) || (fileType == null)) {
                 LOGGER.debug("Skipping unsupported file: {}", file);
                 continue;
             }
 
-            // first sub-directory of data is format name
-            String dataFileFormat = file.getParentFile().getName();
-            String canonicalFilePath = file.getParentFile().getCanonicalPath();
-            if (transitionalBasePathCanonicalName.equals(canonicalFilePath)) {
-                LOGGER.warn(
-                    "Bad directory structure, files must be present in sub-directories per format, assuming legacy format for {}",
-                    file //
-                );
-                dataFileFormat = CommonConstants.DATA_FILE_FORMAT_NAME_LEGACY;
-            }
-            if (!canonicalFilePath.startsWith(transitionalBasePathCanonicalName)) {
-                throw new IOException("Possible escape from transitional base path detected: " + canonicalFilePath);
-            }
-            if (!validateDataFileFormatName(dataFileFormat)) {
-                throw new IOException("Illegal data file format name: " + dataFileFormat);
+            // skip if out of requested range
+            if (!inRange(fetchEpochSecond, earliestFetchTime, latestFetchTime)) {
+                continue;
             }
 
+            Instant fetchTime = Instant.ofEpochSecond(fetchEpochSecond);
+
+            String dataFileFormat = getTransitionalDataFileFormat(file, transitionalBasePathCanonicalName);
+
             // skip unwanted data file formats
-            boolean isWantedFormat = wantedDataFileFormatNames.isEmpty()
-                || wantedDataFileFormatNames.contains(dataFileFormat);
-            if (!isWantedFormat) {
+            if (!isWantedFormat(wantedDataFileFormatNames, dataFileFormat)) {
                 LOGGER.trace("skipping unwanted data file format {}", dataFileFormat);
                 continue;
             }
 
+            // skip files not selected by sampling (files are processed ordered, so
+            // selection is final)
+            if ((sampler != null) && !sampler.offer(dataFileFormat, fetchTime)) {
+                continue;
+            }
+
+            // skip files already returned on previous pages
+            if ((continuationToken != null) && continuationToken.isPassed(fetchTime, dataFileFormat)) {
+                continue;
+            }
+
             // use a combination of fetch time and format as map key to avoid collisions
             // between different formats with same fetch time
             String loadedKey = fetchTime.toString() + " " + dataFileFormat;
 
-            // stop if new data file is encountered but limit is reached
-            // (files are processed ordered, so we can reliably quit early when
-            // a new data file is encountered)
-            if (!loaded.containsKey(loadedKey) && (loaded.size() >= fileLimit)) {
+            // stop if a later data file is encountered but limit is reached
+            // (files are processed ordered by fetch time, so we can reliably quit
+            // early; other formats of the same fetch time are still loaded as
+            // files are not ordered by format)
+            if (!loaded.containsKey(loadedKey) && (loaded.size() >= fileLimit)
+                && ((latestLoadedFetchTime == null) || fetchTime.isAfter(latestLoadedFetchTime)) //
+            ) {
                 break;
             }
 
+            latestLoadedFetchTime = fetchTime;
+
             RawDataFile rawDataFile = loaded.computeIfAbsent(loadedKey, x -> new RawDataFile(fetchTime));
             rawDataFile.setFormatName(dataFileFormat);
 
             try {
-                byte[] bytes = readFile(file);
-
-                switch (fileType) {
-                    case META_DATA:
-                        loadMetaData(rawDataFile, bytes);
-                        break;
-
-                    case RAW_VATSIM_DATA_FILE:
-                        rawDataFile.setData(bytes);
-                        break;
+                int length = (int) file.length();
+                byte[] buffer = readFile(file, length);
+                span.addToAttribute("filesKept", 1);
 
-                    default:
-                        LOGGER.warn("File type {} read from {} is not taken into account!", fileType, file);
-                        break;
+                FetchedFileCompression compression = FetchedFileCompression.byFileName(fileName);
+                if (!decoder.decode(rawDataFile, fileType, compression, buffer, length)) {
+                    LOGGER.warn("File type {} read from {} is not taken into account!", fileType, file);
                 }
             } catch (IOException ex) {
                 throw new IOException("failed to read data from " + file.getCanonicalPath(), ex);
@@ -555,6 +1524,70 @@ public class Loader {
         return loaded.values();
     }
 
+    /**
+     * Determines the data file format of a transitional file. The first
+     * sub-directory below the transitional base path is the format name; files
+     * stored directly in the base path are assumed to be of legacy format.
+     *
+     * @param file transitional file
+     * @param transitionalBasePathCanonicalName canonical path of transitional base
+     *        directory
+     * @return data file format name
+     * @throws IOException if format name is illegal or file escapes base path
+     */
+    private String getTransitionalDataFileFormat(File file, String transitionalBasePathCanonicalName) throws IOException {
+        String dataFileFormat = file.getParentFile().getName();
+        String canonicalFilePath = file.getParentFile().getCanonicalPath();
+        if (transitionalBasePathCanonicalName.equals(canonicalFilePath)) {
+            LOGGER.warn(
+                "Bad directory structure, files must be present in sub-directories per format, assuming legacy format for {}",
+                file //
+            );
+            dataFileFormat = CommonConstants.DATA_FILE_FORMAT_NAME_LEGACY;
+        }
+        if (!canonicalFilePath.startsWith(transitionalBasePathCanonicalName)) {
+            throw new IOException("Possible escape from transitional base path detected: " + canonicalFilePath);
+        }
+        if (!validateDataFileFormatName(dataFileFormat)) {
+            throw new IOException("Illegal data file format name: " + dataFileFormat);
+        }
+
+        return dataFileFormat;
+    }
+
+    /**
+     * Determines the data file format of an entry in a transitioned archive. Format
+     * name is used as directory path in archives; entries without a directory are
+     * of legacy format.
+     *
+     * @param fileName full name of archive entry
+     * @return data file format name
+     * @throws IOException if format name is illegal
+     */
+    static String getArchiveEntryDataFileFormat(String fileName) throws IOException {
+        String dataFileFormat = extractDirectories(fileName);
+        if (dataFileFormat.isEmpty()) {
+            dataFileFormat = CommonConstants.DATA_FILE_FORMAT_NAME_LEGACY;
+        }
+        if (!validateDataFileFormatName(dataFileFormat)) {
+            throw new IOException("Illegal data file format name: " + dataFileFormat);
+        }
+
+        return dataFileFormat;
+    }
+
+    /**
+     * Checks if the given data file format has been requested.
+     *
+     * @param wantedDataFileFormatNames requested data file format names; all
+     *        formats are wanted if empty
+     * @param dataFileFormat data file format name to check
+     * @return true if wanted, false if not
+     */
+    static boolean isWantedFormat(Set<String> wantedDataFileFormatNames, String dataFileFormat) {
+        return wantedDataFileFormatNames.isEmpty() || wantedDataFileFormatNames.contains(dataFileFormat);
+    }
+
     private List<File> listOnlyFilesRecursive(File parent, int maxDepth) {
         // TODO: move to utils?
         List<File> out = new ArrayList<File>();
@@ -572,37 +1605,13 @@ public class Loader {
         }
     }
 
-    /**
-     * Extracts the fetch timestamp from given file name of an archived file. Actual
-     * file-system timestamps are not taken into account as they have nothing to do
-     * with the timestamp of fetching data.
-     *
-     * @param filename file name to extract time from
-     * @return timestamp extracted from filename; null if unavailable
-     */
-    private Instant extractFileFetchTimestamp(String filename) {
-        Matcher matcher = PATTERN_FETCHED_FILENAME.matcher(filename);
-        if (!matcher.matches()) {
-            return null;
-        }
-
-        int year = Integer.parseInt(matcher.group(PATTERN_FETCHED_FILENAME_YEAR));
-        int month = Integer.parseInt(matcher.group(PATTERN_FETCHED_FILENAME_MONTH));
-        int day = Integer.parseInt(matcher.group(PATTERN_FETCHED_FILENAME_DAY));
-        int hour = Integer.parseInt(matcher.group(PATTERN_FETCHED_FILENAME_HOUR));
-        int minute = Integer.parseInt(matcher.group(PATTERN_FETCHED_FILENAME_MINUTE));
-        int second = Integer.parseInt(matcher.group(PATTERN_FETCHED_FILENAME_SECOND));
-
-        return LocalDateTime.of(year, month, day, hour, minute, second).atOffset(ZoneOffset.UTC).toInstant();
-    }
-
     /**
      * Extracts the directories from given file path.
      *
      * @param filePath file path to extract directories from
      * @return directories extracted from filename; empty if unavailable
      */
-    private String extractDirectories(String filePath) {
+    private static String extractDirectories(String filePath) {
         Matcher matcher = PATTERN_FILE_DIRECTORY.matcher(filePath);
         if (!matcher.matches()) {
             return "";
@@ -621,199 +1630,70 @@ public class Loader {
      * @param latest latest valid timestamp, upper end of value range (inclusive)
      * @return true if actual value is in range, false if out of range
      */
-    private boolean inRange(Instant actual, Instant earliest, Instant latest) {
+    static boolean inRange(Instant actual, Instant earliest, Instant latest) {
         return earliest.compareTo(actual) <= 0 && actual.compareTo(latest) <= 0;
     }
 
     /**
-     * Determines if data for the given fetch date should be attempted to be loaded
-     * from a transitioned file. The decision is based on two factors:
-     * <ul>
-     * <li>Is the date in range of requested data to be loaded?</li>
-     * <li>Is data for given date expected to have been transitioned?</li>
-     * </ul>
+     * Checks if the given actual timestamp is in range between specified earliest
+     * and latest timestamps without creating an {@link Instant} for it.
      *
-     * @param fetchDate date to check access for
-     * @param latestFetchTime fetch timestamp of latest file requested to be loaded
-     * @return true if loading should be attempted from transitioned file, false if
-     *         not
+     * @param actualEpochSecond actual timestamp to be checked, in seconds since
+     *        epoch
+     * @param earliest earliest valid timestamp, lower end of value range
+     *        (inclusive)
+     * @param latest latest valid timestamp, upper end of value range (inclusive)
+     * @return true if actual value is in range, false if out of range
      */
-    private boolean shouldLoadFromTransitionedFile(LocalDate fetchDate, Instant latestFetchTime) {
-        // check if out of requested range
-        LocalDate latestFetchDate = toLocalDateUTC(latestFetchTime);
-        if (fetchDate.isAfter(latestFetchDate)) {
-            return false;
-        }
+    static boolean inRange(long actualEpochSecond, Instant earliest, Instant latest) {
+        long earliestEpochSecond = earliest.getEpochSecond();
+        boolean isAfterEarliest = (actualEpochSecond > earliestEpochSecond)
+            || ((actualEpochSecond == earliestEpochSecond) && (earliest.getNano() == 0));
 
-        // check if data cannot have been transitioned yet
-        return !transitionChecker.isTransitional(fetchDate);
+        return isAfterEarliest && (actualEpochSecond <= latest.getEpochSecond());
     }
 
     /**
-     * Loads data from transitioned files. Loading transitioned files means
-     * decompressing and reading an archive. No specific order of data should be
-     * assumed from reading an archive, so it needs to be sorted and any limitation
-     * of maximum number of files needs to be taken care of outside of this method.
+     * Determines if data for the given archive bucket should be attempted to be
+     * loaded from a transitioned file. The decision is based on two factors:
+     * <ul>
+     * <li>Is the bucket in range of requested data to be loaded?</li>
+     * <li>Is data for given bucket expected to have been transitioned?</li>
+     * </ul>
      *
-     * @param fetchDate fetch date of transitioned data (determines archive to be
-     *        opened)
-     * @param earliestFetchTime earliest fetch time to include in result
-     * @param latestFetchTime latest fetch time to include in result
-     * @param wantedDataFileFormatNames names of data file formats to load; all
-     *        formats will be loaded if empty
-     * @return all files matching given time range and formats in random order
-     * @throws IOException
+     * @param bucket archive bucket to check access for; null if no transitioned
+     *        data is available
+     * @param latestFetchTime fetch timestamp of latest file requested to be loaded
+     * @return true if loading should be attempted from transitioned file, false if
+     *         not
      */
-    private Collection<RawDataFile> loadFromTransitionedFile(LocalDate fetchDate, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames) throws IOException {
-        Map<Instant, RawDataFile> loaded = new HashMap<>();
-
-        File archiveFile = getTransitionedArchiveFile(fetchDate);
-
-        LOGGER.debug("opening transitioned file {}", archiveFile);
-
-        if (!archiveFile.exists() || !archiveFile.canRead()) {
-            throw new RuntimeException(
-                "expected archive file " + archiveFile.getCanonicalPath()
-                    + " does not exist or is inaccessible, unable to load data" //
-            );
-        }
-
-        try (
-            FileInputStream fis = new FileInputStream(archiveFile);
-            CompressorInputStream cis = compressorStreamFactory.createCompressorInputStream(
-                CompressorStreamFactory.XZ, //
-                fis //
-            );
-            ArchiveInputStream ais = archiveStreamFactory.createArchiveInputStream(ArchiveStreamFactory.TAR, cis); //
-        ) {
-            ArchiveEntry entry;
-            while ((entry = ais.getNextEntry()) != null) {
-                String fileName = entry.getName();
-                Instant fetchTime = extractFileFetchTimestamp(fileName);
-
-                // skip if out of requested range
-                if (!inRange(fetchTime, earliestFetchTime, latestFetchTime)) {
-                    continue;
-                }
-
-                // skip unsupported files
-                FetchedFileType fileType = FetchedFileType.byFileName(fileName);
-                if (fileType == null) {
-                    LOGGER.debug("Skipping unsupported file {} read from {}", fileName, archiveFile);
-                    continue;
-                }
-
-                // format name is used as directory path in archives
-                String dataFileFormat = extractDirectories(fileName);
-                if (dataFileFormat.isEmpty()) {
-                    dataFileFormat = CommonConstants.DATA_FILE_FORMAT_NAME_LEGACY;
-                }
-                if (!validateDataFileFormatName(dataFileFormat)) {
-                    throw new IOException("Illegal data file format name: " + dataFileFormat);
-                }
-
-                // skip unwanted data file formats
-                boolean isWantedFormat = wantedDataFileFormatNames.isEmpty()
-                    || wantedDataFileFormatNames.contains(dataFileFormat);
-                if (!isWantedFormat) {
-                    LOGGER.trace("skipping unwanted data file format {}", dataFileFormat);
-                    continue;
-                }
-
-                RawDataFile rawDataFile = loaded.computeIfAbsent(fetchTime, RawDataFile::new);
-                rawDataFile.setFormatName(dataFileFormat);
-                byte[] bytes = readArchiveEntry(ais, entry);
-
-                switch (fileType) {
-                    case META_DATA:
-                        loadMetaData(rawDataFile, bytes);
-                        break;
-
-                    case RAW_VATSIM_DATA_FILE:
-                        rawDataFile.setData(bytes);
-                        break;
-
-                    default:
-                        LOGGER.warn(
-                            "File type {} read from {} of {} is not taken into account!",
-                            fileType, fileName, archiveFile //
-                        );
-                        break;
-                }
-            }
-        } catch (Exception ex) {
-            throw new IOException("failed to extract data from archive " + archiveFile.getCanonicalPath(), ex);
+    private boolean shouldLoadFromTransitionedFile(ArchiveBucket bucket, Instant latestFetchTime) {
+        if (bucket == null) {
+            return false;
         }
 
-        return loaded.values();
-    }
-
-    /**
-     * Reads all data of a single {@link ArchiveEntry}.
-     *
-     * @param ais {@link ArchiveInputStream} to read from
-     * @param entry {@link ArchiveEntry} to read data for
-     * @return data of given {@link ArchiveEntry}
-     * @throws IOException
-     */
-    private byte[] readArchiveEntry(ArchiveInputStream ais, ArchiveEntry entry) throws IOException {
-        byte[] bytes = new byte[(int) entry.getSize()];
-        int offset = 0;
-        while (offset < bytes.length) {
-            offset += ais.read(bytes, offset, bytes.length - offset);
+        // check if out of requested range
+        LocalDateTime latestFetchDateTime = toLocalDateTimeUTC(latestFetchTime);
+        if (bucket.getStart().isAfter(latestFetchDateTime)) {
+            return false;
         }
 
-        return bytes;
+        // check if data cannot have been transitioned yet
+        return !transitionChecker.isTransitional(bucket);
     }
 
     /**
-     * Reads all data of given {@link File}.
+     * Reads all data of given {@link File} into a buffer rented from
+     * {@link #bufferPool}.
      *
      * @param file file to read
-     * @return data of given file
+     * @param length size of file
+     * @return buffer holding data of given file at start, may be longer than data
      * @throws IOException
      */
-    private byte[] readFile(File file) throws IOException {
+    private byte[] readFile(File file, int length) throws IOException {
         try (FileInputStream fis = new FileInputStream(file)) {
-            byte[] bytes = new byte[(int) file.length()];
-            int offset = 0;
-            while (offset < bytes.length) {
-                offset += fis.read(bytes, offset, bytes.length - offset);
-            }
-
-            return bytes;
-        }
-    }
-
-    /**
-     * Loads meta data from the file whose contents are given as a byte array and
-     * copies available information to the {@link RawDataFile}. Since meta data
-     * contains the fetch time again, it will be used to verify the previously
-     * initialized value of {@link RawDataFile#fetchTime} for consistency. An
-     * exception will be raised in case of an inconsistency.
-     *
-     * @param rawDataFile file linked to meta data
-     * @param bytes content of meta data file
-     * @throws IOException
-     */
-    private void loadMetaData(RawDataFile rawDataFile, byte[] bytes) throws IOException {
-        try (ByteArrayInputStream bais = new ByteArrayInputStream(bytes);
-            InputStreamReader isr = new InputStreamReader(bais, CHARACTER_SET_META_DATA); //
-        ) {
-            JsonObject json = (JsonObject) Jsoner.deserialize(isr);
-
-            rawDataFile.setFetchUrlRequested(json.getString(LocalMetaDataJsonKey.FETCH_URL_REQUESTED));
-
-            String actualFetchTimestampString = json.getString(LocalMetaDataJsonKey.FETCH_TIME);
-            Instant actualFetchTime = Instant.parse(actualFetchTimestampString);
-            if (!rawDataFile.getFetchTime().equals(actualFetchTime)) {
-                throw new IOException(
-                    "inconsistent data; fetch time was " + actualFetchTime
-                        + " according to meta data but has been indexed as " + rawDataFile.getFetchTime() //
-                );
-            }
-        } catch (JsonException ex) {
-            throw new IOException("failed to deserialize meta data", ex);
+            return decoder.read(fis, length);
         }
     }
 }
@@ -0,0 +1,61 @@
+package org.vatplanner.archiver.local;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Keeps track of the position within the wrapped {@link InputStream}. Unlike
+ * similar implementations, skipped bytes are taken into account as well, so
+ * the position remains exact for consumers skipping over content (such as
+ * TAR readers skipping entry data).
+ */
+class PositionTrackingInputStream extends FilterInputStream {
+
+    private long position = 0;
+
+    PositionTrackingInputStream(InputStream in) {
+        super(in);
+    }
+
+    /**
+     * Returns the number of bytes read or skipped so far.
+     *
+     * @return current position
+     */
+    long getPosition() {
+        return position;
+    }
+
+    @Override
+    public int read() throws IOException {
+        int b = super.read();
+        if (b >= 0) {
+            position++;
+        }
+        return b;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        int read = super.read(b, off, len);
+        if (read > 0) {
+            position += read;
+        }
+        return read;
+    }
+
+    @Override
+    public long skip(long n) throws IOException {
+        long skipped = super.skip(n);
+        if (skipped > 0) {
+            position += skipped;
+        }
+        return skipped;
+    }
+
+    @Override
+    public boolean markSupported() {
+        return false;
+    }
+}
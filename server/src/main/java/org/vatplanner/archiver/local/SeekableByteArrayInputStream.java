@@ -0,0 +1,57 @@
+package org.vatplanner.archiver.local;
+
+import org.tukaani.xz.SeekableInputStream;
+
+/**
+ * Provides data held in memory to {@link org.tukaani.xz.SeekableXZInputStream}.
+ */
+class SeekableByteArrayInputStream extends SeekableInputStream {
+
+    private final byte[] data;
+    private int position = 0;
+
+    SeekableByteArrayInputStream(byte[] data) {
+        this.data = data;
+    }
+
+    @Override
+    public int read() {
+        return (position < data.length) ? (data[position++] & 0xFF) : -1;
+    }
+
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+
+        if (position >= data.length) {
+            return -1;
+        }
+
+        int numBytes = Integer.min(length, data.length - position);
+        System.arraycopy(data, position, buffer, offset, numBytes);
+        position += numBytes;
+
+        return numBytes;
+    }
+
+    @Override
+    public long length() {
+        return data.length;
+    }
+
+    @Override
+    public long position() {
+        return position;
+    }
+
+    @Override
+    public void seek(long pos) {
+        if (pos < 0) {
+            throw new IllegalArgumentException("negative position: " + pos);
+        }
+
+        position = (int) Long.min(pos, data.length);
+    }
+}
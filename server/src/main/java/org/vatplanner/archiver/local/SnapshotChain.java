@@ -0,0 +1,114 @@
+package org.vatplanner.archiver.local;
+
+import java.io.IOException;
+
+import org.vatplanner.archiver.common.BufferPool;
+
+/**
+ * Reconstructs data files of a single format while reading a delta archive
+ * entry by entry (see {@link SnapshotDelta}). The chain holds the most recent
+ * data file as base for the following delta.
+ *
+ * <p>
+ * Buffers are rented from and returned to the given {@link BufferPool}; the
+ * reconstructed data file remains owned by the chain, so callers need to copy
+ * it if it should be kept. Instances are not thread-safe.
+ * </p>
+ */
+class SnapshotChain {
+
+    private final BufferPool bufferPool;
+
+    private byte[] snapshot;
+    private int snapshotLength;
+
+    /**
+     * Creates a new, empty chain.
+     *
+     * @param bufferPool provides buffers for reconstructed data files
+     */
+    SnapshotChain(BufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Advances the chain by the next entry of its format. The given buffer is
+     * owned by the chain afterwards.
+     *
+     * @param kind kind of entry
+     * @param buffer data of entry
+     * @param length length of entry data
+     * @throws IOException if a delta does not follow a keyframe or is malformed
+     */
+    void advance(SnapshotDelta.Kind kind, byte[] buffer, int length) throws IOException {
+        if (kind != SnapshotDelta.Kind.DELTA) {
+            replace(buffer, length);
+            return;
+        }
+
+        try {
+            if (snapshot == null) {
+                throw new IOException("snapshot delta is not preceded by a keyframe");
+            }
+
+            byte[] target = bufferPool.rent(SnapshotDelta.getTargetLength(buffer, length));
+            try {
+                int targetLength = SnapshotDelta.decode(snapshot, snapshotLength, buffer, length, target);
+                replace(target, targetLength);
+            } catch (IOException | RuntimeException ex) {
+                bufferPool.release(target);
+                throw ex;
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void replace(byte[] buffer, int length) {
+        clear();
+        snapshot = buffer;
+        snapshotLength = length;
+    }
+
+    /**
+     * Returns a copy of the most recent data file in a buffer rented from the
+     * {@link BufferPool}.
+     *
+     * @return copy of most recent data file, may be longer than data
+     */
+    byte[] copySnapshot() {
+        byte[] copy = bufferPool.rent(snapshotLength);
+        System.arraycopy(snapshot, 0, copy, 0, snapshotLength);
+        return copy;
+    }
+
+    /**
+     * Returns the most recent data file; the buffer remains owned by the chain.
+     *
+     * @return most recent data file, may be longer than data
+     */
+    byte[] getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Returns the length of the most recent data file.
+     *
+     * @return length of most recent data file
+     */
+    int getSnapshotLength() {
+        return snapshotLength;
+    }
+
+    /**
+     * Returns the held data file to the {@link BufferPool}. Following entries
+     * need to start with a keyframe again.
+     */
+    void clear() {
+        if (snapshot != null) {
+            bufferPool.release(snapshot);
+            snapshot = null;
+            snapshotLength = 0;
+        }
+    }
+}
@@ -0,0 +1,398 @@
+package org.vatplanner.archiver.local;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+
+/**
+ * Encodes and decodes data files of transitioned archives as deltas to the
+ * previous data file of the same format (see {@link DeltaArchiveEncoder}).
+ *
+ * <p>
+ * A delta is a sequence of instructions to either copy a range from the
+ * previous data file or insert literal bytes. Matches are searched at segment
+ * boundaries: segments end after line breaks and JSON structure characters
+ * ({@code ,}, <code>{</code> and {@code [}), so unchanged lines of legacy
+ * files as well as unchanged objects, array elements and fields of JSON
+ * files are found again even if they moved. Matches are then extended byte by
+ * byte, so encoding does not depend on any particular format.
+ * </p>
+ *
+ * <p>
+ * Delta archives mark entries by PAX headers: {@link #PAX_HEADER_SNAPSHOT}
+ * tells if an entry is a full keyframe or a delta, {@link #PAX_HEADER_SIZE}
+ * holds the size of the reconstructed data file for deltas. Entries without
+ * those headers are regular data files.
+ * </p>
+ *
+ * <p>
+ * Encoded deltas start with a version byte and the length of the
+ * reconstructed data, followed by instructions. All numbers are encoded as
+ * unsigned variable-length integers (7 bits per byte, least significant group
+ * first). Each instruction starts with the number of bytes shifted left by one
+ * bit; the lowest bit is set for insertions which are followed by the literal
+ * bytes, copies are followed by the offset in the previous data file.
+ * </p>
+ */
+final class SnapshotDelta {
+
+    static final String PAX_HEADER_SNAPSHOT = "VATPLANNER.snapshot";
+    static final String PAX_HEADER_SIZE = "VATPLANNER.size";
+
+    private static final byte VERSION = 1;
+
+    private static final int MINIMUM_COPY_LENGTH = 16;
+    private static final int MAXIMUM_CANDIDATES = 16;
+
+    /**
+     * Kind of data file entries in delta archives.
+     */
+    enum Kind {
+        /**
+         * Regular data file, not part of any delta chain.
+         */
+        PLAIN(null),
+
+        /**
+         * Full data file starting a new delta chain.
+         */
+        KEYFRAME("keyframe"),
+
+        /**
+         * Delta to the previous data file of same format.
+         */
+        DELTA("delta");
+
+        private final String headerValue;
+
+        private Kind(String headerValue) {
+            this.headerValue = headerValue;
+        }
+
+        /**
+         * Returns the value of {@link SnapshotDelta#PAX_HEADER_SNAPSHOT} marking
+         * entries of this kind.
+         *
+         * @return PAX header value; null if entries are not marked
+         */
+        String getHeaderValue() {
+            return headerValue;
+        }
+
+        /**
+         * Determines the kind of the given entry from its PAX headers.
+         *
+         * @param entry TAR entry
+         * @return kind of entry
+         * @throws IllegalArgumentException if the entry is marked but the kind is
+         *         unknown
+         */
+        static Kind of(TarArchiveEntry entry) {
+            String value = entry.getExtraPaxHeader(PAX_HEADER_SNAPSHOT);
+            if (value == null) {
+                return PLAIN;
+            }
+
+            for (Kind kind : values()) {
+                if (value.equals(kind.headerValue)) {
+                    return kind;
+                }
+            }
+
+            throw new IllegalArgumentException("unknown snapshot kind \"" + value + "\" of " + entry.getName());
+        }
+    }
+
+    private SnapshotDelta() {
+        // utility class, hide constructor
+    }
+
+    /**
+     * Returns the size of the data file an entry holds once reconstructed.
+     *
+     * @param entry TAR entry
+     * @return size of reconstructed data file in bytes
+     */
+    static long getReconstructedSize(TarArchiveEntry entry) {
+        String value = entry.getExtraPaxHeader(PAX_HEADER_SIZE);
+        if (value == null) {
+            return entry.getSize();
+        }
+
+        return Long.parseLong(value);
+    }
+
+    /**
+     * Encodes the target data as delta to the given base.
+     *
+     * @param base previous data file
+     * @param baseLength length of previous data file
+     * @param target data file to encode
+     * @param targetLength length of data file to encode
+     * @return encoded delta
+     */
+    static byte[] encode(byte[] base, int baseLength, byte[] target, int targetLength) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(Integer.max(64, targetLength / 8));
+        out.write(VERSION);
+        writeVarInt(out, targetLength);
+
+        SegmentTable table = new SegmentTable(base, baseLength);
+
+        int pos = 0;
+        int insertStart = 0;
+
+        // offset of base against target seen on last copy, small changes (e.g.
+        // updated numbers) are usually followed by more data at same offset
+        int lastDisplacement = 0;
+
+        while (pos < targetLength) {
+            int segmentEnd = findSegmentEnd(target, pos, targetLength);
+
+            int bestOffset = -1;
+            int bestLength = 0;
+
+            int displaced = pos + lastDisplacement;
+            if ((displaced >= 0) && (displaced < baseLength)) {
+                bestLength = matchLength(base, displaced, baseLength, target, pos, targetLength);
+                bestOffset = displaced;
+            }
+
+            int hash = hash(target, pos, segmentEnd);
+            int numCandidates = 0;
+            for (int candidate = table.first(hash); (candidate >= 0) && (numCandidates < MAXIMUM_CANDIDATES); candidate = table.next(candidate)) {
+                numCandidates++;
+                int length = matchLength(base, candidate, baseLength, target, pos, targetLength);
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestOffset = candidate;
+                }
+            }
+
+            if (bestLength < MINIMUM_COPY_LENGTH) {
+                pos = segmentEnd;
+                continue;
+            }
+
+            writeInsert(out, target, insertStart, pos);
+            writeVarInt(out, ((long) bestLength) << 1);
+            writeVarInt(out, bestOffset);
+
+            lastDisplacement = bestOffset - pos;
+            pos += bestLength;
+            insertStart = pos;
+        }
+
+        writeInsert(out, target, insertStart, targetLength);
+
+        return out.toByteArray();
+    }
+
+    /**
+     * Returns the length of the data file reconstructed from the given delta.
+     *
+     * @param delta encoded delta
+     * @param deltaLength length of encoded delta
+     * @return length of reconstructed data file
+     * @throws IOException if delta is malformed
+     */
+    static int getTargetLength(byte[] delta, int deltaLength) throws IOException {
+        if ((deltaLength < 1) || (delta[0] != VERSION)) {
+            throw new IOException("unsupported snapshot delta version");
+        }
+
+        return (int) new Reader(delta, 1, deltaLength).readVarInt();
+    }
+
+    /**
+     * Reconstructs a data file by applying a delta to the given base.
+     *
+     * @param base previous data file
+     * @param baseLength length of previous data file
+     * @param delta encoded delta
+     * @param deltaLength length of encoded delta
+     * @param target receives reconstructed data file, must be large enough to
+     *        hold {@link #getTargetLength(byte[], int)} bytes
+     * @return length of reconstructed data file
+     * @throws IOException if delta is malformed or does not fit base
+     */
+    static int decode(byte[] base, int baseLength, byte[] delta, int deltaLength, byte[] target) throws IOException {
+        int targetLength = getTargetLength(delta, deltaLength);
+        if (target.length < targetLength) {
+            throw new IllegalArgumentException(
+                "target buffer holds " + target.length + " bytes, " + targetLength + " required" //
+            );
+        }
+
+        Reader reader = new Reader(delta, 1, deltaLength);
+        reader.readVarInt();
+
+        int pos = 0;
+        while (reader.hasRemaining()) {
+            long instruction = reader.readVarInt();
+            long length = instruction >>> 1;
+            if (length > targetLength - pos) {
+                throw new IOException("snapshot delta exceeds announced length of " + targetLength + " bytes");
+            }
+
+            if ((instruction & 1) != 0) {
+                reader.readBytes(target, pos, (int) length);
+            } else {
+                long offset = reader.readVarInt();
+                if (offset + length > baseLength) {
+                    throw new IOException("snapshot delta refers beyond end of previous data file");
+                }
+
+                System.arraycopy(base, (int) offset, target, pos, (int) length);
+            }
+
+            pos += (int) length;
+        }
+
+        if (pos != targetLength) {
+            throw new IOException(
+                "snapshot delta reconstructed " + pos + " bytes, expected " + targetLength //
+            );
+        }
+
+        return targetLength;
+    }
+
+    private static int findSegmentEnd(byte[] data, int start, int length) {
+        for (int i = start; i < length; i++) {
+            byte b = data[i];
+            if ((b == '\n') || (b == ',') || (b == '{') || (b == '[')) {
+                return i + 1;
+            }
+        }
+
+        return length;
+    }
+
+    private static int hash(byte[] data, int start, int end) {
+        int hash = 1;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + data[i];
+        }
+
+        return hash;
+    }
+
+    private static int matchLength(byte[] base, int baseOffset, int baseLength, byte[] target, int targetOffset, int targetLength) {
+        int maxLength = Integer.min(baseLength - baseOffset, targetLength - targetOffset);
+        int length = 0;
+        while ((length < maxLength) && (base[baseOffset + length] == target[targetOffset + length])) {
+            length++;
+        }
+
+        return length;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int start, int end) {
+        if (end <= start) {
+            return;
+        }
+
+        writeVarInt(out, (((long) (end - start)) << 1) | 1);
+        out.write(data, start, end - start);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+
+        out.write((int) value);
+    }
+
+    /**
+     * Indexes start offsets of all segments of a data file by hash. Candidates
+     * of same hash are chained from first to last occurrence.
+     */
+    private static class SegmentTable {
+        private final int[] heads;
+        private final int[] tails;
+        private final int[] nextOffsets;
+        private final int mask;
+
+        private SegmentTable(byte[] data, int length) {
+            int numSegments = 0;
+            for (int pos = 0; pos < length; pos = findSegmentEnd(data, pos, length)) {
+                numSegments++;
+            }
+
+            int capacity = Integer.highestOneBit(Integer.max(16, numSegments * 2) - 1) << 1;
+            mask = capacity - 1;
+            heads = new int[capacity];
+            tails = new int[capacity];
+            nextOffsets = new int[length + 1];
+
+            for (int pos = 0; pos < length;) {
+                int end = findSegmentEnd(data, pos, length);
+                int bucket = hash(data, pos, end) & mask;
+
+                // offsets are stored incremented by one so 0 marks empty buckets
+                nextOffsets[pos] = 0;
+                if (heads[bucket] == 0) {
+                    heads[bucket] = pos + 1;
+                } else {
+                    nextOffsets[tails[bucket] - 1] = pos + 1;
+                }
+                tails[bucket] = pos + 1;
+
+                pos = end;
+            }
+        }
+
+        private int first(int hash) {
+            return heads[hash & mask] - 1;
+        }
+
+        private int next(int offset) {
+            return nextOffsets[offset] - 1;
+        }
+    }
+
+    private static class Reader {
+        private final byte[] data;
+        private final int length;
+        private int pos;
+
+        private Reader(byte[] data, int offset, int length) {
+            this.data = data;
+            this.length = length;
+            this.pos = offset;
+        }
+
+        private boolean hasRemaining() {
+            return pos < length;
+        }
+
+        private long readVarInt() throws IOException {
+            long value = 0;
+            for (int shift = 0; shift < 63; shift += 7) {
+                if (pos >= length) {
+                    throw new IOException("truncated snapshot delta");
+                }
+
+                int b = data[pos++];
+                value |= ((long) (b & 0x7F)) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+
+            throw new IOException("malformed number in snapshot delta");
+        }
+
+        private void readBytes(byte[] target, int targetOffset, int numBytes) throws IOException {
+            if (numBytes > length - pos) {
+                throw new IOException("truncated snapshot delta");
+            }
+
+            System.arraycopy(data, pos, target, targetOffset, numBytes);
+            pos += numBytes;
+        }
+    }
+}
@@ -22,6 +22,16 @@ public class StorageConfiguration {
     private Duration transitionPrelude;
     private Duration transitionCooldown;
     private ZoneId transitionTimeZone;
+    private int archiveBucketHours;
+    private Duration transitionBucketDelay;
+    private Duration archiveEntryOrderTolerance;
+    private int archiveIndexCacheSize;
+    private String archiveCatalogFile;
+    private int bufferPoolMegabytes;
+    private int xzArrayCacheMegabytes;
+    private int prefetchMegabytes;
+    private boolean deltaEncoding = false;
+    private int deltaKeyframeInterval;
 
     /**
      * Returns the maximum number of data files allowed to be loaded into memory per
@@ -145,4 +155,215 @@ public class StorageConfiguration {
         this.transitionTimeZone = transitionTimeZone;
         return this;
     }
+
+    /**
+     * Returns the period of fetch times covered by each transitioned archive.
+     * Archives cover a whole UTC day by default; shorter periods reduce the
+     * amount of data to decompress for short time ranges and the number of
+     * transitional files kept at a time.
+     *
+     * @return hours covered by each transitioned archive; divides a day
+     * @see ArchiveBucket
+     */
+    public int getArchiveBucketHours() {
+        return archiveBucketHours;
+    }
+
+    public StorageConfiguration setArchiveBucketHours(int archiveBucketHours) {
+        LOGGER.debug("setting archiveBucketHours to {}", archiveBucketHours);
+        this.archiveBucketHours = archiveBucketHours;
+        return this;
+    }
+
+    /**
+     * Returns the time after the end of a sub-daily archive bucket at which
+     * transition from single files to archives is expected to be performed.
+     * Only applies if archives cover less than a day; daily archives are
+     * transitioned at {@link #getTransitionDailyLocalTime()}.
+     *
+     * @return time after end of a sub-daily bucket at which transition is
+     *         supposed to happen
+     * @see TransitionChecker
+     */
+    public Duration getTransitionBucketDelay() {
+        return transitionBucketDelay;
+    }
+
+    public StorageConfiguration setTransitionBucketDelay(Duration transitionBucketDelay) {
+        LOGGER.debug("setting transitionBucketDelay to {}", transitionBucketDelay);
+        this.transitionBucketDelay = transitionBucketDelay;
+        return this;
+    }
+
+    /**
+     * Returns how far entries of a data file format may be out of fetch time
+     * order within transitioned archives. Archives which have not been indexed
+     * yet are only read until entries are later than the requested time range or
+     * the last file needed for a request by more than this duration.
+     *
+     * @return maximum deviation of archive entries from fetch time order; null
+     *         or negative to always read archives completely
+     */
+    public Duration getArchiveEntryOrderTolerance() {
+        return archiveEntryOrderTolerance;
+    }
+
+    public StorageConfiguration setArchiveEntryOrderTolerance(Duration archiveEntryOrderTolerance) {
+        LOGGER.debug("setting archiveEntryOrderTolerance to {}", archiveEntryOrderTolerance);
+        this.archiveEntryOrderTolerance = archiveEntryOrderTolerance;
+        return this;
+    }
+
+    /**
+     * Returns the maximum number of transitioned archive indexes to keep in
+     * memory. Indexes hold information about all entries of an archive, so they
+     * can be used to answer requests for statistics without decompressing the
+     * archive again.
+     *
+     * @return maximum number of archive indexes to keep in memory; 0 to disable
+     * @see ArchiveIndexCache
+     */
+    public int getArchiveIndexCacheSize() {
+        return archiveIndexCacheSize;
+    }
+
+    public StorageConfiguration setArchiveIndexCacheSize(int archiveIndexCacheSize) {
+        LOGGER.debug("setting archiveIndexCacheSize to {}", archiveIndexCacheSize);
+        this.archiveIndexCacheSize = archiveIndexCacheSize;
+        return this;
+    }
+
+    /**
+     * Returns the file to persist indexes of all transitioned archives to. The
+     * catalog keeps indexes across restarts, answers data file counts without
+     * walking archives and, once synchronized after the latest transition,
+     * resolves the archives to read for a request instead of looking them up on
+     * the file system.
+     *
+     * @return catalog file; null if disabled
+     * @see ArchiveCatalog
+     */
+    public File getArchiveCatalogFile() {
+        if ((archiveCatalogFile == null) || archiveCatalogFile.trim().isEmpty()) {
+            return null;
+        }
+
+        return new File(archiveCatalogFile);
+    }
+
+    public StorageConfiguration setArchiveCatalogFile(String archiveCatalogFile) {
+        LOGGER.debug("setting archiveCatalogFile to {}", archiveCatalogFile);
+        this.archiveCatalogFile = archiveCatalogFile;
+        return this;
+    }
+
+    /**
+     * Returns the maximum total size of buffers retained for reuse when reading
+     * data files. Reusing buffers reduces allocation rate and garbage collection
+     * pauses caused by the large arrays needed to hold data files.
+     *
+     * @return maximum size of retained read buffers in megabytes; 0 to disable
+     *         pooling
+     * @see org.vatplanner.archiver.common.BufferPool
+     */
+    public int getBufferPoolMegabytes() {
+        return bufferPoolMegabytes;
+    }
+
+    public StorageConfiguration setBufferPoolMegabytes(int bufferPoolMegabytes) {
+        LOGGER.debug("setting bufferPoolMegabytes to {}", bufferPoolMegabytes);
+        this.bufferPoolMegabytes = bufferPoolMegabytes;
+        return this;
+    }
+
+    /**
+     * Returns the maximum total size of arrays retained for reuse by XZ/LZMA
+     * decoders and encoders. Each stream needs dictionary buffers of several
+     * megabytes which would otherwise be allocated again for every archive read
+     * or packed response.
+     *
+     * @return maximum size of retained XZ/LZMA arrays in megabytes; 0 to disable
+     *         caching
+     * @see org.vatplanner.archiver.util.BoundedArrayCache
+     */
+    public int getXzArrayCacheMegabytes() {
+        return xzArrayCacheMegabytes;
+    }
+
+    public StorageConfiguration setXzArrayCacheMegabytes(int xzArrayCacheMegabytes) {
+        LOGGER.debug("setting xzArrayCacheMegabytes to {}", xzArrayCacheMegabytes);
+        this.xzArrayCacheMegabytes = xzArrayCacheMegabytes;
+        return this;
+    }
+
+    /**
+     * Returns the maximum total size of transitioned archives read into memory
+     * ahead of time. While a request decompresses one archive, the archive of
+     * the following day is read in background to hide disk latency.
+     *
+     * @return maximum size of prefetched archives in megabytes; 0 to disable
+     *         prefetching
+     * @see ArchivePrefetcher
+     */
+    public int getPrefetchMegabytes() {
+        return prefetchMegabytes;
+    }
+
+    public StorageConfiguration setPrefetchMegabytes(int prefetchMegabytes) {
+        LOGGER.debug("setting prefetchMegabytes to {}", prefetchMegabytes);
+        this.prefetchMegabytes = prefetchMegabytes;
+        return this;
+    }
+
+    /**
+     * Returns the maximum total size of memory retained by caches of the server
+     * in between requests, i.e. buffer pool, XZ array cache and prefetched
+     * archives. Such memory is not available to requests.
+     *
+     * @return maximum size of cache memory in bytes
+     */
+    public long getCacheMemory() {
+        return ((long) bufferPoolMegabytes + xzArrayCacheMegabytes + prefetchMegabytes) * 1024L * 1024L;
+    }
+
+    /**
+     * Returns the number of data files per format after which archives encoded
+     * by {@link DeltaArchiveEncoder} store a full keyframe again. Data files in
+     * between are stored as deltas to their predecessor.
+     *
+     * @return keyframe interval in number of data files; 1 to not store deltas
+     */
+    public int getDeltaKeyframeInterval() {
+        return deltaKeyframeInterval;
+    }
+
+    public StorageConfiguration setDeltaKeyframeInterval(int deltaKeyframeInterval) {
+        LOGGER.debug("setting deltaKeyframeInterval to {}", deltaKeyframeInterval);
+        this.deltaKeyframeInterval = deltaKeyframeInterval;
+        return this;
+    }
+
+    /**
+     * Determines if transitioned archives may be rewritten by
+     * {@link DeltaArchiveEncoder} to store deltas. Archives which have already
+     * been encoded remain readable regardless of this setting.
+     *
+     * @return true if archives may be delta-encoded, false if not
+     */
+    public boolean isDeltaEncodingEnabled() {
+        return deltaEncoding;
+    }
+
+    /**
+     * Sets whether transitioned archives may be rewritten by
+     * {@link DeltaArchiveEncoder} to store deltas.
+     *
+     * @param deltaEncoding true if archives may be delta-encoded, false if not
+     * @return this instance for method-chaining
+     */
+    public StorageConfiguration setDeltaEncoding(boolean deltaEncoding) {
+        LOGGER.debug("setting deltaEncoding to {}", deltaEncoding);
+        this.deltaEncoding = deltaEncoding;
+        return this;
+    }
 }
@@ -5,6 +5,7 @@ import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalTime;
 import java.time.ZoneId;
+import java.time.ZoneOffset;
 
 /**
  * In current implementation, archival/compression of single files to a new
@@ -24,6 +25,13 @@ import java.time.ZoneId;
  * use {@link #shouldBackOff(LocalDate)} to check if transition is currently
  * active.
  * </p>
+ *
+ * <p>
+ * If archives are configured to cover less than a day (see
+ * {@link ArchiveBucket}), each bucket is expected to be transitioned a
+ * configured delay after its end instead of once per day. Methods accepting a
+ * bucket apply the schedule matching the bucket's duration.
+ * </p>
  */
 public class TransitionChecker {
 
@@ -31,12 +39,14 @@ public class TransitionChecker {
     private final Duration prelude;
     private final Duration cooldown;
     private final ZoneId timeZone;
+    private final Duration bucketDelay;
 
     public TransitionChecker(StorageConfiguration configuration) {
         dailyStartTime = configuration.getTransitionDailyLocalTime();
         prelude = configuration.getTransitionPrelude();
         cooldown = configuration.getTransitionCooldown();
         timeZone = configuration.getTransitionTimeZone();
+        bucketDelay = configuration.getTransitionBucketDelay();
     }
 
     Instant getNow() {
@@ -56,7 +66,19 @@ public class TransitionChecker {
      *         state, false if it has been archived already
      */
     public boolean isTransitional(LocalDate fetchDate) {
-        return getNow().isBefore(getTransitionStart(fetchDate));
+        return isTransitional(ArchiveBucket.ofDay(fetchDate));
+    }
+
+    /**
+     * Calculates if data fetched within given archive bucket is still in
+     * single-file transitional state or has already been archived.
+     *
+     * @param bucket archive bucket holding fetch time of data
+     * @return true if data for specified bucket is still in single-file
+     *         transitional state, false if it has been archived already
+     */
+    boolean isTransitional(ArchiveBucket bucket) {
+        return getNow().isBefore(getTransitionStart(bucket));
     }
 
     /**
@@ -68,7 +90,19 @@ public class TransitionChecker {
      *         accessed, false if data is supposed to be accessible
      */
     public boolean shouldBackOff(LocalDate fetchDate) {
-        Instant transitionStart = getTransitionStart(fetchDate);
+        return shouldBackOff(ArchiveBucket.ofDay(fetchDate));
+    }
+
+    /**
+     * Calculates if data fetched within given archive bucket is currently in
+     * transition and must not be accessed to protect the archival process.
+     *
+     * @param bucket archive bucket holding fetch time of data
+     * @return true if transition is currently being performed and data must not be
+     *         accessed, false if data is supposed to be accessible
+     */
+    boolean shouldBackOff(ArchiveBucket bucket) {
+        Instant transitionStart = getTransitionStart(bucket);
         Instant backOffStart = transitionStart.minus(prelude);
         Instant backOffEnd = transitionStart.plus(cooldown);
         Instant now = getNow();
@@ -77,20 +111,36 @@ public class TransitionChecker {
     }
 
     /**
-     * Calculates the start of transition process for data fetched at given date.
+     * Calculates the end of transition process for data fetched within given
+     * archive bucket, i.e. when its archive is expected to be complete.
      *
-     * @param fetchDate date at which data has been fetched
+     * @param bucket archive bucket holding fetch time of data
+     * @return end timestamp of transition process (including cooldown)
+     */
+    Instant getTransitionEnd(ArchiveBucket bucket) {
+        return getTransitionStart(bucket).plus(cooldown);
+    }
+
+    /**
+     * Calculates the start of transition process for data fetched within given
+     * archive bucket. Daily buckets are transitioned at the configured local time
+     * on the following day, sub-daily buckets after the configured delay once
+     * the bucket has ended.
+     *
+     * @param bucket archive bucket holding fetch time of data
      * @return start timestamp of transition process
      */
-    private Instant getTransitionStart(LocalDate fetchDate) {
+    Instant getTransitionStart(ArchiveBucket bucket) {
+        if (!bucket.isDaily()) {
+            return bucket.getEnd().toInstant(ZoneOffset.UTC).plus(bucketDelay);
+        }
+
         // TODO: test what happens at impossible times (transition scheduled during DST
         // change day for skipped hour)
-        return fetchDate
+        return bucket.getDate()
             .plusDays(1)
             .atTime(dailyStartTime)
             .atZone(timeZone)
             .toInstant();
     }
-
-    // FIXME: unit test
 }
@@ -0,0 +1,66 @@
+package org.vatplanner.archiver.local;
+
+import java.io.File;
+
+/**
+ * References a transitioned archive holding data fetched within a single
+ * {@link ArchiveBucket} (by default a day). Depending on storage layout, an
+ * archive holds either all data file formats of that bucket
+ * ({@code YYYY/MM/YYYYMMDD.tar.xz}) or only a single format
+ * ({@code YYYY/MM/<format>/YYYYMMDD.tar.xz}). Entries are named the same way
+ * in both layouts.
+ */
+class TransitionedArchive {
+
+    private final ArchiveBucket bucket;
+    private final String formatName;
+    private final File file;
+
+    /**
+     * Creates a new reference.
+     *
+     * @param bucket period of fetch times held by archive
+     * @param formatName data file format held by archive; null if the archive
+     *        holds all formats
+     * @param file archive file, may not exist
+     */
+    TransitionedArchive(ArchiveBucket bucket, String formatName, File file) {
+        this.bucket = bucket;
+        this.formatName = formatName;
+        this.file = file;
+    }
+
+    /**
+     * Returns the period of fetch times held by the archive.
+     *
+     * @return bucket of data held by archive
+     */
+    ArchiveBucket getBucket() {
+        return bucket;
+    }
+
+    /**
+     * Returns the data file format held by the archive if archives are stored
+     * per format.
+     *
+     * @return data file format held by archive; null if the archive holds all
+     *         formats
+     */
+    String getFormatName() {
+        return formatName;
+    }
+
+    /**
+     * Returns the archive file.
+     *
+     * @return archive file, may not exist
+     */
+    File getFile() {
+        return file;
+    }
+
+    @Override
+    public String toString() {
+        return "TransitionedArchive(" + bucket + ((formatName != null) ? "/" + formatName : "") + ", " + file + ")";
+    }
+}
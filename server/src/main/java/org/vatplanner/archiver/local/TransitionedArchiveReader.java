@@ -0,0 +1,847 @@
+package org.vatplanner.archiver.local;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarConstants;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.SeekableFileInputStream;
+import org.tukaani.xz.SeekableInputStream;
+import org.tukaani.xz.SeekableXZInputStream;
+import org.tukaani.xz.XZInputStream;
+import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
+
+/**
+ * Reads {@link TransitionedArchive}s: decompresses the XZ-compressed TAR stream
+ * (seeking to relevant entries if an {@link ArchiveIndex} is cached), indexes
+ * archives while reading them and decodes relevant entries to
+ * {@link RawDataFile}s. Which archives need to be read for a request is
+ * resolved by {@link Loader}.
+ */
+class TransitionedArchiveReader {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TransitionedArchiveReader.class);
+
+    private final ArchiveIndexCache archiveIndexCache;
+    private final ArchivePrefetcher archivePrefetcher;
+    private final ArrayCache xzArrayCache;
+    private final Duration archiveEntryOrderTolerance;
+    private final FetchedFileDecoder decoder;
+
+    private final LongAdder openedArchives = new LongAdder();
+    private final LongAdder decompressedArchiveBytes = new LongAdder();
+
+    private final ArchiveStreamFactory archiveStreamFactory = new ArchiveStreamFactory();
+
+    /**
+     * Creates a new reader.
+     *
+     * @param archiveIndexCache provides and receives indexes of archives
+     * @param archivePrefetcher provides archives already read ahead from disk
+     * @param xzArrayCache provides arrays to XZ decoders
+     * @param archiveEntryOrderTolerance maximum duration entries of an archive
+     *        may be out of order by; null or negative to always read archives
+     *        completely if not indexed
+     * @param decoder decodes archive entries
+     */
+    TransitionedArchiveReader(ArchiveIndexCache archiveIndexCache, ArchivePrefetcher archivePrefetcher, ArrayCache xzArrayCache, Duration archiveEntryOrderTolerance, FetchedFileDecoder decoder) {
+        this.archiveIndexCache = archiveIndexCache;
+        this.archivePrefetcher = archivePrefetcher;
+        this.xzArrayCache = xzArrayCache;
+        this.archiveEntryOrderTolerance = archiveEntryOrderTolerance;
+        this.decoder = decoder;
+    }
+
+    /**
+     * Returns the number of archives opened for reading so far.
+     *
+     * @return number of opened archives
+     */
+    long getNumOpenedArchives() {
+        return openedArchives.sum();
+    }
+
+    /**
+     * Returns the number of bytes decompressed from archives so far.
+     *
+     * @return number of decompressed bytes
+     */
+    long getDecompressedArchiveBytes() {
+        return decompressedArchiveBytes.sum();
+    }
+
+    /**
+     * Starts to prefetch the transitioned archives of the next bucket unless
+     * cached indexes show that they will not be needed, i.e. the current
+     * archives already hold enough files to reach the limit or the next archives
+     * do not hold any relevant entries.
+     *
+     * @param archives archives of the bucket about to be loaded
+     * @param nextArchives archives of the following bucket, to be prefetched
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampler selects files to load when downsampling; null if loading all
+     *        files
+     * @param continuationToken token of previous page to skip already returned
+     *        files; null if not continuing
+     * @param fileLimit maximum number of files still to be handed out
+     * @param prefetchedArchives receives the archive files being prefetched
+     */
+    void prefetchNext(List<TransitionedArchive> archives, List<TransitionedArchive> nextArchives, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames, FetchTimeSampler sampler, ContinuationToken continuationToken, int fileLimit, List<File> prefetchedArchives) {
+        // number of files remaining after sampling is not known in advance
+        if (sampler == null) {
+            int numRelevantDataFiles = 0;
+            for (TransitionedArchive archive : archives) {
+                ArchiveIndex currentIndex = archiveIndexCache.get(archive.getFile());
+                if (currentIndex == null) {
+                    numRelevantDataFiles = -1;
+                    break;
+                }
+
+                numRelevantDataFiles += countRelevantDataFiles(currentIndex, earliestFetchTime, latestFetchTime,
+                    wantedDataFileFormatNames, continuationToken, fileLimit);
+            }
+
+            if (numRelevantDataFiles >= fileLimit) {
+                return;
+            }
+        }
+
+        for (TransitionedArchive archive : nextArchives) {
+            File archiveFile = archive.getFile();
+
+            ArchiveIndex nextIndex = archiveIndexCache.get(archiveFile);
+            if ((nextIndex != null)
+                && (findFirstRelevantHeaderOffset(nextIndex, earliestFetchTime, latestFetchTime,
+                    wantedDataFileFormatNames) < 0) //
+            ) {
+                continue;
+            }
+
+            if (archivePrefetcher.prefetch(archiveFile)) {
+                prefetchedArchives.add(archiveFile);
+            }
+        }
+    }
+
+    /**
+     * Counts the data files indexed as relevant to a request, up to the given
+     * limit.
+     *
+     * @param index index of archive
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats if empty
+     * @param continuationToken token of previous page to skip already returned
+     *        files; null if not continuing
+     * @param limit number of files after which counting stops
+     * @return number of relevant data files, at most given limit
+     */
+    private int countRelevantDataFiles(ArchiveIndex index, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames, ContinuationToken continuationToken, int limit) {
+        int count = 0;
+        for (int i = 0; (i < index.size()) && (count < limit); i++) {
+            if ((index.getFileType(i) == FetchedFileType.RAW_VATSIM_DATA_FILE)
+                && isRelevant(index, i, earliestFetchTime, latestFetchTime, wantedDataFileFormatNames,
+                    continuationToken) //
+            ) {
+                count++;
+            }
+        }
+
+        return count;
+    }
+
+    /**
+     * Loads data from a transitioned archive. Loading transitioned files means
+     * decompressing and reading an archive. No specific order of data should be
+     * assumed from reading an archive, so it needs to be sorted and any limitation
+     * of maximum number of files needs to be taken care of outside of this method.
+     *
+     * @param archive transitioned archive to read
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampler selects files to load when downsampling; null to load all
+     *        files
+     * @param continuationToken token of previous page to skip already returned
+     *        files and resume reading at the hinted position; null if not
+     *        continuing
+     * @param fileLimit maximum number of files to be handed out; files exceeding
+     *        the limit (in order of fetch time and format) are not loaded if they
+     *        can be identified while reading
+     * @param archiveIndexes receives the index of the archive (full or covering
+     *        all entries read)
+     * @return files matching given time range and formats in random order, at
+     *         least the first files up to the given limit
+     * @throws IOException
+     */
+    Collection<RawDataFile> load(TransitionedArchive archive, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames, FetchTimeSampler sampler, ContinuationToken continuationToken, int fileLimit, Map<TransitionedArchive, ArchiveIndex> archiveIndexes) throws IOException {
+        try (Span span = Tracing.startSpan("loader.archive")) {
+            File archiveFile = archive.getFile();
+
+            LOGGER.debug("opening transitioned file {}", archiveFile);
+
+            checkArchiveReadable(archiveFile);
+
+            long startOffset = 0;
+            if (continuationToken != null) {
+                startOffset = continuationToken.getArchiveOffset(archive.getBucket(), archive.getFormatName(),
+                    archiveFile.length());
+            }
+
+            span.setAttribute("bucket", archive.getBucket().encode());
+            if (archive.getFormatName() != null) {
+                span.setAttribute("format", archive.getFormatName());
+            }
+            span.setAttribute("resumeOffset", startOffset);
+
+            // sampling may replace candidates by entries read later, so which files
+            // end up within the limit can only be told after reading all entries
+            int effectiveFileLimit = (sampler == null) ? fileLimit : Integer.MAX_VALUE;
+
+            // reading can only stop early if all formats which may still yield files
+            // are known; archives holding all formats group entries by format, so
+            // formats not seen yet may still follow when reading all of them
+            Set<String> limitedFormatNames = (archive.getFormatName() != null)
+                ? Collections.singleton(archive.getFormatName())
+                : wantedDataFileFormatNames;
+
+            // a cached index tells which part of the archive holds relevant entries
+            // so the rest does not need to be decompressed
+            ArchiveIndex cachedIndex = archiveIndexCache.get(archiveFile);
+            span.setAttribute("indexCached", cachedIndex != null);
+            long endOffset = Long.MAX_VALUE;
+            if (cachedIndex != null) {
+                endOffset = findLastRelevantHeaderOffset(cachedIndex, earliestFetchTime, latestFetchTime,
+                    wantedDataFileFormatNames, continuationToken, effectiveFileLimit);
+                if (endOffset < 0) {
+                    LOGGER.debug("no relevant entries indexed for {}, skipping archive", archiveFile);
+                    span.setAttribute("skipped", true);
+                    archiveIndexes.put(archive, cachedIndex);
+                    return Collections.emptyList();
+                }
+
+                startOffset = Long.max(
+                    startOffset,
+                    findFirstRelevantHeaderOffset(cachedIndex, earliestFetchTime, latestFetchTime,
+                        wantedDataFileFormatNames) //
+                );
+                span.setAttribute("startOffset", startOffset);
+                span.setAttribute("endOffset", endOffset);
+            }
+
+            if (startOffset > 0) {
+                try {
+                    return load(archiveFile, cachedIndex, startOffset, endOffset, earliestFetchTime,
+                        latestFetchTime, wantedDataFileFormatNames, sampler, continuationToken, effectiveFileLimit,
+                        limitedFormatNames, index -> archiveIndexes.put(archive, index));
+                } catch (IOException ex) {
+                    // hints may be outdated, the archive can still be read completely
+                    // (offering entries to the sampler again does not change selection)
+                    LOGGER.warn("Resuming to read " + archiveFile + " at offset " + startOffset
+                        + " failed, reading from start", ex);
+                    span.setAttribute("resumeFailed", true);
+                }
+            }
+
+            return load(archiveFile, cachedIndex, 0, endOffset, earliestFetchTime,
+                latestFetchTime, wantedDataFileFormatNames, sampler, continuationToken, effectiveFileLimit,
+                limitedFormatNames, index -> archiveIndexes.put(archive, index));
+        }
+    }
+
+    /**
+     * Finds the header offset of the first indexed entry relevant to a request
+     * or, for deltas, of the keyframe they need to be reconstructed from. Archive
+     * entries may be unordered, so all entries need to be checked.
+     *
+     * @param index index of archive
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats if empty
+     * @return uncompressed header offset of first relevant entry; negative if no
+     *         entry is relevant
+     */
+    private long findFirstRelevantHeaderOffset(ArchiveIndex index, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames) {
+        // entries already returned on previous pages are not excluded here as a
+        // sampler needs to be offered them again (the continuation token hints
+        // where reading can be resumed instead)
+        long offset = -1;
+        Set<String> chainedFormatNames = new HashSet<>();
+        for (int i = 0; i < index.size(); i++) {
+            if (!isRelevant(index, i, earliestFetchTime, latestFetchTime, wantedDataFileFormatNames, null)) {
+                continue;
+            }
+
+            // index is in archive order
+            if (offset < 0) {
+                offset = index.getHeaderOffset(i);
+            }
+
+            // deltas need to be read starting from their keyframe; chains are in
+            // archive order, so only the first relevant delta of each format can
+            // require reading to start earlier
+            if ((index.getSnapshotKind(i) == SnapshotDelta.Kind.DELTA)
+                && chainedFormatNames.add(index.getFormatName(i)) //
+            ) {
+                offset = Long.min(offset, index.getHeaderOffset(index.findChainStart(i)));
+            }
+        }
+
+        return offset;
+    }
+
+    /**
+     * Finds the header offset of the last indexed entry relevant to a request.
+     * Only entries of the first files up to the given limit (in the order they
+     * are handed out) are relevant. Archive entries may be unordered, so all
+     * entries need to be checked.
+     *
+     * @param index index of archive
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats if empty
+     * @param continuationToken token of previous page to skip already returned
+     *        files; null if not continuing
+     * @param fileLimit maximum number of files to be handed out
+     * @return uncompressed header offset of last relevant entry; negative if no
+     *         entry is relevant
+     */
+    private long findLastRelevantHeaderOffset(ArchiveIndex index, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames, ContinuationToken continuationToken, int fileLimit) {
+        List<Integer> relevant = new ArrayList<>();
+        for (int i = 0; i < index.size(); i++) {
+            if (isRelevant(index, i, earliestFetchTime, latestFetchTime, wantedDataFileFormatNames, continuationToken)) {
+                relevant.add(i);
+            }
+        }
+
+        // entries of same fetch time and format make up a single file
+        relevant.sort(
+            Comparator.<Integer>comparingLong(index::getFetchEpochSecond)
+                      .thenComparing(index::getFormatName) //
+        );
+
+        long lastOffset = -1;
+        int numFiles = 0;
+        for (int j = 0; j < relevant.size(); j++) {
+            int i = relevant.get(j);
+
+            boolean isNewFile = (j == 0) || !isSameFile(index, i, relevant.get(j - 1));
+            if (isNewFile) {
+                if (numFiles >= fileLimit) {
+                    break;
+                }
+                numFiles++;
+            }
+
+            lastOffset = Long.max(lastOffset, index.getHeaderOffset(i));
+        }
+
+        return lastOffset;
+    }
+
+    /**
+     * Checks if no further files within the limit can follow in an archive.
+     * Entries are expected to be out of order by at most
+     * {@link #archiveEntryOrderTolerance}.
+     *
+     * @param keptInOrder files kept so far, in hand-out order
+     * @param fileLimit maximum number of files to keep
+     * @param limitedFormatNames names of all formats which may yield files within
+     *        the limit
+     * @param latestEpochSecondsByFormat latest fetch time of all entries read so
+     *        far, in seconds since epoch by format name
+     * @return true if the limit is reached and entries of all given formats have
+     *         passed the last kept file, false if not
+     */
+    private boolean isLimitPassed(TreeSet<RawDataFile> keptInOrder, int fileLimit, Set<String> limitedFormatNames, Map<String, Long> latestEpochSecondsByFormat) {
+        if (keptInOrder.size() < fileLimit) {
+            return false;
+        }
+
+        long lastKeptEpochSecond = keptInOrder.last().getFetchTime().getEpochSecond();
+        return isPassed(lastKeptEpochSecond, limitedFormatNames, latestEpochSecondsByFormat);
+    }
+
+    /**
+     * Checks if entries of all given formats have been read later than the
+     * given time by more than {@link #archiveEntryOrderTolerance}, so no entry of
+     * those formats up to that time can follow.
+     *
+     * @param epochSecond time to check, in seconds since epoch
+     * @param limitedFormatNames names of all formats which may yield files up to
+     *        given time
+     * @param latestEpochSecondsByFormat latest fetch time of all entries read so
+     *        far, in seconds since epoch by format name
+     * @return true if entries of all given formats have passed the given time,
+     *         false if not
+     */
+    private boolean isPassed(long epochSecond, Set<String> limitedFormatNames, Map<String, Long> latestEpochSecondsByFormat) {
+        for (String formatName : limitedFormatNames) {
+            Long latestEpochSecond = latestEpochSecondsByFormat.get(formatName);
+            if ((latestEpochSecond == null)
+                || (latestEpochSecond - archiveEntryOrderTolerance.getSeconds() <= epochSecond)) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private boolean isSameFile(ArchiveIndex index, int i, int j) {
+        return (index.getFetchEpochSecond(i) == index.getFetchEpochSecond(j))
+            && index.getFormatName(i).equals(index.getFormatName(j));
+    }
+
+    private boolean isRelevant(ArchiveIndex index, int i, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames, ContinuationToken continuationToken) {
+        return Loader.inRange(index.getFetchEpochSecond(i), earliestFetchTime, latestFetchTime)
+            && Loader.isWantedFormat(wantedDataFileFormatNames, index.getFormatName(i))
+            && ((continuationToken == null) || !continuationToken.isPassed(index.getFetchTime(i), index.getFormatName(i)));
+    }
+
+    /**
+     * Loads data from a transitioned archive.
+     *
+     * @param archiveFile archive to read
+     * @param cachedIndex cached index of archive; null if not cached, so the
+     *        archive gets indexed while reading
+     * @param startOffset uncompressed offset to start reading at
+     * @param endOffset uncompressed header offset of last entry to read; reading
+     *        stops before any later entry
+     * @param earliestFetchTime earliest fetch time to include in result
+     * @param latestFetchTime latest fetch time to include in result
+     * @param wantedDataFileFormatNames names of data file formats to load; all
+     *        formats will be loaded if empty
+     * @param sampler selects files to load when downsampling; null to load all
+     *        files
+     * @param continuationToken token of previous page to skip already returned
+     *        files; null if not continuing
+     * @param fileLimit maximum number of files to keep; only the first files in
+     *        order of fetch time and format are kept, others are not read
+     * @param limitedFormatNames names of all data file formats which may yield
+     *        files; reading without a cached index stops once entries of all
+     *        those formats passed the requested range or, when the limit is
+     *        reached, the last kept file; empty to read until end of archive
+     * @param archiveIndexConsumer receives the index of the archive (full or
+     *        covering all entries read)
+     * @return files matching given time range and formats in random order, up to
+     *         given limit
+     * @throws IOException
+     */
+    private Collection<RawDataFile> load(File archiveFile, ArchiveIndex cachedIndex, long startOffset, long endOffset, Instant earliestFetchTime, Instant latestFetchTime, Set<String> wantedDataFileFormatNames, FetchTimeSampler sampler, ContinuationToken continuationToken, int fileLimit, Set<String> limitedFormatNames, Consumer<ArchiveIndex> archiveIndexConsumer) throws IOException {
+        Map<String, RawDataFile> loaded = new HashMap<>();
+
+        // first files in order of handing out; entries may be unordered, so files
+        // loaded earlier may need to be evicted again in favor of earlier files
+        TreeSet<RawDataFile> keptInOrder = new TreeSet<>(Loader.HAND_OUT_ORDER);
+
+        // all entry headers are seen while loading, so the archive gets indexed on
+        // the way unless already cached (a cached index tells the end offset)
+        ArchiveIndex.Builder indexBuilder = null;
+        if (cachedIndex == null) {
+            indexBuilder = new ArchiveIndex.Builder(archiveFile);
+        }
+
+        // without an index, reading stops once entries of all limited formats
+        // are later than the requested range (or the last kept file once the
+        // limit is reached) by more than entries may be out of order; only the
+        // entries read until then are indexed
+        boolean canStopEarly = (indexBuilder != null)
+            && (archiveEntryOrderTolerance != null)
+            && !archiveEntryOrderTolerance.isNegative()
+            && !limitedFormatNames.isEmpty();
+        long latestEpochSecond = latestFetchTime.getEpochSecond();
+        Map<String, Long> latestEpochSecondsByFormat = new HashMap<>();
+        boolean isIndexPartial = (startOffset > 0);
+
+        // data files stored as deltas are reconstructed from the previous data
+        // file of their format
+        Map<String, SnapshotChain> snapshotChains = new HashMap<>();
+
+        Span span = Tracing.currentSpan();
+
+        try (
+            PositionTrackingInputStream pis = new PositionTrackingInputStream(
+                openTransitionedArchive(archiveFile, startOffset) //
+            );
+            ArchiveInputStream ais = archiveStreamFactory.createArchiveInputStream(ArchiveStreamFactory.TAR, pis); //
+        ) {
+            long nextHeaderOffset = startOffset;
+
+            ArchiveEntry entry;
+            while ((entry = ais.getNextEntry()) != null) {
+                span.addToAttribute("entriesScanned", 1);
+
+                // TAR input is unbuffered, so data of current entry starts at the
+                // current position and is padded to full records
+                long headerOffset = nextHeaderOffset;
+                nextHeaderOffset = startOffset + pis.getPosition() + roundUpToTarRecord(entry.getSize());
+
+                // no further relevant entries follow, stop decompressing
+                if (headerOffset > endOffset) {
+                    span.setAttribute("stoppedEarly", true);
+                    break;
+                }
+
+                String fileName = entry.getName();
+                long fetchEpochSecond = FetchedFileNames.parseFetchEpochSecond(fileName);
+
+                // skip unsupported files
+                FetchedFileType fileType = FetchedFileType.byFileName(fileName);
+                if ((fetchEpochSecond == FetchedFileNames.NO_FETCH_TIME) || (fileType == null)) {
+                    LOGGER.debug("Skipping unsupported file {} read from {}", fileName, archiveFile);
+                    continue;
+                }
+
+                String dataFileFormat = Loader.getArchiveEntryDataFileFormat(fileName);
+
+                if (canStopEarly) {
+                    latestEpochSecondsByFormat.merge(dataFileFormat, fetchEpochSecond, Long::max);
+                    if (isPassed(latestEpochSecond, limitedFormatNames, latestEpochSecondsByFormat)
+                        || isLimitPassed(keptInOrder, fileLimit, limitedFormatNames, latestEpochSecondsByFormat)) {
+                        span.setAttribute("stoppedEarly", true);
+                        isIndexPartial = true;
+                        break;
+                    }
+                }
+
+                TarArchiveEntry tarEntry = (TarArchiveEntry) entry;
+                SnapshotDelta.Kind snapshotKind = SnapshotDelta.Kind.of(tarEntry);
+
+                if (indexBuilder != null) {
+                    indexBuilder.add(dataFileFormat, fetchEpochSecond, fileType,
+                        SnapshotDelta.getReconstructedSize(tarEntry), headerOffset, snapshotKind);
+                }
+
+                // delta chains are ordered by fetch time, so data files skipped
+                // below still need to be read if later ones may depend on them
+                boolean isChained = (snapshotKind != SnapshotDelta.Kind.PLAIN)
+                    && (fetchEpochSecond <= latestEpochSecond)
+                    && Loader.isWantedFormat(wantedDataFileFormatNames, dataFileFormat);
+
+                // skip if out of requested range
+                if (!Loader.inRange(fetchEpochSecond, earliestFetchTime, latestFetchTime)) {
+                    if (isChained) {
+                        advanceSnapshotChain(snapshotChains, dataFileFormat, snapshotKind, ais, (int) entry.getSize());
+                    }
+                    continue;
+                }
+
+                Instant fetchTime = Instant.ofEpochSecond(fetchEpochSecond);
+
+                // skip unwanted data file formats
+                if (!Loader.isWantedFormat(wantedDataFileFormatNames, dataFileFormat)) {
+                    LOGGER.trace("skipping unwanted data file format {}", dataFileFormat);
+                    continue;
+                }
+
+                // skip files not selected by sampling without reading them
+                if ((sampler != null) && !sampler.offer(dataFileFormat, fetchTime)) {
+                    if (isChained) {
+                        advanceSnapshotChain(snapshotChains, dataFileFormat, snapshotKind, ais, (int) entry.getSize());
+                    }
+                    continue;
+                }
+
+                // skip files already returned on previous pages without reading them
+                if ((continuationToken != null) && continuationToken.isPassed(fetchTime, dataFileFormat)) {
+                    if (isChained) {
+                        advanceSnapshotChain(snapshotChains, dataFileFormat, snapshotKind, ais, (int) entry.getSize());
+                    }
+                    continue;
+                }
+
+                // use a combination of fetch time and format as map key to avoid
+                // collisions between different formats with same fetch time
+                String loadedKey = fetchTime.toString() + " " + dataFileFormat;
+
+                RawDataFile rawDataFile = loaded.get(loadedKey);
+                if (rawDataFile == null) {
+                    // skip files exceeding the limit without reading them (later
+                    // data files of same format exceed the limit as well)
+                    boolean isLimitReached = keptInOrder.size() >= fileLimit;
+                    if (isLimitReached && isAfter(fetchTime, dataFileFormat, keptInOrder.last())) {
+                        span.addToAttribute("entriesBeyondLimit", 1);
+                        continue;
+                    }
+
+                    rawDataFile = new RawDataFile(fetchTime);
+                    rawDataFile.setFormatName(dataFileFormat);
+                    loaded.put(loadedKey, rawDataFile);
+                    keptInOrder.add(rawDataFile);
+
+                    if (isLimitReached) {
+                        RawDataFile evicted = keptInOrder.pollLast();
+                        loaded.remove(evicted.getFetchTime().toString() + " " + evicted.getFormatName());
+                        evicted.clear();
+                        span.addToAttribute("filesEvicted", 1);
+                    }
+                }
+
+                int length = (int) entry.getSize();
+                byte[] buffer;
+                if (isChained) {
+                    SnapshotChain chain = advanceSnapshotChain(snapshotChains, dataFileFormat, snapshotKind, ais, length);
+                    buffer = chain.copySnapshot();
+                    length = chain.getSnapshotLength();
+                } else {
+                    buffer = decoder.read(ais, length);
+                }
+                span.addToAttribute("entriesKept", 1);
+
+                FetchedFileCompression compression = FetchedFileCompression.byFileName(fileName);
+                if (!decoder.decode(rawDataFile, fileType, compression, buffer, length)) {
+                    LOGGER.warn(
+                        "File type {} read from {} of {} is not taken into account!",
+                        fileType, fileName, archiveFile //
+                    );
+                }
+            }
+
+            decompressedArchiveBytes.add(pis.getPosition());
+            span.addToAttribute("bytesDecompressed", pis.getPosition());
+        } catch (Exception ex) {
+            // files read so far are discarded; reading may be retried from start
+            // which loads them again
+            for (RawDataFile rawDataFile : loaded.values()) {
+                rawDataFile.clear();
+            }
+
+            throw new IOException("failed to extract data from archive " + archiveFile.getCanonicalPath(), ex);
+        } finally {
+            for (SnapshotChain chain : snapshotChains.values()) {
+                chain.clear();
+            }
+        }
+
+        if (indexBuilder == null) {
+            archiveIndexConsumer.accept(cachedIndex);
+        } else {
+            ArchiveIndex index = indexBuilder.build();
+            archiveIndexConsumer.accept(index);
+
+            // partial indexes must not be cached
+            if (!isIndexPartial) {
+                archiveIndexCache.put(archiveFile, index);
+            }
+        }
+
+        // archive entries may be unordered, so earlier candidates may have been
+        // replaced by later entries
+        if (sampler != null) {
+            loaded.values().removeIf(f -> {
+                boolean isReplaced = !sampler.isSelected(f.getFormatName(), f.getFetchTime());
+                if (isReplaced) {
+                    f.clear();
+                }
+                return isReplaced;
+            });
+        }
+
+        return loaded.values();
+    }
+
+    /**
+     * Checks if a file of the given fetch time and format would be handed out
+     * after the given data file.
+     *
+     * @param fetchTime fetch time of file to check
+     * @param formatName data file format name of file to check
+     * @param other data file to compare to
+     * @return true if file would be handed out after other data file, false if
+     *         before (or same)
+     */
+    private boolean isAfter(Instant fetchTime, String formatName, RawDataFile other) {
+        int comparison = fetchTime.compareTo(other.getFetchTime());
+        if (comparison == 0) {
+            comparison = formatName.compareTo(other.getFormatName());
+        }
+
+        return comparison > 0;
+    }
+
+    /**
+     * Reads the current entry of a delta archive and reconstructs its data file.
+     *
+     * @param snapshotChains chains of data files by format name
+     * @param formatName data file format name of current entry
+     * @param snapshotKind how the current entry is stored
+     * @param ais {@link ArchiveInputStream} to read from
+     * @param length size of current {@link ArchiveEntry}
+     * @return chain holding the reconstructed data file
+     * @throws IOException if reading fails or delta cannot be applied
+     */
+    private SnapshotChain advanceSnapshotChain(Map<String, SnapshotChain> snapshotChains, String formatName, SnapshotDelta.Kind snapshotKind, ArchiveInputStream ais, int length) throws IOException {
+        SnapshotChain chain = snapshotChains.computeIfAbsent(formatName, x -> decoder.createSnapshotChain());
+        chain.advance(snapshotKind, decoder.read(ais, length), length);
+
+        if (snapshotKind == SnapshotDelta.Kind.DELTA) {
+            Tracing.currentSpan().addToAttribute("deltasDecoded", 1);
+        }
+
+        return chain;
+    }
+
+    /**
+     * Opens the given transitioned archive for reading the contained TAR stream,
+     * starting at the given uncompressed offset. Seeking only skips decompression
+     * of earlier data if the archive has been compressed to multiple XZ blocks.
+     *
+     * @param archiveFile transitioned archive to open
+     * @param uncompressedOffset uncompressed offset to start reading at
+     * @return decompressing stream positioned at given offset
+     * @throws IOException
+     */
+    private InputStream openTransitionedArchive(File archiveFile, long uncompressedOffset) throws IOException {
+        openedArchives.increment();
+
+        // archive may have been read ahead already
+        byte[] prefetched = archivePrefetcher.get(archiveFile);
+
+        // decoder arrays are returned to the cache when streams are closed
+        if (uncompressedOffset <= 0) {
+            InputStream is = (prefetched != null)
+                ? new ByteArrayInputStream(prefetched)
+                : new FileInputStream(archiveFile);
+            try {
+                return new XZInputStream(is, -1, xzArrayCache);
+            } catch (IOException ex) {
+                is.close();
+                throw new IOException("failed to open archive " + archiveFile.getCanonicalPath(), ex);
+            }
+        }
+
+        SeekableInputStream sis = (prefetched != null)
+            ? new SeekableByteArrayInputStream(prefetched)
+            : new SeekableFileInputStream(archiveFile);
+        try {
+            SeekableXZInputStream sxis = new SeekableXZInputStream(sis, -1, xzArrayCache);
+            sxis.seek(uncompressedOffset);
+            return sxis;
+        } catch (IOException ex) {
+            sis.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Rounds the given entry size up to full TAR records.
+     *
+     * @param size actual entry size in bytes
+     * @return size occupied by entry data in TAR stream
+     */
+    private long roundUpToTarRecord(long size) {
+        return ((size + TarConstants.DEFAULT_RCDSIZE - 1) / TarConstants.DEFAULT_RCDSIZE)
+            * TarConstants.DEFAULT_RCDSIZE;
+    }
+
+    /**
+     * Returns the index of the given transitioned archive. If not cached, the
+     * archive will be indexed by decompressing it and reading all entry headers;
+     * actual content is skipped.
+     *
+     * @param archiveFile transitioned archive to get index for
+     * @return index of given archive
+     * @throws IOException
+     */
+    ArchiveIndex getArchiveIndex(File archiveFile) throws IOException {
+        ArchiveIndex index = archiveIndexCache.get(archiveFile);
+        if (index != null) {
+            return index;
+        }
+
+        LOGGER.debug("indexing transitioned file {}", archiveFile);
+
+        checkArchiveReadable(archiveFile);
+
+        ArchiveIndex.Builder indexBuilder = new ArchiveIndex.Builder(archiveFile);
+
+        try (
+            Span span = Tracing.startSpan("loader.indexArchive").setAttribute("file", archiveFile.getName());
+            PositionTrackingInputStream pis = new PositionTrackingInputStream(openTransitionedArchive(archiveFile, 0));
+            ArchiveInputStream ais = archiveStreamFactory.createArchiveInputStream(ArchiveStreamFactory.TAR, pis); //
+        ) {
+            long nextHeaderOffset = 0;
+
+            ArchiveEntry entry;
+            while ((entry = ais.getNextEntry()) != null) {
+                long headerOffset = nextHeaderOffset;
+                nextHeaderOffset = pis.getPosition() + roundUpToTarRecord(entry.getSize());
+
+                String fileName = entry.getName();
+                long fetchEpochSecond = FetchedFileNames.parseFetchEpochSecond(fileName);
+                FetchedFileType fileType = FetchedFileType.byFileName(fileName);
+                if ((fetchEpochSecond == FetchedFileNames.NO_FETCH_TIME) || (fileType == null)) {
+                    continue;
+                }
+
+                TarArchiveEntry tarEntry = (TarArchiveEntry) entry;
+                indexBuilder.add(
+                    Loader.getArchiveEntryDataFileFormat(fileName),
+                    fetchEpochSecond,
+                    fileType,
+                    SnapshotDelta.getReconstructedSize(tarEntry),
+                    headerOffset,
+                    SnapshotDelta.Kind.of(tarEntry) //
+                );
+            }
+
+            decompressedArchiveBytes.add(pis.getPosition());
+            span.setAttribute("bytesDecompressed", pis.getPosition());
+        } catch (Exception ex) {
+            throw new IOException("failed to index archive " + archiveFile.getCanonicalPath(), ex);
+        }
+
+        index = indexBuilder.build();
+        archiveIndexCache.put(archiveFile, index);
+
+        return index;
+    }
+
+    /**
+     * Checks that the given transitioned archive exists and is readable.
+     *
+     * @param archiveFile archive file to check
+     * @throws IOException
+     * @throws RuntimeException if archive file cannot be read
+     */
+    private void checkArchiveReadable(File archiveFile) throws IOException {
+        if (!archiveFile.exists() || !archiveFile.canRead()) {
+            throw new RuntimeException(
+                "expected archive file " + archiveFile.getCanonicalPath()
+                    + " does not exist or is inaccessible, unable to load data" //
+            );
+        }
+    }
+}
@@ -0,0 +1,294 @@
+package org.vatplanner.archiver.metrics;
+
+import java.lang.management.BufferPoolMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.DataFileRequestType;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.local.ArchiveIndexCache;
+import org.vatplanner.archiver.local.ArchivePrefetcher;
+import org.vatplanner.archiver.local.Loader;
+import org.vatplanner.archiver.scheduling.AdmissionController;
+import org.vatplanner.archiver.util.BoundedArrayCache;
+
+/**
+ * Defines and records all metrics specific to this application. Metrics are
+ * held by a {@link MetricsRegistry} which can be exported, e.g. using
+ * {@link MetricsHttpServer}.
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class ArchiverMetrics {
+
+    private static final double[] DATA_FILES_BUCKETS = {
+        1, 10, 50, 100, 250, 500, 1000, 2500, 5000, 10000, 25000, 50000
+    };
+
+    private static final String LABEL_PACKER = "packer";
+    private static final String LABEL_STAGE = "stage";
+    private static final String LABEL_TYPE = "type";
+    private static final String LABEL_RESULT = "result";
+    private static final String LABEL_AREA = "area";
+    private static final String LABEL_POOL = "pool";
+
+    private static final String STAGE_ADMISSION = "admission";
+    private static final String STAGE_LOAD = "load";
+    private static final String STAGE_PACK = "pack";
+    private static final String STAGE_TOTAL = "total";
+
+    private static final String RESULT_SUCCESS = "success";
+    private static final String RESULT_FAILURE = "failure";
+
+    private final MetricsRegistry registry;
+    private final AtomicInteger requestsInProgress = new AtomicInteger();
+
+    /**
+     * Creates a new instance recording to the given registry. JVM memory gauges
+     * are registered immediately.
+     *
+     * @param registry registry to record metrics to
+     */
+    public ArchiverMetrics(MetricsRegistry registry) {
+        this.registry = registry;
+
+        registry.gauge(
+            "archiver_requests_in_progress",
+            "Number of requests currently being processed",
+            requestsInProgress::get //
+        );
+
+        registerMemoryGauges();
+    }
+
+    private void registerMemoryGauges() {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+
+        registry.gauge("jvm_memory_used_bytes", "Used JVM memory",
+            () -> memory.getHeapMemoryUsage().getUsed(), LABEL_AREA, "heap");
+        registry.gauge("jvm_memory_used_bytes", "Used JVM memory",
+            () -> memory.getNonHeapMemoryUsage().getUsed(), LABEL_AREA, "nonheap");
+        registry.gauge("jvm_memory_committed_bytes", "Committed JVM memory",
+            () -> memory.getHeapMemoryUsage().getCommitted(), LABEL_AREA, "heap");
+        registry.gauge("jvm_memory_committed_bytes", "Committed JVM memory",
+            () -> memory.getNonHeapMemoryUsage().getCommitted(), LABEL_AREA, "nonheap");
+        registry.gauge("jvm_memory_max_bytes", "Maximum JVM memory; -1 if undefined",
+            () -> memory.getHeapMemoryUsage().getMax(), LABEL_AREA, "heap");
+
+        for (BufferPoolMXBean pool : ManagementFactory.getPlatformMXBeans(BufferPoolMXBean.class)) {
+            registry.gauge("jvm_buffer_pool_used_bytes", "Memory used by JVM buffer pool",
+                pool::getMemoryUsed, LABEL_POOL, pool.getName());
+            registry.gauge("jvm_buffer_pool_capacity_bytes", "Total capacity of JVM buffer pool",
+                pool::getTotalCapacity, LABEL_POOL, pool.getName());
+        }
+    }
+
+    /**
+     * Exposes the state of the given {@link AdmissionController}.
+     *
+     * @param admissionController admission controller to expose
+     */
+    public void register(AdmissionController admissionController) {
+        registry.gauge(
+            "archiver_admission_waiting_requests",
+            "Number of requests waiting to be admitted",
+            admissionController::getNumWaiting //
+        );
+        registry.gauge(
+            "archiver_admission_reserved_memory_bytes",
+            "Memory reserved by admitted requests",
+            admissionController::getMemoryInUse //
+        );
+    }
+
+    /**
+     * Exposes statistics of the given {@link Loader}.
+     *
+     * @param loader loader to expose
+     */
+    public void register(Loader loader) {
+        registry.counter(
+            "archiver_transitioned_archives_opened_total",
+            "Number of times transitioned archives have been opened for decompression",
+            loader::getNumOpenedArchives //
+        );
+        registry.counter(
+            "archiver_transitioned_archives_decompressed_bytes_total",
+            "Uncompressed bytes read from transitioned archives",
+            loader::getDecompressedArchiveBytes //
+        );
+
+        ArchiveIndexCache archiveIndexCache = loader.getArchiveIndexCache();
+        registry.counter(
+            "archiver_archive_index_cache_hits_total",
+            "Number of archive index lookups answered from cache",
+            archiveIndexCache::getHits //
+        );
+        registry.counter(
+            "archiver_archive_index_cache_misses_total",
+            "Number of archive index lookups not answered from cache",
+            archiveIndexCache::getMisses //
+        );
+        registry.gauge(
+            "archiver_archive_index_cache_entries",
+            "Number of archive indexes currently cached",
+            archiveIndexCache::size //
+        );
+
+        BufferPool bufferPool = loader.getBufferPool();
+        registry.counter(
+            "archiver_buffer_pool_hits_total",
+            "Number of read buffers reused from pool",
+            bufferPool::getHits //
+        );
+        registry.counter(
+            "archiver_buffer_pool_misses_total",
+            "Number of read buffers which had to be allocated",
+            bufferPool::getMisses //
+        );
+        registry.gauge(
+            "archiver_buffer_pool_retained_bytes",
+            "Size of read buffers currently retained for reuse",
+            bufferPool::getRetainedBytes //
+        );
+
+        ArchivePrefetcher archivePrefetcher = loader.getArchivePrefetcher();
+        registry.counter(
+            "archiver_archive_prefetch_hits_total",
+            "Number of transitioned archive reads served from prefetched data",
+            archivePrefetcher::getHits //
+        );
+        registry.counter(
+            "archiver_archive_prefetch_unused_total",
+            "Number of prefetched transitioned archives released without being read",
+            archivePrefetcher::getUnused //
+        );
+        registry.gauge(
+            "archiver_archive_prefetch_held_bytes",
+            "Size of transitioned archives currently being prefetched or held",
+            archivePrefetcher::getHeldBytes //
+        );
+    }
+
+    /**
+     * Exposes statistics of the given {@link BoundedArrayCache} shared by XZ/LZMA
+     * streams.
+     *
+     * @param xzArrayCache cache to expose
+     */
+    public void register(BoundedArrayCache xzArrayCache) {
+        registry.counter(
+            "archiver_xz_array_cache_hits_total",
+            "Number of XZ/LZMA stream arrays reused from cache",
+            xzArrayCache::getHits //
+        );
+        registry.counter(
+            "archiver_xz_array_cache_misses_total",
+            "Number of XZ/LZMA stream arrays which had to be allocated",
+            xzArrayCache::getMisses //
+        );
+        registry.gauge(
+            "archiver_xz_array_cache_retained_bytes",
+            "Size of XZ/LZMA stream arrays currently retained for reuse",
+            xzArrayCache::getRetainedBytes //
+        );
+    }
+
+    /**
+     * Records that processing of a request has started. Must be followed by
+     * {@link #requestFinished(DataFileRequestType, boolean)}.
+     */
+    public void requestStarted() {
+        requestsInProgress.incrementAndGet();
+    }
+
+    /**
+     * Records that processing of a request has finished.
+     *
+     * @param requestType type of request
+     * @param success true if the request has been processed successfully, false
+     *        if it failed
+     */
+    public void requestFinished(DataFileRequestType requestType, boolean success) {
+        requestsInProgress.decrementAndGet();
+
+        registry.counter(
+            "archiver_requests_total",
+            "Number of processed requests",
+            LABEL_TYPE, (requestType != null) ? requestType.getShortCode() : "unknown",
+            LABEL_RESULT, success ? RESULT_SUCCESS : RESULT_FAILURE //
+        ).increment();
+    }
+
+    /**
+     * Records a successfully processed data file request.
+     *
+     * @param packerMethod requested packer method
+     * @param admission time spent waiting for admission
+     * @param loading time spent loading data (overlaps with packing if
+     *        pipelined)
+     * @param packing time spent packing data
+     * @param total total processing time
+     * @param numDataFiles number of data files returned
+     * @param rawBytes total size of data files loaded
+     * @param packedBytes size of packed response
+     */
+    public void recordDataFileRequest(PackerMethod packerMethod, Duration admission, Duration loading, Duration packing, Duration total, int numDataFiles, long rawBytes, long packedBytes) {
+        // methods selected internally have no request short code
+        String packer = (packerMethod.getRequestShortCode() != null)
+            ? packerMethod.getRequestShortCode()
+            : packerMethod.name();
+
+        recordStage(packer, STAGE_ADMISSION, admission);
+        recordStage(packer, STAGE_LOAD, loading);
+        recordStage(packer, STAGE_PACK, packing);
+        recordStage(packer, STAGE_TOTAL, total);
+
+        registry.histogram(
+            "archiver_request_data_files",
+            "Number of data files returned per data file request",
+            DATA_FILES_BUCKETS,
+            LABEL_PACKER, packer //
+        ).observe(numDataFiles);
+
+        registry.counter(
+            "archiver_request_raw_bytes_total",
+            "Total size of data files loaded for data file requests",
+            LABEL_PACKER, packer //
+        ).increment(rawBytes);
+
+        registry.counter(
+            "archiver_request_packed_bytes_total",
+            "Total size of packed responses to data file requests",
+            LABEL_PACKER, packer //
+        ).increment(packedBytes);
+    }
+
+    private void recordStage(String packer, String stage, Duration duration) {
+        registry.histogram(
+            "archiver_request_duration_seconds",
+            "Time spent per stage of data file requests",
+            Histogram.DURATION_SECONDS_BUCKETS,
+            LABEL_PACKER, packer,
+            LABEL_STAGE, stage //
+        ).observe(duration);
+    }
+
+    /**
+     * Records a successfully processed statistics request.
+     *
+     * @param total total processing time
+     */
+    public void recordStatisticsRequest(Duration total) {
+        registry.histogram(
+            "archiver_statistics_request_duration_seconds",
+            "Time spent processing statistics requests",
+            Histogram.DURATION_SECONDS_BUCKETS //
+        ).observe(total);
+    }
+}
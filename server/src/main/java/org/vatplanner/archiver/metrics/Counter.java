@@ -0,0 +1,44 @@
+package org.vatplanner.archiver.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A monotonically increasing count, e.g. of requests or bytes.
+ *
+ * <p>
+ * Methods provided by this class are thread-safe and do not block.
+ * </p>
+ */
+public class Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    Counter() {
+        // only created by registry
+    }
+
+    /**
+     * Increments the counter by one.
+     */
+    public void increment() {
+        value.increment();
+    }
+
+    /**
+     * Increments the counter by the given amount.
+     *
+     * @param amount amount to add; must not be negative
+     */
+    public void increment(long amount) {
+        value.add(amount);
+    }
+
+    /**
+     * Returns the current value.
+     *
+     * @return current value
+     */
+    public long get() {
+        return value.sum();
+    }
+}
@@ -0,0 +1,104 @@
+package org.vatplanner.archiver.metrics;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts observed values into buckets of fixed upper bounds, e.g. to record
+ * latency distributions. Bucket counts are not cumulative internally; they are
+ * accumulated when exported.
+ *
+ * <p>
+ * Methods provided by this class are thread-safe and do not block.
+ * </p>
+ */
+public class Histogram {
+
+    /**
+     * Bucket upper bounds suitable for durations in seconds, from few
+     * milliseconds (cached, sampled requests) to several minutes (large XZ
+     * requests).
+     */
+    public static final double[] DURATION_SECONDS_BUCKETS = {
+        0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600
+    };
+
+    private final double[] upperBounds;
+    private final LongAdder[] bucketCounts;
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder sum = new DoubleAdder();
+
+    Histogram(double[] upperBounds) {
+        this.upperBounds = Arrays.copyOf(upperBounds, upperBounds.length);
+        Arrays.sort(this.upperBounds);
+
+        // last bucket holds all values exceeding the highest bound
+        bucketCounts = new LongAdder[this.upperBounds.length + 1];
+        for (int i = 0; i < bucketCounts.length; i++) {
+            bucketCounts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Records the given value.
+     *
+     * @param value value to record
+     */
+    public void observe(double value) {
+        int i = 0;
+        while ((i < upperBounds.length) && (value > upperBounds[i])) {
+            i++;
+        }
+
+        bucketCounts[i].increment();
+        count.increment();
+        sum.add(value);
+    }
+
+    /**
+     * Records the given duration in seconds.
+     *
+     * @param duration duration to record
+     */
+    public void observe(Duration duration) {
+        observe(duration.toNanos() / 1e9);
+    }
+
+    double[] getUpperBounds() {
+        return upperBounds;
+    }
+
+    /**
+     * Returns the number of values recorded per bucket. The last bucket holds
+     * all values exceeding the highest upper bound.
+     *
+     * @return number of values per bucket (not cumulative)
+     */
+    long[] getBucketCounts() {
+        long[] counts = new long[bucketCounts.length];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = bucketCounts[i].sum();
+        }
+        return counts;
+    }
+
+    /**
+     * Returns the total number of recorded values.
+     *
+     * @return number of recorded values
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Returns the sum of all recorded values.
+     *
+     * @return sum of recorded values
+     */
+    public double getSum() {
+        return sum.sum();
+    }
+}
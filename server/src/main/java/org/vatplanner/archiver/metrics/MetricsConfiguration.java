@@ -0,0 +1,66 @@
+package org.vatplanner.archiver.metrics;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds configuration related to metrics.
+ */
+public class MetricsConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsConfiguration.class);
+
+    private int httpPort = 0;
+    private String httpBindAddress = "127.0.0.1";
+
+    /**
+     * Checks if metrics should be exposed via HTTP.
+     *
+     * @return true if metrics should be exposed via HTTP, false if not
+     */
+    public boolean isHttpEnabled() {
+        return httpPort > 0;
+    }
+
+    /**
+     * Returns the TCP port to expose metrics via HTTP on.
+     *
+     * @return TCP port to listen on for HTTP requests
+     */
+    public int getHttpPort() {
+        return httpPort;
+    }
+
+    /**
+     * Sets the TCP port to expose metrics via HTTP on.
+     *
+     * @param httpPort TCP port to listen on for HTTP requests; 0 to disable
+     * @return this instance for method-chaining
+     */
+    public MetricsConfiguration setHttpPort(int httpPort) {
+        LOGGER.debug("setting httpPort to {}", httpPort);
+        this.httpPort = httpPort;
+        return this;
+    }
+
+    /**
+     * Returns the local address to expose metrics via HTTP on.
+     *
+     * @return local address to bind HTTP server to
+     */
+    public String getHttpBindAddress() {
+        return httpBindAddress;
+    }
+
+    /**
+     * Sets the local address to expose metrics via HTTP on.
+     *
+     * @param httpBindAddress local address to bind HTTP server to
+     * @return this instance for method-chaining
+     */
+    public MetricsConfiguration setHttpBindAddress(String httpBindAddress) {
+        LOGGER.debug("setting httpBindAddress to {}", httpBindAddress);
+        this.httpBindAddress = httpBindAddress;
+        return this;
+    }
+}
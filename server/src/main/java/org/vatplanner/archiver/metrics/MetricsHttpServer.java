@@ -0,0 +1,94 @@
+package org.vatplanner.archiver.metrics;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.util.NamedDaemonThreadFactory;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Exposes all metrics of a {@link MetricsRegistry} via HTTP at
+ * <code>/metrics</code>, to be scraped by Prometheus or compatible tools. The
+ * server is intended to be bound to a local or otherwise protected interface;
+ * no authentication is performed.
+ */
+public class MetricsHttpServer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(MetricsHttpServer.class);
+
+    private static final String PATH = "/metrics";
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final int HTTP_OK = 200;
+    private static final int HTTP_METHOD_NOT_ALLOWED = 405;
+
+    private final HttpServer server;
+    private final MetricsRegistry registry;
+
+    /**
+     * Creates a new server. The server needs to be started separately.
+     *
+     * @param config metrics configuration
+     * @param registry registry to expose metrics of
+     * @throws IOException if the server cannot be bound
+     */
+    public MetricsHttpServer(MetricsConfiguration config, MetricsRegistry registry) throws IOException {
+        this.registry = registry;
+
+        server = HttpServer.create(new InetSocketAddress(config.getHttpBindAddress(), config.getHttpPort()), 0);
+        server.setExecutor(Executors.newSingleThreadExecutor(new NamedDaemonThreadFactory("metrics")));
+        server.createContext(PATH, this::handle);
+    }
+
+    /**
+     * Starts serving requests.
+     */
+    public void start() {
+        server.start();
+        LOGGER.info("Exposing metrics at http://{}:{}{}",
+            server.getAddress().getHostString(), server.getAddress().getPort(), PATH);
+    }
+
+    /**
+     * Stops serving requests.
+     */
+    public void stop() {
+        server.stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                exchange.sendResponseHeaders(HTTP_METHOD_NOT_ALLOWED, -1);
+                return;
+            }
+
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (Writer writer = new OutputStreamWriter(baos, StandardCharsets.UTF_8)) {
+                registry.write(writer);
+            }
+            byte[] body = baos.toByteArray();
+
+            exchange.getResponseHeaders().set("Content-Type", CONTENT_TYPE);
+            exchange.sendResponseHeaders(HTTP_OK, body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (IOException | RuntimeException ex) {
+            LOGGER.warn("Failed to serve metrics", ex);
+            throw ex;
+        } finally {
+            exchange.close();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+package org.vatplanner.archiver.metrics;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.DoubleSupplier;
+import java.util.regex.Pattern;
+
+/**
+ * Holds all metrics of the application and exports them in Prometheus text
+ * exposition format (version 0.0.4).
+ *
+ * <p>
+ * Metrics are identified by name and an optional set of labels, given as
+ * alternating label names and values. Requesting a metric which has already
+ * been registered with the same name and labels returns the existing instance,
+ * so metrics can be looked up on demand instead of being held in fields. All
+ * metrics of the same name must be of the same type and use the same label
+ * names.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe. Recording values on
+ * {@link Counter}s and {@link Histogram}s does not require any locks.
+ * </p>
+ */
+public class MetricsRegistry {
+
+    private static final Pattern PATTERN_NAME = Pattern.compile("^[a-zA-Z_][a-zA-Z0-9_]*$");
+
+    private final Map<String, Family> families = new LinkedHashMap<>();
+
+    private enum Type {
+        COUNTER("counter"),
+        GAUGE("gauge"),
+        HISTOGRAM("histogram");
+
+        private final String exportName;
+
+        private Type(String exportName) {
+            this.exportName = exportName;
+        }
+    }
+
+    private static class Family {
+        private final String name;
+        private final String help;
+        private final Type type;
+        private final List<String> labelNames;
+        private final Map<List<String>, Object> childrenByLabelValues = new LinkedHashMap<>();
+
+        private Family(String name, String help, Type type, List<String> labelNames) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+        }
+    }
+
+    /**
+     * Returns the counter of given name and labels, registering it if needed.
+     *
+     * @param name metric name; should end in <code>_total</code>
+     * @param help description of the metric
+     * @param labels alternating label names and values
+     * @return counter of given name and labels
+     */
+    public Counter counter(String name, String help, String... labels) {
+        return (Counter) getOrRegister(name, help, Type.COUNTER, labels, Counter::new);
+    }
+
+    /**
+     * Registers a counter whose value is provided by the given function, e.g. to
+     * expose counts maintained by other components. The function is called on
+     * every export and must be thread-safe.
+     *
+     * @param name metric name; should end in <code>_total</code>
+     * @param help description of the metric
+     * @param function provides the current value
+     * @param labels alternating label names and values
+     */
+    public void counter(String name, String help, DoubleSupplier function, String... labels) {
+        getOrRegister(name, help, Type.COUNTER, labels, () -> function);
+    }
+
+    /**
+     * Registers a gauge whose value is provided by the given function. The
+     * function is called on every export and must be thread-safe.
+     *
+     * @param name metric name
+     * @param help description of the metric
+     * @param function provides the current value
+     * @param labels alternating label names and values
+     */
+    public void gauge(String name, String help, DoubleSupplier function, String... labels) {
+        getOrRegister(name, help, Type.GAUGE, labels, () -> function);
+    }
+
+    /**
+     * Returns the histogram of given name and labels, registering it with the
+     * given bucket upper bounds if needed.
+     *
+     * @param name metric name
+     * @param help description of the metric
+     * @param upperBounds upper bounds of all buckets
+     * @param labels alternating label names and values
+     * @return histogram of given name and labels
+     */
+    public Histogram histogram(String name, String help, double[] upperBounds, String... labels) {
+        return (Histogram) getOrRegister(name, help, Type.HISTOGRAM, labels, () -> new Histogram(upperBounds));
+    }
+
+    private Object getOrRegister(String name, String help, Type type, String[] labels, ChildFactory factory) {
+        if (!PATTERN_NAME.matcher(name).matches()) {
+            throw new IllegalArgumentException("Invalid metric name: \"" + name + "\"");
+        }
+
+        if ((labels.length % 2) != 0) {
+            throw new IllegalArgumentException("Labels must be given as name/value pairs for metric " + name);
+        }
+
+        List<String> labelNames = new ArrayList<>();
+        List<String> labelValues = new ArrayList<>();
+        for (int i = 0; i < labels.length; i += 2) {
+            if (!PATTERN_NAME.matcher(labels[i]).matches()) {
+                throw new IllegalArgumentException("Invalid label name for metric " + name + ": \"" + labels[i] + "\"");
+            }
+            labelNames.add(labels[i]);
+            labelValues.add(labels[i + 1]);
+        }
+
+        synchronized (families) {
+            Family family = families.computeIfAbsent(name, x -> new Family(name, help, type, labelNames));
+            if ((family.type != type) || !family.labelNames.equals(labelNames)) {
+                throw new IllegalArgumentException(
+                    "Metric " + name + " has already been registered as " + family.type + " with labels "
+                        + family.labelNames //
+                );
+            }
+
+            return family.childrenByLabelValues.computeIfAbsent(labelValues, x -> factory.create());
+        }
+    }
+
+    @FunctionalInterface
+    private interface ChildFactory {
+        Object create();
+    }
+
+    /**
+     * Writes all metrics in Prometheus text exposition format.
+     *
+     * @param writer receives exported metrics
+     * @throws IOException if writing fails
+     */
+    public void write(Writer writer) throws IOException {
+        List<Family> snapshot;
+        Map<Family, Map<List<String>, Object>> childrenSnapshot = new LinkedHashMap<>();
+        synchronized (families) {
+            snapshot = new ArrayList<>(families.values());
+            for (Family family : snapshot) {
+                childrenSnapshot.put(family, new LinkedHashMap<>(family.childrenByLabelValues));
+            }
+        }
+
+        for (Family family : snapshot) {
+            writer.write("# HELP " + family.name + " " + escapeHelp(family.help) + "\n");
+            writer.write("# TYPE " + family.name + " " + family.type.exportName + "\n");
+
+            for (Map.Entry<List<String>, Object> child : childrenSnapshot.get(family).entrySet()) {
+                writeChild(writer, family, child.getKey(), child.getValue());
+            }
+        }
+
+        writer.flush();
+    }
+
+    private void writeChild(Writer writer, Family family, List<String> labelValues, Object child) throws IOException {
+        String labels = formatLabels(family.labelNames, labelValues);
+
+        if (child instanceof Counter) {
+            writeSample(writer, family.name, labels, ((Counter) child).get());
+        } else if (child instanceof DoubleSupplier) {
+            writeSample(writer, family.name, labels, ((DoubleSupplier) child).getAsDouble());
+        } else if (child instanceof Histogram) {
+            Histogram histogram = (Histogram) child;
+            double[] upperBounds = histogram.getUpperBounds();
+            long[] bucketCounts = histogram.getBucketCounts();
+
+            List<String> bucketLabelNames = new ArrayList<>(family.labelNames);
+            bucketLabelNames.add("le");
+
+            long cumulativeCount = 0;
+            for (int i = 0; i < bucketCounts.length; i++) {
+                cumulativeCount += bucketCounts[i];
+
+                List<String> bucketLabelValues = new ArrayList<>(labelValues);
+                bucketLabelValues.add((i < upperBounds.length) ? formatValue(upperBounds[i]) : "+Inf");
+
+                writeSample(
+                    writer,
+                    family.name + "_bucket",
+                    formatLabels(bucketLabelNames, bucketLabelValues),
+                    cumulativeCount //
+                );
+            }
+
+            writeSample(writer, family.name + "_sum", labels, histogram.getSum());
+            writeSample(writer, family.name + "_count", labels, cumulativeCount);
+        }
+    }
+
+    private void writeSample(Writer writer, String name, String labels, double value) throws IOException {
+        writer.write(name + labels + " " + formatValue(value) + "\n");
+    }
+
+    private String formatLabels(List<String> names, List<String> values) {
+        if (names.isEmpty()) {
+            return "";
+        }
+
+        StringBuilder sb = new StringBuilder("{");
+        for (int i = 0; i < names.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(names.get(i)).append("=\"").append(escapeLabelValue(values.get(i))).append('"');
+        }
+        sb.append('}');
+
+        return sb.toString();
+    }
+
+    private String formatValue(double value) {
+        if (Double.isNaN(value)) {
+            return "NaN";
+        } else if (Double.isInfinite(value)) {
+            return (value > 0) ? "+Inf" : "-Inf";
+        } else if ((value == Math.rint(value)) && (Math.abs(value) < 1e15)) {
+            return Long.toString((long) value);
+        }
+
+        return Double.toString(value);
+    }
+
+    private String escapeHelp(String help) {
+        return help.replace("\\", "\\\\").replace("\n", "\\n");
+    }
+
+    private String escapeLabelValue(String value) {
+        return String.valueOf(value).replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
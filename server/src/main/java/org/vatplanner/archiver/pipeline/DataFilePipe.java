@@ -0,0 +1,160 @@
+package org.vatplanner.archiver.pipeline;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * Hands over {@link RawDataFile}s from a producing thread (loading data) to a
+ * consuming thread (packing data). The pipe is bounded by the total size of
+ * data files it holds; producers block while the pipe is full. A single data
+ * file is always accepted by an empty pipe, even if it exceeds the capacity.
+ *
+ * <p>
+ * Producers have to indicate the end of data by calling {@link #finish()} or
+ * {@link #fail(Throwable)}; consumers stopping early have to call
+ * {@link #cancel()} so producers do not wait forever.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class DataFilePipe implements DataFileSink, DataFileSource {
+
+    private final long capacity;
+
+    private final Deque<RawDataFile> buffered = new ArrayDeque<>();
+    private long bufferedBytes = 0;
+    private boolean finished = false;
+    private boolean cancelled = false;
+    private Throwable failure = null;
+
+    private int numTransferred = 0;
+    private long transferredBytes = 0;
+
+    /**
+     * Creates a new pipe.
+     *
+     * @param capacity maximum total size of data files held by the pipe in bytes
+     */
+    public DataFilePipe(long capacity) {
+        this.capacity = capacity;
+    }
+
+    @Override
+    public void accept(RawDataFile dataFile) throws IOException {
+        long size = getSize(dataFile);
+
+        synchronized (this) {
+            if (finished || (failure != null)) {
+                throw new IllegalStateException("Pipe has already been closed by producer");
+            }
+
+            try {
+                while (!cancelled && !buffered.isEmpty() && (bufferedBytes + size > capacity)) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for pipe to drain");
+            }
+
+            if (cancelled) {
+                throw new IOException("Consumer has stopped reading from pipe");
+            }
+
+            buffered.add(dataFile);
+            bufferedBytes += size;
+            numTransferred++;
+            transferredBytes += size;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public RawDataFile next() throws IOException {
+        synchronized (this) {
+            try {
+                while (buffered.isEmpty() && !finished && (failure == null)) {
+                    wait();
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for data files");
+            }
+
+            if (failure != null) {
+                throw new IOException("Producer failed", failure);
+            }
+
+            RawDataFile dataFile = buffered.poll();
+            if (dataFile != null) {
+                bufferedBytes -= getSize(dataFile);
+                notifyAll();
+            }
+
+            return dataFile;
+        }
+    }
+
+    /**
+     * Indicates that all data files have been provided. Consumers will receive
+     * all remaining data files before reaching the end.
+     */
+    public synchronized void finish() {
+        finished = true;
+        notifyAll();
+    }
+
+    /**
+     * Indicates that the producer failed. Consumers will fail as well on their
+     * next attempt to read; remaining data files are discarded.
+     *
+     * @param cause cause of failure
+     */
+    public synchronized void fail(Throwable cause) {
+        failure = cause;
+        buffered.clear();
+        bufferedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * Indicates that the consumer has stopped reading. Producers will fail on
+     * their next attempt to add data files; remaining data files are discarded.
+     */
+    public synchronized void cancel() {
+        cancelled = true;
+        buffered.clear();
+        bufferedBytes = 0;
+        notifyAll();
+    }
+
+    /**
+     * Returns the number of data files which have been added to the pipe so
+     * far.
+     *
+     * @return number of data files added so far
+     */
+    public synchronized int getNumTransferred() {
+        return numTransferred;
+    }
+
+    /**
+     * Returns the total size of data files which have been added to the pipe so
+     * far.
+     *
+     * @return total size of data files added so far in bytes
+     */
+    public synchronized long getTransferredBytes() {
+        return transferredBytes;
+    }
+
+    private long getSize(RawDataFile dataFile) {
+        return dataFile.getDataLength();
+    }
+}
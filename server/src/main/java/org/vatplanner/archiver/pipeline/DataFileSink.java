@@ -0,0 +1,22 @@
+package org.vatplanner.archiver.pipeline;
+
+import java.io.IOException;
+
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * Receives {@link RawDataFile}s one after another as they are being loaded.
+ */
+@FunctionalInterface
+public interface DataFileSink {
+
+    /**
+     * Accepts the next data file. Implementations may block until the data file
+     * can be accepted.
+     *
+     * @param dataFile next data file
+     * @throws IOException if the data file cannot be accepted, e.g. because the
+     *         receiving side has stopped or the thread has been interrupted
+     */
+    public void accept(RawDataFile dataFile) throws IOException;
+}
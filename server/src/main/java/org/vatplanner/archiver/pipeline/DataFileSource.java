@@ -0,0 +1,34 @@
+package org.vatplanner.archiver.pipeline;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Iterator;
+
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * Provides {@link RawDataFile}s one after another as they become available.
+ */
+@FunctionalInterface
+public interface DataFileSource {
+
+    /**
+     * Returns the next data file, blocking until one is available.
+     *
+     * @return next data file; null if all data files have been provided
+     * @throws IOException if no further data files can be provided due to an
+     *         error
+     */
+    public RawDataFile next() throws IOException;
+
+    /**
+     * Creates a source providing all data files of the given collection.
+     *
+     * @param dataFiles data files to provide
+     * @return source providing given data files in iteration order
+     */
+    public static DataFileSource of(Collection<RawDataFile> dataFiles) {
+        Iterator<RawDataFile> it = dataFiles.iterator();
+        return () -> it.hasNext() ? it.next() : null;
+    }
+}
@@ -3,7 +3,10 @@ package org.vatplanner.archiver.remote;
 import java.io.ByteArrayOutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
@@ -11,6 +14,8 @@ import java.util.Map;
 import org.vatplanner.archiver.common.RawDataFile;
 import org.vatplanner.archiver.common.RemoteMetaDataContainerJsonKey;
 import org.vatplanner.archiver.common.RemoteMetaDataFileJsonKey;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
 
 import com.github.cliftonlabs.json_simple.JsonObject;
 
@@ -21,6 +26,16 @@ import com.github.cliftonlabs.json_simple.JsonObject;
  * queried for. No additional data must be added after meta data has been
  * requested as otherwise meta data would not know all files.
  * <p>
+ * If {@link #setDeduplicating(boolean) deduplication} is enabled, data files
+ * are identified by a hash of their content. Content identical to a file
+ * indexed before is not stored again; meta data of such files instead points
+ * to the entry holding the content
+ * ({@link RemoteMetaDataFileJsonKey#CONTENT_FILE}). This saves space on
+ * periods the upstream did not update or multiple nodes fetched the same data
+ * but requires clients to resolve the references, so it needs to be requested
+ * explicitly.
+ * </p>
+ * <p>
  * Methods provided by this base class are thread-safe.
  * </p>
  */
@@ -29,11 +44,105 @@ public abstract class AbstractIndexingPacker implements Packer {
     private byte[] metaData;
     private final Map<RawDataFile, Integer> indexesByOriginal = new HashMap<>();
 
+    private boolean deduplicating;
+    private final Map<RawDataFile, String> contentFileNamesByOriginal = new HashMap<>();
+    private final Map<ByteBuffer, String> fileNamesByContentHash = new HashMap<>();
+    private MessageDigest contentDigest;
+
     private static final int FORMAT_VERSION = 1;
+    private static final int FORMAT_VERSION_DEDUPLICATED = 2;
+    private static final String CONTENT_HASH_ALGORITHM = "SHA-256";
     private static final String CONTENT = "StatusDataFile";
 
     public static final String META_DATA_FILE_NAME = "meta.json";
 
+    /**
+     * Enables or disables deduplication of identical content. Must be configured
+     * before any file is packed.
+     *
+     * @param deduplicating true to store identical content only once, false to
+     *        store content of every file
+     * @return this instance for method-chaining
+     */
+    public AbstractIndexingPacker setDeduplicating(boolean deduplicating) {
+        synchronized (contentFileNamesByOriginal) {
+            this.deduplicating = deduplicating;
+        }
+        return this;
+    }
+
+    /**
+     * Checks if the content of the given file is already stored in the entry of
+     * another file, so no entry needs to be stored for the given file. The first
+     * file of each distinct content is considered unique; the decision is
+     * remembered, so all calls for the same file yield the same result. Content
+     * is only hashed on the first call for each file, which thus must happen
+     * before its data is cleared. Always false if deduplication is disabled.
+     *
+     * @param original file to check
+     * @return true if the content is stored by another entry and must not be
+     *         stored again, false if it needs to be stored for this file
+     */
+    protected boolean isDuplicateContent(RawDataFile original) {
+        String contentFileName = getContentFileName(original);
+        return (contentFileName != null) && !contentFileName.equals(getFileName(original));
+    }
+
+    /**
+     * Returns the name of the entry holding the content of the given file.
+     *
+     * @param original file to look up
+     * @return name of entry holding the content; null if deduplication is
+     *         disabled
+     */
+    private String getContentFileName(RawDataFile original) {
+        synchronized (contentFileNamesByOriginal) {
+            if (!deduplicating) {
+                return null;
+            }
+
+            String contentFileName = contentFileNamesByOriginal.get(original);
+            if (contentFileName != null) {
+                return contentFileName;
+            }
+
+            ByteBuffer contentHash = hashContent(original);
+            contentFileName = fileNamesByContentHash.get(contentHash);
+            if (contentFileName == null) {
+                contentFileName = getFileName(original);
+                fileNamesByContentHash.put(contentHash, contentFileName);
+            } else {
+                Span span = Tracing.currentSpan();
+                span.addToAttribute("deduplicatedEntries", 1);
+                span.addToAttribute("deduplicatedBytes", original.getDataLength());
+            }
+
+            contentFileNamesByOriginal.put(original, contentFileName);
+
+            return contentFileName;
+        }
+    }
+
+    /**
+     * Hashes the content of the given file. Must only be called while holding
+     * the lock on {@link #contentFileNamesByOriginal}.
+     *
+     * @param original file to hash content of
+     * @return hash of content, usable as a map key
+     */
+    private ByteBuffer hashContent(RawDataFile original) {
+        if (contentDigest == null) {
+            try {
+                contentDigest = MessageDigest.getInstance(CONTENT_HASH_ALGORITHM);
+            } catch (NoSuchAlgorithmException ex) {
+                throw new IllegalStateException("Content hash algorithm " + CONTENT_HASH_ALGORITHM + " is not available", ex);
+            }
+        }
+
+        contentDigest.update(original.getDataBuffer(), 0, original.getDataLength());
+        return ByteBuffer.wrap(contentDigest.digest());
+    }
+
     /**
      * Returns the index addressing the given file in meta data. Unknown files are
      * automatically assigned a new index number. Subsequent calls for the same file
@@ -60,6 +169,27 @@ public abstract class AbstractIndexingPacker implements Packer {
         return String.format("%08d.dat", getFileIndex(original));
     }
 
+    /**
+     * Records that a single entry has been stored to the given trace span:
+     * number of entries, uncompressed bytes and time taken in total and at most
+     * per entry. Nothing is recorded if the span is not recording.
+     *
+     * @param span span to record to
+     * @param startNanos {@link System#nanoTime()} before storing the entry
+     * @param size uncompressed size of entry in bytes
+     */
+    protected void traceEntry(Span span, long startNanos, long size) {
+        if (!span.isRecording()) {
+            return;
+        }
+
+        long nanos = System.nanoTime() - startNanos;
+        span.addToAttribute("entries", 1);
+        span.addToAttribute("bytesIn", size);
+        span.addToAttribute("entryNanosTotal", nanos);
+        span.maxAttribute("entryNanosMax", nanos);
+    }
+
     /**
      * Returns the JSON meta data as a byte array encoded in UTF8. No new files must
      * be added to the index after calling this method. Encoded result will be
@@ -90,13 +220,22 @@ public abstract class AbstractIndexingPacker implements Packer {
      * @return UTF8-encoded JSON meta data for given files
      */
     private byte[] encodeMetaData(Collection<RawDataFile> originals) {
+        boolean hasDuplicates = false;
         JsonObject files = new JsonObject();
         for (RawDataFile original : originals) {
-            files.put(getFileName(original), buildFileMetaData(original));
+            JsonObject file = buildFileMetaData(original);
+            if (isDuplicateContent(original)) {
+                file.put(RemoteMetaDataFileJsonKey.CONTENT_FILE.getKey(), getContentFileName(original));
+                hasDuplicates = true;
+            }
+            files.put(getFileName(original), file);
         }
 
+        // clients unaware of deduplication would miss content
+        int formatVersion = hasDuplicates ? FORMAT_VERSION_DEDUPLICATED : FORMAT_VERSION;
+
         JsonObject container = new JsonObject();
-        container.put(RemoteMetaDataContainerJsonKey.FORMAT_VERSION.getKey(), FORMAT_VERSION);
+        container.put(RemoteMetaDataContainerJsonKey.FORMAT_VERSION.getKey(), formatVersion);
         container.put(RemoteMetaDataContainerJsonKey.CONTENT.getKey(), CONTENT);
         container.put(RemoteMetaDataContainerJsonKey.FILES.getKey(), files);
 
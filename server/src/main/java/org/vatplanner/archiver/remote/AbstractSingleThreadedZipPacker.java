@@ -1,12 +1,16 @@
 package org.vatplanner.archiver.remote;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.pipeline.DataFileSource;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
 
 /**
  * Base class to pack data to a ZIP file single-threaded. Actually, this base
@@ -16,42 +20,77 @@ import org.vatplanner.archiver.common.RawDataFile;
 public abstract class AbstractSingleThreadedZipPacker extends AbstractZipPacker {
 
     /**
-     * Configures expected total file size ratio and storage method. The ratio will
-     * be used to pre-allocate memory to write the resulting ZIP file to. It is
-     * important to provide a slightly higher estimation than actually expected
-     * since resizing the underlying in-memory implementation
-     * {@link SeekableInMemoryByteChannel} has a heavy performance impact and should
-     * be avoided if many files are to be added (as is the case in this
-     * application).
+     * Configures the storage method.
      *
-     * @param expectedRatio expected ratio of output size compared to input; should
-     *        be higher than actual
      * @param method method to store files with, see {@link ZipArchiveEntry}
      */
-    public AbstractSingleThreadedZipPacker(double expectedRatio, int method) {
-        super(expectedRatio, method);
+    public AbstractSingleThreadedZipPacker(int method) {
+        super(method);
     }
 
     @Override
     public byte[] pack(Collection<RawDataFile> originals) throws IOException {
-        ZipArchiveOutputStream zaos = createStream(originals);
+        ZipArchiveOutputStream zaos = createStream();
 
         // store meta data
+        writeMetaDataEntry(zaos, originals);
+
+        // store all content
+        for (RawDataFile original : originals) {
+            writeContentEntry(zaos, original);
+        }
+
+        return closeStream();
+    }
+
+    @Override
+    public byte[] pack(DataFileSource source) throws IOException {
+        ZipArchiveOutputStream zaos = createStream();
+
+        // store all content as it arrives
+        List<RawDataFile> originals = new ArrayList<>();
+        RawDataFile original;
+        while ((original = source.next()) != null) {
+            writeContentEntry(zaos, original);
+            originals.add(original);
+        }
+
+        // meta data is only complete after all content has been seen
+        writeMetaDataEntry(zaos, originals);
+
+        return closeStream();
+    }
+
+    private void writeMetaDataEntry(ZipArchiveOutputStream zaos, Collection<RawDataFile> originals) throws IOException {
         ZipArchiveEntry metaDataEntry = createMetaDataEntry(originals);
         zaos.putArchiveEntry(metaDataEntry);
         zaos.write(getMetaData(originals));
         zaos.closeArchiveEntry();
+    }
 
-        // store all content
-        for (RawDataFile original : originals) {
-            ZipArchiveEntry contentEntry = createContentEntry(original);
-            zaos.putArchiveEntry(contentEntry);
-            zaos.write(original.getData());
-            zaos.closeArchiveEntry();
-
+    private void writeContentEntry(ZipArchiveOutputStream zaos, RawDataFile original) throws IOException {
+        if (isDuplicateContent(original)) {
             original.clear();
+            return;
         }
 
-        return closeStream();
+        Span span = Tracing.currentSpan();
+        long startNanos = span.isRecording() ? System.nanoTime() : 0;
+
+        int length = original.getDataLength();
+        if (isCopiedRaw(original)) {
+            writeRawContentEntry(zaos, original);
+            traceEntry(span, startNanos, length);
+            return;
+        }
+
+        ZipArchiveEntry contentEntry = createContentEntry(original);
+        zaos.putArchiveEntry(contentEntry);
+        zaos.write(original.getDataBuffer(), 0, length);
+        zaos.closeArchiveEntry();
+
+        original.clear();
+
+        traceEntry(span, startNanos, length);
     }
 }
@@ -1,13 +1,17 @@
 package org.vatplanner.archiver.remote;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.util.Arrays;
 import java.util.Collection;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
 
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
-import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
 import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
 
 /**
  * Base class to pack data to a ZIP file. General handling in terms of container
@@ -15,48 +19,55 @@ import org.vatplanner.archiver.common.RawDataFile;
  * processing, so it is provided by this class. APIs to add actual files
  * differs, so that's left to implementing classes.
  *
+ * <p>
+ * ZIP files are written as a stream: compressed sizes and checksums are
+ * recorded in data descriptors following each entry instead of being patched
+ * into entry headers, so no size needs to be known in advance and the output
+ * buffer simply grows as needed. Entries stored without compression still need
+ * their checksum to be calculated before they can be written.
+ * </p>
+ *
+ * <p>
+ * Files which already provide their data as a raw "deflate" stream (see
+ * {@link RawDataFile#hasDeflatedData()}) are copied as is to archives using
+ * "deflate" instead of being compressed again.
+ * </p>
+ *
  * @see AbstractSingleThreadedZipPacker
  * @see MultiThreadedZipDeflatePacker
  */
 public abstract class AbstractZipPacker extends AbstractIndexingPacker {
 
-    protected final double expectedCompressionRatio;
+    /**
+     * Initial capacity of output buffers; grows as needed.
+     */
+    private static final int INITIAL_CAPACITY = 1024 * 1024;
+
     protected final int method;
 
     private ZipArchiveOutputStream zaos;
-    private SeekableInMemoryByteChannel channel;
+    private ByteArrayOutputStream baos;
 
     /**
-     * Configures expected total file size ratio and storage method. The ratio will
-     * be used to pre-allocate memory to write the resulting ZIP file to. It is
-     * important to provide a slightly higher estimation than actually expected
-     * since resizing the underlying in-memory implementation
-     * {@link SeekableInMemoryByteChannel} has a heavy performance impact and should
-     * be avoided if many files are to be added (as is the case in this
-     * application).
+     * Configures the storage method.
      *
-     * @param expectedRatio expected ratio of output size compared to input; should
-     *        be higher than actual
      * @param method method to store files with, see {@link ZipArchiveEntry}
      */
-    public AbstractZipPacker(double expectedRatio, int method) {
-        this.expectedCompressionRatio = expectedRatio;
+    public AbstractZipPacker(int method) {
         this.method = method;
     }
 
     /**
      * Starts a new ZIP stream configured to use requested storage method and
-     * creates a new in-memory channel to store the result in.
+     * creates a new in-memory buffer to store the result in.
      *
-     * @param originals files to be stored; used to calculate required memory size
      * @return open ZIP stream ready to encode data
      * @throws IOException
      */
-    protected ZipArchiveOutputStream createStream(Collection<RawDataFile> originals) throws IOException {
-        int rawSize = originals.stream().mapToInt(f -> f.getData().length).sum();
-        channel = new SeekableInMemoryByteChannel((int) (rawSize * expectedCompressionRatio));
+    protected ZipArchiveOutputStream createStream() throws IOException {
+        baos = new ByteArrayOutputStream(INITIAL_CAPACITY);
 
-        zaos = new ZipArchiveOutputStream(channel);
+        zaos = new ZipArchiveOutputStream(baos);
         zaos.setMethod(method);
         return zaos;
     }
@@ -69,12 +80,9 @@ public abstract class AbstractZipPacker extends AbstractIndexingPacker {
      */
     protected byte[] closeStream() throws IOException {
         zaos.finish();
-        zaos.flush();
         zaos.close();
-        channel.close();
-        byte[] compressed = channel.array();
 
-        return Arrays.copyOfRange(compressed, 0, (int) channel.position());
+        return baos.toByteArray();
     }
 
     /**
@@ -91,12 +99,52 @@ public abstract class AbstractZipPacker extends AbstractIndexingPacker {
         ZipArchiveEntry entry = new ZipArchiveEntry(name);
         entry.setMethod(method);
 
-        byte[] data = original.getData();
-        entry.setSize(data.length);
+        if (isCopiedRaw(original)) {
+            entry.setSize(original.getDataLength());
+            entry.setCompressedSize(original.getDeflatedDataLength());
+            entry.setCrc(original.getDataCrc32());
+        } else {
+            setSizeAndChecksum(entry, original.getDataBuffer(), original.getDataLength());
+        }
 
         return entry;
     }
 
+    /**
+     * Checks if the given file can be stored by copying its compressed data
+     * instead of compressing it again.
+     *
+     * @param original file to check
+     * @return true if compressed data of the file is to be copied, false if
+     *         data needs to be compressed
+     */
+    protected boolean isCopiedRaw(RawDataFile original) {
+        return (method == ZipEntry.DEFLATED) && original.hasDeflatedData();
+    }
+
+    /**
+     * Writes the given file by copying its compressed data to the stream. Data
+     * of the file is cleared afterwards. Must only be called if
+     * {@link #isCopiedRaw(RawDataFile)}.
+     *
+     * @param zaos stream to write to
+     * @param original file to store
+     * @throws IOException
+     */
+    protected void writeRawContentEntry(ZipArchiveOutputStream zaos, RawDataFile original) throws IOException {
+        ZipArchiveEntry contentEntry = createContentEntry(original);
+        zaos.addRawArchiveEntry(
+            contentEntry,
+            new ByteArrayInputStream(original.getDeflatedDataBuffer(), 0, original.getDeflatedDataLength()) //
+        );
+
+        Span span = Tracing.currentSpan();
+        span.addToAttribute("rawEntries", 1);
+        span.addToAttribute("rawBytes", original.getDeflatedDataLength());
+
+        original.clear();
+    }
+
     /**
      * Creates the archive entry to address the application JSON meta data file.
      * This only sets and provides archive meta data required to index data within
@@ -116,8 +164,28 @@ public abstract class AbstractZipPacker extends AbstractIndexingPacker {
         entry.setMethod(method);
 
         byte[] data = getMetaData(originals);
-        entry.setSize(data.length);
+        setSizeAndChecksum(entry, data, data.length);
 
         return entry;
     }
+
+    /**
+     * Sets the size of the given entry. Entries stored without compression are
+     * not followed by data descriptors when streamed, so the checksum needs to
+     * be known before writing the entry.
+     *
+     * @param entry entry to set size (and checksum, if needed) on
+     * @param buffer holds uncompressed data of entry at start, may be longer
+     * @param length length of uncompressed data
+     */
+    private void setSizeAndChecksum(ZipArchiveEntry entry, byte[] buffer, int length) {
+        entry.setSize(length);
+
+        if (method == ZipEntry.STORED) {
+            CRC32 crc = new CRC32();
+            crc.update(buffer, 0, length);
+            entry.setCrc(crc.getValue());
+            entry.setCompressedSize(length);
+        }
+    }
 }
@@ -0,0 +1,72 @@
+package org.vatplanner.archiver.remote;
+
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+
+import org.vatplanner.archiver.common.DataFileStatistics;
+import org.vatplanner.archiver.common.DataFileStatisticsJsonKey;
+
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+/**
+ * Encodes {@link DataFileStatistics} to UTF8 JSON for transmission to remote
+ * clients. See {@link DataFileStatisticsJsonKey} for a description of the
+ * structure.
+ */
+public class DataFileStatisticsEncoder {
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Encodes the given statistics to UTF8 JSON.
+     *
+     * @param statistics statistics to encode
+     * @return UTF8-encoded JSON
+     */
+    public byte[] encode(Collection<DataFileStatistics> statistics) {
+        JsonObject days = new JsonObject();
+        for (DataFileStatistics item : statistics) {
+            JsonObject formats = (JsonObject) days.computeIfAbsent(
+                item.getDate().toString(),
+                x -> new JsonObject() //
+            );
+            formats.put(item.getFormatName(), encode(item));
+        }
+
+        JsonObject container = new JsonObject();
+        container.put(DataFileStatisticsJsonKey.FORMAT_VERSION.getKey(), FORMAT_VERSION);
+        container.put(DataFileStatisticsJsonKey.DAYS.getKey(), days);
+
+        return serializeJson(container);
+    }
+
+    private JsonObject encode(DataFileStatistics item) {
+        JsonObject json = new JsonObject();
+        json.put(DataFileStatisticsJsonKey.FILES.getKey(), item.getNumberOfFiles());
+        json.put(DataFileStatisticsJsonKey.SIZE.getKey(), item.getTotalDataSize());
+        json.put(DataFileStatisticsJsonKey.EARLIEST_FETCH_TIME.getKey(), item.getEarliestFetchTime().toString());
+        json.put(DataFileStatisticsJsonKey.LATEST_FETCH_TIME.getKey(), item.getLatestFetchTime().toString());
+        return json;
+    }
+
+    /**
+     * Serializes the given {@link JsonObject} to a UTF8-encoded byte array.
+     *
+     * @param json object to serialize
+     * @return object as UTF8-encoded byte array
+     */
+    private byte[] serializeJson(JsonObject json) {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+
+        try (Writer writer = new OutputStreamWriter(baos, StandardCharsets.UTF_8)) {
+            json.toJson(writer);
+        } catch (Exception ex) {
+            throw new RuntimeException("Failed to serialize JSON statistics", ex);
+        }
+
+        return baos.toByteArray();
+    }
+}
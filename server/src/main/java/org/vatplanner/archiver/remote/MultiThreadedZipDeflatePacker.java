@@ -2,15 +2,22 @@ package org.vatplanner.archiver.remote;
 
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.zip.ZipEntry;
 
 import org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
 import org.apache.commons.compress.archivers.zip.ZipArchiveEntryRequest;
 import org.apache.commons.compress.archivers.zip.ZipArchiveOutputStream;
+import org.apache.commons.compress.parallel.ScatterGatherBackingStoreSupplier;
 import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.pipeline.DataFileSource;
+import org.vatplanner.archiver.util.FairExecutor;
 
 /**
  * Packs all data to a ZIP file using "deflate" compression using multiple
@@ -19,25 +26,128 @@ import org.vatplanner.archiver.common.RawDataFile;
  * of roughly 0.44.
  *
  * <p>
+ * Entries are compressed on threads shared by all packers if a
+ * {@link FairExecutor} is provided, so concurrent requests do not oversubscribe
+ * processors. Otherwise, a new thread pool using all available processors is
+ * created on each call.
+ * </p>
+ *
+ * <p>
+ * Files already providing compressed data are copied to the result directly on
+ * the calling thread as they are added; they precede all entries compressed in
+ * parallel.
+ * </p>
+ *
+ * <p>
  * See {@link SingleThreadedZipDeflatePacker} if single-threaded compression is
  * needed.
  * </p>
  *
- * @see SingleThreadZipDeflatePacker
+ * @see SingleThreadedZipDeflatePacker
  */
 public class MultiThreadedZipDeflatePacker extends AbstractZipPacker {
 
+    private final FairExecutor compressionExecutor;
+    private final ScatterGatherBackingStoreSupplier backingStoreSupplier;
+
     public MultiThreadedZipDeflatePacker() {
-        super(0.5, ZipEntry.DEFLATED);
+        this(null, null);
+    }
+
+    /**
+     * Creates a new packer compressing on the given shared executor.
+     *
+     * @param compressionExecutor shared executor to compress entries on; null to
+     *        create a dedicated thread pool per call
+     * @param backingStoreSupplier provides storage for data compressed by each
+     *        thread until the result is assembled; null to always use
+     *        temporary files
+     */
+    public MultiThreadedZipDeflatePacker(FairExecutor compressionExecutor, ScatterGatherBackingStoreSupplier backingStoreSupplier) {
+        super(ZipEntry.DEFLATED);
+        this.compressionExecutor = compressionExecutor;
+        this.backingStoreSupplier = backingStoreSupplier;
     }
 
     @Override
     public byte[] pack(Collection<RawDataFile> originals) throws IOException {
-        ParallelScatterZipCreator zipCreator = new ParallelScatterZipCreator();
+        // copying compressed data may fail before the zip creator gets to shut
+        // down the executor
+        ExecutorService executor = createExecutor();
+        ParallelScatterZipCreator zipCreator = createZipCreator(executor);
 
-        ZipArchiveOutputStream zaos = createStream(originals);
+        ZipArchiveOutputStream zaos = createStream();
 
         // store meta data
+        addMetaDataEntry(zipCreator, originals);
+
+        // store all content
+        try {
+            for (RawDataFile original : originals) {
+                addContentEntry(zipCreator, zaos, original);
+            }
+        } catch (IOException | RuntimeException ex) {
+            executor.shutdownNow();
+            throw ex;
+        }
+
+        writeTo(zipCreator, zaos);
+
+        return closeStream();
+    }
+
+    @Override
+    public byte[] pack(DataFileSource source) throws IOException {
+        // executor is only shut down by zip creator when writing the result, so it
+        // needs to be controlled in case the source fails
+        ExecutorService executor = createExecutor();
+        ParallelScatterZipCreator zipCreator = createZipCreator(executor);
+
+        ZipArchiveOutputStream zaos = createStream();
+
+        // store all content as it arrives
+        List<RawDataFile> originals = new ArrayList<>();
+        try {
+            RawDataFile original;
+            while ((original = source.next()) != null) {
+                addContentEntry(zipCreator, zaos, original);
+                originals.add(original);
+            }
+        } catch (IOException | RuntimeException ex) {
+            executor.shutdownNow();
+            throw ex;
+        }
+
+        // meta data is only complete after all content has been seen
+        addMetaDataEntry(zipCreator, originals);
+
+        writeTo(zipCreator, zaos);
+
+        return closeStream();
+    }
+
+    private ParallelScatterZipCreator createZipCreator(ExecutorService executor) {
+        if (backingStoreSupplier == null) {
+            return new ParallelScatterZipCreator(executor);
+        }
+
+        return new ParallelScatterZipCreator(executor, backingStoreSupplier);
+    }
+
+    /**
+     * Returns an executor to be used (and shut down) by a single zip creator.
+     *
+     * @return executor for a single zip creator
+     */
+    private ExecutorService createExecutor() {
+        if (compressionExecutor != null) {
+            return compressionExecutor.createLane();
+        }
+
+        return Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    private void addMetaDataEntry(ParallelScatterZipCreator zipCreator, Collection<RawDataFile> originals) {
         zipCreator.addArchiveEntry(() -> {
             ZipArchiveEntry metaDataEntry = createMetaDataEntry(originals);
             byte[] data = getMetaData(originals);
@@ -46,25 +156,44 @@ public class MultiThreadedZipDeflatePacker extends AbstractZipPacker {
                 () -> new ByteArrayInputStream(data) //
             );
         });
+    }
 
-        // store all content
-        for (RawDataFile original : originals) {
-            zipCreator.addArchiveEntry(() -> {
-                ZipArchiveEntry entry = createContentEntry(original);
-                byte[] data = original.getData();
-
-                original.clear();
+    private void addContentEntry(ParallelScatterZipCreator zipCreator, ZipArchiveOutputStream zaos, RawDataFile original) throws IOException {
+        // content needs to be checked in order of files, before it is cleared
+        if (isDuplicateContent(original)) {
+            original.clear();
+            return;
+        }
 
-                return ZipArchiveEntryRequest.createZipArchiveEntryRequest(entry, () -> new ByteArrayInputStream(data));
-            });
+        // nothing to compress, so there is no need to wait for the zip creator
+        if (isCopiedRaw(original)) {
+            writeRawContentEntry(zaos, original);
+            return;
         }
 
+        zipCreator.addArchiveEntry(() -> {
+            ZipArchiveEntry entry = createContentEntry(original);
+
+            // payload is read after returning the request, so data must only be
+            // cleared (returning pooled buffers) once the stream has been closed
+            return ZipArchiveEntryRequest.createZipArchiveEntryRequest(
+                entry,
+                () -> new ByteArrayInputStream(original.getDataBuffer(), 0, original.getDataLength()) {
+                    @Override
+                    public void close() throws IOException {
+                        super.close();
+                        original.clear();
+                    }
+                } //
+            );
+        });
+    }
+
+    private void writeTo(ParallelScatterZipCreator zipCreator, ZipArchiveOutputStream zaos) throws IOException {
         try {
             zipCreator.writeTo(zaos);
         } catch (InterruptedException | ExecutionException ex) {
             throw new IOException("Parallel execution failed", ex);
         }
-
-        return closeStream();
     }
 }
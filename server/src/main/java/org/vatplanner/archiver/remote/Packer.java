@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.util.Collection;
 
 import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.pipeline.DataFileSource;
 
 /**
  * Packs data into a single file for bundled transmission of multiple
@@ -21,4 +22,16 @@ public interface Packer {
      * @throws IOException
      */
     public byte[] pack(Collection<RawDataFile> originals) throws IOException;
+
+    /**
+     * Packs data files to a single binary bundle as they are provided by the
+     * given source, until the source reaches its end. This allows packing to
+     * start while data is still being loaded. As not all data files are known in
+     * advance, meta data is stored after all content.
+     *
+     * @param source provides data to be packed
+     * @return packed data
+     * @throws IOException
+     */
+    public byte[] pack(DataFileSource source) throws IOException;
 }
@@ -1,7 +1,14 @@
 package org.vatplanner.archiver.remote;
 
+import java.io.File;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.common.PackerMethod;
 
 /**
  * Holds configuration options relevant to packers.
@@ -11,6 +18,19 @@ public class PackerConfiguration {
     private static final Logger LOGGER = LoggerFactory.getLogger(PackerConfiguration.class);
 
     private boolean autoSelectMultiThreading = false;
+    private int packingThreads = 0;
+    private int compressionThreads = 0;
+    private String scatterDirectory = null;
+    private int scatterSpillThresholdKilobytes = 4096;
+    private boolean pipelined = false;
+    private int pipelineBufferMegabytes = 64;
+    private Set<PackerMethod> autoCandidates = EnumSet.of(
+        PackerMethod.ZIP_UNCOMPRESSED,
+        PackerMethod.ZIP_DEFLATE,
+        PackerMethod.TAR_GZIP,
+        PackerMethod.TAR_BZIP2,
+        PackerMethod.TAR_XZ //
+    );
 
     /**
      * Determines if multi-threaded methods should be auto-selected in case no
@@ -37,4 +57,196 @@ public class PackerConfiguration {
         return this;
     }
 
+    /**
+     * Returns the number of threads packing requests concurrently if packing is
+     * dispatched to a dedicated pool.
+     *
+     * @return number of packing threads
+     */
+    public int getPackingThreads() {
+        if (packingThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return packingThreads;
+    }
+
+    /**
+     * Sets the number of threads packing requests concurrently if packing is
+     * dispatched to a dedicated pool.
+     *
+     * @param packingThreads number of packing threads; 0 to use number of
+     *        available processors
+     * @return this instance for method-chaining
+     */
+    public PackerConfiguration setPackingThreads(int packingThreads) {
+        LOGGER.debug("setting packingThreads to {}", packingThreads);
+        this.packingThreads = packingThreads;
+        return this;
+    }
+
+    /**
+     * Returns the number of threads shared by all multi-threaded packers to
+     * compress entries.
+     *
+     * @return number of compression threads
+     */
+    public int getCompressionThreads() {
+        if (compressionThreads <= 0) {
+            return Runtime.getRuntime().availableProcessors();
+        }
+
+        return compressionThreads;
+    }
+
+    /**
+     * Sets the number of threads shared by all multi-threaded packers to
+     * compress entries.
+     *
+     * @param compressionThreads number of compression threads; 0 to use number
+     *        of available processors
+     * @return this instance for method-chaining
+     */
+    public PackerConfiguration setCompressionThreads(int compressionThreads) {
+        LOGGER.debug("setting compressionThreads to {}", compressionThreads);
+        this.compressionThreads = compressionThreads;
+        return this;
+    }
+
+    /**
+     * Returns the directory multi-threaded packers spill compressed data to
+     * before the final result is assembled.
+     *
+     * @return directory to spill to; null for the default temporary directory
+     */
+    public File getScatterDirectory() {
+        if ((scatterDirectory == null) || scatterDirectory.trim().isEmpty()) {
+            return null;
+        }
+
+        return new File(scatterDirectory);
+    }
+
+    /**
+     * Sets the directory multi-threaded packers spill compressed data to before
+     * the final result is assembled. A fast local disk should be used.
+     *
+     * @param scatterDirectory directory to spill to; null or empty for the
+     *        default temporary directory
+     * @return this instance for method-chaining
+     */
+    public PackerConfiguration setScatterDirectory(String scatterDirectory) {
+        LOGGER.debug("setting scatterDirectory to {}", scatterDirectory);
+        this.scatterDirectory = scatterDirectory;
+        return this;
+    }
+
+    /**
+     * Returns the amount of compressed data each thread of a multi-threaded
+     * packer holds in memory before spilling to a file.
+     *
+     * @return spill threshold per thread in bytes; 0 to always spill, negative
+     *         to never spill
+     */
+    public long getScatterSpillThreshold() {
+        if (scatterSpillThresholdKilobytes < 0) {
+            return -1;
+        }
+
+        return (long) scatterSpillThresholdKilobytes * 1024;
+    }
+
+    /**
+     * Sets the amount of compressed data each thread of a multi-threaded packer
+     * holds in memory before spilling to a file.
+     *
+     * @param scatterSpillThresholdKilobytes spill threshold per thread in
+     *        kilobytes; 0 to always spill, negative to never spill
+     * @return this instance for method-chaining
+     */
+    public PackerConfiguration setScatterSpillThresholdKilobytes(int scatterSpillThresholdKilobytes) {
+        LOGGER.debug("setting scatterSpillThresholdKilobytes to {}", scatterSpillThresholdKilobytes);
+        this.scatterSpillThresholdKilobytes = scatterSpillThresholdKilobytes;
+        return this;
+    }
+
+    /**
+     * Determines if data files should be packed while further data is still
+     * being loaded, instead of loading all data before packing starts.
+     *
+     * @return true if loading and packing should be pipelined, false if data
+     *         should be packed after loading has completed
+     */
+    public boolean isPipelined() {
+        return pipelined;
+    }
+
+    /**
+     * Sets whether data files should be packed while further data is still
+     * being loaded, instead of loading all data before packing starts.
+     *
+     * @param pipelined true if loading and packing should be pipelined, false if
+     *        data should be packed after loading has completed
+     * @return this instance for method-chaining
+     */
+    public PackerConfiguration setPipelined(boolean pipelined) {
+        LOGGER.debug("setting pipelined to {}", pipelined);
+        this.pipelined = pipelined;
+        return this;
+    }
+
+    /**
+     * Returns the maximum size of loaded data files waiting to be packed per
+     * request if loading and packing is pipelined.
+     *
+     * @return maximum size of data files waiting to be packed in bytes
+     */
+    public long getPipelineBufferSize() {
+        return (long) pipelineBufferMegabytes * 1024 * 1024;
+    }
+
+    /**
+     * Sets the maximum size of loaded data files waiting to be packed per
+     * request if loading and packing is pipelined.
+     *
+     * @param pipelineBufferMegabytes maximum size of data files waiting to be
+     *        packed in megabytes
+     * @return this instance for method-chaining
+     */
+    public PackerConfiguration setPipelineBufferMegabytes(int pipelineBufferMegabytes) {
+        LOGGER.debug("setting pipelineBufferMegabytes to {}", pipelineBufferMegabytes);
+        this.pipelineBufferMegabytes = pipelineBufferMegabytes;
+        return this;
+    }
+
+    /**
+     * Returns the methods to choose from if clients request
+     * {@link PackerMethod#AUTO}.
+     *
+     * @return methods to choose from automatically
+     */
+    public Set<PackerMethod> getAutoCandidates() {
+        return Collections.unmodifiableSet(autoCandidates);
+    }
+
+    /**
+     * Sets the methods to choose from if clients request
+     * {@link PackerMethod#AUTO}. {@link PackerMethod#ZIP_DEFLATE} is resolved to
+     * single- or multi-threaded implementations as configured by
+     * {@link #setAutoSelectMultiThreading(boolean)}.
+     *
+     * @param autoCandidates methods to choose from automatically; must not be
+     *        empty or contain {@link PackerMethod#AUTO}
+     * @return this instance for method-chaining
+     * @throws IllegalArgumentException if no or invalid methods are given
+     */
+    public PackerConfiguration setAutoCandidates(Collection<PackerMethod> autoCandidates) {
+        if (autoCandidates.isEmpty() || autoCandidates.contains(PackerMethod.AUTO)) {
+            throw new IllegalArgumentException("invalid candidates for automatic packer selection: " + autoCandidates);
+        }
+
+        LOGGER.debug("setting autoCandidates to {}", autoCandidates);
+        this.autoCandidates = EnumSet.copyOf(autoCandidates);
+        return this;
+    }
 }
@@ -1,7 +1,9 @@
 package org.vatplanner.archiver.remote;
 
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.tukaani.xz.ArrayCache;
 import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.util.FairExecutor;
 
 /**
  * Factory to more easily instantiate {@link Packer}s.
@@ -9,26 +11,82 @@ import org.vatplanner.archiver.common.PackerMethod;
 public class PackerFactory {
 
     private final PackerConfiguration configuration;
+    private final FairExecutor compressionExecutor;
+    private final ArrayCache xzArrayCache;
 
     public PackerFactory(PackerConfiguration configuration) {
+        this(configuration, null);
+    }
+
+    public PackerFactory(PackerConfiguration configuration, FairExecutor compressionExecutor) {
+        this(configuration, compressionExecutor, null);
+    }
+
+    /**
+     * Creates a new factory.
+     *
+     * @param configuration packer configuration
+     * @param compressionExecutor executor shared by all multi-threaded packers;
+     *        null to let each packer create its own threads
+     * @param xzArrayCache provides arrays to XZ/LZMA encoders; null to allocate
+     *        new arrays for each packer
+     */
+    public PackerFactory(PackerConfiguration configuration, FairExecutor compressionExecutor, ArrayCache xzArrayCache) {
         this.configuration = configuration;
+        this.compressionExecutor = compressionExecutor;
+        this.xzArrayCache = xzArrayCache;
     }
 
     /**
-     * Creates a new {@link Packer} to bundle files.
+     * Resolves methods leaving implementation details up to the server to the
+     * actual method used for packing. Currently, only
+     * {@link PackerMethod#ZIP_DEFLATE} is resolved to single- or multi-threaded
+     * implementations as configured.
      *
-     * @param method determines output format and handling
-     * @return new packer instance implementing given method
-     * @throws IllegalArgumentException if called with an unsupported method
+     * @param method requested method
+     * @return method actually used for packing
      */
-    public Packer createPacker(PackerMethod method) {
+    public PackerMethod resolve(PackerMethod method) {
         if (method == PackerMethod.ZIP_DEFLATE) {
-            method = configuration.shouldAutoSelectMultiThreading()
+            return configuration.shouldAutoSelectMultiThreading()
                 ? PackerMethod.ZIP_DEFLATE_MULTITHREADED
                 : PackerMethod.ZIP_DEFLATE_SINGLETHREADED;
         }
 
-        switch (method) {
+        return method;
+    }
+
+    /**
+     * Creates a new {@link Packer} to bundle files.
+     *
+     * @param method determines output format and handling
+     * @return new packer instance implementing given method
+     * @throws IllegalArgumentException if called with an unsupported method, such
+     *         as {@link PackerMethod#AUTO} which needs to be resolved by
+     *         {@link PackerSelector} first
+     */
+    public Packer createPacker(PackerMethod method) {
+        return createPacker(method, false);
+    }
+
+    /**
+     * Creates a new {@link Packer} to bundle files, optionally storing identical
+     * content only once; see {@link AbstractIndexingPacker} for details.
+     *
+     * @param method determines output format and handling
+     * @param deduplicate true to store identical content only once, false to
+     *        store content of every file
+     * @return new packer instance implementing given method
+     * @throws IllegalArgumentException if called with an unsupported method, such
+     *         as {@link PackerMethod#AUTO} which needs to be resolved by
+     *         {@link PackerSelector} first
+     */
+    public Packer createPacker(PackerMethod method, boolean deduplicate) {
+        return createIndexingPacker(method).setDeduplicating(deduplicate);
+    }
+
+    private AbstractIndexingPacker createIndexingPacker(PackerMethod method) {
+        switch (resolve(method)) {
             case ZIP_UNCOMPRESSED:
                 return new UncompressedZipPacker();
 
@@ -36,7 +94,13 @@ public class PackerFactory {
                 return new SingleThreadedZipDeflatePacker();
 
             case ZIP_DEFLATE_MULTITHREADED:
-                return new MultiThreadedZipDeflatePacker();
+                return new MultiThreadedZipDeflatePacker(
+                    compressionExecutor,
+                    () -> new SpillingScatterGatherBackingStore(
+                        configuration.getScatterDirectory(),
+                        configuration.getScatterSpillThreshold() //
+                    ) //
+                );
 
             case TAR_UNCOMPRESSED:
                 return new TarPacker();
@@ -48,13 +112,13 @@ public class PackerFactory {
                 return new TarPacker(CompressorStreamFactory.GZIP);
 
             case TAR_XZ:
-                return new TarPacker(CompressorStreamFactory.XZ);
+                return new TarPacker(CompressorStreamFactory.XZ, xzArrayCache);
 
             case TAR_DEFLATE:
                 return new TarPacker(CompressorStreamFactory.DEFLATE);
 
             case TAR_LZMA:
-                return new TarPacker(CompressorStreamFactory.LZMA);
+                return new TarPacker(CompressorStreamFactory.LZMA, xzArrayCache);
         }
 
         throw new IllegalArgumentException("Unsupported packer method: " + method);
@@ -0,0 +1,344 @@
+package org.vatplanner.archiver.remote;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.function.DoubleSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.PackingGoal;
+
+/**
+ * Chooses a {@link PackerMethod} for requests of {@link PackerMethod#AUTO}
+ * according to the {@link PackingGoal} indicated by clients.
+ *
+ * <p>
+ * Compression ratio and throughput are measured continuously on all packed
+ * requests, separately per method and set of requested data file formats, as
+ * both depend on the data being packed. Measurements are smoothed
+ * exponentially so the selection follows changes in data or server load.
+ * Methods not measured yet are assumed to perform as documented on
+ * {@link PackerMethod}.
+ * </p>
+ *
+ * <p>
+ * Throughput is normalized to the processor capacity available at the time of
+ * measurement (judged by system load average), so selection takes current CPU
+ * load into account: Multi-threaded methods lose their advantage when other
+ * requests already occupy all processors while all methods slow down once the
+ * system is overloaded.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class PackerSelector {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(PackerSelector.class);
+
+    /**
+     * Weight of each new measurement on smoothed statistics.
+     */
+    private static final double SMOOTHING_FACTOR = 0.2;
+
+    /**
+     * Requests packing less data are not used to measure throughput as timing
+     * would be dominated by overhead.
+     */
+    private static final long MINIMUM_THROUGHPUT_SAMPLE_BYTES = 1024 * 1024;
+
+    /**
+     * Deflate throughput assumed per processor until measured, other methods
+     * are assumed to scale relative to it.
+     */
+    private static final double INITIAL_DEFLATE_BYTES_PER_SECOND = 40.0 * 1024 * 1024;
+
+    private static final String ANY_FORMATS = "*";
+
+    private static final Map<PackerMethod, Statistics> INITIAL_STATISTICS = new EnumMap<>(PackerMethod.class);
+
+    static {
+        // compression ratios and relative time as documented on PackerMethod
+        putInitialStatistics(PackerMethod.ZIP_UNCOMPRESSED, 1.0, 0.1);
+        putInitialStatistics(PackerMethod.ZIP_DEFLATE_SINGLETHREADED, 0.44, 1.0);
+        putInitialStatistics(PackerMethod.ZIP_DEFLATE_MULTITHREADED, 0.44, 1.0);
+        putInitialStatistics(PackerMethod.TAR_UNCOMPRESSED, 1.0, 0.1);
+        putInitialStatistics(PackerMethod.TAR_DEFLATE, 0.43, 1.0);
+        putInitialStatistics(PackerMethod.TAR_GZIP, 0.43, 1.0);
+        putInitialStatistics(PackerMethod.TAR_BZIP2, 0.15, 3.0);
+        putInitialStatistics(PackerMethod.TAR_XZ, 0.04, 8.0);
+        putInitialStatistics(PackerMethod.TAR_LZMA, 0.04, 8.0);
+    }
+
+    private final List<PackerMethod> candidates = new ArrayList<>();
+    private final int availableProcessors;
+    private final DoubleSupplier systemLoadAverage;
+
+    private final Map<StatisticsKey, Statistics> statistics = new HashMap<>();
+
+    /**
+     * Creates a new selector choosing between candidates as configured.
+     *
+     * @param packerFactory resolves configured candidates to actual methods
+     * @param config packer configuration
+     */
+    public PackerSelector(PackerFactory packerFactory, PackerConfiguration config) {
+        this(
+            packerFactory,
+            config,
+            Runtime.getRuntime().availableProcessors(),
+            ManagementFactory.getOperatingSystemMXBean()::getSystemLoadAverage //
+        );
+    }
+
+    /**
+     * Creates a new selector choosing between candidates as configured.
+     *
+     * @param packerFactory resolves configured candidates to actual methods
+     * @param config packer configuration
+     * @param availableProcessors number of processors available to the JVM
+     * @param systemLoadAverage provides the system load average as defined by
+     *        {@link OperatingSystemMXBean#getSystemLoadAverage()}; negative if
+     *        unavailable
+     */
+    PackerSelector(PackerFactory packerFactory, PackerConfiguration config, int availableProcessors, DoubleSupplier systemLoadAverage) {
+        this.availableProcessors = availableProcessors;
+        this.systemLoadAverage = systemLoadAverage;
+
+        for (PackerMethod candidate : config.getAutoCandidates()) {
+            PackerMethod resolved = packerFactory.resolve(candidate);
+            if (!candidates.contains(resolved)) {
+                candidates.add(resolved);
+            }
+        }
+    }
+
+    private static void putInitialStatistics(PackerMethod method, double ratio, double relativeTime) {
+        Statistics initial = new Statistics();
+        initial.ratio = ratio;
+        initial.bytesPerSecondPerProcessor = INITIAL_DEFLATE_BYTES_PER_SECOND / relativeTime;
+        INITIAL_STATISTICS.put(method, initial);
+    }
+
+    /**
+     * Chooses the method expected to reach the given goal best.
+     *
+     * @param goal what to optimize for
+     * @param bandwidth client bandwidth in bytes per second, only considered if
+     *        optimizing for {@link PackingGoal#LATENCY}; 0 or less if unknown
+     * @param dataFileFormats requested data file formats; empty for all
+     * @return method to pack with, never {@link PackerMethod#AUTO}
+     */
+    public PackerMethod select(PackingGoal goal, long bandwidth, Collection<String> dataFileFormats) {
+        String formatsKey = getFormatsKey(dataFileFormats);
+        double parallelismMultiThreaded = getAvailableParallelism(true);
+        double parallelismSingleThreaded = getAvailableParallelism(false);
+
+        PackerMethod best = null;
+        double bestScore = Double.MAX_VALUE;
+        double bestSecondsPerByte = Double.MAX_VALUE;
+
+        synchronized (statistics) {
+            for (PackerMethod candidate : candidates) {
+                Statistics candidateStatistics = getStatistics(candidate, formatsKey);
+
+                double parallelism = isMultiThreaded(candidate)
+                    ? parallelismMultiThreaded
+                    : parallelismSingleThreaded;
+                double secondsPerByte = 1.0 / (candidateStatistics.bytesPerSecondPerProcessor * parallelism);
+
+                double score;
+                if (goal == PackingGoal.SIZE) {
+                    score = candidateStatistics.ratio;
+                } else if (bandwidth > 0) {
+                    score = secondsPerByte + candidateStatistics.ratio / bandwidth;
+                } else {
+                    score = secondsPerByte;
+                }
+
+                boolean isBetter = (score < bestScore)
+                    || ((score == bestScore) && (secondsPerByte < bestSecondsPerByte));
+                if (isBetter) {
+                    best = candidate;
+                    bestScore = score;
+                    bestSecondsPerByte = secondsPerByte;
+                }
+            }
+        }
+
+        LOGGER.debug(
+            "selected packer method {} for goal {}, bandwidth {}, formats {}",
+            best, goal, bandwidth, formatsKey //
+        );
+
+        return best;
+    }
+
+    /**
+     * Records the result of packing data to improve future selections.
+     *
+     * @param method method used for packing, as resolved by
+     *        {@link PackerFactory#resolve(PackerMethod)}
+     * @param dataFileFormats requested data file formats; empty for all
+     * @param rawBytes uncompressed size of all packed data files
+     * @param packedBytes size of packed result
+     * @param packingTime time spent on packing; null if unknown (e.g. if packing
+     *        overlapped with loading) to record only the compression ratio
+     */
+    public void record(PackerMethod method, Collection<String> dataFileFormats, long rawBytes, long packedBytes, Duration packingTime) {
+        if (rawBytes <= 0) {
+            return;
+        }
+
+        double ratio = (double) packedBytes / rawBytes;
+
+        double bytesPerSecondPerProcessor = -1;
+        long packingNanos = (packingTime != null) ? packingTime.toNanos() : 0;
+        if ((rawBytes >= MINIMUM_THROUGHPUT_SAMPLE_BYTES) && (packingNanos > 0)) {
+            double bytesPerSecond = rawBytes * 1_000_000_000.0 / packingNanos;
+            bytesPerSecondPerProcessor = bytesPerSecond / getAvailableParallelism(isMultiThreaded(method));
+        }
+
+        synchronized (statistics) {
+            update(new StatisticsKey(method, getFormatsKey(dataFileFormats)), ratio, bytesPerSecondPerProcessor);
+            update(new StatisticsKey(method, ANY_FORMATS), ratio, bytesPerSecondPerProcessor);
+        }
+    }
+
+    private void update(StatisticsKey key, double ratio, double bytesPerSecondPerProcessor) {
+        Statistics existing = statistics.computeIfAbsent(key, x -> new Statistics());
+
+        existing.ratio = smooth(existing.ratio, ratio, existing.measuredRatio);
+        existing.measuredRatio = true;
+
+        if (bytesPerSecondPerProcessor > 0) {
+            existing.bytesPerSecondPerProcessor = smooth(
+                existing.bytesPerSecondPerProcessor,
+                bytesPerSecondPerProcessor,
+                existing.measuredThroughput //
+            );
+            existing.measuredThroughput = true;
+        }
+    }
+
+    private double smooth(double previous, double sample, boolean hasPrevious) {
+        if (!hasPrevious) {
+            return sample;
+        }
+
+        return previous + SMOOTHING_FACTOR * (sample - previous);
+    }
+
+    /**
+     * Returns the most specific statistics known for the given method: measured
+     * for the same formats, measured for any formats or initial assumptions.
+     * Ratio and throughput are looked up independently as throughput is not
+     * measured on all requests.
+     *
+     * @param method method to get statistics for
+     * @param formatsKey identifies requested data file formats
+     * @return statistics for method
+     */
+    private Statistics getStatistics(PackerMethod method, String formatsKey) {
+        Statistics specific = statistics.get(new StatisticsKey(method, formatsKey));
+        Statistics any = statistics.get(new StatisticsKey(method, ANY_FORMATS));
+        Statistics initial = INITIAL_STATISTICS.get(method);
+
+        Statistics result = new Statistics();
+        result.ratio = initial.ratio;
+        result.bytesPerSecondPerProcessor = initial.bytesPerSecondPerProcessor;
+
+        for (Statistics measured : new Statistics[] { any, specific }) {
+            if (measured == null) {
+                continue;
+            }
+
+            if (measured.measuredRatio) {
+                result.ratio = measured.ratio;
+            }
+
+            if (measured.measuredThroughput) {
+                result.bytesPerSecondPerProcessor = measured.bytesPerSecondPerProcessor;
+            }
+        }
+
+        return result;
+    }
+
+    /**
+     * Returns the number of processors a packer can expect to utilize.
+     * Multi-threaded packers can use all processors not currently busy (but at
+     * least one) while single-threaded packers can use one processor until the
+     * system gets overloaded.
+     *
+     * @param multiThreaded true for multi-threaded packers, false for
+     *        single-threaded packers
+     * @return number of processors available to packer
+     */
+    private double getAvailableParallelism(boolean multiThreaded) {
+        double load = Math.max(0.0, systemLoadAverage.getAsDouble());
+
+        if (multiThreaded) {
+            return Math.max(1.0, availableProcessors - load);
+        }
+
+        return Math.min(1.0, availableProcessors / Math.max(1.0, load));
+    }
+
+    private boolean isMultiThreaded(PackerMethod method) {
+        return method == PackerMethod.ZIP_DEFLATE_MULTITHREADED;
+    }
+
+    private String getFormatsKey(Collection<String> dataFileFormats) {
+        if (dataFileFormats.isEmpty()) {
+            return ANY_FORMATS;
+        }
+
+        Set<String> sorted = new TreeSet<>(dataFileFormats);
+        return String.join(",", sorted);
+    }
+
+    private static class Statistics {
+        private double ratio;
+        private double bytesPerSecondPerProcessor;
+        private boolean measuredRatio;
+        private boolean measuredThroughput;
+    }
+
+    private static class StatisticsKey {
+        private final PackerMethod method;
+        private final String formatsKey;
+
+        private StatisticsKey(PackerMethod method, String formatsKey) {
+            this.method = method;
+            this.formatsKey = formatsKey;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof StatisticsKey)) {
+                return false;
+            }
+
+            StatisticsKey other = (StatisticsKey) obj;
+            return (method == other.method) && formatsKey.equals(other.formatsKey);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(method, formatsKey);
+        }
+    }
+}
@@ -18,6 +18,6 @@ import java.util.zip.ZipEntry;
 public class SingleThreadedZipDeflatePacker extends AbstractSingleThreadedZipPacker {
 
     public SingleThreadedZipDeflatePacker() {
-        super(0.5, ZipEntry.DEFLATED);
+        super(ZipEntry.DEFLATED);
     }
 }
@@ -0,0 +1,115 @@
+package org.vatplanner.archiver.remote;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+
+import org.apache.commons.compress.parallel.ScatterGatherBackingStore;
+
+/**
+ * Holds data compressed by a single thread of a
+ * {@link org.apache.commons.compress.archivers.zip.ParallelScatterZipCreator}
+ * in memory until a threshold is exceeded, then spills all data to a temporary
+ * file. Small requests thus avoid file I/O while heap used by large requests
+ * remains bounded.
+ *
+ * <p>
+ * Temporary files are deleted when the store gets closed.
+ * </p>
+ */
+public class SpillingScatterGatherBackingStore implements ScatterGatherBackingStore {
+
+    private static final String TEMP_FILE_PREFIX = "scatter";
+
+    private final File directory;
+    private final long spillThreshold;
+
+    private ExposedByteArrayOutputStream memory = new ExposedByteArrayOutputStream();
+    private File file;
+    private OutputStream fileOutputStream;
+
+    /**
+     * Creates a new store.
+     *
+     * @param directory directory to create temporary files in; null for the
+     *        default temporary directory
+     * @param spillThreshold number of bytes to hold in memory at most before
+     *        spilling to a file; 0 to write to a file immediately, negative to
+     *        never spill
+     */
+    public SpillingScatterGatherBackingStore(File directory, long spillThreshold) {
+        this.directory = directory;
+        this.spillThreshold = spillThreshold;
+    }
+
+    @Override
+    public void writeOut(byte[] data, int offset, int length) throws IOException {
+        if ((file == null) && (spillThreshold >= 0) && (memory.size() + length > spillThreshold)) {
+            spill();
+        }
+
+        if (fileOutputStream != null) {
+            fileOutputStream.write(data, offset, length);
+        } else {
+            memory.write(data, offset, length);
+        }
+    }
+
+    private void spill() throws IOException {
+        file = File.createTempFile(TEMP_FILE_PREFIX, null, directory);
+        fileOutputStream = Files.newOutputStream(file.toPath());
+        memory.writeTo(fileOutputStream);
+        memory = null;
+    }
+
+    @Override
+    public void closeForWriting() throws IOException {
+        if (fileOutputStream != null) {
+            fileOutputStream.close();
+            fileOutputStream = null;
+        }
+    }
+
+    @Override
+    public InputStream getInputStream() throws IOException {
+        if (file != null) {
+            return Files.newInputStream(file.toPath());
+        }
+
+        return memory.toInputStream();
+    }
+
+    /**
+     * Checks if data has been spilled to a file.
+     *
+     * @return true if data is held in a file, false if held in memory
+     */
+    public boolean hasSpilled() {
+        return file != null;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            closeForWriting();
+        } finally {
+            memory = null;
+            if (file != null) {
+                Files.deleteIfExists(file.toPath());
+            }
+        }
+    }
+
+    /**
+     * Provides access to buffered data without copying.
+     */
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        private InputStream toInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
+}
@@ -3,13 +3,22 @@ package org.vatplanner.archiver.remote;
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
 import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
 import org.apache.commons.compress.compressors.CompressorException;
 import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.LZMAOutputStream;
+import org.tukaani.xz.XZOutputStream;
 import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.pipeline.DataFileSource;
+import org.vatplanner.archiver.tracing.Span;
+import org.vatplanner.archiver.tracing.Tracing;
 
 /**
  * Packs data to a TAR archive with optional compression. See
@@ -20,12 +29,13 @@ public class TarPacker extends AbstractIndexingPacker {
     private final CompressorStreamFactory compressorStreamFactory = new CompressorStreamFactory();
 
     private final String compressionAlgorithm;
+    private final ArrayCache arrayCache;
 
     /**
      * Creates a new packer for an uncompressed TAR archive.
      */
     public TarPacker() {
-        this.compressionAlgorithm = null;
+        this(null);
     }
 
     /**
@@ -39,6 +49,24 @@ public class TarPacker extends AbstractIndexingPacker {
      *         encoding
      */
     public TarPacker(String compressionAlgorithm) {
+        this(compressionAlgorithm, null);
+    }
+
+    /**
+     * Creates a new packer for a TAR file applying specified compression algorithm.
+     * Compression is provided by Apache Commons Compress, see
+     * {@link CompressorStreamFactory} for a list of available algorithms.
+     *
+     * @param compressionAlgorithm compression algorithm to apply, see
+     *        {@link CompressorStreamFactory}; uncompressed if null
+     * @param arrayCache provides arrays to encoders of
+     *        {@link CompressorStreamFactory#XZ} and
+     *        {@link CompressorStreamFactory#LZMA}; null to use the defaults of
+     *        Apache Commons Compress
+     * @throws IllegalArgumentException if selected algorithm is not supported for
+     *         encoding
+     */
+    public TarPacker(String compressionAlgorithm, ArrayCache arrayCache) {
         if ((compressionAlgorithm != null)
             && !compressorStreamFactory.getOutputStreamCompressorNames().contains(compressionAlgorithm) //
         ) {
@@ -46,21 +74,13 @@ public class TarPacker extends AbstractIndexingPacker {
         }
 
         this.compressionAlgorithm = compressionAlgorithm;
+        this.arrayCache = arrayCache;
     }
 
     @Override
     public byte[] pack(Collection<RawDataFile> originals) throws IOException {
         try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
-            OutputStream os = baos;
-            if (compressionAlgorithm != null) {
-                try {
-                    os = compressorStreamFactory.createCompressorOutputStream(compressionAlgorithm, os);
-                } catch (CompressorException ex) {
-                    throw new IOException("Failed to create compressor output stream", ex);
-                }
-            }
-
-            streamToTar(originals, os);
+            streamToTar(originals, createCompressorStream(baos));
 
             baos.close();
 
@@ -68,6 +88,44 @@ public class TarPacker extends AbstractIndexingPacker {
         }
     }
 
+    @Override
+    public byte[] pack(DataFileSource source) throws IOException {
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream()) {
+            streamToTar(source, createCompressorStream(baos));
+
+            return baos.toByteArray();
+        }
+    }
+
+    /**
+     * Wraps the given {@link OutputStream} to apply the configured compression
+     * algorithm, if any.
+     *
+     * @param os underlying {@link OutputStream} to write compressed data into
+     * @return stream to write uncompressed data to; given stream if no
+     *         compression has been configured
+     * @throws IOException
+     */
+    private OutputStream createCompressorStream(OutputStream os) throws IOException {
+        if (compressionAlgorithm == null) {
+            return os;
+        }
+
+        // same settings as used by Apache Commons Compress; encoder arrays are
+        // returned to the cache when streams are closed
+        if ((arrayCache != null) && CompressorStreamFactory.XZ.equals(compressionAlgorithm)) {
+            return new XZOutputStream(os, new LZMA2Options(), arrayCache);
+        } else if ((arrayCache != null) && CompressorStreamFactory.LZMA.equals(compressionAlgorithm)) {
+            return new LZMAOutputStream(os, new LZMA2Options(), -1, arrayCache);
+        }
+
+        try {
+            return compressorStreamFactory.createCompressorOutputStream(compressionAlgorithm, os);
+        } catch (CompressorException ex) {
+            throw new IOException("Failed to create compressor output stream", ex);
+        }
+    }
+
     /**
      * Creates a new TAR archive stream on given {@link OutputStream} and writes all
      * data into the archive. Archive stream will be closed at the end of this
@@ -84,14 +142,54 @@ public class TarPacker extends AbstractIndexingPacker {
 
             // add all data file contents
             for (RawDataFile original : originals) {
-                writeEntry(taos, getFileName(original), original.getData());
-                original.clear();
+                writeContentEntry(taos, original);
+            }
+
+            taos.flush();
+        }
+    }
+
+    /**
+     * Creates a new TAR archive stream on given {@link OutputStream} and writes all
+     * data into the archive as it is provided by the given source. Meta data is
+     * written at the end as it is only complete after all data has been seen.
+     * Archive stream will be closed at the end of this method.
+     *
+     * @param source provides data to be archived
+     * @param os underlying {@link OutputStream} to write archive into
+     * @throws IOException
+     */
+    private void streamToTar(DataFileSource source, OutputStream os) throws IOException {
+        try (TarArchiveOutputStream taos = new TarArchiveOutputStream(os)) {
+            List<RawDataFile> originals = new ArrayList<>();
+            RawDataFile original;
+            while ((original = source.next()) != null) {
+                writeContentEntry(taos, original);
+                originals.add(original);
             }
 
+            writeEntry(taos, META_DATA_FILE_NAME, getMetaData(originals));
+
             taos.flush();
         }
     }
 
+    /**
+     * Writes the content of a data file to the given archive stream, unless
+     * identical content has already been written for another file. Data of the
+     * file is cleared afterwards.
+     *
+     * @param taos TAR stream to write to
+     * @param original data file to write
+     * @throws IOException
+     */
+    private void writeContentEntry(TarArchiveOutputStream taos, RawDataFile original) throws IOException {
+        if (!isDuplicateContent(original)) {
+            writeEntry(taos, getFileName(original), original.getDataBuffer(), original.getDataLength());
+        }
+        original.clear();
+    }
+
     /**
      * Writes a singly entry to the given archive stream.
      *
@@ -101,11 +199,29 @@ public class TarPacker extends AbstractIndexingPacker {
      * @throws IOException
      */
     private void writeEntry(TarArchiveOutputStream taos, String fileName, byte[] data) throws IOException {
+        writeEntry(taos, fileName, data, data.length);
+    }
+
+    /**
+     * Writes a singly entry to the given archive stream.
+     *
+     * @param taos TAR stream to write to
+     * @param fileName file name of this entry
+     * @param buffer holds data contents of this entry at start, may be longer
+     * @param length length of data contents
+     * @throws IOException
+     */
+    private void writeEntry(TarArchiveOutputStream taos, String fileName, byte[] buffer, int length) throws IOException {
+        Span span = Tracing.currentSpan();
+        long startNanos = span.isRecording() ? System.nanoTime() : 0;
+
         TarArchiveEntry entry = new TarArchiveEntry(fileName);
-        entry.setSize(data.length);
+        entry.setSize(length);
         taos.putArchiveEntry(entry);
-        taos.write(data);
+        taos.write(buffer, 0, length);
         taos.closeArchiveEntry();
+
+        traceEntry(span, startNanos, length);
     }
 
 }
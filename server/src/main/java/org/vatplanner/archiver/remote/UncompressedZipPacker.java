@@ -10,7 +10,7 @@ import java.util.zip.ZipEntry;
 public class UncompressedZipPacker extends AbstractSingleThreadedZipPacker {
 
     public UncompressedZipPacker() {
-        super(1.1, ZipEntry.STORED);
+        super(ZipEntry.STORED);
     }
 
 }
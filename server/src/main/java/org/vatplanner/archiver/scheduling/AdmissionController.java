@@ -0,0 +1,261 @@
+package org.vatplanner.archiver.scheduling;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Admits requests for processing against a global memory budget. Requests
+ * have to be admitted before loading any data and release their share of the
+ * budget once processing has finished.
+ *
+ * <p>
+ * Requests which do not fit into the remaining budget have to wait. Waiting
+ * requests are admitted in order of least estimated work first, so cheap
+ * requests do not have to wait for expensive ones (such as large XZ requests)
+ * to finish. To prevent starvation, requests waiting longer than the
+ * configured starvation timeout take precedence over all others. Requests
+ * exceeding the whole budget are only admitted if no other request is being
+ * processed. Until they are starving, they do not hold back other requests
+ * which fit into the remaining budget, regardless of estimated work.
+ * </p>
+ *
+ * <p>
+ * If no budget is configured, all requests are admitted immediately.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class AdmissionController {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(AdmissionController.class);
+
+    /**
+     * Waiting requests need to be re-evaluated periodically as they may become
+     * starving while waiting.
+     */
+    private static final long REEVALUATION_INTERVAL_MILLIS = 1000;
+
+    private final long memoryBudget;
+    private final long starvationTimeoutNanos;
+
+    private final Object lock = new Object();
+    private final List<Admission> waiting = new ArrayList<>();
+    private long memoryInUse = 0;
+    private int numAdmitted = 0;
+    private long sequence = 0;
+
+    public AdmissionController(SchedulingConfiguration config) {
+        this(config, 0);
+    }
+
+    /**
+     * Creates a new admission controller.
+     *
+     * @param config scheduling configuration
+     * @param reservedMemory heap memory in bytes held outside of requests (e.g.
+     *        by caches); reduces an automatic memory budget
+     */
+    public AdmissionController(SchedulingConfiguration config, long reservedMemory) {
+        memoryBudget = config.getMemoryBudget(reservedMemory);
+        starvationTimeoutNanos = config.getStarvationTimeout().toNanos();
+
+        if (memoryBudget <= 0) {
+            LOGGER.info("Request admission control is disabled");
+        } else {
+            LOGGER.info("Requests are admitted against a memory budget of {}MB ({}MB reserved for caches)",
+                memoryBudget / 1024 / 1024, reservedMemory / 1024 / 1024);
+
+            if (memoryBudget + reservedMemory > Runtime.getRuntime().maxMemory()) {
+                LOGGER.warn(
+                    "Memory budget and caches exceed maximum heap size of {}MB, requests may run out of memory",
+                    Runtime.getRuntime().maxMemory() / 1024 / 1024 //
+                );
+            }
+        }
+    }
+
+    /**
+     * Waits until a request of given cost can be admitted for processing. The
+     * returned {@link Admission} must be closed once processing has finished.
+     *
+     * @param cost estimated cost of request
+     * @return admission to be closed when processing has finished
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public Admission admit(RequestCost cost) throws InterruptedException {
+        if (memoryBudget <= 0) {
+            return new Admission(this, cost, 0, 0);
+        }
+
+        long enqueuedNanos = System.nanoTime();
+
+        synchronized (lock) {
+            Admission admission = new Admission(this, cost, enqueuedNanos, sequence++);
+            waiting.add(admission);
+            admitWaiting();
+
+            if (!admission.admitted) {
+                LOGGER.debug(
+                    "Request with {} has to wait; {}kB in use by {} requests, {} requests waiting",
+                    cost, memoryInUse / 1024, numAdmitted, waiting.size() //
+                );
+            }
+
+            try {
+                while (!admission.admitted) {
+                    lock.wait(REEVALUATION_INTERVAL_MILLIS);
+                    admitWaiting();
+                }
+            } catch (InterruptedException ex) {
+                if (admission.admitted) {
+                    release(admission);
+                } else {
+                    waiting.remove(admission);
+                    admitWaiting();
+                }
+                throw ex;
+            }
+
+            LOGGER.debug(
+                "Admitted request with {} after {}ms; {}kB in use by {} requests, {} requests waiting",
+                cost, Duration.ofNanos(System.nanoTime() - enqueuedNanos).toMillis(),
+                memoryInUse / 1024, numAdmitted, waiting.size() //
+            );
+
+            return admission;
+        }
+    }
+
+    /**
+     * Returns the amount of memory currently reserved by admitted requests.
+     *
+     * @return memory reserved by admitted requests in bytes
+     */
+    public long getMemoryInUse() {
+        synchronized (lock) {
+            return memoryInUse;
+        }
+    }
+
+    /**
+     * Returns the number of requests currently waiting to be admitted.
+     *
+     * @return number of waiting requests
+     */
+    public int getNumWaiting() {
+        synchronized (lock) {
+            return waiting.size();
+        }
+    }
+
+    /**
+     * Admits as many waiting requests as possible. Must only be called while
+     * holding {@link #lock}.
+     */
+    private void admitWaiting() {
+        if (waiting.isEmpty()) {
+            return;
+        }
+
+        long now = System.nanoTime();
+        waiting.sort(
+            Comparator.comparing((Admission admission) -> !isStarving(admission, now))
+                .thenComparing(admission -> isStarving(admission, now) ? 0 : admission.cost.getWork())
+                .thenComparing(admission -> admission.sequence) //
+        );
+
+        boolean changed = false;
+        Iterator<Admission> it = waiting.iterator();
+        while (it.hasNext()) {
+            Admission admission = it.next();
+
+            long memory = admission.cost.getMemory();
+            boolean fits = (memoryInUse + memory <= memoryBudget) || (numAdmitted == 0);
+            if (!fits) {
+                // Requests exceeding the whole budget need to wait until no other
+                // request is processed, which may take long. Reserving the budget
+                // for them only pays off once they are starving.
+                if ((memory > memoryBudget) && !isStarving(admission, now)) {
+                    continue;
+                }
+
+                // Following requests are either not starving, in which case the
+                // starving one reserves the budget, or require more work, which
+                // usually means they also require more memory. Cheaper requests
+                // should not be overtaken, so stop here.
+                break;
+            }
+
+            it.remove();
+            admission.admitted = true;
+            admission.reservedMemory = memory;
+            memoryInUse += memory;
+            numAdmitted++;
+            changed = true;
+        }
+
+        if (changed) {
+            lock.notifyAll();
+        }
+    }
+
+    private boolean isStarving(Admission admission, long now) {
+        return now - admission.enqueuedNanos >= starvationTimeoutNanos;
+    }
+
+    private void release(Admission admission) {
+        if (memoryBudget <= 0) {
+            return;
+        }
+
+        synchronized (lock) {
+            memoryInUse -= admission.reservedMemory;
+            numAdmitted--;
+            admitWaiting();
+        }
+    }
+
+    /**
+     * Represents a request admitted for processing. Closing the admission
+     * releases the reserved share of the budget. Closing more than once has no
+     * effect.
+     */
+    public static class Admission implements AutoCloseable {
+
+        private final AdmissionController controller;
+        private final RequestCost cost;
+        private final long enqueuedNanos;
+        private final long sequence;
+
+        private boolean admitted = false;
+        private boolean closed = false;
+        private long reservedMemory = 0;
+
+        private Admission(AdmissionController controller, RequestCost cost, long enqueuedNanos, long sequence) {
+            this.controller = controller;
+            this.cost = cost;
+            this.enqueuedNanos = enqueuedNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void close() {
+            synchronized (controller.lock) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+            }
+
+            controller.release(this);
+        }
+    }
+}
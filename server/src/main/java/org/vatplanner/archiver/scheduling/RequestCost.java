@@ -0,0 +1,51 @@
+package org.vatplanner.archiver.scheduling;
+
+/**
+ * Estimated cost of processing a single request.
+ *
+ * <p>
+ * Instances are immutable and thus thread-safe.
+ * </p>
+ */
+public class RequestCost {
+
+    private final long memory;
+    private final long work;
+
+    /**
+     * Creates a new cost estimate.
+     *
+     * @param memory estimated peak heap memory in bytes
+     * @param work estimated CPU work in arbitrary units, only meaningful relative
+     *        to other requests
+     */
+    public RequestCost(long memory, long work) {
+        this.memory = memory;
+        this.work = work;
+    }
+
+    /**
+     * Returns the estimated peak heap memory required to process the request.
+     *
+     * @return estimated peak heap memory in bytes
+     */
+    public long getMemory() {
+        return memory;
+    }
+
+    /**
+     * Returns the estimated CPU work required to process the request. The value
+     * is only meaningful relative to other requests; requests with less work are
+     * expected to finish sooner.
+     *
+     * @return estimated CPU work in arbitrary units
+     */
+    public long getWork() {
+        return work;
+    }
+
+    @Override
+    public String toString() {
+        return "RequestCost(memory=" + (memory / 1024) + "kB, work=" + work + ")";
+    }
+}
@@ -0,0 +1,132 @@
+package org.vatplanner.archiver.scheduling;
+
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.Map;
+
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.RawDataFile;
+
+/**
+ * Estimates the {@link RequestCost} of data file requests before any data is
+ * loaded. Estimates are based on the number of data files expected to be
+ * loaded, the average size of data files observed so far and characteristics
+ * of the requested {@link PackerMethod}.
+ *
+ * <p>
+ * Memory cost consists of all loaded data files being held in memory plus the
+ * packed result, which gets copied at least once before it can be sent. CPU
+ * work is relative to the time needed to pack the same amount of data with
+ * deflate compression.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class RequestCostEstimator {
+
+    private static final Map<PackerMethod, Factors> FACTORS_BY_PACKER_METHOD = new EnumMap<>(PackerMethod.class);
+
+    static {
+        // compression ratios and relative time as documented on PackerMethod
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.ZIP_UNCOMPRESSED, new Factors(1.1, 0.1));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.ZIP_DEFLATE, new Factors(0.5, 1.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.ZIP_DEFLATE_SINGLETHREADED, new Factors(0.5, 1.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.ZIP_DEFLATE_MULTITHREADED, new Factors(0.5, 1.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.TAR_UNCOMPRESSED, new Factors(1.1, 0.1));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.TAR_DEFLATE, new Factors(0.43, 1.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.TAR_GZIP, new Factors(0.43, 1.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.TAR_BZIP2, new Factors(0.15, 3.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.TAR_XZ, new Factors(0.04, 8.0));
+        FACTORS_BY_PACKER_METHOD.put(PackerMethod.TAR_LZMA, new Factors(0.04, 8.0));
+    }
+
+    private static final Factors DEFAULT_FACTORS = new Factors(1.1, 8.0);
+
+    /**
+     * Packed output is held at least twice: once while being written, once as
+     * the final copy to be sent.
+     */
+    private static final int OUTPUT_COPIES = 2;
+
+    private final Object lock = new Object();
+    private long observedDataFiles = 0;
+    private long observedBytes = 0;
+    private final long initialAverageDataFileSize;
+
+    public RequestCostEstimator(SchedulingConfiguration config) {
+        initialAverageDataFileSize = config.getInitialAverageDataFileSize();
+    }
+
+    /**
+     * Estimates the cost of a data file request.
+     *
+     * @param expectedDataFiles number of data files expected to be loaded
+     * @param packerMethod requested packer method
+     * @return estimated cost
+     */
+    public RequestCost estimate(int expectedDataFiles, PackerMethod packerMethod) {
+        Factors factors = FACTORS_BY_PACKER_METHOD.getOrDefault(packerMethod, DEFAULT_FACTORS);
+
+        long rawSize = expectedDataFiles * getAverageDataFileSize();
+        long memory = rawSize + (long) (rawSize * factors.outputRatio * OUTPUT_COPIES);
+        long work = (long) (rawSize * factors.relativeTime);
+
+        return new RequestCost(memory, work);
+    }
+
+    /**
+     * Records data files actually loaded to improve future estimates.
+     *
+     * @param dataFiles loaded data files
+     */
+    public void record(Collection<RawDataFile> dataFiles) {
+        long bytes = 0;
+        for (RawDataFile dataFile : dataFiles) {
+            bytes += dataFile.getDataLength();
+        }
+
+        record(dataFiles.size(), bytes);
+    }
+
+    /**
+     * Records the number and total size of data files actually loaded to improve
+     * future estimates.
+     *
+     * @param numDataFiles number of loaded data files
+     * @param totalBytes total size of loaded data files in bytes
+     */
+    public void record(int numDataFiles, long totalBytes) {
+        synchronized (lock) {
+            observedDataFiles += numDataFiles;
+            observedBytes += totalBytes;
+        }
+    }
+
+    /**
+     * Returns the average size of a single data file observed so far.
+     *
+     * @return average data file size in bytes; configured initial size if no
+     *         data files have been observed yet
+     */
+    public long getAverageDataFileSize() {
+        synchronized (lock) {
+            if (observedDataFiles == 0) {
+                return initialAverageDataFileSize;
+            }
+
+            return observedBytes / observedDataFiles;
+        }
+    }
+
+    private static class Factors {
+        private final double outputRatio;
+        private final double relativeTime;
+
+        private Factors(double outputRatio, double relativeTime) {
+            this.outputRatio = outputRatio;
+            this.relativeTime = relativeTime;
+        }
+    }
+}
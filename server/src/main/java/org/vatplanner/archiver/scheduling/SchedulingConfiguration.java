@@ -0,0 +1,102 @@
+package org.vatplanner.archiver.scheduling;
+
+import java.time.Duration;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds configuration related to scheduling of requests.
+ */
+public class SchedulingConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SchedulingConfiguration.class);
+
+    private static final long BYTES_PER_MEGABYTE = 1024 * 1024;
+    private static final int AUTOMATIC_MEMORY_BUDGET_HEAP_PERCENTAGE = 50;
+    private static final int MINIMUM_AUTOMATIC_MEMORY_BUDGET_HEAP_PERCENTAGE = 10;
+
+    private int memoryBudgetMegabytes = 0;
+    private Duration starvationTimeout = Duration.ofSeconds(30);
+    private int initialAverageDataFileSize = 0;
+
+    /**
+     * Returns the amount of heap memory in bytes which may be used by all
+     * concurrently processed requests in total. An automatic budget of half the
+     * maximum heap size is returned if not configured explicitly.
+     *
+     * @return memory budget in bytes; 0 or less if admission control is disabled
+     */
+    public long getMemoryBudget() {
+        return getMemoryBudget(0);
+    }
+
+    /**
+     * Returns the amount of heap memory in bytes which may be used by all
+     * concurrently processed requests in total. If not configured explicitly,
+     * the automatic budget of half the maximum heap size is reduced by memory
+     * reserved for other purposes (e.g. caches), but not below a tenth of the
+     * maximum heap size.
+     *
+     * @param reservedMemory heap memory in bytes held outside of requests
+     * @return memory budget in bytes; 0 or less if admission control is disabled
+     */
+    public long getMemoryBudget(long reservedMemory) {
+        if (memoryBudgetMegabytes == 0) {
+            long maxMemory = Runtime.getRuntime().maxMemory();
+            return Long.max(
+                maxMemory / 100 * AUTOMATIC_MEMORY_BUDGET_HEAP_PERCENTAGE - reservedMemory,
+                maxMemory / 100 * MINIMUM_AUTOMATIC_MEMORY_BUDGET_HEAP_PERCENTAGE //
+            );
+        }
+
+        return memoryBudgetMegabytes * BYTES_PER_MEGABYTE;
+    }
+
+    /**
+     * Sets the amount of heap memory which may be used by all concurrently
+     * processed requests in total.
+     *
+     * @param memoryBudgetMegabytes memory budget in megabytes; 0 to derive budget
+     *        from maximum heap size, negative to disable admission control
+     * @return this instance for method-chaining
+     */
+    public SchedulingConfiguration setMemoryBudgetMegabytes(int memoryBudgetMegabytes) {
+        LOGGER.debug("setting memoryBudgetMegabytes to {}", memoryBudgetMegabytes);
+        this.memoryBudgetMegabytes = memoryBudgetMegabytes;
+        return this;
+    }
+
+    /**
+     * Returns the time after which a waiting request is admitted next, even if
+     * cheaper requests are waiting as well. This prevents expensive requests
+     * from starving while cheaper requests keep arriving.
+     *
+     * @return time after which a waiting request takes precedence
+     */
+    public Duration getStarvationTimeout() {
+        return starvationTimeout;
+    }
+
+    public SchedulingConfiguration setStarvationTimeout(Duration starvationTimeout) {
+        LOGGER.debug("setting starvationTimeout to {}", starvationTimeout);
+        this.starvationTimeout = starvationTimeout;
+        return this;
+    }
+
+    /**
+     * Returns the average size of a data file (including meta data) in bytes to
+     * assume for cost estimation until actual sizes have been observed.
+     *
+     * @return initially assumed average data file size in bytes
+     */
+    public int getInitialAverageDataFileSize() {
+        return initialAverageDataFileSize;
+    }
+
+    public SchedulingConfiguration setInitialAverageDataFileSize(int initialAverageDataFileSize) {
+        LOGGER.debug("setting initialAverageDataFileSize to {}", initialAverageDataFileSize);
+        this.initialAverageDataFileSize = initialAverageDataFileSize;
+        return this;
+    }
+}
@@ -0,0 +1,87 @@
+package org.vatplanner.archiver.tracing;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.cliftonlabs.json_simple.JsonArray;
+import com.github.cliftonlabs.json_simple.JsonObject;
+
+/**
+ * Appends finished {@link Span}s to a file, one JSON object per line. Field
+ * names follow the OpenTelemetry (OTLP) JSON encoding, so spans can be
+ * converted for other tools easily. IDs are hex-encoded.
+ */
+public class FileSpanExporter implements SpanExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FileSpanExporter.class);
+
+    private final Writer writer;
+
+    /**
+     * Opens the given file for appending spans.
+     *
+     * @param file file to append spans to
+     * @throws IOException if the file cannot be opened
+     */
+    public FileSpanExporter(File file) throws IOException {
+        writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        LOGGER.info("Exporting trace spans to {}", file.getAbsolutePath());
+    }
+
+    @Override
+    public void export(Span span) {
+        JsonObject json = new JsonObject();
+        json.put("traceId", span.getTraceId());
+        json.put("spanId", span.getSpanId());
+        if (span.getParentSpanId() != null) {
+            json.put("parentSpanId", span.getParentSpanId());
+        }
+        json.put("name", span.getName());
+        json.put("startTimeUnixNano", Long.toString(span.getStartEpochNanos()));
+        json.put("endTimeUnixNano", Long.toString(span.getEndEpochNanos()));
+
+        JsonArray attributes = new JsonArray();
+        for (Map.Entry<String, Object> attribute : span.getAttributes().entrySet()) {
+            JsonObject attributeJson = new JsonObject();
+            attributeJson.put("key", attribute.getKey());
+            attributeJson.put("value", encodeValue(attribute.getValue()));
+            attributes.add(attributeJson);
+        }
+        json.put("attributes", attributes);
+
+        String line = json.toJson();
+        synchronized (writer) {
+            try {
+                writer.write(line);
+                writer.write('\n');
+                writer.flush();
+            } catch (IOException ex) {
+                LOGGER.warn("Failed to write span " + span, ex);
+            }
+        }
+    }
+
+    private JsonObject encodeValue(Object value) {
+        JsonObject json = new JsonObject();
+        if ((value instanceof Long) || (value instanceof Integer)) {
+            // OTLP JSON encodes 64 bit integers as strings
+            json.put("intValue", value.toString());
+        } else if (value instanceof Number) {
+            json.put("doubleValue", value);
+        } else if (value instanceof Boolean) {
+            json.put("boolValue", value);
+        } else {
+            json.put("stringValue", String.valueOf(value));
+        }
+        return json;
+    }
+}
@@ -0,0 +1,27 @@
+package org.vatplanner.archiver.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Writes finished {@link Span}s to the application log, one line per span.
+ * Spans are logged at INFO level to a dedicated logger, so they can be routed
+ * or filtered separately by logging configuration.
+ */
+public class LogSpanExporter implements SpanExporter {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger("org.vatplanner.archiver.tracing.spans");
+
+    @Override
+    public void export(Span span) {
+        LOGGER.info(
+            "{} {}ms trace={} span={} parent={} {}",
+            span.getName(),
+            (span.getEndEpochNanos() - span.getStartEpochNanos()) / 1_000_000.0,
+            span.getTraceId(),
+            span.getSpanId(),
+            span.getParentSpanId(),
+            span.getAttributes() //
+        );
+    }
+}
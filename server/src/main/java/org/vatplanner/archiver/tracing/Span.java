@@ -0,0 +1,220 @@
+package org.vatplanner.archiver.tracing;
+
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A timed operation within a trace, following the span model of OpenTelemetry:
+ * spans are identified by a trace ID shared by all spans of the same trace and
+ * an individual span ID, refer to their parent span and carry attributes
+ * describing the operation. Spans end and are exported when closed.
+ *
+ * <p>
+ * While open, a span is the current span of the thread it has been started on,
+ * so nested operations on the same thread become its children implicitly. Work
+ * continued on other threads needs to refer to the parent span explicitly, see
+ * {@link Tracing#startSpan(String, Span)}.
+ * </p>
+ *
+ * <p>
+ * If tracing is disabled, a shared non-recording span is returned instead
+ * which ignores all calls. Callers should check {@link #isRecording()} before
+ * performing any additional work (such as measuring time) only needed to set
+ * attributes.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class Span implements AutoCloseable {
+
+    static final Span NON_RECORDING = new Span();
+
+    private final Tracer tracer;
+    private final String traceId;
+    private final String spanId;
+    private final String parentSpanId;
+    private final String name;
+    private final long startEpochNanos;
+    private final long startNanoTime;
+    private final Thread thread;
+    private final Span previousCurrent;
+    private final Map<String, Object> attributes;
+
+    private long endEpochNanos = -1;
+
+    private Span() {
+        tracer = null;
+        traceId = null;
+        spanId = null;
+        parentSpanId = null;
+        name = null;
+        startEpochNanos = 0;
+        startNanoTime = 0;
+        thread = null;
+        previousCurrent = null;
+        attributes = null;
+    }
+
+    Span(Tracer tracer, String traceId, String spanId, String parentSpanId, String name, Span previousCurrent) {
+        this.tracer = tracer;
+        this.traceId = traceId;
+        this.spanId = spanId;
+        this.parentSpanId = parentSpanId;
+        this.name = name;
+        this.previousCurrent = previousCurrent;
+        this.thread = Thread.currentThread();
+        this.attributes = new LinkedHashMap<>();
+
+        Instant now = Instant.now();
+        startEpochNanos = now.getEpochSecond() * 1_000_000_000L + now.getNano();
+        startNanoTime = System.nanoTime();
+    }
+
+    /**
+     * Checks if this span is actually recorded. Non-recording spans ignore all
+     * attributes.
+     *
+     * @return true if recording, false if tracing is disabled
+     */
+    public boolean isRecording() {
+        return tracer != null;
+    }
+
+    /**
+     * Sets an attribute, replacing any previous value.
+     *
+     * @param key attribute key
+     * @param value attribute value; should be a {@link String}, {@link Number}
+     *        or {@link Boolean}
+     * @return this instance for method-chaining
+     */
+    public Span setAttribute(String key, Object value) {
+        if (attributes != null) {
+            synchronized (attributes) {
+                attributes.put(key, value);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Adds the given amount to a numeric attribute, e.g. to count processed
+     * entries or accumulate time. Missing attributes start at 0.
+     *
+     * @param key attribute key
+     * @param amount amount to add
+     * @return this instance for method-chaining
+     */
+    public Span addToAttribute(String key, long amount) {
+        if (attributes != null) {
+            synchronized (attributes) {
+                attributes.merge(key, amount, (a, b) -> ((Number) a).longValue() + ((Number) b).longValue());
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Raises a numeric attribute to the given value if it is higher than the
+     * current value, e.g. to record the maximum duration of repeated
+     * operations. Missing attributes are set to the given value.
+     *
+     * @param key attribute key
+     * @param value value to raise attribute to
+     * @return this instance for method-chaining
+     */
+    public Span maxAttribute(String key, long value) {
+        if (attributes != null) {
+            synchronized (attributes) {
+                attributes.merge(key, value, (a, b) -> Long.max(((Number) a).longValue(), ((Number) b).longValue()));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Ends the span and hands it to the exporter. Closing more than once has no
+     * effect.
+     */
+    @Override
+    public void close() {
+        if (tracer == null) {
+            return;
+        }
+
+        synchronized (this) {
+            if (endEpochNanos >= 0) {
+                return;
+            }
+            endEpochNanos = startEpochNanos + (System.nanoTime() - startNanoTime);
+        }
+
+        if (Thread.currentThread() == thread) {
+            tracer.restoreCurrent(this, previousCurrent);
+        }
+
+        tracer.export(this);
+    }
+
+    public String getTraceId() {
+        return traceId;
+    }
+
+    public String getSpanId() {
+        return spanId;
+    }
+
+    /**
+     * Returns the ID of the parent span.
+     *
+     * @return ID of parent span; null for root spans
+     */
+    public String getParentSpanId() {
+        return parentSpanId;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Returns the start time in nanoseconds since Unix epoch.
+     *
+     * @return start time in nanoseconds since Unix epoch
+     */
+    public long getStartEpochNanos() {
+        return startEpochNanos;
+    }
+
+    /**
+     * Returns the end time in nanoseconds since Unix epoch.
+     *
+     * @return end time in nanoseconds since Unix epoch; -1 if not ended yet
+     */
+    public synchronized long getEndEpochNanos() {
+        return endEpochNanos;
+    }
+
+    /**
+     * Returns a copy of all attributes.
+     *
+     * @return copy of all attributes in order of first assignment
+     */
+    public Map<String, Object> getAttributes() {
+        if (attributes == null) {
+            return new LinkedHashMap<>();
+        }
+
+        synchronized (attributes) {
+            return new LinkedHashMap<>(attributes);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Span(" + name + ", " + traceId + "/" + spanId + ")";
+    }
+}
@@ -0,0 +1,16 @@
+package org.vatplanner.archiver.tracing;
+
+/**
+ * Receives finished {@link Span}s to persist or forward them. Implementations
+ * must be thread-safe.
+ */
+@FunctionalInterface
+public interface SpanExporter {
+
+    /**
+     * Exports the given finished span.
+     *
+     * @param span finished span
+     */
+    public void export(Span span);
+}
@@ -0,0 +1,63 @@
+package org.vatplanner.archiver.tracing;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Selects where trace spans are exported to.
+ */
+public enum SpanExporterType {
+    /**
+     * Tracing is disabled.
+     */
+    NONE("none"),
+
+    /**
+     * Spans are written to the application log, see {@link LogSpanExporter}.
+     */
+    LOG("log"),
+
+    /**
+     * Spans are appended to a file as JSON lines, see {@link FileSpanExporter}.
+     */
+    FILE("file");
+
+    private final String configName;
+
+    private static final Map<String, SpanExporterType> BY_CONFIG_NAME = new HashMap<>();
+
+    static {
+        for (SpanExporterType type : values()) {
+            BY_CONFIG_NAME.put(type.configName, type);
+        }
+    }
+
+    private SpanExporterType(String configName) {
+        this.configName = configName;
+    }
+
+    /**
+     * Returns the name used to select this exporter by configuration.
+     *
+     * @return name used in configuration
+     */
+    public String getConfigName() {
+        return configName;
+    }
+
+    /**
+     * Resolves the exporter type for the given configuration name.
+     *
+     * @param configName name used in configuration
+     * @return exporter type of given name
+     * @throws IllegalArgumentException if name is unknown
+     */
+    public static SpanExporterType byConfigName(String configName) {
+        SpanExporterType type = BY_CONFIG_NAME.get(configName);
+        if (type == null) {
+            throw new IllegalArgumentException("Unknown span exporter: \"" + configName + "\"");
+        }
+
+        return type;
+    }
+}
@@ -0,0 +1,105 @@
+package org.vatplanner.archiver.tracing;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Creates recording {@link Span}s and hands finished spans to a
+ * {@link SpanExporter}. Keeps track of the current span per thread.
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class Tracer {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Tracer.class);
+
+    private final SpanExporter exporter;
+    private final ThreadLocal<Span> currentSpan = new ThreadLocal<>();
+
+    /**
+     * Creates a new tracer.
+     *
+     * @param exporter receives all finished spans
+     */
+    public Tracer(SpanExporter exporter) {
+        this.exporter = exporter;
+    }
+
+    /**
+     * Returns the span currently open on the calling thread.
+     *
+     * @return current span; null if none
+     */
+    Span getCurrentSpan() {
+        return currentSpan.get();
+    }
+
+    /**
+     * Starts a new span which becomes the current span of the calling thread.
+     *
+     * @param name name of span
+     * @param parent parent span; null or non-recording to start a new trace
+     * @return started span
+     */
+    Span startSpan(String name, Span parent) {
+        String traceId;
+        String parentSpanId;
+        if ((parent != null) && parent.isRecording()) {
+            traceId = parent.getTraceId();
+            parentSpanId = parent.getSpanId();
+        } else {
+            traceId = randomHex(2);
+            parentSpanId = null;
+        }
+
+        Span span = new Span(this, traceId, randomHex(1), parentSpanId, name, currentSpan.get());
+        currentSpan.set(span);
+
+        return span;
+    }
+
+    /**
+     * Restores the current span of the calling thread after the given span has
+     * ended.
+     *
+     * @param ended span which has ended
+     * @param previous span which was current before the ended span started
+     */
+    void restoreCurrent(Span ended, Span previous) {
+        // spans may end out of order, so only restore if still current
+        if (currentSpan.get() != ended) {
+            return;
+        }
+
+        if (previous == null) {
+            currentSpan.remove();
+        } else {
+            currentSpan.set(previous);
+        }
+    }
+
+    void export(Span span) {
+        try {
+            exporter.export(span);
+        } catch (RuntimeException ex) {
+            LOGGER.warn("Failed to export span " + span, ex);
+        }
+    }
+
+    private static String randomHex(int numLongs) {
+        StringBuilder sb = new StringBuilder(numLongs * 16);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int i = 0; i < numLongs; i++) {
+            String hex = Long.toHexString(random.nextLong());
+            for (int j = hex.length(); j < 16; j++) {
+                sb.append('0');
+            }
+            sb.append(hex);
+        }
+        return sb.toString();
+    }
+}
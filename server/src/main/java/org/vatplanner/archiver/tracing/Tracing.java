@@ -0,0 +1,121 @@
+package org.vatplanner.archiver.tracing;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Global entry point to trace operations throughout the application. Tracing
+ * is disabled until configured; while disabled, only a shared non-recording
+ * {@link Span} is handed out, so instrumented code has negligible overhead.
+ *
+ * <p>
+ * Spans are meant to be used in try-with-resources blocks:
+ * </p>
+ *
+ * <pre>
+ * try (Span span = Tracing.startSpan("loader.archive")) {
+ *     span.setAttribute("date", date.toString());
+ *     ...
+ * }
+ * </pre>
+ */
+public class Tracing {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(Tracing.class);
+
+    private static volatile Tracer tracer = null;
+
+    private Tracing() {
+        // utility class
+    }
+
+    /**
+     * Configures tracing as specified. Should only be called once during
+     * application start.
+     *
+     * @param config tracing configuration
+     * @throws IOException if the exporter cannot be set up
+     */
+    public static void configure(TracingConfiguration config) throws IOException {
+        switch (config.getExporter()) {
+            case LOG:
+                setTracer(new Tracer(new LogSpanExporter()));
+                break;
+
+            case FILE:
+                setTracer(new Tracer(new FileSpanExporter(new File(config.getFilePath()))));
+                break;
+
+            case NONE:
+            default:
+                setTracer(null);
+                break;
+        }
+
+        LOGGER.info("Tracing spans are exported to: {}", config.getExporter().getConfigName());
+    }
+
+    /**
+     * Sets the tracer to record spans with.
+     *
+     * @param tracer tracer to use; null disables tracing
+     */
+    static void setTracer(Tracer tracer) {
+        Tracing.tracer = tracer;
+    }
+
+    /**
+     * Starts a new span as a child of the calling thread's current span (or as a
+     * new trace if there is none). The new span becomes the current span of the
+     * calling thread until closed.
+     *
+     * @param name name of span
+     * @return started span; non-recording if tracing is disabled
+     */
+    public static Span startSpan(String name) {
+        Tracer tracer = Tracing.tracer;
+        if (tracer == null) {
+            return Span.NON_RECORDING;
+        }
+
+        return tracer.startSpan(name, tracer.getCurrentSpan());
+    }
+
+    /**
+     * Starts a new span as a child of the given span, e.g. to continue a trace
+     * on another thread. The new span becomes the current span of the calling
+     * thread until closed.
+     *
+     * @param name name of span
+     * @param parent parent span; null to start a new trace
+     * @return started span; non-recording if tracing is disabled
+     */
+    public static Span startSpan(String name, Span parent) {
+        Tracer tracer = Tracing.tracer;
+        if (tracer == null) {
+            return Span.NON_RECORDING;
+        }
+
+        return tracer.startSpan(name, parent);
+    }
+
+    /**
+     * Returns the span currently open on the calling thread, e.g. to add
+     * attributes from nested code or to pass it to another thread.
+     *
+     * @return current span; non-recording if there is none or tracing is
+     *         disabled
+     */
+    public static Span currentSpan() {
+        Tracer tracer = Tracing.tracer;
+        if (tracer == null) {
+            return Span.NON_RECORDING;
+        }
+
+        Span span = tracer.getCurrentSpan();
+        return (span != null) ? span : Span.NON_RECORDING;
+    }
+}
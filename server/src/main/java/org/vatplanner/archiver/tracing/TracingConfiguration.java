@@ -0,0 +1,59 @@
+package org.vatplanner.archiver.tracing;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Holds configuration related to tracing.
+ */
+public class TracingConfiguration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TracingConfiguration.class);
+
+    private SpanExporterType exporter = SpanExporterType.NONE;
+    private String filePath = "./traces.jsonl";
+
+    /**
+     * Returns where trace spans should be exported to.
+     *
+     * @return span exporter to use; {@link SpanExporterType#NONE} if tracing is
+     *         disabled
+     */
+    public SpanExporterType getExporter() {
+        return exporter;
+    }
+
+    /**
+     * Sets where trace spans should be exported to.
+     *
+     * @param exporter span exporter to use; {@link SpanExporterType#NONE} to
+     *        disable tracing
+     * @return this instance for method-chaining
+     */
+    public TracingConfiguration setExporter(SpanExporterType exporter) {
+        LOGGER.debug("setting exporter to {}", exporter);
+        this.exporter = exporter;
+        return this;
+    }
+
+    /**
+     * Returns the path of the file to append spans to if exporting to a file.
+     *
+     * @return path of file to append spans to
+     */
+    public String getFilePath() {
+        return filePath;
+    }
+
+    /**
+     * Sets the path of the file to append spans to if exporting to a file.
+     *
+     * @param filePath path of file to append spans to
+     * @return this instance for method-chaining
+     */
+    public TracingConfiguration setFilePath(String filePath) {
+        LOGGER.debug("setting filePath to {}", filePath);
+        this.filePath = filePath;
+        return this;
+    }
+}
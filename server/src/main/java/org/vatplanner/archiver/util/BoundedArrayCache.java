@@ -0,0 +1,156 @@
+package org.vatplanner.archiver.util;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.tukaani.xz.ArrayCache;
+
+/**
+ * Cache of arrays to be reused by XZ/LZMA encoders and decoders. Each stream
+ * allocates dictionary and match finder arrays of several to tens of megabytes
+ * which are otherwise dropped once the stream has been closed; sharing a cache
+ * between all streams lets consecutive and concurrent archive reads and packers
+ * take turns on the same arrays instead.
+ *
+ * <p>
+ * Streams request arrays of exactly the same sizes when using the same
+ * settings, so arrays are only reused for requests of identical length. Arrays
+ * are retained up to a total size; arrays returned beyond that limit are left
+ * to garbage collection. Small arrays are not cached at all as allocating them
+ * is cheap.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class are thread-safe.
+ * </p>
+ */
+public class BoundedArrayCache extends ArrayCache {
+
+    private static final int MINIMUM_CACHED_BYTES = 32 * 1024;
+
+    private final long maximumRetainedBytes;
+
+    private final Map<Integer, Deque<byte[]>> byteArraysByLength = new HashMap<>();
+    private final Map<Integer, Deque<int[]>> intArraysByLength = new HashMap<>();
+    private long retainedBytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Creates a new cache.
+     *
+     * @param maximumRetainedBytes maximum total size of arrays to retain for
+     *        reuse; 0 to disable caching
+     */
+    public BoundedArrayCache(long maximumRetainedBytes) {
+        this.maximumRetainedBytes = maximumRetainedBytes;
+    }
+
+    @Override
+    public byte[] getByteArray(int size, boolean fillWithZeros) {
+        byte[] array = null;
+        if (size >= MINIMUM_CACHED_BYTES) {
+            array = take(byteArraysByLength, size, size);
+        }
+
+        if (array == null) {
+            return new byte[size];
+        }
+
+        if (fillWithZeros) {
+            Arrays.fill(array, (byte) 0);
+        }
+
+        return array;
+    }
+
+    @Override
+    public void putArray(byte[] array) {
+        if (array.length >= MINIMUM_CACHED_BYTES) {
+            offer(byteArraysByLength, array.length, array, array.length);
+        }
+    }
+
+    @Override
+    public int[] getIntArray(int size, boolean fillWithZeros) {
+        int[] array = null;
+        if ((long) size * Integer.BYTES >= MINIMUM_CACHED_BYTES) {
+            array = take(intArraysByLength, size, (long) size * Integer.BYTES);
+        }
+
+        if (array == null) {
+            return new int[size];
+        }
+
+        if (fillWithZeros) {
+            Arrays.fill(array, 0);
+        }
+
+        return array;
+    }
+
+    @Override
+    public void putArray(int[] array) {
+        long bytes = (long) array.length * Integer.BYTES;
+        if (bytes >= MINIMUM_CACHED_BYTES) {
+            offer(intArraysByLength, array.length, array, bytes);
+        }
+    }
+
+    private synchronized <T> T take(Map<Integer, Deque<T>> arraysByLength, int length, long bytes) {
+        Deque<T> arrays = arraysByLength.get(length);
+        T array = (arrays != null) ? arrays.pollFirst() : null;
+
+        if (array == null) {
+            misses.increment();
+            return null;
+        }
+
+        hits.increment();
+        retainedBytes -= bytes;
+
+        return array;
+    }
+
+    private synchronized <T> void offer(Map<Integer, Deque<T>> arraysByLength, int length, T array, long bytes) {
+        if (retainedBytes + bytes > maximumRetainedBytes) {
+            return;
+        }
+
+        arraysByLength.computeIfAbsent(length, x -> new ArrayDeque<>()).addFirst(array);
+        retainedBytes += bytes;
+    }
+
+    /**
+     * Returns the total size of arrays currently retained for reuse.
+     *
+     * @return retained arrays in bytes
+     */
+    public synchronized long getRetainedBytes() {
+        return retainedBytes;
+    }
+
+    /**
+     * Returns the number of requested arrays which have been reused.
+     *
+     * @return number of requests served from cache
+     */
+    public long getHits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of requested arrays which had to be allocated (only
+     * counting arrays large enough to be cached).
+     *
+     * @return number of requests requiring a new allocation
+     */
+    public long getMisses() {
+        return misses.sum();
+    }
+}
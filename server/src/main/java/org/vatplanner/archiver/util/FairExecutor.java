@@ -0,0 +1,209 @@
+package org.vatplanner.archiver.util;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A fixed number of threads shared fairly between multiple independent users
+ * (such as concurrent requests). Each user submits tasks through its own
+ * {@link #createLane() lane}; threads take tasks from all lanes with pending
+ * tasks in turn, so a user submitting many tasks at once cannot delay the tasks
+ * of other users until all of its own tasks have been processed.
+ *
+ * <p>
+ * Lanes are {@link ExecutorService}s of their own: Shutting down a lane only
+ * stops that lane from accepting further tasks and lets
+ * {@link ExecutorService#awaitTermination(long, TimeUnit)} wait for just the
+ * tasks of that lane; the shared threads are not affected. This allows lanes to
+ * be handed to code which expects to own and shut down its executor. Lanes are
+ * cheap to create and do not need to be cleaned up.
+ * </p>
+ *
+ * <p>
+ * Methods provided by this class and its lanes are thread-safe.
+ * </p>
+ */
+public class FairExecutor {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(FairExecutor.class);
+
+    private final Object lock = new Object();
+    private final Deque<Lane> lanesWithQueuedTasks = new ArrayDeque<>();
+    private boolean shutdown = false;
+
+    /**
+     * Creates a new executor and starts all threads.
+     *
+     * @param numThreads number of threads to share
+     * @param threadFactory creates the threads
+     */
+    public FairExecutor(int numThreads, ThreadFactory threadFactory) {
+        if (numThreads < 1) {
+            throw new IllegalArgumentException("at least one thread is required, got " + numThreads);
+        }
+
+        for (int i = 0; i < numThreads; i++) {
+            threadFactory.newThread(this::work).start();
+        }
+    }
+
+    /**
+     * Creates a new lane to submit tasks through.
+     *
+     * @return new lane
+     */
+    public ExecutorService createLane() {
+        return new Lane();
+    }
+
+    /**
+     * Stops all threads after their current tasks; queued tasks will not be
+     * processed.
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            lock.notifyAll();
+        }
+    }
+
+    private void work() {
+        while (true) {
+            Lane lane;
+            Runnable task;
+
+            synchronized (lock) {
+                while (!shutdown && lanesWithQueuedTasks.isEmpty()) {
+                    try {
+                        lock.wait();
+                    } catch (InterruptedException ex) {
+                        // only interrupted to cancel tasks which have already ended
+                    }
+                }
+
+                if (shutdown) {
+                    return;
+                }
+
+                // lanes take turns; a lane with further tasks queues up again at the end
+                lane = lanesWithQueuedTasks.removeFirst();
+                task = lane.queued.removeFirst();
+                if (!lane.queued.isEmpty()) {
+                    lanesWithQueuedTasks.addLast(lane);
+                }
+                lane.runningThreads.add(Thread.currentThread());
+            }
+
+            try {
+                task.run();
+            } catch (RuntimeException | Error ex) {
+                LOGGER.warn("Task failed", ex);
+            } finally {
+                synchronized (lock) {
+                    lane.runningThreads.remove(Thread.currentThread());
+
+                    // interrupts meant to cancel this task must not affect the next one
+                    Thread.interrupted();
+
+                    if (lane.isTerminated()) {
+                        lock.notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    private class Lane extends AbstractExecutorService {
+
+        private final Deque<Runnable> queued = new ArrayDeque<>();
+        private final Set<Thread> runningThreads = new HashSet<>();
+        private boolean laneShutdown = false;
+
+        @Override
+        public void execute(Runnable command) {
+            synchronized (lock) {
+                if (laneShutdown || shutdown) {
+                    throw new RejectedExecutionException("Executor has been shut down");
+                }
+
+                queued.addLast(command);
+                if (queued.size() == 1) {
+                    lanesWithQueuedTasks.addLast(this);
+                }
+
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            synchronized (lock) {
+                laneShutdown = true;
+                lock.notifyAll();
+            }
+        }
+
+        @Override
+        public List<Runnable> shutdownNow() {
+            synchronized (lock) {
+                laneShutdown = true;
+
+                List<Runnable> notStarted = new ArrayList<>(queued);
+                queued.clear();
+                lanesWithQueuedTasks.remove(this);
+
+                for (Thread thread : runningThreads) {
+                    thread.interrupt();
+                }
+
+                lock.notifyAll();
+
+                return notStarted;
+            }
+        }
+
+        @Override
+        public boolean isShutdown() {
+            synchronized (lock) {
+                return laneShutdown;
+            }
+        }
+
+        @Override
+        public boolean isTerminated() {
+            synchronized (lock) {
+                return laneShutdown && queued.isEmpty() && runningThreads.isEmpty();
+            }
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+
+            synchronized (lock) {
+                while (!isTerminated()) {
+                    long remainingNanos = deadline - System.nanoTime();
+                    if (remainingNanos <= 0) {
+                        return false;
+                    }
+
+                    TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+                }
+
+                return true;
+            }
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package org.vatplanner.archiver.util;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Creates daemon threads named by a common prefix and a sequential number, so
+ * threads of application-managed pools can be told apart in logs and thread
+ * dumps.
+ */
+public class NamedDaemonThreadFactory implements ThreadFactory {
+
+    private final String namePrefix;
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    /**
+     * Creates a new factory.
+     *
+     * @param namePrefix prefix of all thread names
+     */
+    public NamedDaemonThreadFactory(String namePrefix) {
+        this.namePrefix = namePrefix;
+    }
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, namePrefix + "-" + sequence.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    }
+}
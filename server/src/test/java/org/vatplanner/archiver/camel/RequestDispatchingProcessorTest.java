@@ -0,0 +1,296 @@
+package org.vatplanner.archiver.camel;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.timeout;
+import static org.mockito.Mockito.verify;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.apache.camel.CamelContext;
+import org.apache.camel.Exchange;
+import org.apache.camel.ExchangePattern;
+import org.apache.camel.Processor;
+import org.apache.camel.ProducerTemplate;
+import org.apache.camel.builder.RouteBuilder;
+import org.apache.camel.component.mock.MockEndpoint;
+import org.apache.camel.component.rabbitmq.RabbitMQConstants;
+import org.apache.camel.component.rabbitmq.RabbitMQEndpoint;
+import org.apache.camel.impl.DefaultCamelContext;
+import org.apache.camel.support.DefaultExchange;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.Connection;
+
+public class RequestDispatchingProcessorTest {
+
+    private CamelContext context;
+    private MockEndpoint replyEndpoint;
+
+    private final CompletableFuture<String> publishedReplyTo = new CompletableFuture<>();
+    private final CompletableFuture<Map<String, Object>> publishedHeaders = new CompletableFuture<>();
+
+    @BeforeEach
+    public void setUp() {
+        context = new DefaultCamelContext();
+        context.start();
+        replyEndpoint = context.getEndpoint("mock:reply", MockEndpoint.class);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        context.stop();
+    }
+
+    private RequestDispatchingProcessor createProcessor() {
+        return createProcessor(exchange -> exchange.getMessage().setBody("response"));
+    }
+
+    private RequestDispatchingProcessor createProcessor(Processor requestProcessor) {
+        return new RequestDispatchingProcessor(
+            requestProcessor,
+            null,
+            context.createProducerTemplate(),
+            replyEndpoint,
+            1 //
+        ) {
+            @Override
+            void publishToReplyQueue(Exchange exchange, String replyTo) {
+                publishedHeaders.complete(exchange.getMessage().getHeaders());
+                publishedReplyTo.complete(replyTo);
+            }
+        };
+    }
+
+    private void addRequestsRoute(RequestDispatchingProcessor processor) throws Exception {
+        context.addRoutes(new RouteBuilder() {
+            @Override
+            public void configure() {
+                from("direct:requests").process(processor);
+            }
+        });
+    }
+
+    private Exchange createRequest() {
+        Exchange exchange = new DefaultExchange(context, ExchangePattern.InOut);
+        exchange.getIn().setBody("request");
+        exchange.getIn().setHeader(RabbitMQConstants.REPLY_TO, "reply-queue");
+        exchange.getIn().setHeader(RabbitMQConstants.EXPIRATION, "60000");
+        exchange.getIn().setHeader(RabbitMQConstants.CORRELATIONID, "abc");
+        return exchange;
+    }
+
+    @Test
+    public void testProcess_withReplyTo_sendsReplyWithoutRequestHeadersToReplyEndpoint() throws Exception {
+        // Arrange
+        RequestDispatchingProcessor processor = createProcessor();
+        processor.start();
+        replyEndpoint.expectedMessageCount(1);
+
+        // Act
+        processor.process(createRequest());
+
+        // Assert
+        replyEndpoint.assertIsSatisfied(5000);
+        Exchange reply = replyEndpoint.getReceivedExchanges().get(0);
+        assertThat(reply.getPattern()).isEqualTo(ExchangePattern.InOnly);
+        assertThat(reply.getMessage().getBody()).isEqualTo("response");
+        assertThat(reply.getMessage().getHeaders()) //
+            .doesNotContainKeys(RabbitMQConstants.REPLY_TO, RabbitMQConstants.EXPIRATION) //
+            .containsEntry(RabbitMQConstants.ROUTING_KEY, "reply-queue") //
+            .containsEntry(RabbitMQConstants.CORRELATIONID, "abc");
+    }
+
+    @Test
+    public void testProcess_withReplyTo_publishesReplyToRequestedQueue() throws Exception {
+        // Arrange
+        RequestDispatchingProcessor processor = createProcessor();
+        processor.start();
+
+        // Act
+        processor.process(createRequest());
+
+        // Assert
+        assertThat(publishedReplyTo.get(5, TimeUnit.SECONDS)).isEqualTo("reply-queue");
+        assertThat(publishedHeaders.get(5, TimeUnit.SECONDS)) //
+            .doesNotContainKeys(RabbitMQConstants.REPLY_TO, RabbitMQConstants.EXPIRATION);
+    }
+
+    @Test
+    public void testProcess_always_preventsConsumerFromReplying() throws Exception {
+        // Arrange
+        RequestDispatchingProcessor processor = createProcessor();
+        processor.start();
+        Exchange exchange = createRequest();
+
+        // Act
+        processor.process(exchange);
+
+        // Assert
+        assertThat(exchange.getPattern()).isEqualTo(ExchangePattern.InOnly);
+    }
+
+    @Test
+    public void testRoute_dispatched_releasesConsumerBeforeProcessingCompletes() throws Exception {
+        // Arrange
+        CountDownLatch proceed = new CountDownLatch(1);
+        addRequestsRoute(createProcessor(exchange -> {
+            proceed.await();
+            exchange.getMessage().setBody("response");
+        }));
+        ProducerTemplate template = context.createProducerTemplate();
+        replyEndpoint.expectedMessageCount(1);
+
+        // Act
+        Exchange consumed = template.send("direct:requests", createRequest());
+
+        // Assert
+        try {
+            assertThat(consumed.getPattern()).isEqualTo(ExchangePattern.InOnly);
+            assertThat(consumed.getMessage().getBody()).isEqualTo("request");
+            assertThat(replyEndpoint.getReceivedCounter()).isZero();
+        } finally {
+            proceed.countDown();
+        }
+        replyEndpoint.assertIsSatisfied(5000);
+    }
+
+    @Test
+    public void testRoute_dispatched_repliesWithoutRequestHeaders() throws Exception {
+        // Arrange
+        addRequestsRoute(createProcessor());
+        ProducerTemplate template = context.createProducerTemplate();
+        replyEndpoint.expectedMessageCount(1);
+
+        // Act
+        template.send("direct:requests", createRequest());
+
+        // Assert
+        replyEndpoint.assertIsSatisfied(5000);
+        Exchange reply = replyEndpoint.getReceivedExchanges().get(0);
+        assertThat(reply.getMessage().getBody()).isEqualTo("response");
+        assertThat(reply.getMessage().getHeaders()) //
+            .doesNotContainKeys(RabbitMQConstants.REPLY_TO, RabbitMQConstants.EXPIRATION) //
+            .containsEntry(RabbitMQConstants.ROUTING_KEY, "reply-queue") //
+            .containsEntry(RabbitMQConstants.CORRELATIONID, "abc");
+        assertThat(publishedReplyTo.get(5, TimeUnit.SECONDS)).isEqualTo("reply-queue");
+        assertThat(publishedHeaders.get(5, TimeUnit.SECONDS)) //
+            .doesNotContainKeys(RabbitMQConstants.REPLY_TO, RabbitMQConstants.EXPIRATION) //
+            .containsEntry(RabbitMQConstants.CORRELATIONID, "abc");
+    }
+
+    @Test
+    public void testRoute_dispatchedRequestFailed_releasesCapacityForFollowingRequests() throws Exception {
+        // Arrange
+        addRequestsRoute(createProcessor(exchange -> {
+            if ("fail".equals(exchange.getIn().getBody())) {
+                throw new IllegalStateException("failing on purpose");
+            }
+            exchange.getMessage().setBody("response");
+        }));
+        ProducerTemplate template = context.createProducerTemplate();
+        Exchange failing = createRequest();
+        failing.getIn().setBody("fail");
+        replyEndpoint.expectedMessageCount(1);
+
+        // Act
+        template.send("direct:requests", failing);
+        CompletableFuture<Exchange> following = CompletableFuture.supplyAsync(
+            () -> template.send("direct:requests", createRequest()) //
+        );
+
+        // Assert
+        // only one request may be in flight, so consumer would block forever if
+        // the failed request did not release its capacity
+        assertThat(following.get(5, TimeUnit.SECONDS).getPattern()).isEqualTo(ExchangePattern.InOnly);
+        replyEndpoint.assertIsSatisfied(5000);
+        assertThat(replyEndpoint.getReceivedExchanges().get(0).getMessage().getBody()).isEqualTo("response");
+    }
+
+    @Test
+    public void testProcess_notStarted_throwsIllegalStateException() {
+        // Arrange
+        RequestDispatchingProcessor processor = createProcessor();
+
+        // Act & Assert
+        assertThatThrownBy(() -> processor.process(createRequest())).isInstanceOf(IllegalStateException.class);
+    }
+
+    @Test
+    public void testStop_requestInFlight_waitsForRequestToComplete() throws Exception {
+        // Arrange
+        CountDownLatch proceed = new CountDownLatch(1);
+        RequestDispatchingProcessor processor = createProcessor(exchange -> {
+            proceed.await();
+            exchange.getMessage().setBody("response");
+        });
+        processor.start();
+        processor.process(createRequest());
+        replyEndpoint.expectedMessageCount(1);
+
+        // Act
+        CompletableFuture<Void> stopped = CompletableFuture.runAsync(processor::stop);
+
+        // Assert
+        try {
+            assertThatThrownBy(() -> stopped.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        } finally {
+            proceed.countDown();
+        }
+        stopped.get(5, TimeUnit.SECONDS);
+        replyEndpoint.assertIsSatisfied(0);
+        assertThat(publishedReplyTo).isCompletedWithValue("reply-queue");
+    }
+
+    @Test
+    public void testStop_routeStopped_stopsProcessor() throws Exception {
+        // Arrange
+        RequestDispatchingProcessor processor = createProcessor();
+        addRequestsRoute(processor);
+
+        // Act
+        context.stop();
+
+        // Assert
+        assertThat(processor.isStopped()).isTrue();
+    }
+
+    @Test
+    public void testStop_afterReplyPublished_closesReplyConnection() throws Exception {
+        // Arrange
+        RabbitMQEndpoint requestsEndpoint = mock(RabbitMQEndpoint.class);
+        Connection connection = mock(Connection.class);
+        Channel channel = mock(Channel.class);
+        doReturn(connection).when(requestsEndpoint).connect(any());
+        doReturn(channel).when(connection).createChannel();
+        doReturn(true).when(channel).isOpen();
+
+        RequestDispatchingProcessor processor = new RequestDispatchingProcessor(
+            exchange -> exchange.getMessage().setBody("response"),
+            requestsEndpoint,
+            context.createProducerTemplate(),
+            replyEndpoint,
+            1 //
+        );
+        processor.start();
+        processor.process(createRequest());
+        verify(requestsEndpoint, timeout(5000)).publishExchangeToChannel(any(), eq(channel), eq("reply-queue"));
+
+        // Act
+        processor.stop();
+
+        // Assert
+        verify(connection).abort();
+    }
+}
@@ -0,0 +1,115 @@
+package org.vatplanner.archiver.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class BufferPoolTest {
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 1024, 1025, 1280, 100000, 3 * 1024 * 1024 + 1, 64 * 1024 * 1024 })
+    public void testRent_withinSizeClasses_returnsBufferAtMostQuarterLarger(int minimumLength) {
+        // Arrange
+        BufferPool pool = new BufferPool(0);
+
+        // Act
+        byte[] result = pool.rent(minimumLength);
+
+        // Assert
+        assertThat(result.length).isGreaterThanOrEqualTo(minimumLength)
+                                 .isLessThanOrEqualTo(Math.max(1024, minimumLength + minimumLength / 4));
+    }
+
+    @Test
+    public void testRent_exceedingLargestSizeClass_returnsExactSize() {
+        // Arrange
+        BufferPool pool = new BufferPool(0);
+        int minimumLength = 64 * 1024 * 1024 + 1;
+
+        // Act
+        byte[] result = pool.rent(minimumLength);
+
+        // Assert
+        assertThat(result).hasSize(minimumLength);
+    }
+
+    @Test
+    public void testRent_sameSizeClassReleased_reusesBuffer() {
+        // Arrange
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] released = pool.rent(2000);
+        pool.release(released);
+
+        // Act
+        byte[] result = pool.rent(1900);
+
+        // Assert
+        assertThat(result).isSameAs(released);
+        assertThat(pool.getHits()).isEqualTo(1);
+        assertThat(pool.getMisses()).isEqualTo(1);
+        assertThat(pool.getRetainedBytes()).isZero();
+    }
+
+    @Test
+    public void testRelease_exceedingRetainedLimit_dropsBuffer() {
+        // Arrange
+        BufferPool pool = new BufferPool(3000);
+        byte[] first = pool.rent(2000);
+        byte[] second = pool.rent(2000);
+        pool.release(first);
+
+        // Act
+        pool.release(second);
+
+        // Assert
+        assertThat(pool.getRetainedBytes()).isEqualTo(first.length);
+    }
+
+    @Test
+    public void testRelease_notMatchingSizeClass_dropsBuffer() {
+        // Arrange
+        BufferPool pool = new BufferPool(1024 * 1024);
+
+        // Act
+        pool.release(new byte[1500]);
+
+        // Assert
+        assertThat(pool.getRetainedBytes()).isZero();
+    }
+
+    @Test
+    public void testClear_pooledData_releasesBufferToPool() {
+        // Arrange
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.rent(2000);
+        RawDataFile dataFile = new RawDataFile(null).setData(buffer, 2000, pool);
+
+        // Act
+        dataFile.clear();
+
+        // Assert
+        assertThat(pool.getRetainedBytes()).isEqualTo(buffer.length);
+        assertThatThrownBy(dataFile::getDataBuffer).isInstanceOf(RuntimeException.class);
+    }
+
+    @Test
+    public void testGetData_pooledData_returnsExactCopyAndReleasesBuffer() {
+        // Arrange
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.rent(2000);
+        buffer[1999] = 42;
+        RawDataFile dataFile = new RawDataFile(null).setData(buffer, 2000, pool);
+
+        // Act
+        byte[] result = dataFile.getData();
+        dataFile.clear();
+
+        // Assert
+        assertThat(result).hasSize(2000);
+        assertThat(result[1999]).isEqualTo((byte) 42);
+        assertThat(pool.getRetainedBytes()).isEqualTo(buffer.length);
+    }
+}
@@ -0,0 +1,45 @@
+package org.vatplanner.archiver.common;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+
+public class RawDataFileTest {
+
+    @Test
+    public void testGetData_pooledBufferOfExactLength_isNotReleasedOnClear() {
+        // Arrange
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.rent(1024);
+        RawDataFile rawDataFile = new RawDataFile(Instant.EPOCH).setData(buffer, buffer.length, pool);
+
+        // Act
+        byte[] result = rawDataFile.getData();
+        rawDataFile.clear();
+
+        // Assert
+        assertThat(result).isSameAs(buffer);
+        assertThat(pool.rent(1024)).isNotSameAs(result);
+    }
+
+    @Test
+    public void testGetData_pooledBufferLongerThanData_returnsCopyAndReleasesBuffer() {
+        // Arrange
+        BufferPool pool = new BufferPool(1024 * 1024);
+        byte[] buffer = pool.rent(1024);
+        buffer[0] = 42;
+        RawDataFile rawDataFile = new RawDataFile(Instant.EPOCH).setData(buffer, 10, pool);
+
+        // Act
+        byte[] result = rawDataFile.getData();
+        rawDataFile.clear();
+
+        // Assert
+        assertThat(result).hasSize(10)
+                          .isNotSameAs(buffer)
+                          .startsWith((byte) 42);
+        assertThat(pool.rent(1024)).isSameAs(buffer);
+    }
+}
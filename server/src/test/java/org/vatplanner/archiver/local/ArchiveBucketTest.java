@@ -0,0 +1,106 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ArchiveBucketTest {
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-02T00:00:00, 6, 2021-01-02T00:00",
+        "2021-01-02T05:59:59, 6, 2021-01-02T00:00",
+        "2021-01-02T06:00:00, 6, 2021-01-02T06:00",
+        "2021-01-02T23:30:00, 1, 2021-01-02T23:00",
+        "2021-01-02T23:30:00, 24, 2021-01-02T00:00",
+    })
+    public void testContaining_validHours_returnsBucketStartingAtMultipleOfHours(String time, int hours, String expectedStart) {
+        // Arrange (nothing to do)
+
+        // Act
+        ArchiveBucket result = ArchiveBucket.containing(LocalDateTime.parse(time), hours);
+
+        // Assert
+        assertThat(result.getStart()).isEqualTo(LocalDateTime.parse(expectedStart));
+        assertThat(result.getHours()).isEqualTo(hours);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, -1, 5, 7, 48 })
+    public void testContaining_hoursNotDividingDay_throwsIllegalArgumentException(int hours) {
+        // Arrange (nothing to do)
+
+        // Act
+        Throwable thrown = catchThrowable(() -> ArchiveBucket.containing(LocalDateTime.of(2021, 1, 2, 0, 0), hours));
+
+        // Assert
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testNext_lastBucketOfDay_returnsFirstBucketOfNextDay() {
+        // Arrange
+        ArchiveBucket bucket = new ArchiveBucket(LocalDateTime.of(2021, 1, 31, 18, 0), 6);
+
+        // Act
+        ArchiveBucket result = bucket.next();
+
+        // Assert
+        assertThat(result).isEqualTo(new ArchiveBucket(LocalDateTime.of(2021, 2, 1, 0, 0), 6));
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-02T00:00, 24, 20210102.tar.xz",
+        "2021-01-02T00:00, 6, 20210102T00.tar.xz",
+        "2021-01-02T18:00, 6, 20210102T18.tar.xz",
+        "2021-01-02T07:00, 1, 20210102T07.tar.xz",
+    })
+    public void testGetArchiveFileName_anyBucket_matchesArchivePattern(String start, int hours, String expectedName) {
+        // Arrange
+        ArchiveBucket bucket = new ArchiveBucket(LocalDateTime.parse(start), hours);
+
+        // Act
+        String result = bucket.getArchiveFileName(".tar.xz");
+
+        // Assert
+        assertThat(result).isEqualTo(expectedName);
+        assertThat(Loader.PATTERN_ARCHIVE.matcher(result).matches()).isTrue();
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-02T00:00, 24",
+        "2021-01-02T00:00, 6",
+        "2021-01-02T13:00, 1",
+    })
+    public void testParse_encoded_returnsEqualBucket(String start, int hours) {
+        // Arrange
+        ArchiveBucket bucket = new ArchiveBucket(LocalDateTime.parse(start), hours);
+
+        // Act
+        ArchiveBucket result = ArchiveBucket.parse(bucket.encode());
+
+        // Assert
+        assertThat(result).isEqualTo(bucket);
+    }
+
+    @Test
+    public void testEncode_daily_returnsDateOnly() {
+        // Arrange
+        ArchiveBucket bucket = ArchiveBucket.ofDay(LocalDate.of(2021, 1, 2));
+
+        // Act
+        String result = bucket.encode();
+
+        // Assert
+        assertThat(result).isEqualTo("2021-01-02");
+    }
+}
@@ -0,0 +1,314 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArchiveCatalogTest {
+
+    private static final long DAY_1 = Instant.parse("2021-01-01T00:00:00Z").getEpochSecond();
+    private static final long DAY_2 = Instant.parse("2021-01-02T00:00:00Z").getEpochSecond();
+
+    @TempDir
+    File directory;
+
+    private File createArchive(String path) throws IOException {
+        File file = new File(directory, "archive/" + path);
+        file.getParentFile().mkdirs();
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(new byte[] { 1, 2, 3 });
+        }
+        return file;
+    }
+
+    private ArchiveIndex createIndex(File archiveFile, String formatName, long firstFetchEpochSecond) {
+        ArchiveIndex.Builder builder = new ArchiveIndex.Builder(archiveFile);
+        for (int i = 0; i < 5; i++) {
+            long fetchEpochSecond = firstFetchEpochSecond + i * 60;
+            builder.add(formatName, fetchEpochSecond, FetchedFileType.RAW_VATSIM_DATA_FILE, 1000 + i, i * 2048L);
+            builder.add(formatName, fetchEpochSecond, FetchedFileType.META_DATA, 100, i * 2048L + 1536);
+        }
+        return builder.build();
+    }
+
+    private ArchiveCatalog open() {
+        return new ArchiveCatalog(new File(directory, "catalog.bin"), new File(directory, "archive"), 24);
+    }
+
+    @Test
+    public void testGet_reopened_returnsEqualIndex() throws IOException {
+        // Arrange
+        File archiveFile = createArchive("2021/01/20210101.tar.xz");
+        ArchiveIndex index = createIndex(archiveFile, "json3", DAY_1);
+        open().put(archiveFile, index);
+
+        // Act
+        ArchiveIndex result = open().get(archiveFile);
+
+        // Assert
+        assertThat(result).isNotNull();
+        assertThat(result.isValidFor(archiveFile)).isTrue();
+        assertThat(result.size()).isEqualTo(index.size());
+        for (int i = 0; i < index.size(); i++) {
+            assertThat(result.getFormatName(i)).isEqualTo(index.getFormatName(i));
+            assertThat(result.getFetchEpochSecond(i)).isEqualTo(index.getFetchEpochSecond(i));
+            assertThat(result.getFileType(i)).isEqualTo(index.getFileType(i));
+            assertThat(result.getSize(i)).isEqualTo(index.getSize(i));
+            assertThat(result.getHeaderOffset(i)).isEqualTo(index.getHeaderOffset(i));
+        }
+    }
+
+    @Test
+    public void testGet_reopenedDeltaArchive_returnsSnapshotKindsAndChainStarts() throws IOException {
+        // Arrange
+        File archiveFile = createArchive("2021/01/20210101.tar.xz");
+        ArchiveIndex.Builder builder = new ArchiveIndex.Builder(archiveFile);
+        SnapshotDelta.Kind[] kinds = {
+            SnapshotDelta.Kind.KEYFRAME,
+            SnapshotDelta.Kind.DELTA,
+            SnapshotDelta.Kind.DELTA,
+            SnapshotDelta.Kind.KEYFRAME,
+            SnapshotDelta.Kind.DELTA //
+        };
+        for (int i = 0; i < kinds.length; i++) {
+            builder.add("json3", DAY_1 + i * 60, FetchedFileType.RAW_VATSIM_DATA_FILE, 1000, i * 2048L, kinds[i]);
+        }
+        open().put(archiveFile, builder.build());
+
+        // Act
+        ArchiveIndex result = open().get(archiveFile);
+
+        // Assert
+        assertThat(result).isNotNull();
+        for (int i = 0; i < kinds.length; i++) {
+            assertThat(result.getSnapshotKind(i)).isEqualTo(kinds[i]);
+        }
+        assertThat(result.findChainStart(2)).isEqualTo(0);
+        assertThat(result.findChainStart(4)).isEqualTo(3);
+    }
+
+    @Test
+    public void testGet_archiveModified_returnsNull() throws IOException {
+        // Arrange
+        File archiveFile = createArchive("2021/01/20210101.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile, createIndex(archiveFile, "json3", DAY_1));
+        try (OutputStream os = new FileOutputStream(archiveFile, true)) {
+            os.write(4);
+        }
+
+        // Act
+        ArchiveIndex result = catalog.get(archiveFile);
+
+        // Assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void testCountDataFiles_multipleArchives_countsOnlyWantedDataFilesInRange() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/json3/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/json3/20210102.tar.xz");
+        File archiveFile3 = createArchive("2021/01/legacy/20210102.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2));
+        catalog.put(archiveFile1, createIndex(archiveFile1, "json3", DAY_1));
+        catalog.put(archiveFile3, createIndex(archiveFile3, "legacy", DAY_2));
+
+        // Act
+        int all = catalog.countDataFiles(Instant.ofEpochSecond(DAY_1), Instant.ofEpochSecond(DAY_2 + 3600),
+            Collections.emptySet());
+        int partial = catalog.countDataFiles(Instant.ofEpochSecond(DAY_1 + 60, 1), Instant.ofEpochSecond(DAY_2 + 60),
+            new HashSet<>(Arrays.asList("json3")));
+
+        // Assert
+        assertThat(all).isEqualTo(15);
+        assertThat(partial).isEqualTo(3 + 2);
+    }
+
+    @Test
+    public void testFindNearestDataFile_betweenArchives_returnsClosestEarlierOnTie() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/20210102.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile1, createIndex(archiveFile1, "json3", DAY_2 - 3600));
+        catalog.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2 + 3480));
+
+        // Act
+        ArchiveCatalog.Location result = catalog.findNearestDataFile("json3", Instant.ofEpochSecond(DAY_2 + 60));
+
+        // Assert
+        assertThat(result.getArchiveFile().getCanonicalFile()).isEqualTo(archiveFile1.getCanonicalFile());
+        assertThat(result.getFetchTime()).isEqualTo(Instant.ofEpochSecond(DAY_2 - 3600 + 4 * 60));
+        assertThat(result.getEntryIndex()).isEqualTo(8);
+    }
+
+    @Test
+    public void testFindBucket_reopenedWithGap_returnsContainingOrNextCatalogedBucket() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/json3/20210104.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile1, createIndex(archiveFile1, "json3", DAY_1));
+        catalog.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_1 + 3 * 86400));
+        ArchiveCatalog reopened = open();
+
+        // Act
+        ArchiveBucket containing = reopened.findBucket(LocalDateTime.parse("2021-01-01T12:00:00"));
+        ArchiveBucket next = reopened.findBucket(LocalDateTime.parse("2021-01-02T00:00:00"));
+        ArchiveBucket none = reopened.findBucket(LocalDateTime.parse("2021-01-05T00:00:00"));
+
+        // Assert
+        assertThat(containing).isEqualTo(ArchiveBucket.ofDay(LocalDate.of(2021, 1, 1)));
+        assertThat(next).isEqualTo(ArchiveBucket.ofDay(LocalDate.of(2021, 1, 4)));
+        assertThat(none).isNull();
+    }
+
+    @Test
+    public void testGetArchives_perFormatArchives_returnsWantedFormatsOrderedByName() throws IOException {
+        // Arrange
+        File legacyFile = createArchive("2021/01/legacy/20210101.tar.xz");
+        File jsonFile = createArchive("2021/01/json3/20210101.tar.xz");
+        File otherFile = createArchive("2021/01/other/20210101.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(legacyFile, createIndex(legacyFile, "legacy", DAY_1));
+        catalog.put(jsonFile, createIndex(jsonFile, "json3", DAY_1));
+        catalog.put(otherFile, createIndex(otherFile, "other", DAY_1));
+        ArchiveBucket bucket = ArchiveBucket.ofDay(LocalDate.of(2021, 1, 1));
+
+        // Act
+        List<TransitionedArchive> result = catalog.getArchives(bucket, new HashSet<>(Arrays.asList("legacy", "json3")));
+
+        // Assert
+        assertThat(result.stream().map(TransitionedArchive::getFormatName).collect(Collectors.toList()))
+            .containsExactly("json3", "legacy");
+        assertThat(result.get(0).getFile()).isEqualTo(jsonFile);
+        assertThat(result.get(0).getBucket()).isEqualTo(bucket);
+    }
+
+    @Test
+    public void testGetArchives_combinedAndPerFormatArchives_returnsOnlyCombinedArchive() throws IOException {
+        // Arrange
+        File jsonFile = createArchive("2021/01/json3/20210101.tar.xz");
+        File combinedFile = createArchive("2021/01/20210101.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(jsonFile, createIndex(jsonFile, "json3", DAY_1));
+        catalog.put(combinedFile, createIndex(combinedFile, "json3", DAY_1));
+
+        // Act
+        List<TransitionedArchive> result = catalog.getArchives(ArchiveBucket.ofDay(LocalDate.of(2021, 1, 1)),
+            Collections.singleton("json3"));
+
+        // Assert
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).getFormatName()).isNull();
+        assertThat(result.get(0).getFile()).isEqualTo(combinedFile);
+    }
+
+    @Test
+    public void testRetainOnly_reopened_removedArchivesAreGone() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/20210102.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile1, createIndex(archiveFile1, "json3", DAY_1));
+        catalog.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2));
+        catalog.retainOnly(Arrays.asList(archiveFile2));
+        catalog.markSynchronized(Instant.ofEpochSecond(DAY_2 + 86400));
+
+        // Act
+        ArchiveCatalog reopened = open();
+
+        // Assert
+        assertThat(reopened.size()).isEqualTo(1);
+        assertThat(reopened.get(archiveFile1)).isNull();
+        assertThat(reopened.get(archiveFile2)).isNotNull();
+        assertThat(reopened.getLastSynchronized()).isEqualTo(Instant.ofEpochSecond(DAY_2 + 86400));
+    }
+
+    @Test
+    public void testOpen_incompleteLastRecord_keepsPreviousRecords() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/20210102.tar.xz");
+        open().put(archiveFile1, createIndex(archiveFile1, "json3", DAY_1));
+        File catalogFile = new File(directory, "catalog.bin");
+        long validLength = catalogFile.length();
+        open().put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2));
+        try (RandomAccessFile raf = new RandomAccessFile(catalogFile, "rw")) {
+            raf.setLength(raf.length() - 3);
+        }
+
+        // Act
+        ArchiveCatalog reopened = open();
+        reopened.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2));
+
+        // Assert
+        assertThat(reopened.get(archiveFile1)).isNotNull();
+        assertThat(open().get(archiveFile2)).isNotNull();
+        assertThat(catalogFile.length()).isGreaterThan(validLength);
+    }
+
+    @Test
+    public void testPut_manyUpdates_compactsWithoutLosingArchives() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/20210102.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile1, createIndex(archiveFile1, "json3", DAY_1));
+        File catalogFile = new File(directory, "catalog.bin");
+        long singleArchiveLength = catalogFile.length();
+
+        // Act
+        for (int i = 0; i < 200; i++) {
+            archiveFile2.setLastModified((1600000000L + i) * 1000);
+            catalog.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2));
+        }
+
+        // Assert
+        assertThat(catalogFile.length()).isLessThan(singleArchiveLength * 100);
+        ArchiveCatalog reopened = open();
+        assertThat(reopened.size()).isEqualTo(2);
+        assertThat(reopened.get(archiveFile1)).isNotNull();
+        assertThat(reopened.get(archiveFile2)).isNotNull();
+    }
+
+    @Test
+    public void testGet_afterCompaction_readsMovedRecord() throws IOException {
+        // Arrange
+        File archiveFile1 = createArchive("2021/01/20210101.tar.xz");
+        File archiveFile2 = createArchive("2021/01/20210102.tar.xz");
+        ArchiveCatalog catalog = open();
+        catalog.put(archiveFile2, createIndex(archiveFile2, "json3", DAY_2));
+        for (int i = 0; i < 100; i++) {
+            archiveFile1.setLastModified((1600000000L + i) * 1000);
+            catalog.put(archiveFile1, createIndex(archiveFile1, "json3", DAY_1));
+        }
+
+        // Act
+        ArchiveIndex result1 = catalog.get(archiveFile1);
+        ArchiveIndex result2 = catalog.get(archiveFile2);
+
+        // Assert
+        assertThat(result1).isNotNull();
+        assertThat(result1.getFetchEpochSecond(0)).isEqualTo(DAY_1);
+        assertThat(result2).isNotNull();
+        assertThat(result2.getFetchEpochSecond(0)).isEqualTo(DAY_2);
+    }
+}
@@ -0,0 +1,189 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+public class ArchivePrefetcherTest {
+
+    private static final Executor DIRECT = Runnable::run;
+
+    @TempDir
+    File directory;
+
+    private File createFile(String name, int length) throws IOException {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) i;
+        }
+
+        File file = new File(directory, name);
+        Files.write(file.toPath(), data);
+        return file;
+    }
+
+    @Test
+    public void testGet_prefetched_returnsFileContent() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, DIRECT);
+        File file = createFile("a", 100);
+        prefetcher.prefetch(file);
+
+        // Act
+        byte[] result = prefetcher.get(file);
+
+        // Assert
+        assertThat(result).isEqualTo(Files.readAllBytes(file.toPath()));
+        assertThat(prefetcher.getHits()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGet_notPrefetched_returnsNull() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, DIRECT);
+        File file = createFile("a", 100);
+
+        // Act
+        byte[] result = prefetcher.get(file);
+
+        // Assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void testGet_released_returnsNull() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, DIRECT);
+        File file = createFile("a", 100);
+        prefetcher.prefetch(file);
+        prefetcher.release(file);
+
+        // Act
+        byte[] result = prefetcher.get(file);
+
+        // Assert
+        assertThat(result).isNull();
+        assertThat(prefetcher.getHeldBytes()).isZero();
+        assertThat(prefetcher.getUnused()).isEqualTo(1);
+    }
+
+    @Test
+    public void testGet_fileChangedAfterPrefetch_returnsNull() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, DIRECT);
+        File file = createFile("a", 100);
+        prefetcher.prefetch(file);
+        createFile("a", 120);
+
+        // Act
+        byte[] result = prefetcher.get(file);
+
+        // Assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void testGet_readNotStarted_returnsNullAndCancelsRead() throws IOException {
+        // Arrange
+        List<Runnable> queue = new ArrayList<>();
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, queue::add);
+        File file = createFile("a", 100);
+        prefetcher.prefetch(file);
+
+        // Act
+        byte[] result = prefetcher.get(file);
+        queue.forEach(Runnable::run);
+
+        // Assert
+        assertThat(result).isNull();
+        assertThat(prefetcher.get(file)).isNull();
+    }
+
+    @Test
+    public void testGet_readNotStartedPrefetchedTwice_returnsNullAndKeepsRead() throws IOException {
+        // Arrange
+        List<Runnable> queue = new ArrayList<>();
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, queue::add);
+        File file = createFile("a", 100);
+        prefetcher.prefetch(file);
+        prefetcher.prefetch(file);
+
+        // Act
+        byte[] result = prefetcher.get(file);
+        prefetcher.release(file);
+        queue.forEach(Runnable::run);
+
+        // Assert
+        assertThat(result).isNull();
+        assertThat(prefetcher.get(file)).isEqualTo(Files.readAllBytes(file.toPath()));
+    }
+
+    @Test
+    public void testPrefetch_exceedingBudget_returnsFalse() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(150, DIRECT);
+        File first = createFile("a", 100);
+        File second = createFile("b", 100);
+        prefetcher.prefetch(first);
+
+        // Act
+        boolean result = prefetcher.prefetch(second);
+
+        // Assert
+        assertThat(result).isFalse();
+        assertThat(prefetcher.getHeldBytes()).isEqualTo(100);
+    }
+
+    @Test
+    public void testPrefetch_disabled_returnsFalse() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(0, DIRECT);
+        File file = createFile("a", 100);
+
+        // Act
+        boolean result = prefetcher.prefetch(file);
+
+        // Assert
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    public void testPrefetch_missingFile_returnsFalse() {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, DIRECT);
+
+        // Act
+        boolean result = prefetcher.prefetch(new File(directory, "missing"));
+
+        // Assert
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    public void testRelease_prefetchedTwice_keepsDataUntilReleasedTwice() throws IOException {
+        // Arrange
+        ArchivePrefetcher prefetcher = new ArchivePrefetcher(1000, DIRECT);
+        File file = createFile("a", 100);
+        prefetcher.prefetch(file);
+        prefetcher.prefetch(file);
+
+        // Act
+        prefetcher.release(file);
+        byte[] resultAfterFirstRelease = prefetcher.get(file);
+        prefetcher.release(file);
+        byte[] resultAfterSecondRelease = prefetcher.get(file);
+
+        // Assert
+        assertThat(resultAfterFirstRelease).hasSize(100);
+        assertThat(resultAfterSecondRelease).isNull();
+        assertThat(prefetcher.getHeldBytes()).isZero();
+    }
+}
@@ -0,0 +1,150 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+public class ArchiveSplitterTest {
+
+    @TempDir
+    File directory;
+
+    private File createArchive(File file, String... entryNames) throws IOException {
+        file.getParentFile().mkdirs();
+
+        try (
+            OutputStream os = new FileOutputStream(file);
+            TarArchiveOutputStream taos = new TarArchiveOutputStream(new XZOutputStream(os, new LZMA2Options())) //
+        ) {
+            for (String entryName : entryNames) {
+                byte[] data = entryName.getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(entryName);
+                entry.setSize(data.length);
+                taos.putArchiveEntry(entry);
+                taos.write(data);
+                taos.closeArchiveEntry();
+            }
+        }
+
+        return file;
+    }
+
+    private List<String> readEntries(File file) throws IOException {
+        List<String> entries = new ArrayList<>();
+        try (
+            InputStream is = new FileInputStream(file);
+            TarArchiveInputStream tais = new TarArchiveInputStream(new XZInputStream(is)) //
+        ) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                String content = new String(IOUtils.toByteArray(tais), StandardCharsets.UTF_8);
+                assertThat(content).isEqualTo(entry.getName());
+                entries.add(entry.getName());
+            }
+        }
+        return entries;
+    }
+
+    @Test
+    public void testSplit_multipleFormats_writesArchivePerFormatInOriginalOrder() throws IOException {
+        // Arrange
+        File archiveFile = createArchive(
+            new File(directory, "2021/01/20210102.tar.xz"),
+            "json_v3/20210102T000015Z_vatsim-data.json",
+            "legacy/20210102T000010Z_vatsim-data.txt",
+            "json_v3/20210102T000005Z_vatsim-data.json",
+            "20210102T000001Z_vatsim-data.txt" //
+        );
+        ArchiveSplitter splitter = new ArchiveSplitter(ArrayCache.getDummyCache());
+
+        // Act
+        List<File> result = splitter.split(archiveFile);
+
+        // Assert
+        assertThat(result).containsExactly(
+            new File(directory, "2021/01/json_v3/20210102.tar.xz"),
+            new File(directory, "2021/01/legacy/20210102.tar.xz") //
+        );
+        assertThat(readEntries(result.get(0))).containsExactly(
+            "json_v3/20210102T000015Z_vatsim-data.json",
+            "json_v3/20210102T000005Z_vatsim-data.json" //
+        );
+        assertThat(readEntries(result.get(1))).containsExactly(
+            "legacy/20210102T000010Z_vatsim-data.txt",
+            "20210102T000001Z_vatsim-data.txt" //
+        );
+    }
+
+    @Test
+    public void testSplit_always_keepsOriginalAndRemovesTemporaryFiles() throws IOException {
+        // Arrange
+        File archiveFile = createArchive(
+            new File(directory, "2021/01/20210102.tar.xz"),
+            "json_v3/20210102T000015Z_vatsim-data.json" //
+        );
+        ArchiveSplitter splitter = new ArchiveSplitter(ArrayCache.getDummyCache());
+
+        // Act
+        splitter.split(archiveFile);
+
+        // Assert
+        assertThat(archiveFile).exists();
+        assertThat(new File(directory, "2021/01/json_v3").list()).containsExactly("20210102.tar.xz");
+    }
+
+    @Test
+    public void testFindCombinedArchives_mixedLayouts_returnsOnlyCombinedArchives() throws IOException {
+        // Arrange
+        createArchive(new File(directory, "2021/01/20210102.tar.xz"), "legacy/20210102T000010Z_vatsim-data.txt");
+        createArchive(new File(directory, "2021/01/20210101.tar.xz"), "legacy/20210101T000010Z_vatsim-data.txt");
+        createArchive(new File(directory, "2021/01/legacy/20210103.tar.xz"), "legacy/20210103T000010Z_vatsim-data.txt");
+        createArchive(new File(directory, "2021/xx/20210104.tar.xz"), "legacy/20210104T000010Z_vatsim-data.txt");
+
+        // Act
+        List<File> result = ArchiveSplitter.findCombinedArchives(directory);
+
+        // Assert
+        assertThat(result).containsExactly(
+            new File(directory, "2021/01/20210101.tar.xz"),
+            new File(directory, "2021/01/20210102.tar.xz") //
+        );
+    }
+
+    @Test
+    public void testFindArchives_mixedLayouts_returnsAllArchivesOrderedByPath() throws IOException {
+        // Arrange
+        createArchive(new File(directory, "2021/01/legacy/20210103.tar.xz"), "legacy/20210103T000010Z_vatsim-data.txt");
+        createArchive(new File(directory, "2021/01/20210102.tar.xz"), "legacy/20210102T000010Z_vatsim-data.txt");
+        createArchive(new File(directory, "2021/01/json_v3/20210103T06.tar.xz"), "json_v3/20210103T060005Z_vatsim-data.json");
+        createArchive(new File(directory, "2021/xx/20210104.tar.xz"), "legacy/20210104T000010Z_vatsim-data.txt");
+
+        // Act
+        List<File> result = ArchiveSplitter.findArchives(directory);
+
+        // Assert
+        assertThat(result).containsExactly(
+            new File(directory, "2021/01/20210102.tar.xz"),
+            new File(directory, "2021/01/json_v3/20210103T06.tar.xz"),
+            new File(directory, "2021/01/legacy/20210103.tar.xz") //
+        );
+    }
+}
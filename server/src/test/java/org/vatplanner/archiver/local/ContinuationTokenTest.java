@@ -0,0 +1,139 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class ContinuationTokenTest {
+    private static final Instant LAST_FETCH_TIME = Instant.parse("2021-01-02T12:34:56Z");
+    private static final LocalDate ARCHIVE_DATE = LocalDate.of(2021, 1, 2);
+
+    @Test
+    public void testDecode_encodedWithHint_returnsEqualPosition() {
+        // Arrange
+        String encoded = new ContinuationToken(LAST_FETCH_TIME, "json_v3", ARCHIVE_DATE, 12345, 4096).encode();
+
+        // Act
+        ContinuationToken result = ContinuationToken.decode(encoded);
+
+        // Assert
+        assertThat(result).extracting(ContinuationToken::getLastFetchTime, ContinuationToken::getLastFormatName)
+                          .containsExactly(LAST_FETCH_TIME, "json_v3");
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, 12345)).isEqualTo(4096);
+    }
+
+    @Test
+    public void testDecode_encodedWithoutHint_hasNoArchiveOffset() {
+        // Arrange
+        String encoded = new ContinuationToken(LAST_FETCH_TIME, "legacy").encode();
+
+        // Act
+        ContinuationToken result = ContinuationToken.decode(encoded);
+
+        // Assert
+        assertThat(result.getLastFormatName()).isEqualTo("legacy");
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, -1)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDecode_encodedWithFormatArchiveHint_returnsOffsetOnlyForThatFormat() {
+        // Arrange
+        String encoded = new ContinuationToken(LAST_FETCH_TIME, "json_v3", ARCHIVE_DATE, "json_v3", 12345, 4096)
+            .encode();
+
+        // Act
+        ContinuationToken result = ContinuationToken.decode(encoded);
+
+        // Assert
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, "json_v3", 12345)).isEqualTo(4096);
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, "legacy", 12345)).isEqualTo(0);
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, 12345)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDecode_encodedWithSubDailyArchiveHint_returnsOffsetOnlyForThatBucket() {
+        // Arrange
+        ArchiveBucket bucket = new ArchiveBucket(LocalDateTime.of(2021, 1, 2, 12, 0), 6);
+        String encoded = new ContinuationToken(LAST_FETCH_TIME, "json_v3", bucket, null, 12345, 4096).encode();
+
+        // Act
+        ContinuationToken result = ContinuationToken.decode(encoded);
+
+        // Assert
+        assertThat(result.getArchiveOffset(bucket, null, 12345)).isEqualTo(4096);
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, 12345)).isEqualTo(0);
+    }
+
+    @Test
+    public void testDecode_previousVersion_returnsHintForCombinedArchive() {
+        // Arrange
+        String encoded = "djF8MTYwOTU5MDg5Nnxqc29uX3YzfDIwMjEtMDEtMDJ8MTIzNDV8NDA5Ng"; // v1|1609590896|json_v3|2021-01-02|12345|4096
+
+        // Act
+        ContinuationToken result = ContinuationToken.decode(encoded);
+
+        // Assert
+        assertThat(result.getLastFormatName()).isEqualTo("json_v3");
+        assertThat(result.getArchiveOffset(ARCHIVE_DATE, 12345)).isEqualTo(4096);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-03, 12345", // other archive
+        "2021-01-02, 12346", // archive has been replaced
+    })
+    public void testGetArchiveOffset_notMatchingHint_returnsZero(String date, long archiveLength) {
+        // Arrange
+        ContinuationToken token = new ContinuationToken(LAST_FETCH_TIME, "legacy", ARCHIVE_DATE, 12345, 4096);
+
+        // Act
+        long result = token.getArchiveOffset(LocalDate.parse(date), archiveLength);
+
+        // Assert
+        assertThat(result).isEqualTo(0);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-02T12:34:55Z, zzz, true",
+        "2021-01-02T12:34:56Z, aaa, true",
+        "2021-01-02T12:34:56Z, json_v3, true",
+        "2021-01-02T12:34:56Z, legacy, false",
+        "2021-01-02T12:34:57Z, aaa, false",
+    })
+    public void testIsPassed_returnsExpectedResult(String fetchTime, String formatName, boolean expectedResult) {
+        // Arrange
+        ContinuationToken token = new ContinuationToken(LAST_FETCH_TIME, "json_v3");
+
+        // Act
+        boolean result = token.isPassed(Instant.parse(fetchTime), formatName);
+
+        // Assert
+        assertThat(result).isEqualTo(expectedResult);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "not base64!",
+        "djJ8MTYwOTU5MDg5NnxsZWdhY3l8LXwtMXwtMQ", // v2|1609590896|legacy|-|-1|-1
+        "djF8MTYwOTU5MDg5NnxMRUdBQ1l8LXwtMXwtMQ", // v1|1609590896|LEGACY|-|-1|-1
+        "djF8YWJjfGxlZ2FjeXwtfC0xfC0x", // v1|abc|legacy|-|-1|-1
+        "djF8MTYwOTU5MDg5NnxsZWdhY3k", // v1|1609590896|legacy
+    })
+    public void testDecode_malformed_throwsIllegalArgumentException(String encoded) {
+        // Act
+        Throwable thrown = catchThrowable(() -> ContinuationToken.decode(encoded));
+
+        // Assert
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,71 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+import org.vatplanner.archiver.common.DataFileStatistics;
+
+public class DataFileStatisticsCollectorTest {
+    @Test
+    public void testGetStatistics_dataAndMetaDataOfSameFetch_countsOneFileWithDataSize() {
+        // Arrange
+        DataFileStatisticsCollector collector = new DataFileStatisticsCollector();
+        Instant fetchTime = Instant.parse("2021-01-02T11:10:09Z");
+        collector.add("legacy", fetchTime, FetchedFileType.META_DATA, 100);
+        collector.add("legacy", fetchTime, FetchedFileType.RAW_VATSIM_DATA_FILE, 5000);
+
+        // Act
+        List<DataFileStatistics> result = collector.getStatistics();
+
+        // Assert
+        assertThat(result).hasSize(1);
+        DataFileStatistics statistics = result.get(0);
+        assertThat(statistics.getNumberOfFiles()).isEqualTo(1);
+        assertThat(statistics.getTotalDataSize()).isEqualTo(5000);
+    }
+
+    @Test
+    public void testGetStatistics_multipleFetches_returnsEarliestAndLatestFetchTime() {
+        // Arrange
+        DataFileStatisticsCollector collector = new DataFileStatisticsCollector();
+        collector.add("legacy", Instant.parse("2021-01-02T12:00:00Z"), FetchedFileType.RAW_VATSIM_DATA_FILE, 1);
+        collector.add("legacy", Instant.parse("2021-01-02T00:01:00Z"), FetchedFileType.RAW_VATSIM_DATA_FILE, 1);
+        collector.add("legacy", Instant.parse("2021-01-02T23:59:00Z"), FetchedFileType.RAW_VATSIM_DATA_FILE, 1);
+
+        // Act
+        List<DataFileStatistics> result = collector.getStatistics();
+
+        // Assert
+        DataFileStatistics statistics = result.get(0);
+        assertThat(statistics.getNumberOfFiles()).isEqualTo(3);
+        assertThat(statistics.getTotalDataSize()).isEqualTo(3);
+        assertThat(statistics.getEarliestFetchTime()).isEqualTo(Instant.parse("2021-01-02T00:01:00Z"));
+        assertThat(statistics.getLatestFetchTime()).isEqualTo(Instant.parse("2021-01-02T23:59:00Z"));
+    }
+
+    @Test
+    public void testGetStatistics_multipleDaysAndFormats_returnsSortedByDateAndFormat() {
+        // Arrange
+        DataFileStatisticsCollector collector = new DataFileStatisticsCollector();
+        collector.add("legacy", Instant.parse("2021-01-03T00:00:00Z"), FetchedFileType.RAW_VATSIM_DATA_FILE, 1);
+        collector.add("legacy", Instant.parse("2021-01-02T23:59:59Z"), FetchedFileType.RAW_VATSIM_DATA_FILE, 1);
+        collector.add("json_v3", Instant.parse("2021-01-03T00:00:00Z"), FetchedFileType.RAW_VATSIM_DATA_FILE, 1);
+
+        // Act
+        List<DataFileStatistics> result = collector.getStatistics();
+
+        // Assert
+        assertThat(result).extracting(DataFileStatistics::getDate)
+                          .containsExactly(
+                              LocalDate.of(2021, 1, 2),
+                              LocalDate.of(2021, 1, 3),
+                              LocalDate.of(2021, 1, 3) //
+                          );
+        assertThat(result).extracting(DataFileStatistics::getFormatName)
+                          .containsExactly("legacy", "json_v3", "legacy");
+    }
+}
@@ -0,0 +1,214 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveInputStream;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+import org.vatplanner.archiver.common.BufferPool;
+
+public class DeltaArchiveEncoderTest {
+
+    @TempDir
+    File directory;
+
+    private static String createContent(String formatName, int minute) {
+        StringBuilder sb = new StringBuilder("{\"general\": {\"format\": \"" + formatName + "\", \"minute\": " + minute
+            + "}, \"pilots\": [");
+        for (int i = 0; i < 20; i++) {
+            sb.append("{\"callsign\": \"ABC" + i + "\", \"altitude\": " + (i * 1000 + minute) + "}, ");
+        }
+        return sb.append("]}").toString();
+    }
+
+    private File createArchive(File file, Map<String, String> contentsByEntryName) throws IOException {
+        file.getParentFile().mkdirs();
+
+        try (
+            OutputStream os = new FileOutputStream(file);
+            TarArchiveOutputStream taos = new TarArchiveOutputStream(new XZOutputStream(os, new LZMA2Options())) //
+        ) {
+            for (Map.Entry<String, String> content : contentsByEntryName.entrySet()) {
+                byte[] data = content.getValue().getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(content.getKey());
+                entry.setSize(data.length);
+                taos.putArchiveEntry(entry);
+                taos.write(data);
+                taos.closeArchiveEntry();
+            }
+        }
+
+        return file;
+    }
+
+    private Map<String, String> createContents() {
+        Map<String, String> contents = new LinkedHashMap<>();
+        for (int minute = 0; minute < 10; minute++) {
+            for (String formatName : new String[] { "json_v3", "legacy" }) {
+                String prefix = String.format("%s/20210102T00%02d00Z_", formatName, minute);
+                contents.put(prefix + "meta.json", "{\"minute\": " + minute + "}");
+                contents.put(prefix + "vatsim-data.json", createContent(formatName, minute));
+            }
+        }
+        return contents;
+    }
+
+    private Map<String, SnapshotDelta.Kind> readKinds(File file) throws IOException {
+        Map<String, SnapshotDelta.Kind> kinds = new LinkedHashMap<>();
+        try (
+            InputStream is = new FileInputStream(file);
+            TarArchiveInputStream tais = new TarArchiveInputStream(new XZInputStream(is)) //
+        ) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                kinds.put(entry.getName(), SnapshotDelta.Kind.of(entry));
+            }
+        }
+        return kinds;
+    }
+
+    private Map<String, String> readReconstructed(File file) throws IOException {
+        Map<String, String> contents = new LinkedHashMap<>();
+        Map<String, SnapshotChain> chains = new HashMap<>();
+        try (
+            InputStream is = new FileInputStream(file);
+            TarArchiveInputStream tais = new TarArchiveInputStream(new XZInputStream(is)) //
+        ) {
+            TarArchiveEntry entry;
+            while ((entry = tais.getNextTarEntry()) != null) {
+                byte[] data = IOUtils.toByteArray(tais);
+                SnapshotDelta.Kind kind = SnapshotDelta.Kind.of(entry);
+                if (kind == SnapshotDelta.Kind.PLAIN) {
+                    contents.put(entry.getName(), new String(data, StandardCharsets.UTF_8));
+                    continue;
+                }
+
+                SnapshotChain chain = chains.computeIfAbsent(
+                    Loader.getArchiveEntryDataFileFormat(entry.getName()),
+                    x -> new SnapshotChain(new BufferPool(0)) //
+                );
+                chain.advance(kind, data, data.length);
+                assertThat(chain.getSnapshotLength()).isEqualTo(SnapshotDelta.getReconstructedSize(entry));
+                contents.put(
+                    entry.getName(),
+                    new String(chain.getSnapshot(), 0, chain.getSnapshotLength(), StandardCharsets.UTF_8) //
+                );
+            }
+        }
+        return contents;
+    }
+
+    @Test
+    public void testEncode_multipleFormats_reconstructsOriginalContentInOriginalOrder() throws IOException {
+        // Arrange
+        Map<String, String> contents = createContents();
+        File archiveFile = createArchive(new File(directory, "2021/01/20210102.tar.xz"), contents);
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 4);
+
+        // Act
+        encoder.encode(archiveFile);
+
+        // Assert
+        Map<String, String> result = readReconstructed(archiveFile);
+        assertThat(new ArrayList<>(result.keySet())).containsExactlyElementsOf(contents.keySet());
+        assertThat(result).isEqualTo(contents);
+    }
+
+    @Test
+    public void testEncode_keyframeInterval_storesKeyframeEveryIntervalPerFormat() throws IOException {
+        // Arrange
+        File archiveFile = createArchive(new File(directory, "2021/01/20210102.tar.xz"), createContents());
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 4);
+
+        // Act
+        encoder.encode(archiveFile);
+
+        // Assert
+        Map<String, SnapshotDelta.Kind> kinds = readKinds(archiveFile);
+        List<SnapshotDelta.Kind> legacyDataKinds = new ArrayList<>();
+        for (Map.Entry<String, SnapshotDelta.Kind> entry : kinds.entrySet()) {
+            if (entry.getKey().endsWith("_meta.json")) {
+                assertThat(entry.getValue()).isEqualTo(SnapshotDelta.Kind.PLAIN);
+            } else if (entry.getKey().startsWith("legacy/")) {
+                legacyDataKinds.add(entry.getValue());
+            }
+        }
+
+        assertThat(legacyDataKinds).containsExactly(
+            SnapshotDelta.Kind.KEYFRAME, SnapshotDelta.Kind.DELTA, SnapshotDelta.Kind.DELTA, SnapshotDelta.Kind.DELTA,
+            SnapshotDelta.Kind.KEYFRAME, SnapshotDelta.Kind.DELTA, SnapshotDelta.Kind.DELTA, SnapshotDelta.Kind.DELTA,
+            SnapshotDelta.Kind.KEYFRAME, SnapshotDelta.Kind.DELTA //
+        );
+    }
+
+    @Test
+    public void testEncode_decreasingFetchTime_startsNewChain() throws IOException {
+        // Arrange
+        Map<String, String> contents = new LinkedHashMap<>();
+        contents.put("legacy/20210102T000500Z_vatsim-data.txt", createContent("legacy", 5));
+        contents.put("legacy/20210102T000000Z_vatsim-data.txt", createContent("legacy", 0));
+        contents.put("legacy/20210102T001000Z_vatsim-data.txt", createContent("legacy", 10));
+        File archiveFile = createArchive(new File(directory, "2021/01/20210102.tar.xz"), contents);
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 30);
+
+        // Act
+        encoder.encode(archiveFile);
+
+        // Assert
+        assertThat(readKinds(archiveFile).values()).containsExactly(
+            SnapshotDelta.Kind.KEYFRAME, SnapshotDelta.Kind.KEYFRAME, SnapshotDelta.Kind.DELTA //
+        );
+        assertThat(readReconstructed(archiveFile)).isEqualTo(contents);
+    }
+
+    @Test
+    public void testEncode_intervalOneOnEncodedArchive_restoresRegularArchive() throws IOException {
+        // Arrange
+        Map<String, String> contents = createContents();
+        File archiveFile = createArchive(new File(directory, "2021/01/20210102.tar.xz"), contents);
+        new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 4).encode(archiveFile);
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 1);
+
+        // Act
+        encoder.encode(archiveFile);
+
+        // Assert
+        assertThat(encoder.isEncoded(archiveFile)).isFalse();
+        assertThat(readKinds(archiveFile).values()).containsOnly(SnapshotDelta.Kind.PLAIN);
+        assertThat(readReconstructed(archiveFile)).isEqualTo(contents);
+    }
+
+    @Test
+    public void testIsEncoded_encodedArchive_returnsTrue() throws IOException {
+        // Arrange
+        File archiveFile = createArchive(new File(directory, "2021/01/20210102.tar.xz"), createContents());
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 4);
+        encoder.encode(archiveFile);
+
+        // Act
+        boolean result = encoder.isEncoded(archiveFile);
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+}
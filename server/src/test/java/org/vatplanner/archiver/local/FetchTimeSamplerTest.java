@@ -0,0 +1,111 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.catchThrowable;
+
+import java.time.Duration;
+import java.time.Instant;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class FetchTimeSamplerTest {
+    private static final Instant ORIGIN = Instant.parse("2021-01-02T00:00:00Z");
+    private static final Duration INTERVAL = Duration.ofMinutes(15);
+
+    @Test
+    public void testOffer_firstInBucket_returnsTrue() {
+        // Arrange
+        FetchTimeSampler sampler = new FetchTimeSampler(ORIGIN, INTERVAL);
+
+        // Act
+        boolean result = sampler.offer("legacy", Instant.parse("2021-01-02T00:01:00Z"));
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    public void testOffer_laterInSameBucket_returnsFalse() {
+        // Arrange
+        FetchTimeSampler sampler = new FetchTimeSampler(ORIGIN, INTERVAL);
+        sampler.offer("legacy", Instant.parse("2021-01-02T00:01:00Z"));
+
+        // Act
+        boolean result = sampler.offer("legacy", Instant.parse("2021-01-02T00:14:59Z"));
+
+        // Assert
+        assertThat(result).isFalse();
+    }
+
+    @Test
+    public void testOffer_sameFetchTimeAgain_returnsTrue() {
+        // Arrange
+        FetchTimeSampler sampler = new FetchTimeSampler(ORIGIN, INTERVAL);
+        sampler.offer("legacy", Instant.parse("2021-01-02T00:01:00Z"));
+
+        // Act
+        boolean result = sampler.offer("legacy", Instant.parse("2021-01-02T00:01:00Z"));
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    public void testOffer_nextBucket_returnsTrue() {
+        // Arrange
+        FetchTimeSampler sampler = new FetchTimeSampler(ORIGIN, INTERVAL);
+        sampler.offer("legacy", Instant.parse("2021-01-02T00:01:00Z"));
+
+        // Act
+        boolean result = sampler.offer("legacy", Instant.parse("2021-01-02T00:15:00Z"));
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    public void testOffer_otherFormatInSameBucket_returnsTrue() {
+        // Arrange
+        FetchTimeSampler sampler = new FetchTimeSampler(ORIGIN, INTERVAL);
+        sampler.offer("legacy", Instant.parse("2021-01-02T00:01:00Z"));
+
+        // Act
+        boolean result = sampler.offer("json_v3", Instant.parse("2021-01-02T00:02:00Z"));
+
+        // Assert
+        assertThat(result).isTrue();
+    }
+
+    @Test
+    public void testIsSelected_earlierOfferedOutOfOrder_replacesPreviousSelection() {
+        // Arrange
+        FetchTimeSampler sampler = new FetchTimeSampler(ORIGIN, INTERVAL);
+        Instant later = Instant.parse("2021-01-02T00:10:00Z");
+        Instant earlier = Instant.parse("2021-01-02T00:05:00Z");
+        sampler.offer("legacy", later);
+        sampler.offer("legacy", earlier);
+
+        // Act
+        boolean laterSelected = sampler.isSelected("legacy", later);
+        boolean earlierSelected = sampler.isSelected("legacy", earlier);
+
+        // Assert
+        assertThat(laterSelected).isFalse();
+        assertThat(earlierSelected).isTrue();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "PT0S", "PT-1M", "PT0.0001S" })
+    public void testConstructor_tooShortInterval_throwsIllegalArgumentException(String interval) {
+        // Arrange
+        Duration duration = Duration.parse(interval);
+
+        // Act
+        Throwable thrown = catchThrowable(() -> new FetchTimeSampler(ORIGIN, duration));
+
+        // Assert
+        assertThat(thrown).isInstanceOf(IllegalArgumentException.class);
+    }
+}
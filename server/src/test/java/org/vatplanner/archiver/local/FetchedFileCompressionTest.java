@@ -0,0 +1,151 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.compress.compressors.lz4.FramedLZ4CompressorOutputStream;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.junit.jupiter.params.provider.MethodSource;
+
+public class FetchedFileCompressionTest {
+
+    private static final byte[] CONTENT = "{\"general\": {\"update\": \"20210102111009\"}, \"pilots\": []}"
+        .getBytes(StandardCharsets.UTF_8);
+
+    @TempDir
+    File directory;
+
+    private static byte[] compress(FetchedFileCompression compression, byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        OutputStream os;
+        switch (compression) {
+            case GZIP:
+                os = new GZIPOutputStream(baos);
+                break;
+
+            case LZ4:
+                // commons-compress does not write the optional content size
+                os = new FramedLZ4CompressorOutputStream(baos);
+                break;
+
+            default:
+                os = baos;
+        }
+
+        try {
+            os.write(data);
+        } finally {
+            os.close();
+        }
+
+        return baos.toByteArray();
+    }
+
+    public static Stream<Arguments> dataProviderFileNameAndExpectedCompression() {
+        return Stream.of(
+            Arguments.of("20210102T111009Z_vatsim-data.json", FetchedFileCompression.NONE), //
+            Arguments.of("20210102T111009Z_vatsim-data.json.gz", FetchedFileCompression.GZIP), //
+            Arguments.of("20210102T111009Z_meta.json.lz4", FetchedFileCompression.LZ4), //
+            Arguments.of("20210102T111009Z_meta.json.xz", FetchedFileCompression.NONE) //
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderFileNameAndExpectedCompression")
+    public void testByFileName_fileName_returnsExpectedCompression(String fileName, FetchedFileCompression expectedCompression) {
+        // Arrange (nothing to do)
+
+        // Act
+        FetchedFileCompression result = FetchedFileCompression.byFileName(fileName);
+
+        // Assert
+        assertThat(result).isSameAs(expectedCompression);
+    }
+
+    @ParameterizedTest
+    @EnumSource(FetchedFileCompression.class)
+    public void testDecompress_compressedData_returnsOriginalData(FetchedFileCompression compression) throws IOException {
+        // Arrange
+        byte[] compressed = compress(compression, CONTENT);
+
+        // Act
+        byte[] result;
+        try (InputStream is = compression.decompress(new ByteArrayInputStream(compressed))) {
+            result = IOUtils.toByteArray(is);
+        }
+
+        // Assert
+        assertThat(result).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void testGetDecompressedSize_gzipData_returnsSizeFromTrailer() throws IOException {
+        // Arrange
+        byte[] compressed = compress(FetchedFileCompression.GZIP, CONTENT);
+
+        // Act
+        long result = FetchedFileCompression.GZIP.getDecompressedSize(compressed, compressed.length);
+
+        // Assert
+        assertThat(result).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    public void testGetDecompressedSize_lz4WithContentSize_returnsSizeFromHeader() {
+        // Arrange
+        byte[] header = new byte[] {
+            0x04, 0x22, 0x4D, 0x18, // magic
+            0x68, 0x40, // flags with content size, block descriptor
+            0x39, 0x30, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, // content size 12345
+            0x00 // header checksum (not validated)
+        };
+
+        // Act
+        long result = FetchedFileCompression.LZ4.getDecompressedSize(header, header.length);
+
+        // Assert
+        assertThat(result).isEqualTo(12345);
+    }
+
+    @Test
+    public void testGetDecompressedSize_lz4WithoutContentSize_returnsUnknown() throws IOException {
+        // Arrange
+        byte[] compressed = compress(FetchedFileCompression.LZ4, CONTENT);
+
+        // Act
+        long result = FetchedFileCompression.LZ4.getDecompressedSize(compressed, compressed.length);
+
+        // Assert
+        assertThat(result).isEqualTo(-1);
+    }
+
+    @Test
+    public void testGetDecompressedSize_gzipFile_returnsSizeFromTrailer() throws IOException {
+        // Arrange
+        File file = new File(directory, "20210102T111009Z_vatsim-data.json.gz");
+        try (OutputStream os = new FileOutputStream(file)) {
+            os.write(compress(FetchedFileCompression.GZIP, CONTENT));
+        }
+
+        // Act
+        long result = FetchedFileCompression.GZIP.getDecompressedSize(file);
+
+        // Assert
+        assertThat(result).isEqualTo(CONTENT.length);
+    }
+}
@@ -0,0 +1,109 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.jupiter.api.Test;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.RawDataFile;
+
+public class FetchedFileDecoderTest {
+
+    private static final Instant FETCH_TIME = Instant.parse("2021-01-02T11:10:09Z");
+
+    private static final byte[] CONTENT = "{\"general\": {\"update\": \"20210102111009\"}, \"pilots\": []}"
+        .getBytes(StandardCharsets.UTF_8);
+
+    private final BufferPool bufferPool = new BufferPool(1024 * 1024);
+    private final FetchedFileDecoder decoder = new FetchedFileDecoder(bufferPool);
+
+    @Test
+    public void testRead_completeStream_returnsData() throws IOException {
+        // Arrange
+        ByteArrayInputStream bais = new ByteArrayInputStream(CONTENT);
+
+        // Act
+        byte[] result = decoder.read(bais, CONTENT.length);
+
+        // Assert
+        assertThat(Arrays.copyOf(result, CONTENT.length)).isEqualTo(CONTENT);
+    }
+
+    @Test
+    public void testRead_truncatedStream_throwsEOFException() {
+        // Arrange
+        ByteArrayInputStream bais = new ByteArrayInputStream(CONTENT, 0, CONTENT.length - 1);
+
+        // Act & Assert
+        assertThatThrownBy(() -> decoder.read(bais, CONTENT.length)).isInstanceOf(EOFException.class);
+    }
+
+    @Test
+    public void testRead_truncatedStream_releasesBuffer() {
+        // Arrange
+        ByteArrayInputStream bais = new ByteArrayInputStream(CONTENT, 0, CONTENT.length - 1);
+
+        // Act
+        try {
+            decoder.read(bais, CONTENT.length);
+        } catch (IOException ex) {
+            // expected
+        }
+
+        // Assert
+        assertThat(bufferPool.getRetainedBytes()).isPositive();
+    }
+
+    @Test
+    public void testDecode_malformedMetaData_releasesBuffer() throws IOException {
+        // Arrange
+        RawDataFile rawDataFile = new RawDataFile(FETCH_TIME);
+        byte[] malformed = "{\"fetchTime\": ".getBytes(StandardCharsets.UTF_8);
+        byte[] buffer = decoder.read(new ByteArrayInputStream(malformed), malformed.length);
+
+        // Act
+        try {
+            decoder.decode(rawDataFile, FetchedFileType.META_DATA, FetchedFileCompression.NONE, buffer,
+                malformed.length);
+        } catch (IOException ex) {
+            // expected
+        }
+
+        // Assert
+        assertThat(bufferPool.getRetainedBytes()).isPositive();
+    }
+
+    @Test
+    public void testDecode_gzipChecksumMismatch_releasesBuffer() throws IOException {
+        // Arrange
+        RawDataFile rawDataFile = new RawDataFile(FETCH_TIME);
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gos = new GZIPOutputStream(baos)) {
+            gos.write(CONTENT);
+        }
+        byte[] gzipped = baos.toByteArray();
+        gzipped[gzipped.length - 8] ^= 0xFF; // first byte of CRC32 in trailer
+        byte[] buffer = decoder.read(new ByteArrayInputStream(gzipped), gzipped.length);
+
+        // Act
+        try {
+            decoder.decode(rawDataFile, FetchedFileType.RAW_VATSIM_DATA_FILE, FetchedFileCompression.GZIP,
+                buffer, gzipped.length);
+        } catch (IOException ex) {
+            // expected
+        }
+
+        // Assert
+        // buffer of inflated data is returned as well
+        assertThat(bufferPool.getRetainedBytes()).isGreaterThanOrEqualTo(2L * buffer.length);
+    }
+}
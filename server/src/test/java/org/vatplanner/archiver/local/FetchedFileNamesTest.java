@@ -0,0 +1,179 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class FetchedFileNamesTest {
+
+    // reference implementation previously used by Loader and FetchedFileType
+    private static final Pattern REFERENCE_PATTERN_TIMESTAMP = Pattern.compile(
+        "^(|.*/)(\\d{4})(0[1-9]|1[0-2])(0[1-9]|[12][0-9]|3[01])T([01][0-9]|2[0-3])([0-5][0-9])([0-5][0-9])Z_.*" //
+    );
+    private static final Pattern REFERENCE_PATTERN_RAW = Pattern.compile(".*vatsim-data\\.(txt|json)$");
+    private static final Pattern REFERENCE_PATTERN_META = Pattern.compile(".*meta\\.json$");
+
+    private static final String ALPHABET = "0123456789TZ_/.-adjmnostvx\n\r\u0085  ";
+
+    private static long referenceParse(String fileName) {
+        Matcher matcher = REFERENCE_PATTERN_TIMESTAMP.matcher(fileName);
+        if (!matcher.matches()) {
+            return FetchedFileNames.NO_FETCH_TIME;
+        }
+
+        return LocalDateTime.of(
+            Integer.parseInt(matcher.group(2)),
+            Integer.parseInt(matcher.group(3)),
+            Integer.parseInt(matcher.group(4)),
+            Integer.parseInt(matcher.group(5)),
+            Integer.parseInt(matcher.group(6)),
+            Integer.parseInt(matcher.group(7)) //
+        ).toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static FetchedFileType referenceFileType(String fileName) {
+        if (REFERENCE_PATTERN_RAW.matcher(fileName).matches()) {
+            return FetchedFileType.RAW_VATSIM_DATA_FILE;
+        } else if (REFERENCE_PATTERN_META.matcher(fileName).matches()) {
+            return FetchedFileType.META_DATA;
+        }
+
+        return null;
+    }
+
+    private static Object parseOrException(String fileName, boolean useReference) {
+        try {
+            return useReference ? referenceParse(fileName) : FetchedFileNames.parseFetchEpochSecond(fileName);
+        } catch (DateTimeException ex) {
+            return DateTimeException.class;
+        }
+    }
+
+    @Test
+    public void testParseFetchEpochSecond_allDaysOfSelectedYears_matchesJavaTime() {
+        for (int year : new int[] { 0, 1, 1900, 1969, 1970, 2000, 2020, 2021, 2100, 2400, 9999 }) {
+            for (LocalDate date = LocalDate.of(year, 1, 1); date.getYear() == year; date = date.plusDays(1)) {
+                for (int secondOfDay : new int[] { 0, 1, 59, 60, 3599, 3600, 43210, 86399 }) {
+                    // Arrange
+                    LocalDateTime dateTime = date.atStartOfDay().plusSeconds(secondOfDay);
+                    String fileName = String.format(
+                        "%04d%02d%02dT%02d%02d%02dZ_vatsim-data.json",
+                        dateTime.getYear(), dateTime.getMonthValue(), dateTime.getDayOfMonth(),
+                        dateTime.getHour(), dateTime.getMinute(), dateTime.getSecond() //
+                    );
+
+                    // Act
+                    long result = FetchedFileNames.parseFetchEpochSecond(fileName);
+
+                    // Assert
+                    assertThat(result).describedAs(fileName)
+                                      .isEqualTo(dateTime.toEpochSecond(ZoneOffset.UTC));
+                }
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "20210102T111009Z_meta.json, 2021-01-02T11:10:09Z",
+        "some/dir/20210102T111009Z_vatsim-data.json, 2021-01-02T11:10:09Z",
+        "20210102T111009Z_x/20220304T050607Z_vatsim-data.txt, 2021-01-02T11:10:09Z",
+        "a/20210102T111009Z_x/20220304T050607Z_vatsim-data.txt, 2022-03-04T05:06:07Z",
+        "a/20220304T050607Z_x/invalid/, 2022-03-04T05:06:07Z",
+        "20200229T235959Z_, 2020-02-29T23:59:59Z",
+    })
+    public void testParseFetchEpochSecond_validName_returnsExpectedTime(String fileName, String expected) {
+        // Arrange (nothing to do)
+
+        // Act
+        long result = FetchedFileNames.parseFetchEpochSecond(fileName);
+
+        // Assert
+        assertThat(result).isEqualTo(Instant.parse(expected).getEpochSecond());
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "", "20210102T111009Z", "20210102T111009Z.json", "x20210102T111009Z_meta.json",
+        "20211302T111009Z_meta.json", "20210100T111009Z_meta.json", "20210132T111009Z_meta.json",
+        "20210102T241009Z_meta.json", "20210102T116009Z_meta.json", "20210102T111060Z_meta.json",
+        "2021-01-02T11:10:09Z_meta.json", "20210102t111009Z_meta.json", "20210102T111009Z_meta\n.json",
+        "a\n/20210102T111009Z_meta.json", "٢٠٢١0102T111009Z_meta.json",
+    })
+    public void testParseFetchEpochSecond_invalidName_returnsNoFetchTime(String fileName) {
+        // Arrange (nothing to do)
+
+        // Act
+        long result = FetchedFileNames.parseFetchEpochSecond(fileName);
+
+        // Assert
+        assertThat(result).isEqualTo(FetchedFileNames.NO_FETCH_TIME);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "20210230T111009Z_meta.json", "21000229T000000Z_meta.json", "20210431T000000Z_meta.json" })
+    public void testParseFetchEpochSecond_nonExistingDate_throwsDateTimeException(String fileName) {
+        // Arrange (nothing to do)
+
+        // Act, Assert
+        assertThatThrownBy(() -> FetchedFileNames.parseFetchEpochSecond(fileName))
+            .isInstanceOf(DateTimeException.class);
+    }
+
+    @Test
+    public void testParseFetchEpochSecond_randomlyMutatedNames_matchesReferenceImplementation() {
+        Random random = new Random(4711);
+        String[] templates = {
+            "20210102T111009Z_vatsim-data.json",
+            "dir/20200229T235959Z_meta.json",
+            "a/b/19991231T000000Z_vatsim-data.txt",
+        };
+
+        for (int i = 0; i < 200000; i++) {
+            // Arrange
+            StringBuilder sb = new StringBuilder(templates[random.nextInt(templates.length)]);
+            int numMutations = 1 + random.nextInt(3);
+            for (int j = 0; j < numMutations; j++) {
+                char ch = ALPHABET.charAt(random.nextInt(ALPHABET.length()));
+                int position = random.nextInt(sb.length() + 1);
+                switch (random.nextInt(3)) {
+                    case 0:
+                        sb.insert(position, ch);
+                        break;
+                    case 1:
+                        if (position < sb.length()) {
+                            sb.setCharAt(position, ch);
+                        }
+                        break;
+                    default:
+                        if (position < sb.length()) {
+                            sb.deleteCharAt(position);
+                        }
+                        break;
+                }
+            }
+            String fileName = sb.toString();
+
+            // Act
+            Object result = parseOrException(fileName, false);
+            FetchedFileType resultType = FetchedFileType.byFileName(fileName);
+
+            // Assert
+            assertThat(result).describedAs(fileName).isEqualTo(parseOrException(fileName, true));
+            assertThat(resultType).describedAs(fileName).isEqualTo(referenceFileType(fileName));
+        }
+    }
+}
@@ -14,7 +14,10 @@ public class FetchedFileTypeTest {
         return Stream.of(
             Arguments.of("20210102T111009Z_meta.json", FetchedFileType.META_DATA), //
             Arguments.of("20210102T111009Z_vatsim-data.json", FetchedFileType.RAW_VATSIM_DATA_FILE), //
-            Arguments.of("20210102T111009Z_vatsim-data.txt", FetchedFileType.RAW_VATSIM_DATA_FILE) //
+            Arguments.of("20210102T111009Z_vatsim-data.txt", FetchedFileType.RAW_VATSIM_DATA_FILE), //
+            Arguments.of("20210102T111009Z_meta.json.gz", FetchedFileType.META_DATA), //
+            Arguments.of("20210102T111009Z_vatsim-data.json.lz4", FetchedFileType.RAW_VATSIM_DATA_FILE), //
+            Arguments.of("20210102T111009Z_vatsim-data.txt.gz", FetchedFileType.RAW_VATSIM_DATA_FILE) //
         );
     }
 
@@ -32,7 +35,8 @@ public class FetchedFileTypeTest {
 
     @ParameterizedTest
     @ValueSource(strings = { "", "something.json", "20210102T111009Z_vatsim-data.json.nope",
-        "20210102T111009Z_vatsim-data.txt.", "20210102T111009Z_meta.json2" })
+        "20210102T111009Z_vatsim-data.txt.", "20210102T111009Z_meta.json2",
+        "20210102T111009Z_vatsim-data.json.xz", "20210102T111009Z_vatsim-data.gz" })
     public void testByFileName_unknownFileName_returnsNull(String fileName) {
         // Arrange (nothing to do)
 
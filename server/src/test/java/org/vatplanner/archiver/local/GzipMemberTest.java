@@ -0,0 +1,110 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.Inflater;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class GzipMemberTest {
+
+    private static final byte[] CONTENT = "{\"general\": {\"update\": \"20210102111009\"}, \"pilots\": []}"
+        .getBytes(StandardCharsets.UTF_8);
+
+    private static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (GZIPOutputStream gos = new GZIPOutputStream(baos)) {
+            gos.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    @Test
+    public void testParse_gzipData_locatesDeflateStream() throws Exception {
+        // Arrange
+        byte[] gzipped = gzip(CONTENT);
+
+        // Act
+        GzipMember result = GzipMember.parse(gzipped, gzipped.length);
+
+        // Assert
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(gzipped, result.getDeflateOffset(), result.getDeflateLength());
+        byte[] inflated = new byte[CONTENT.length + 1];
+        int inflatedLength = inflater.inflate(inflated);
+        assertThat(inflater.finished()).isTrue();
+        assertThat(inflater.getRemaining()).isZero();
+        assertThat(Arrays.copyOf(inflated, inflatedLength)).isEqualTo(CONTENT);
+        inflater.end();
+    }
+
+    @Test
+    public void testParse_gzipData_returnsChecksumAndSizeFromTrailer() throws IOException {
+        // Arrange
+        byte[] gzipped = gzip(CONTENT);
+        CRC32 crc = new CRC32();
+        crc.update(CONTENT);
+
+        // Act
+        GzipMember result = GzipMember.parse(gzipped, gzipped.length);
+
+        // Assert
+        assertThat(result.getCrc32()).isEqualTo(crc.getValue());
+        assertThat(result.getSizeModulo()).isEqualTo(CONTENT.length);
+    }
+
+    @Test
+    public void testParse_optionalHeaderFields_skipsFields() {
+        // Arrange
+        byte[] data = new byte[] {
+            0x1F, (byte) 0x8B, 8, 0x1E, 0, 0, 0, 0, 0, 0, // flags: extra, name, comment, header CRC
+            2, 0, 'x', 'y', // extra field
+            'a', 0, // name
+            'b', 'c', 0, // comment
+            0, 0, // header CRC
+            3, 0, // empty final block
+            0, 0, 0, 0, 0, 0, 0, 0 // trailer
+        };
+
+        // Act
+        GzipMember result = GzipMember.parse(data, data.length);
+
+        // Assert
+        assertThat(result.getDeflateOffset()).isEqualTo(21);
+        assertThat(result.getDeflateLength()).isEqualTo(2);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 1, 2 })
+    public void testParse_invalidHeader_returnsNull(int corruptedIndex) throws IOException {
+        // Arrange
+        byte[] gzipped = gzip(CONTENT);
+        gzipped[corruptedIndex] = 0x7F;
+
+        // Act
+        GzipMember result = GzipMember.parse(gzipped, gzipped.length);
+
+        // Assert
+        assertThat(result).isNull();
+    }
+
+    @Test
+    public void testParse_truncated_returnsNull() throws IOException {
+        // Arrange
+        byte[] gzipped = gzip(CONTENT);
+
+        // Act
+        GzipMember result = GzipMember.parse(gzipped, 12);
+
+        // Assert
+        assertThat(result).isNull();
+    }
+}
@@ -0,0 +1,795 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import org.apache.commons.compress.archivers.tar.TarArchiveEntry;
+import org.apache.commons.compress.archivers.tar.TarArchiveOutputStream;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.tukaani.xz.ArrayCache;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZOutputStream;
+import org.vatplanner.archiver.common.BufferPool;
+import org.vatplanner.archiver.common.RawDataFile;
+
+public class LoaderTest {
+
+    private static final String FORMAT_JSON = "json3";
+    private static final String FORMAT_LEGACY = "legacy";
+
+    private static final DateTimeFormatter FETCH_TIME_FORMATTER = DateTimeFormatter
+        .ofPattern("yyyyMMdd'T'HHmmss'Z'")
+        .withZone(ZoneOffset.UTC);
+
+    private static final Instant ARCHIVE_START = Instant.parse("2021-01-02T00:00:00Z");
+    private static final int FETCH_INTERVAL_SECONDS = 20;
+    private static final int NUM_FETCHES = 180;
+
+    // entries are only shuffled locally, like files written concurrently
+    private static final int SHUFFLED_ENTRIES = 16;
+    private static final int ENTRIES_PER_XZ_BLOCK = 40;
+
+    @TempDir
+    File directory;
+
+    private File archiveFile;
+
+    @BeforeEach
+    public void setUp() throws IOException {
+        new File(directory, "transitional").mkdirs();
+        archiveFile = createArchive(new File(directory, "transitioned/2021/01/20210102.tar.xz"));
+    }
+
+    /**
+     * Creates an archive holding data files of two formats, one after another,
+     * compressed to multiple XZ blocks. Entries of each format are shuffled, so
+     * neither data nor meta data entries are ordered by fetch time.
+     */
+    private File createArchive(File file) throws IOException {
+        return createArchive(file, this::createEntryContent);
+    }
+
+    private File createArchive(File file, BiFunction<String, Random, String> entryContentFactory) throws IOException {
+        file.getParentFile().mkdirs();
+
+        List<String> entryNames = new ArrayList<>();
+        Random random = new Random(1);
+        for (String formatName : Arrays.asList(FORMAT_JSON, FORMAT_LEGACY)) {
+            String extension = FORMAT_JSON.equals(formatName) ? "json" : "txt";
+            List<String> formatEntryNames = new ArrayList<>();
+            for (int i = 0; i < NUM_FETCHES; i++) {
+                String timestamp = FETCH_TIME_FORMATTER.format(getFetchTime(i));
+                formatEntryNames.add(formatName + "/" + timestamp + "_vatsim-data." + extension);
+                formatEntryNames.add(formatName + "/" + timestamp + "_meta.json");
+            }
+
+            for (int i = 0; i < formatEntryNames.size(); i += SHUFFLED_ENTRIES) {
+                Collections.shuffle(
+                    formatEntryNames.subList(i, Integer.min(i + SHUFFLED_ENTRIES, formatEntryNames.size())),
+                    random //
+                );
+            }
+
+            entryNames.addAll(formatEntryNames);
+        }
+
+        try (
+            OutputStream os = new FileOutputStream(file);
+            XZOutputStream xzos = new XZOutputStream(os, new LZMA2Options());
+            TarArchiveOutputStream taos = new TarArchiveOutputStream(xzos) //
+        ) {
+            for (int i = 0; i < entryNames.size(); i++) {
+                String entryName = entryNames.get(i);
+                byte[] data = entryContentFactory.apply(entryName, random).getBytes(StandardCharsets.UTF_8);
+                TarArchiveEntry entry = new TarArchiveEntry(entryName);
+                entry.setSize(data.length);
+                taos.putArchiveEntry(entry);
+                taos.write(data);
+                taos.closeArchiveEntry();
+
+                if ((i + 1) % ENTRIES_PER_XZ_BLOCK == 0) {
+                    taos.flush();
+                    xzos.endBlock();
+                }
+            }
+        }
+
+        return file;
+    }
+
+    private String createEntryContent(String entryName, Random random) {
+        Instant fetchTime = Instant.ofEpochSecond(FetchedFileNames.parseFetchEpochSecond(entryName));
+        String formatName = entryName.substring(0, entryName.indexOf('/'));
+        if (entryName.endsWith("_meta.json")) {
+            return "{\"timestamp\":\"" + fetchTime + "\",\"url\":\"http://" + formatName + "/\"}";
+        }
+
+        // not a valid TAR header when read at any offset
+        StringBuilder sb = new StringBuilder(formatName + " " + fetchTime);
+        for (int i = 0; i < 100; i++) {
+            sb.append(" v").append(random.nextInt(1000));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Creates content of which only a single value changes between data files
+     * of consecutive fetches, so data files can be stored as deltas.
+     */
+    private String createSlowlyChangingEntryContent(String entryName, Random random) {
+        if (entryName.endsWith("_meta.json")) {
+            return createEntryContent(entryName, random);
+        }
+
+        Instant fetchTime = Instant.ofEpochSecond(FetchedFileNames.parseFetchEpochSecond(entryName));
+        String formatName = entryName.substring(0, entryName.indexOf('/'));
+        long fetchIndex = Duration.between(ARCHIVE_START, fetchTime).getSeconds() / FETCH_INTERVAL_SECONDS;
+
+        StringBuilder sb = new StringBuilder(formatName + " " + fetchTime);
+        for (int i = 0; i < 100; i++) {
+            sb.append(" v").append((i == fetchIndex % 100) ? random.nextInt(1000) : i);
+        }
+        return sb.toString();
+    }
+
+    private static Instant getFetchTime(int i) {
+        return ARCHIVE_START.plusSeconds(5 + i * FETCH_INTERVAL_SECONDS);
+    }
+
+    private Loader createLoader(int archiveIndexCacheSize) {
+        return createLoader(archiveIndexCacheSize, null);
+    }
+
+    private Loader createLoader(int archiveIndexCacheSize, File archiveCatalogFile) {
+        StorageConfiguration config = new StorageConfiguration()
+            .setArchiveCatalogFile((archiveCatalogFile != null) ? archiveCatalogFile.getAbsolutePath() : null)
+            .setMaximumDataFilesPerRequest(10000)
+            .setTransitionalFilesBasePath(new File(directory, "transitional").getAbsolutePath())
+            .setTransitionedArchivesBasePath(new File(directory, "transitioned").getAbsolutePath())
+            .setTransitionDailyLocalTime(LocalTime.of(0, 0))
+            .setTransitionTimeZone(ZoneId.of("UTC"))
+            .setTransitionPrelude(Duration.ZERO)
+            .setTransitionCooldown(Duration.ZERO)
+            .setArchiveBucketHours(24)
+            .setTransitionBucketDelay(Duration.ZERO)
+            .setArchiveEntryOrderTolerance(Duration.ofMinutes(5))
+            .setArchiveIndexCacheSize(archiveIndexCacheSize)
+            .setBufferPoolMegabytes(16);
+
+        TransitionChecker transitionChecker = new TransitionChecker(config) {
+            @Override
+            Instant getNow() {
+                return Instant.parse("2021-01-10T00:00:00Z");
+            }
+        };
+
+        return new Loader(config, transitionChecker);
+    }
+
+    /**
+     * Creates a loader which already holds the index of the archive, so reading
+     * can be limited to the relevant part of the archive.
+     */
+    private Loader createIndexedLoader() {
+        Loader loader = createLoader(10);
+        clear(loader.load(ARCHIVE_START, ARCHIVE_START.plusSeconds(86399)));
+        assertThat(loader.getArchiveIndexCache().get(archiveFile)).isNotNull();
+        return loader;
+    }
+
+    private static void clear(List<RawDataFile> dataFiles) {
+        dataFiles.forEach(RawDataFile::clear);
+    }
+
+    private static void awaitArchiveCatalog(Loader loader, Predicate<ArchiveCatalog> condition) throws InterruptedException {
+        while (!condition.test(loader.getArchiveCatalog())) {
+            Thread.sleep(10);
+        }
+    }
+
+    private static List<String> describe(List<RawDataFile> dataFiles) {
+        List<String> out = new ArrayList<>();
+        for (RawDataFile dataFile : dataFiles) {
+            out.add(dataFile.getFetchTime() + " " + dataFile.getFormatName() + " "
+                + dataFile.getFetchUrlRequested() + " " + new String(dataFile.getData(), StandardCharsets.UTF_8));
+        }
+        return out;
+    }
+
+    private static List<String> expectedKeys(Instant earliestFetchTime, Instant latestFetchTime, Set<String> formatNames) {
+        List<String> out = new ArrayList<>();
+        for (int i = 0; i < NUM_FETCHES; i++) {
+            Instant fetchTime = getFetchTime(i);
+            if (fetchTime.isBefore(earliestFetchTime) || fetchTime.isAfter(latestFetchTime)) {
+                continue;
+            }
+            for (String formatName : Arrays.asList(FORMAT_JSON, FORMAT_LEGACY)) {
+                if (formatNames.isEmpty() || formatNames.contains(formatName)) {
+                    out.add(fetchTime + " " + formatName);
+                }
+            }
+        }
+        return out;
+    }
+
+    private static List<String> keys(List<String> descriptions) {
+        return descriptions.stream()
+                           .map(s -> s.substring(0, s.indexOf(' ', s.indexOf(' ') + 1)))
+                           .collect(Collectors.toList());
+    }
+
+    static Stream<Arguments> dataProviderRanges() {
+        Set<String> all = Collections.emptySet();
+        Set<String> json = Collections.singleton(FORMAT_JSON);
+        Set<String> legacy = Collections.singleton(FORMAT_LEGACY);
+
+        return Stream.of(
+            // start and end mid-block
+            Arguments.of("2021-01-02T00:20:10Z", "2021-01-02T00:24:50Z", all),
+            Arguments.of("2021-01-02T00:20:10Z", "2021-01-02T00:24:50Z", json),
+            Arguments.of("2021-01-02T00:20:10Z", "2021-01-02T00:24:50Z", legacy),
+
+            // exactly at fetch times, including sub-second start
+            Arguments.of("2021-01-02T00:33:25Z", "2021-01-02T00:35:05Z", legacy),
+            Arguments.of("2021-01-02T00:33:25.5Z", "2021-01-02T00:35:05Z", json),
+
+            // first and last entries of the archive
+            Arguments.of("2021-01-02T00:00:00Z", "2021-01-02T00:01:00Z", all),
+            Arguments.of("2021-01-02T00:58:00Z", "2021-01-02T01:00:00Z", legacy),
+
+            // whole archive
+            Arguments.of("2021-01-02T00:00:00Z", "2021-01-02T23:59:59Z", all),
+
+            // nothing in range
+            Arguments.of("2021-01-02T12:00:00Z", "2021-01-02T13:00:00Z", all),
+            Arguments.of("2021-01-02T00:20:06Z", "2021-01-02T00:20:24Z", json) //
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderRanges")
+    public void testLoad_indexedArchive_returnsSameAsFullScan(String earliest, String latest, Set<String> formatNames) {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse(earliest);
+        Instant latestFetchTime = Instant.parse(latest);
+        Loader indexedLoader = createIndexedLoader();
+        Loader scanningLoader = createLoader(0);
+
+        // Act
+        List<String> result = describe(indexedLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+        List<String> fullScan = describe(scanningLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(keys(fullScan)).containsExactlyElementsOf(expectedKeys(earliestFetchTime, latestFetchTime, formatNames));
+        assertThat(result).containsExactlyElementsOf(fullScan);
+    }
+
+    @Test
+    public void testLoad_indexedArchiveMidRange_decompressesOnlyPartOfArchive() {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2021-01-02T00:20:10Z");
+        Instant latestFetchTime = Instant.parse("2021-01-02T00:24:50Z");
+        Loader indexedLoader = createIndexedLoader();
+        long fullArchiveBytes = indexedLoader.getDecompressedArchiveBytes();
+
+        // Act
+        clear(indexedLoader.load(earliestFetchTime, latestFetchTime, 10000, Collections.singleton(FORMAT_LEGACY)));
+
+        // Assert
+        long decompressedBytes = indexedLoader.getDecompressedArchiveBytes() - fullArchiveBytes;
+        assertThat(decompressedBytes).isPositive().isLessThan(fullArchiveBytes / 4);
+    }
+
+    @Test
+    public void testLoad_indexedArchiveWithFileLimit_returnsFirstFilesOfFullScan() {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2021-01-02T00:20:10Z");
+        Instant latestFetchTime = Instant.parse("2021-01-02T00:50:00Z");
+        Set<String> formatNames = new HashSet<>(Arrays.asList(FORMAT_JSON, FORMAT_LEGACY));
+        Loader indexedLoader = createIndexedLoader();
+        Loader scanningLoader = createLoader(0);
+
+        // Act
+        List<String> result = describe(indexedLoader.load(earliestFetchTime, latestFetchTime, 7, formatNames));
+        List<String> fullScan = describe(scanningLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(result).containsExactlyElementsOf(fullScan.subList(0, 7));
+    }
+
+    static Stream<Arguments> dataProviderLimitedFormats() {
+        return Stream.of(
+            Arguments.of(Collections.singleton(FORMAT_JSON)),
+            Arguments.of(Collections.singleton(FORMAT_LEGACY)),
+            Arguments.of(new HashSet<>(Arrays.asList(FORMAT_JSON, FORMAT_LEGACY))) //
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderLimitedFormats")
+    public void testLoad_notIndexedArchiveWithFileLimit_stopsReadingOncePassed(Set<String> formatNames) {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plusSeconds(86399);
+        Loader loader = createLoader(10);
+        Loader scanningLoader = createLoader(10);
+
+        // Act
+        List<String> result = describe(loader.load(earliestFetchTime, latestFetchTime, 7, formatNames));
+        List<String> fullScan = describe(scanningLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(result).containsExactlyElementsOf(fullScan.subList(0, 7));
+        assertThat(loader.getDecompressedArchiveBytes())
+            .isLessThan(scanningLoader.getDecompressedArchiveBytes() * 3 / 4);
+        assertThat(loader.getArchiveIndexCache().get(archiveFile)).isNull();
+        assertThat(scanningLoader.getArchiveIndexCache().get(archiveFile)).isNotNull();
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderLimitedFormats")
+    public void testLoad_notIndexedArchiveWithEarlyTimeRange_stopsReadingOncePassed(Set<String> formatNames) {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plus(Duration.ofMinutes(20));
+        Loader loader = createLoader(10);
+        Loader scanningLoader = createLoader(10);
+        clear(scanningLoader.load(ARCHIVE_START, ARCHIVE_START.plusSeconds(86399), 10000, formatNames));
+
+        // Act
+        List<String> result = describe(loader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(keys(result)).containsExactlyElementsOf(expectedKeys(earliestFetchTime, latestFetchTime, formatNames));
+        assertThat(loader.getDecompressedArchiveBytes())
+            .isLessThan(scanningLoader.getDecompressedArchiveBytes() * 3 / 4);
+        assertThat(loader.getArchiveIndexCache().get(archiveFile)).isNull();
+    }
+
+    @Test
+    public void testLoad_notIndexedCombinedArchiveWithFileLimitForAllFormats_readsWholeArchive() {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plusSeconds(86399);
+        Set<String> formatNames = Collections.emptySet();
+        Loader loader = createLoader(10);
+        Loader scanningLoader = createLoader(10);
+
+        // Act
+        List<String> result = describe(loader.load(earliestFetchTime, latestFetchTime, 7, formatNames));
+        List<String> fullScan = describe(scanningLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(result).containsExactlyElementsOf(fullScan.subList(0, 7));
+        assertThat(loader.getDecompressedArchiveBytes()).isEqualTo(scanningLoader.getDecompressedArchiveBytes());
+        assertThat(loader.getArchiveIndexCache().get(archiveFile)).isNotNull();
+    }
+
+    @Test
+    public void testLoad_catalogEnabledWithMissingBuckets_resolvesOnlyCatalogedArchives() {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2020-12-30T00:00:00Z");
+        Instant latestFetchTime = Instant.parse("2021-01-04T23:59:59Z");
+        Set<String> formatNames = Collections.emptySet();
+        Loader catalogLoader = createLoader(10, new File(directory, "catalog.bin"));
+        catalogLoader.synchronizeArchiveCatalog();
+
+        // Act
+        List<String> result = describe(catalogLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(keys(result)).containsExactlyElementsOf(expectedKeys(earliestFetchTime, latestFetchTime, formatNames));
+        assertThat(catalogLoader.getArchiveCatalog().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testLoad_catalogNotSynchronized_resolvesFromFileSystemAndSynchronizesInBackground() throws Exception {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plusSeconds(86399);
+        Loader catalogLoader = createLoader(10, new File(directory, "catalog.bin"));
+
+        // Act
+        List<RawDataFile> result = catalogLoader.load(earliestFetchTime, latestFetchTime);
+
+        // Assert
+        assertThat(keys(describe(result))).containsExactlyElementsOf(
+            expectedKeys(earliestFetchTime, latestFetchTime, Collections.emptySet()));
+        awaitArchiveCatalog(catalogLoader, catalog -> catalog.getLastSynchronized() != null);
+        assertThat(catalogLoader.getArchiveCatalog().size()).isEqualTo(1);
+    }
+
+    @Test
+    public void testLoad_catalogedArchiveDeleted_skipsArchiveAndSynchronizesInBackground() throws Exception {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plusSeconds(86399);
+        Loader catalogLoader = createLoader(10, new File(directory, "catalog.bin"));
+        catalogLoader.synchronizeArchiveCatalog();
+        archiveFile.delete();
+
+        // Act
+        List<RawDataFile> result = catalogLoader.load(earliestFetchTime, latestFetchTime);
+
+        // Assert
+        assertThat(result).isEmpty();
+        awaitArchiveCatalog(catalogLoader, catalog -> catalog.size() == 0);
+    }
+
+    @Test
+    public void testLoad_catalogedArchiveSplit_readsSplitArchivesUntilSynchronized() throws Exception {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plusSeconds(86399);
+        Loader catalogLoader = createLoader(10, new File(directory, "catalog.bin"));
+        catalogLoader.synchronizeArchiveCatalog();
+        new ArchiveSplitter(ArrayCache.getDummyCache()).split(archiveFile);
+        archiveFile.delete();
+
+        // Act
+        List<RawDataFile> result = catalogLoader.load(earliestFetchTime, latestFetchTime);
+
+        // Assert
+        assertThat(keys(describe(result))).containsExactlyElementsOf(
+            expectedKeys(earliestFetchTime, latestFetchTime, Collections.emptySet()));
+        awaitArchiveCatalog(catalogLoader, catalog -> catalog.size() == 2);
+    }
+
+    @Test
+    public void testLoad_catalogSynchronized_doesNotLookUpArchivesOnFileSystem() throws IOException {
+        // Arrange
+        Instant earliestFetchTime = ARCHIVE_START;
+        Instant latestFetchTime = ARCHIVE_START.plusSeconds(86399);
+        Loader catalogLoader = createLoader(10, new File(directory, "catalog.bin"));
+        catalogLoader.synchronizeArchiveCatalog();
+        long numOpenedBefore = catalogLoader.getNumOpenedArchives();
+
+        // archive added without synchronizing the catalog again
+        createArchive(new File(directory, "transitioned/2021/01/20210101.tar.xz"));
+
+        // Act
+        List<RawDataFile> result = catalogLoader.load(Instant.parse("2021-01-01T00:00:00Z"), latestFetchTime);
+
+        // Assert
+        assertThat(keys(describe(result))).containsExactlyElementsOf(
+            expectedKeys(earliestFetchTime, latestFetchTime, Collections.emptySet()));
+        assertThat(catalogLoader.getNumOpenedArchives() - numOpenedBefore).isEqualTo(1);
+    }
+
+    @Test
+    public void testLoadPage_misalignedArchiveOffset_retriesFromStart() {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2021-01-02T00:00:00Z");
+        Instant latestFetchTime = Instant.parse("2021-01-02T01:00:00Z");
+        Set<String> formatNames = Collections.singleton(FORMAT_LEGACY);
+        Instant lastFetchTime = getFetchTime(90);
+        ArchiveBucket bucket = ArchiveBucket.containing(lastFetchTime.atOffset(ZoneOffset.UTC).toLocalDateTime(), 24);
+
+        // offset points into data of a relevant entry instead of its header
+        long dataOffset = findDataFileHeaderOffset(lastFetchTime.plusSeconds(FETCH_INTERVAL_SECONDS)) + 512 + 16;
+        ContinuationToken misaligned = new ContinuationToken(lastFetchTime, FORMAT_LEGACY, bucket, null,
+            archiveFile.length(), dataOffset);
+        ContinuationToken withoutHint = new ContinuationToken(lastFetchTime, FORMAT_LEGACY);
+
+        Loader indexedLoader = createIndexedLoader();
+        long numOpenedBefore = indexedLoader.getNumOpenedArchives();
+        Loader scanningLoader = createLoader(0);
+
+        // Act
+        DataFilePage result = indexedLoader.loadPage(earliestFetchTime, latestFetchTime, 10000, formatNames, null,
+            misaligned);
+        DataFilePage fullScan = scanningLoader.loadPage(earliestFetchTime, latestFetchTime, 10000, formatNames, null,
+            withoutHint);
+
+        // Assert
+        List<String> expected = describe(fullScan.getDataFiles());
+        assertThat(keys(expected)).hasSize(NUM_FETCHES - 91);
+        assertThat(describe(result.getDataFiles())).containsExactlyElementsOf(expected);
+        assertThat(indexedLoader.getNumOpenedArchives() - numOpenedBefore).isEqualTo(2);
+    }
+
+    /**
+     * Replaces the archive by one holding legacy data files of the first
+     * fetches, with an unsupported entry placed before the given fetch. Read
+     * from its data instead of its header, that entry yields another data file
+     * followed by an invalid TAR header.
+     *
+     * @return uncompressed offset of embedded entry
+     */
+    private long createArchiveWithEmbeddedEntry(int numFetches, int embeddedBeforeFetch, Instant embeddedFetchTime) throws IOException {
+        Random random = new Random(1);
+
+        String embeddedName = "legacy/" + FETCH_TIME_FORMATTER.format(embeddedFetchTime) + "_vatsim-data.txt";
+        byte[] embeddedData = createEntryContent(embeddedName, random).getBytes(StandardCharsets.UTF_8);
+        TarArchiveEntry embeddedEntry = new TarArchiveEntry(embeddedName);
+        embeddedEntry.setSize(embeddedData.length);
+        byte[] embedded = new byte[512 + roundUpToTarRecord(embeddedData.length) + 512];
+        embeddedEntry.writeEntryHeader(embedded);
+        System.arraycopy(embeddedData, 0, embedded, 512, embeddedData.length);
+        Arrays.fill(embedded, embedded.length - 512, embedded.length, (byte) 'x');
+
+        long embeddedOffset = -1;
+        long offset = 0;
+        try (
+            OutputStream os = new FileOutputStream(archiveFile);
+            TarArchiveOutputStream taos = new TarArchiveOutputStream(new XZOutputStream(os, new LZMA2Options())) //
+        ) {
+            for (int i = 0; i < numFetches; i++) {
+                List<String> entryNames = new ArrayList<>();
+                if (i == embeddedBeforeFetch) {
+                    embeddedOffset = offset + 512;
+                    entryNames.add("embedded.bin");
+                }
+
+                String timestamp = FETCH_TIME_FORMATTER.format(getFetchTime(i));
+                entryNames.add("legacy/" + timestamp + "_vatsim-data.txt");
+                entryNames.add("legacy/" + timestamp + "_meta.json");
+
+                for (String entryName : entryNames) {
+                    byte[] data = "embedded.bin".equals(entryName)
+                        ? embedded
+                        : createEntryContent(entryName, random).getBytes(StandardCharsets.UTF_8);
+                    TarArchiveEntry entry = new TarArchiveEntry(entryName);
+                    entry.setSize(data.length);
+                    taos.putArchiveEntry(entry);
+                    taos.write(data);
+                    taos.closeArchiveEntry();
+                    offset += 512 + roundUpToTarRecord(data.length);
+                }
+            }
+        }
+
+        return embeddedOffset;
+    }
+
+    private static int roundUpToTarRecord(int size) {
+        return (size + 511) / 512 * 512;
+    }
+
+    @Test
+    public void testLoad_misalignedIndexOffset_releasesFilesOfFailedAttempt() throws IOException {
+        // Arrange
+        Instant earliestFetchTime = getFetchTime(10);
+        Instant latestFetchTime = getFetchTime(19);
+        Set<String> formatNames = Collections.singleton(FORMAT_LEGACY);
+        long embeddedOffset = createArchiveWithEmbeddedEntry(20, 10, getFetchTime(12).plusSeconds(1));
+
+        // index points first relevant entry to data of the embedded entry
+        Loader indexedLoader = createIndexedLoader();
+        ArchiveIndex index = indexedLoader.getArchiveIndexCache().get(archiveFile);
+        ArchiveIndex.Builder misaligned = new ArchiveIndex.Builder(archiveFile);
+        boolean isMisaligned = false;
+        for (int i = 0; i < index.size(); i++) {
+            long headerOffset = index.getHeaderOffset(i);
+            if (!isMisaligned && !index.getFetchTime(i).isBefore(earliestFetchTime)) {
+                headerOffset = embeddedOffset;
+                isMisaligned = true;
+            }
+            misaligned.add(index.getFormatName(i), index.getFetchEpochSecond(i), index.getFileType(i),
+                index.getSize(i), headerOffset);
+        }
+        indexedLoader.getArchiveIndexCache().put(archiveFile, misaligned.build());
+
+        // all buffers needed for the request are pooled after a first load
+        BufferPool bufferPool = indexedLoader.getBufferPool();
+        clear(indexedLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+        long retainedBytesBefore = bufferPool.getRetainedBytes();
+        long numOpenedBefore = indexedLoader.getNumOpenedArchives();
+
+        Loader scanningLoader = createLoader(0);
+
+        // Act
+        clear(indexedLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+        long retainedBytesAfter = bufferPool.getRetainedBytes();
+        List<String> result = describe(indexedLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+        List<String> fullScan = describe(scanningLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(keys(fullScan)).containsExactlyElementsOf(expectedKeys(earliestFetchTime, latestFetchTime, formatNames));
+        assertThat(result).containsExactlyElementsOf(fullScan);
+        assertThat(indexedLoader.getNumOpenedArchives() - numOpenedBefore).isEqualTo(4);
+        assertThat(retainedBytesAfter).isEqualTo(retainedBytesBefore);
+    }
+
+    private long findDataFileHeaderOffset(Instant fetchTime) {
+        ArchiveIndex index = createIndexedLoader().getArchiveIndexCache().get(archiveFile);
+        for (int i = 0; i < index.size(); i++) {
+            if (index.getFetchTime(i).equals(fetchTime) && FORMAT_LEGACY.equals(index.getFormatName(i))
+                && (index.getFileType(i) == FetchedFileType.RAW_VATSIM_DATA_FILE)) {
+                return index.getHeaderOffset(i);
+            }
+        }
+        throw new IllegalArgumentException("no entry indexed for " + fetchTime);
+    }
+
+    private static List<String> loadAllPages(Loader loader, Instant earliestFetchTime, Instant latestFetchTime, int fileLimit, Set<String> formatNames, Duration sampleInterval) {
+        List<String> out = new ArrayList<>();
+        ContinuationToken continuationToken = null;
+        int numPages = 0;
+        do {
+            DataFilePage page = loader.loadPage(earliestFetchTime, latestFetchTime, fileLimit, formatNames,
+                sampleInterval, continuationToken);
+            assertThat(page).isNotNull();
+            assertThat(page.getDataFiles()).hasSizeLessThanOrEqualTo(fileLimit);
+            out.addAll(describe(page.getDataFiles()));
+
+            // tokens are handed to clients encoded
+            continuationToken = page.getNextContinuationToken();
+            if (continuationToken != null) {
+                assertThat(page.getDataFiles()).hasSize(fileLimit);
+                continuationToken = ContinuationToken.decode(continuationToken.encode());
+            }
+
+            assertThat(++numPages).isLessThan(1000);
+        } while (continuationToken != null);
+
+        return out;
+    }
+
+    static Stream<Arguments> dataProviderPaging() {
+        Set<String> all = Collections.emptySet();
+        Set<String> legacy = Collections.singleton(FORMAT_LEGACY);
+        Set<String> both = new HashSet<>(Arrays.asList(FORMAT_JSON, FORMAT_LEGACY));
+
+        return Stream.of(
+            Arguments.of(true, 7, null, all),
+            Arguments.of(false, 7, null, all),
+            Arguments.of(false, 7, null, legacy),
+            Arguments.of(false, 3, null, both),
+            Arguments.of(true, 1, null, legacy),
+            Arguments.of(true, 5, Duration.ofSeconds(60), all),
+            Arguments.of(false, 5, Duration.ofSeconds(60), all),
+            Arguments.of(true, 3, Duration.ofSeconds(45), legacy),
+            Arguments.of(true, 1, Duration.ofSeconds(100), all) //
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderPaging")
+    public void testLoadPage_pagingThroughArchive_returnsEachFileOnceInOrder(boolean isIndexed, int fileLimit, Duration sampleInterval, Set<String> formatNames) {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2021-01-02T00:10:10Z");
+        Instant latestFetchTime = Instant.parse("2021-01-02T00:40:00Z");
+        Loader loader = isIndexed ? createIndexedLoader() : createLoader(0);
+        Loader unpagedLoader = createLoader(0);
+
+        // Act
+        List<String> result = loadAllPages(loader, earliestFetchTime, latestFetchTime, fileLimit, formatNames,
+            sampleInterval);
+
+        // Assert
+        List<String> unpaged = describe(
+            unpagedLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames, sampleInterval) //
+        );
+        assertThat(unpaged).isNotEmpty();
+        assertThat(result).doesNotHaveDuplicates()
+                          .containsExactlyElementsOf(unpaged);
+    }
+
+    @Test
+    public void testLoadPage_pagingWithSampling_selectsClosestFileOfEachBucketOnce() {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2021-01-02T00:10:00Z");
+        Instant latestFetchTime = Instant.parse("2021-01-02T00:20:00Z");
+        Loader loader = createIndexedLoader();
+
+        // Act
+        List<String> result = loadAllPages(loader, earliestFetchTime, latestFetchTime, 2, Collections.emptySet(),
+            Duration.ofMinutes(1));
+
+        // Assert
+        List<String> expectedKeys = new ArrayList<>();
+        for (int minute = 10; minute <= 20; minute++) {
+            // first fetch of each minute is at 5 seconds past
+            Instant fetchTime = Instant.parse(String.format("2021-01-02T00:%02d:05Z", minute));
+            if (fetchTime.isAfter(latestFetchTime)) {
+                break;
+            }
+            expectedKeys.add(fetchTime + " " + FORMAT_JSON);
+            expectedKeys.add(fetchTime + " " + FORMAT_LEGACY);
+        }
+        assertThat(keys(result)).containsExactlyElementsOf(expectedKeys);
+    }
+
+    /**
+     * Delta-encodes the archive, storing a keyframe every four data files.
+     */
+    private void encodeArchive() throws IOException {
+        DeltaArchiveEncoder encoder = new DeltaArchiveEncoder(ArrayCache.getDummyCache(), 4);
+        encoder.encode(archiveFile);
+        assertThat(encoder.isEncoded(archiveFile)).isTrue();
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderRanges")
+    public void testLoad_deltaEncodedArchive_returnsSameAsRegularArchive(String earliest, String latest, Set<String> formatNames) throws IOException {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse(earliest);
+        Instant latestFetchTime = Instant.parse(latest);
+        createArchive(archiveFile, this::createSlowlyChangingEntryContent);
+        List<String> regular = describe(createLoader(0).load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+        encodeArchive();
+        Loader indexedLoader = createIndexedLoader();
+        Loader scanningLoader = createLoader(0);
+
+        // Act
+        List<String> indexed = describe(indexedLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+        List<String> fullScan = describe(scanningLoader.load(earliestFetchTime, latestFetchTime, 10000, formatNames));
+
+        // Assert
+        assertThat(keys(regular)).containsExactlyElementsOf(expectedKeys(earliestFetchTime, latestFetchTime, formatNames));
+        assertThat(indexed).containsExactlyElementsOf(regular);
+        assertThat(fullScan).containsExactlyElementsOf(regular);
+    }
+
+    @Test
+    public void testLoad_deltaEncodedArchive_indexesDeltasWithTheirKeyframes() throws IOException {
+        // Arrange
+        createArchive(archiveFile, this::createSlowlyChangingEntryContent);
+        encodeArchive();
+
+        // Act
+        ArchiveIndex index = createIndexedLoader().getArchiveIndexCache().get(archiveFile);
+
+        // Assert
+        int numDeltas = 0;
+        for (int i = 0; i < index.size(); i++) {
+            if (index.getSnapshotKind(i) == SnapshotDelta.Kind.DELTA) {
+                numDeltas++;
+                assertThat(index.findChainStart(i)).isLessThan(i);
+                assertThat(index.getSnapshotKind(index.findChainStart(i))).isEqualTo(SnapshotDelta.Kind.KEYFRAME);
+            }
+        }
+        assertThat(numDeltas).isPositive();
+    }
+
+    @ParameterizedTest
+    @MethodSource("dataProviderPaging")
+    public void testLoadPage_pagingThroughDeltaEncodedArchive_returnsSameAsRegularArchive(boolean isIndexed, int fileLimit, Duration sampleInterval, Set<String> formatNames) throws IOException {
+        // Arrange
+        Instant earliestFetchTime = Instant.parse("2021-01-02T00:10:10Z");
+        Instant latestFetchTime = Instant.parse("2021-01-02T00:40:00Z");
+        createArchive(archiveFile, this::createSlowlyChangingEntryContent);
+        List<String> regular = describe(
+            createLoader(0).load(earliestFetchTime, latestFetchTime, 10000, formatNames, sampleInterval) //
+        );
+        encodeArchive();
+        Loader loader = isIndexed ? createIndexedLoader() : createLoader(0);
+
+        // Act
+        List<String> result = loadAllPages(loader, earliestFetchTime, latestFetchTime, fileLimit, formatNames,
+            sampleInterval);
+
+        // Assert
+        assertThat(regular).isNotEmpty();
+        assertThat(result).doesNotHaveDuplicates()
+                          .containsExactlyElementsOf(regular);
+    }
+}
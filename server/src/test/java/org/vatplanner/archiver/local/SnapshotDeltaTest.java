@@ -0,0 +1,112 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class SnapshotDeltaTest {
+
+    private static final String BASE = "{\"general\": {\"update\": \"20210102000000\"}, \"pilots\": ["
+        + "{\"callsign\": \"ABC123\", \"latitude\": 50.12345, \"longitude\": 8.54321, \"altitude\": 35000}, "
+        + "{\"callsign\": \"DEF456\", \"latitude\": 40.98765, \"longitude\": -73.1234, \"altitude\": 12000}, "
+        + "{\"callsign\": \"GHI789\", \"latitude\": 10.55555, \"longitude\": 20.66666, \"altitude\": 2500}]}";
+
+    private byte[] roundTrip(byte[] base, byte[] target) throws IOException {
+        byte[] delta = SnapshotDelta.encode(base, base.length, target, target.length);
+
+        byte[] reconstructed = new byte[SnapshotDelta.getTargetLength(delta, delta.length)];
+        int length = SnapshotDelta.decode(base, base.length, delta, delta.length, reconstructed);
+
+        return Arrays.copyOf(reconstructed, length);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+        "",
+        "completely different content",
+        "{\"general\": {\"update\": \"20210102000100\"}, \"pilots\": ["
+            + "{\"callsign\": \"DEF456\", \"latitude\": 40.98766, \"longitude\": -73.1235, \"altitude\": 12100}, "
+            + "{\"callsign\": \"ABC123\", \"latitude\": 50.12346, \"longitude\": 8.54322, \"altitude\": 35000}]}",
+        "!GENERAL:\nUPDATE = 20210102000100\n!CLIENTS:\nABC123:1:PILOT:50.1:8.5:35000\nDEF456:2:PILOT:40.9:-73.1:12000\n"
+    })
+    public void testDecode_encodedTarget_reconstructsTarget(String target) throws IOException {
+        // Arrange
+        byte[] base = BASE.getBytes(StandardCharsets.UTF_8);
+        byte[] targetBytes = target.getBytes(StandardCharsets.UTF_8);
+
+        // Act
+        byte[] result = roundTrip(base, targetBytes);
+
+        // Assert
+        assertThat(result).isEqualTo(targetBytes);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 2, 3, 4})
+    public void testDecode_randomModifications_reconstructsTarget(int seed) throws IOException {
+        // Arrange
+        Random random = new Random(seed);
+        byte[] base = new byte[20000];
+        for (int i = 0; i < base.length; i++) {
+            base[i] = (byte) ",{[\nabcdef0123456789".charAt(random.nextInt(20));
+        }
+
+        byte[] target = Arrays.copyOf(base, base.length + 100);
+        for (int i = 0; i < 200; i++) {
+            target[random.nextInt(target.length)] = (byte) random.nextInt(256);
+        }
+        System.arraycopy(base, 5000, target, 100, 3000);
+
+        // Act
+        byte[] result = roundTrip(base, target);
+
+        // Assert
+        assertThat(result).isEqualTo(target);
+    }
+
+    @Test
+    public void testEncode_similarSnapshots_resultsInSmallDelta() {
+        // Arrange
+        byte[] base = BASE.getBytes(StandardCharsets.UTF_8);
+        byte[] target = BASE.replace("35000", "35100").replace("20210102000000", "20210102000100")
+                            .getBytes(StandardCharsets.UTF_8);
+
+        // Act
+        byte[] delta = SnapshotDelta.encode(base, base.length, target, target.length);
+
+        // Assert
+        assertThat(delta.length).isLessThan(target.length / 4);
+    }
+
+    @Test
+    public void testDecode_truncatedDelta_throwsIOException() {
+        // Arrange
+        byte[] base = BASE.getBytes(StandardCharsets.UTF_8);
+        byte[] target = BASE.replace("35000", "35100").getBytes(StandardCharsets.UTF_8);
+        byte[] delta = SnapshotDelta.encode(base, base.length, target, target.length);
+
+        // Act, Assert
+        assertThatThrownBy(() -> SnapshotDelta.decode(base, base.length, delta, delta.length - 3, new byte[target.length]))
+            .isInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testDecode_shorterBase_throwsIOException() {
+        // Arrange
+        byte[] base = BASE.getBytes(StandardCharsets.UTF_8);
+        byte[] target = BASE.replace("35000", "35100").getBytes(StandardCharsets.UTF_8);
+        byte[] delta = SnapshotDelta.encode(base, base.length, target, target.length);
+
+        // Act, Assert
+        assertThatThrownBy(() -> SnapshotDelta.decode(base, 10, delta, delta.length, new byte[target.length]))
+            .isInstanceOf(IOException.class);
+    }
+}
@@ -0,0 +1,83 @@
+package org.vatplanner.archiver.local;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.ZoneId;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+
+public class TransitionCheckerTest {
+    private static final StorageConfiguration CONFIG = new StorageConfiguration()
+        .setTransitionDailyLocalTime(LocalTime.of(3, 41))
+        .setTransitionTimeZone(ZoneId.of("Europe/Berlin"))
+        .setTransitionPrelude(Duration.ofSeconds(30))
+        .setTransitionCooldown(Duration.ofMinutes(3))
+        .setTransitionBucketDelay(Duration.ofMinutes(5));
+
+    private TransitionChecker createChecker(String now) {
+        return new TransitionChecker(CONFIG) {
+            @Override
+            Instant getNow() {
+                return Instant.parse(now);
+            }
+        };
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-03T02:40:59Z, true", // 03:40:59 CET
+        "2021-01-03T02:41:00Z, false",
+    })
+    public void testIsTransitional_date_switchesAtDailyLocalTimeOfNextDay(String now, boolean expectedResult) {
+        // Arrange
+        TransitionChecker checker = createChecker(now);
+
+        // Act
+        boolean result = checker.isTransitional(LocalDate.of(2021, 1, 2));
+
+        // Assert
+        assertThat(result).isEqualTo(expectedResult);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-02T12:04:59Z, true",
+        "2021-01-02T12:05:00Z, false",
+    })
+    public void testIsTransitional_subDailyBucket_switchesAtDelayAfterBucketEnd(String now, boolean expectedResult) {
+        // Arrange
+        TransitionChecker checker = createChecker(now);
+        ArchiveBucket bucket = new ArchiveBucket(LocalDateTime.of(2021, 1, 2, 6, 0), 6);
+
+        // Act
+        boolean result = checker.isTransitional(bucket);
+
+        // Assert
+        assertThat(result).isEqualTo(expectedResult);
+    }
+
+    @ParameterizedTest
+    @CsvSource({
+        "2021-01-02T12:04:30Z, false",
+        "2021-01-02T12:04:31Z, true",
+        "2021-01-02T12:07:59Z, true",
+        "2021-01-02T12:08:00Z, false",
+    })
+    public void testShouldBackOff_subDailyBucket_returnsTrueAroundTransitionStart(String now, boolean expectedResult) {
+        // Arrange
+        TransitionChecker checker = createChecker(now);
+        ArchiveBucket bucket = new ArchiveBucket(LocalDateTime.of(2021, 1, 2, 6, 0), 6);
+
+        // Act
+        boolean result = checker.shouldBackOff(bucket);
+
+        // Assert
+        assertThat(result).isEqualTo(expectedResult);
+    }
+}
@@ -0,0 +1,112 @@
+package org.vatplanner.archiver.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+
+import org.junit.jupiter.api.Test;
+
+public class MetricsRegistryTest {
+
+    private static String export(MetricsRegistry registry) throws IOException {
+        StringWriter writer = new StringWriter();
+        registry.write(writer);
+        return writer.toString();
+    }
+
+    @Test
+    public void testCounter_sameNameAndLabels_returnsSameInstance() {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        Counter first = registry.counter("test_total", "help", "a", "1");
+
+        // Act
+        Counter result = registry.counter("test_total", "help", "a", "1");
+
+        // Assert
+        assertThat(result).isSameAs(first);
+    }
+
+    @Test
+    public void testCounter_differentLabelNames_throwsIllegalArgumentException() {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("test_total", "help", "a", "1");
+
+        // Act, Assert
+        assertThatThrownBy(() -> registry.counter("test_total", "help", "b", "1"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testCounter_oddNumberOfLabels_throwsIllegalArgumentException() {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+
+        // Act, Assert
+        assertThatThrownBy(() -> registry.counter("test_total", "help", "a"))
+            .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    public void testWrite_counters_exportsAllLabelCombinations() throws Exception {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        registry.counter("requests_total", "Requests", "type", "a").increment(3);
+        registry.counter("requests_total", "Requests", "type", "b\"c").increment();
+
+        // Act
+        String result = export(registry);
+
+        // Assert
+        assertThat(result).isEqualTo(
+            "# HELP requests_total Requests\n"
+                + "# TYPE requests_total counter\n"
+                + "requests_total{type=\"a\"} 3\n"
+                + "requests_total{type=\"b\\\"c\"} 1\n" //
+        );
+    }
+
+    @Test
+    public void testWrite_gauge_exportsCurrentValue() throws Exception {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        double[] value = { 1.5 };
+        registry.gauge("level", "Level", () -> value[0]);
+        value[0] = 2.25;
+
+        // Act
+        String result = export(registry);
+
+        // Assert
+        assertThat(result).contains("# TYPE level gauge\nlevel 2.25\n");
+    }
+
+    @Test
+    public void testWrite_histogram_exportsCumulativeBucketsSumAndCount() throws Exception {
+        // Arrange
+        MetricsRegistry registry = new MetricsRegistry();
+        Histogram histogram = registry.histogram("duration_seconds", "Duration", new double[] { 1, 0.1 }, "stage", "load");
+        histogram.observe(0.05);
+        histogram.observe(Duration.ofMillis(100));
+        histogram.observe(0.5);
+        histogram.observe(7);
+
+        // Act
+        String result = export(registry);
+
+        // Assert
+        assertThat(result).isEqualTo(
+            "# HELP duration_seconds Duration\n"
+                + "# TYPE duration_seconds histogram\n"
+                + "duration_seconds_bucket{stage=\"load\",le=\"0.1\"} 2\n"
+                + "duration_seconds_bucket{stage=\"load\",le=\"1\"} 3\n"
+                + "duration_seconds_bucket{stage=\"load\",le=\"+Inf\"} 4\n"
+                + "duration_seconds_sum{stage=\"load\"} 7.65\n"
+                + "duration_seconds_count{stage=\"load\"} 4\n" //
+        );
+    }
+}
@@ -0,0 +1,128 @@
+package org.vatplanner.archiver.pipeline;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.vatplanner.archiver.common.RawDataFile;
+
+@Timeout(10)
+public class DataFilePipeTest {
+
+    private static RawDataFile dataFile(int size) {
+        return new RawDataFile(Instant.EPOCH).setData(new byte[size]);
+    }
+
+    private static CompletableFuture<Void> acceptAsync(DataFilePipe pipe, RawDataFile dataFile) {
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                pipe.accept(dataFile);
+                future.complete(null);
+            } catch (Exception ex) {
+                future.completeExceptionally(ex);
+            }
+        }).start();
+        return future;
+    }
+
+    @Test
+    public void testNext_finished_returnsAllDataFilesInOrderThenNull() throws Exception {
+        // Arrange
+        DataFilePipe pipe = new DataFilePipe(1000);
+        RawDataFile first = dataFile(10);
+        RawDataFile second = dataFile(20);
+        pipe.accept(first);
+        pipe.accept(second);
+        pipe.finish();
+
+        // Act
+        RawDataFile result1 = pipe.next();
+        RawDataFile result2 = pipe.next();
+        RawDataFile result3 = pipe.next();
+
+        // Assert
+        assertThat(result1).isSameAs(first);
+        assertThat(result2).isSameAs(second);
+        assertThat(result3).isNull();
+    }
+
+    @Test
+    public void testAccept_exceedingCapacity_blocksUntilDrained() throws Exception {
+        // Arrange
+        DataFilePipe pipe = new DataFilePipe(100);
+        pipe.accept(dataFile(60));
+
+        // Act
+        CompletableFuture<Void> future = acceptAsync(pipe, dataFile(60));
+
+        // Assert
+        assertThatThrownBy(() -> future.get(200, TimeUnit.MILLISECONDS)).isInstanceOf(TimeoutException.class);
+        pipe.next();
+        future.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    public void testAccept_emptyPipeWithOversizedDataFile_acceptsImmediately() throws Exception {
+        // Arrange
+        DataFilePipe pipe = new DataFilePipe(100);
+
+        // Act
+        pipe.accept(dataFile(500));
+
+        // Assert
+        assertThat(pipe.getNumTransferred()).isEqualTo(1);
+    }
+
+    @Test
+    public void testAccept_cancelledWhileWaiting_throwsIOException() throws Exception {
+        // Arrange
+        DataFilePipe pipe = new DataFilePipe(100);
+        pipe.accept(dataFile(100));
+        CompletableFuture<Void> future = acceptAsync(pipe, dataFile(1));
+
+        // Act
+        pipe.cancel();
+
+        // Assert
+        assertThatThrownBy(() -> future.get(5, TimeUnit.SECONDS)).hasCauseInstanceOf(IOException.class);
+    }
+
+    @Test
+    public void testNext_failed_throwsIOExceptionWithCause() throws Exception {
+        // Arrange
+        DataFilePipe pipe = new DataFilePipe(100);
+        pipe.accept(dataFile(1));
+        IllegalStateException cause = new IllegalStateException("test");
+
+        // Act
+        pipe.fail(cause);
+
+        // Assert
+        assertThatThrownBy(pipe::next).isInstanceOf(IOException.class).hasCause(cause);
+    }
+
+    @Test
+    public void testGetTransferredBytes_afterDraining_returnsTotalOfAllDataFiles() throws Exception {
+        // Arrange
+        DataFilePipe pipe = new DataFilePipe(100);
+        pipe.accept(dataFile(30));
+        pipe.next();
+        pipe.accept(dataFile(50));
+        pipe.next();
+
+        // Act
+        long result = pipe.getTransferredBytes();
+
+        // Assert
+        assertThat(result).isEqualTo(80);
+        assertThat(pipe.getNumTransferred()).isEqualTo(2);
+    }
+}
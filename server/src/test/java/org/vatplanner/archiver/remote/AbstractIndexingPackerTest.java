@@ -0,0 +1,122 @@
+package org.vatplanner.archiver.remote;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.compress.archivers.ArchiveEntry;
+import org.apache.commons.compress.archivers.ArchiveInputStream;
+import org.apache.commons.compress.archivers.ArchiveStreamFactory;
+import org.apache.commons.compress.compressors.CompressorStreamFactory;
+import org.apache.commons.compress.utils.IOUtils;
+import org.junitpioneer.jupiter.CartesianProductTest;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.RawDataFile;
+import org.vatplanner.archiver.common.RemoteMetaDataContainerJsonKey;
+import org.vatplanner.archiver.common.RemoteMetaDataFileJsonKey;
+
+import com.github.cliftonlabs.json_simple.JsonObject;
+import com.github.cliftonlabs.json_simple.Jsoner;
+
+public class AbstractIndexingPackerTest {
+    public static CartesianProductTest.Sets dataProviderPackerMethodsAndBoolean() {
+        return new CartesianProductTest.Sets()
+            .addAll(Arrays.stream(PackerMethod.values()).filter(x -> x != PackerMethod.AUTO))
+            .add(true, false);
+    }
+
+    private List<RawDataFile> createDataFiles() {
+        return Arrays.asList(
+            createDataFile("2021-01-02T00:00:00Z", "first"),
+            createDataFile("2021-01-02T00:00:15Z", "first"),
+            createDataFile("2021-01-02T00:00:30Z", "second"),
+            createDataFile("2021-01-02T00:00:45Z", "first") //
+        );
+    }
+
+    private RawDataFile createDataFile(String fetchTime, String content) {
+        RawDataFile dataFile = new RawDataFile(Instant.parse(fetchTime));
+        dataFile.setFormatName("json_v3");
+        dataFile.setData(content.getBytes(StandardCharsets.UTF_8));
+        return dataFile;
+    }
+
+    private Map<String, byte[]> unpack(PackerMethod method, byte[] packed) throws Exception {
+        InputStream is = new BufferedInputStream(new ByteArrayInputStream(packed));
+        if (!(method.isUncompressed() || method.isZipMethod())) {
+            is = new BufferedInputStream(new CompressorStreamFactory().createCompressorInputStream(is));
+        }
+
+        Map<String, byte[]> entries = new HashMap<>();
+        try (ArchiveInputStream ais = new ArchiveStreamFactory().createArchiveInputStream(is)) {
+            ArchiveEntry entry;
+            while ((entry = ais.getNextEntry()) != null) {
+                entries.put(entry.getName(), IOUtils.toByteArray(ais));
+            }
+        }
+
+        return entries;
+    }
+
+    private Map<String, JsonObject> getFileMetaData(Map<String, byte[]> entries) throws Exception {
+        byte[] metaData = entries.get(AbstractIndexingPacker.META_DATA_FILE_NAME);
+        JsonObject container = (JsonObject) Jsoner.deserialize(
+            new InputStreamReader(new ByteArrayInputStream(metaData), StandardCharsets.UTF_8) //
+        );
+        return container.getMap(RemoteMetaDataContainerJsonKey.FILES);
+    }
+
+    @CartesianProductTest(factory = "dataProviderPackerMethodsAndBoolean")
+    public void testPack_deduplicating_storesIdenticalContentOnce(PackerMethod method, boolean autoSelectMultiThreading) throws Exception {
+        // Arrange
+        PackerMethod resolvedMethod = createFactory(autoSelectMultiThreading).resolve(method);
+        Packer packer = createFactory(autoSelectMultiThreading).createPacker(method, true);
+
+        // Act
+        byte[] result = packer.pack(createDataFiles());
+
+        // Assert
+        Map<String, byte[]> entries = unpack(resolvedMethod, result);
+        assertThat(entries).containsOnlyKeys(AbstractIndexingPacker.META_DATA_FILE_NAME, "00000001.dat", "00000003.dat");
+
+        Map<String, JsonObject> files = getFileMetaData(entries);
+        assertThat(files).containsOnlyKeys("00000001.dat", "00000002.dat", "00000003.dat", "00000004.dat");
+        assertThat(files.get("00000001.dat").getString(RemoteMetaDataFileJsonKey.CONTENT_FILE)).isNull();
+        assertThat(files.get("00000002.dat").getString(RemoteMetaDataFileJsonKey.CONTENT_FILE)).isEqualTo("00000001.dat");
+        assertThat(files.get("00000003.dat").getString(RemoteMetaDataFileJsonKey.CONTENT_FILE)).isNull();
+        assertThat(files.get("00000004.dat").getString(RemoteMetaDataFileJsonKey.CONTENT_FILE)).isEqualTo("00000001.dat");
+    }
+
+    @CartesianProductTest(factory = "dataProviderPackerMethodsAndBoolean")
+    public void testPack_notDeduplicating_storesAllContent(PackerMethod method, boolean autoSelectMultiThreading) throws Exception {
+        // Arrange
+        PackerMethod resolvedMethod = createFactory(autoSelectMultiThreading).resolve(method);
+        Packer packer = createFactory(autoSelectMultiThreading).createPacker(method, false);
+
+        // Act
+        byte[] result = packer.pack(createDataFiles());
+
+        // Assert
+        Map<String, byte[]> entries = unpack(resolvedMethod, result);
+        assertThat(entries).hasSize(5);
+        assertThat(new String(entries.get("00000004.dat"), StandardCharsets.UTF_8)).isEqualTo("first");
+        assertThat(getFileMetaData(entries).values())
+            .allSatisfy(file -> assertThat(file.getString(RemoteMetaDataFileJsonKey.CONTENT_FILE)).isNull());
+    }
+
+    private PackerFactory createFactory(boolean autoSelectMultiThreading) {
+        return new PackerFactory(
+            new PackerConfiguration()
+                .setAutoSelectMultiThreading(autoSelectMultiThreading) //
+        );
+    }
+}
@@ -0,0 +1,122 @@
+package org.vatplanner.archiver.remote;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import org.apache.commons.compress.archivers.zip.ZipArchiveEntry;
+import org.apache.commons.compress.archivers.zip.ZipFile;
+import org.apache.commons.compress.utils.IOUtils;
+import org.apache.commons.compress.utils.SeekableInMemoryByteChannel;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.RawDataFile;
+
+public class AbstractZipPackerTest {
+
+    private static final String CONTENT = "{\"general\": {\"update\": \"20210102000000\"}, \"pilots\": []}";
+
+    private List<RawDataFile> createDataFiles() throws IOException {
+        return Arrays.asList(
+            createDataFile("2021-01-02T00:00:00Z", CONTENT, true),
+            createDataFile("2021-01-02T00:00:15Z", CONTENT + " ", false) //
+        );
+    }
+
+    private RawDataFile createDataFile(String fetchTime, String content, boolean withDeflatedData) throws IOException {
+        byte[] data = content.getBytes(StandardCharsets.UTF_8);
+
+        RawDataFile dataFile = new RawDataFile(Instant.parse(fetchTime));
+        dataFile.setFormatName("json_v3");
+        dataFile.setData(data);
+
+        if (withDeflatedData) {
+            // no compression makes copied data distinguishable by its size
+            ByteArrayOutputStream baos = new ByteArrayOutputStream();
+            try (DeflaterOutputStream dos = new DeflaterOutputStream(baos, new Deflater(Deflater.NO_COMPRESSION, true))) {
+                dos.write(data);
+            }
+            byte[] deflated = baos.toByteArray();
+
+            CRC32 crc = new CRC32();
+            crc.update(data);
+
+            dataFile.setDeflatedData(deflated, deflated.length, crc.getValue(), null);
+        }
+
+        return dataFile;
+    }
+
+    private Map<String, ZipArchiveEntry> readEntries(byte[] packed, Map<String, String> contents) throws IOException {
+        Map<String, ZipArchiveEntry> entries = new HashMap<>();
+        try (ZipFile zipFile = new ZipFile(new SeekableInMemoryByteChannel(packed))) {
+            for (ZipArchiveEntry entry : Collections.list(zipFile.getEntries())) {
+                entries.put(entry.getName(), entry);
+                try (InputStream is = zipFile.getInputStream(entry)) {
+                    contents.put(entry.getName(), new String(IOUtils.toByteArray(is), StandardCharsets.UTF_8));
+                }
+            }
+        }
+        return entries;
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, names = { "ZIP_UNCOMPRESSED", "ZIP_DEFLATE_SINGLETHREADED", "ZIP_DEFLATE_MULTITHREADED" })
+    public void testPack_deflatedData_storesOriginalContent(PackerMethod method) throws Exception {
+        // Arrange
+        Packer packer = new PackerFactory(new PackerConfiguration()).createPacker(method);
+
+        // Act
+        byte[] result = packer.pack(createDataFiles());
+
+        // Assert
+        Map<String, String> contents = new HashMap<>();
+        readEntries(result, contents);
+        assertThat(contents).containsEntry("00000001.dat", CONTENT)
+                            .containsEntry("00000002.dat", CONTENT + " ");
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, names = { "ZIP_DEFLATE_SINGLETHREADED", "ZIP_DEFLATE_MULTITHREADED" })
+    public void testPack_deflatedDataWithDeflateMethod_copiesCompressedData(PackerMethod method) throws Exception {
+        // Arrange
+        List<RawDataFile> dataFiles = createDataFiles();
+        int expectedCompressedSize = dataFiles.get(0).getDeflatedDataLength();
+        Packer packer = new PackerFactory(new PackerConfiguration()).createPacker(method);
+
+        // Act
+        byte[] result = packer.pack(dataFiles);
+
+        // Assert
+        Map<String, ZipArchiveEntry> entries = readEntries(result, new HashMap<>());
+        assertThat(entries.get("00000001.dat").getCompressedSize()).isEqualTo(expectedCompressedSize);
+        assertThat(entries.get("00000002.dat").getCompressedSize()).isLessThan(CONTENT.length());
+    }
+
+    @ParameterizedTest
+    @EnumSource(value = PackerMethod.class, names = { "ZIP_UNCOMPRESSED" })
+    public void testPack_deflatedDataWithoutCompression_storesUncompressedData(PackerMethod method) throws Exception {
+        // Arrange
+        Packer packer = new PackerFactory(new PackerConfiguration()).createPacker(method);
+
+        // Act
+        byte[] result = packer.pack(createDataFiles());
+
+        // Assert
+        Map<String, ZipArchiveEntry> entries = readEntries(result, new HashMap<>());
+        assertThat(entries.get("00000001.dat").getCompressedSize()).isEqualTo(CONTENT.length());
+    }
+}
@@ -1,7 +1,7 @@
 package org.vatplanner.archiver.remote;
 
-import static java.util.Arrays.asList;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 import java.util.Arrays;
 
@@ -14,7 +14,7 @@ import org.vatplanner.archiver.common.PackerMethod;
 public class PackerFactoryTest {
     public static CartesianProductTest.Sets dataProviderPackerMethodsAndBoolean() {
         return new CartesianProductTest.Sets()
-            .addAll(asList(PackerMethod.values()))
+            .addAll(Arrays.stream(PackerMethod.values()).filter(x -> x != PackerMethod.AUTO))
             .add(true, false);
     }
 
@@ -137,6 +137,33 @@ public class PackerFactoryTest {
         assertThat(result).isInstanceOf(MultiThreadedZipDeflatePacker.class);
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    public void testCreatePacker_auto_throwsIllegalArgumentException(boolean autoSelectMultiThreading) {
+        // Arrange
+        PackerFactory factory = createFactory(autoSelectMultiThreading);
+
+        // Act, Assert
+        assertThatThrownBy(() -> factory.createPacker(PackerMethod.AUTO)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = { true, false })
+    public void testResolve_genericZipDeflate_returnsConfiguredImplementation(boolean autoSelectMultiThreading) {
+        // Arrange
+        PackerFactory factory = createFactory(autoSelectMultiThreading);
+
+        // Act
+        PackerMethod result = factory.resolve(PackerMethod.ZIP_DEFLATE);
+
+        // Assert
+        assertThat(result).isEqualTo(
+            autoSelectMultiThreading
+                ? PackerMethod.ZIP_DEFLATE_MULTITHREADED
+                : PackerMethod.ZIP_DEFLATE_SINGLETHREADED //
+        );
+    }
+
     private PackerFactory createFactory(boolean autoSelectMultiThreading) {
         return new PackerFactory(
             new PackerConfiguration()
@@ -0,0 +1,129 @@
+package org.vatplanner.archiver.remote;
+
+import static java.util.Collections.emptySet;
+import static java.util.Collections.singleton;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.Test;
+import org.vatplanner.archiver.common.PackerMethod;
+import org.vatplanner.archiver.common.PackingGoal;
+
+public class PackerSelectorTest {
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private PackerSelector createSelector(double loadAverage, PackerMethod... candidates) {
+        PackerConfiguration config = new PackerConfiguration()
+            .setAutoSelectMultiThreading(true)
+            .setAutoCandidates(Arrays.asList(candidates));
+
+        return new PackerSelector(new PackerFactory(config), config, 8, () -> loadAverage);
+    }
+
+    @Test
+    public void testSelect_sizeWithoutMeasurements_returnsBestDocumentedRatio() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.ZIP_UNCOMPRESSED, PackerMethod.TAR_GZIP, PackerMethod.TAR_XZ);
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.SIZE, 0, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.TAR_XZ);
+    }
+
+    @Test
+    public void testSelect_latencyWithoutBandwidth_returnsFastestMethod() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.ZIP_UNCOMPRESSED, PackerMethod.TAR_GZIP, PackerMethod.TAR_XZ);
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.LATENCY, 0, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.ZIP_UNCOMPRESSED);
+    }
+
+    @Test
+    public void testSelect_latencyWithLowBandwidth_considersTransferTime() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.ZIP_UNCOMPRESSED, PackerMethod.TAR_GZIP, PackerMethod.TAR_XZ);
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.LATENCY, 100 * 1024, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.TAR_XZ);
+    }
+
+    @Test
+    public void testSelect_genericZipDeflateCandidate_returnsResolvedMethod() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.ZIP_DEFLATE);
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.LATENCY, 0, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.ZIP_DEFLATE_MULTITHREADED);
+    }
+
+    @Test
+    public void testSelect_idleSystem_prefersMultiThreadedOverSingleThreaded() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.TAR_GZIP, PackerMethod.ZIP_DEFLATE);
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.LATENCY, 0, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.ZIP_DEFLATE_MULTITHREADED);
+    }
+
+    @Test
+    public void testSelect_measuredRatioForFormat_usesMeasurementOnlyForSameFormat() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.TAR_BZIP2, PackerMethod.TAR_XZ);
+        selector.record(PackerMethod.TAR_XZ, singleton("json_v3"), 100 * MEGABYTE, 50 * MEGABYTE, null);
+        selector.record(PackerMethod.TAR_XZ, singleton("legacy"), 100 * MEGABYTE, 1 * MEGABYTE, null);
+
+        // Act
+        PackerMethod resultJson = selector.select(PackingGoal.SIZE, 0, singleton("json_v3"));
+        PackerMethod resultLegacy = selector.select(PackingGoal.SIZE, 0, singleton("legacy"));
+
+        // Assert
+        assertThat(resultJson).isEqualTo(PackerMethod.TAR_BZIP2);
+        assertThat(resultLegacy).isEqualTo(PackerMethod.TAR_XZ);
+    }
+
+    @Test
+    public void testSelect_measuredThroughput_prefersMeasuredFasterMethod() {
+        // Arrange
+        PackerSelector selector = createSelector(0, PackerMethod.ZIP_UNCOMPRESSED, PackerMethod.TAR_GZIP);
+        selector.record(PackerMethod.ZIP_UNCOMPRESSED, emptySet(), 100 * MEGABYTE, 100 * MEGABYTE, Duration.ofSeconds(10));
+        selector.record(PackerMethod.TAR_GZIP, emptySet(), 100 * MEGABYTE, 40 * MEGABYTE, Duration.ofSeconds(1));
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.LATENCY, 0, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.TAR_GZIP);
+    }
+
+    @Test
+    public void testSelect_fullyLoadedSystem_prefersSingleThreadedIfMeasuredFasterPerProcessor() {
+        // Arrange
+        PackerSelector selector = createSelector(8, PackerMethod.TAR_GZIP, PackerMethod.ZIP_DEFLATE);
+        selector.record(PackerMethod.TAR_GZIP, emptySet(), 100 * MEGABYTE, 40 * MEGABYTE, Duration.ofSeconds(2));
+        selector.record(PackerMethod.ZIP_DEFLATE_MULTITHREADED, emptySet(), 100 * MEGABYTE, 40 * MEGABYTE, Duration.ofSeconds(3));
+
+        // Act
+        PackerMethod result = selector.select(PackingGoal.LATENCY, 0, emptySet());
+
+        // Assert
+        assertThat(result).isEqualTo(PackerMethod.TAR_GZIP);
+    }
+}
@@ -0,0 +1,97 @@
+package org.vatplanner.archiver.remote;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+
+import org.apache.commons.compress.utils.IOUtils;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+public class SpillingScatterGatherBackingStoreTest {
+
+    @TempDir
+    File directory;
+
+    private static byte[] bytes(int length) {
+        byte[] bytes = new byte[length];
+        for (int i = 0; i < length; i++) {
+            bytes[i] = (byte) i;
+        }
+        return bytes;
+    }
+
+    private static byte[] readAll(SpillingScatterGatherBackingStore store) throws IOException {
+        try (InputStream is = store.getInputStream()) {
+            return IOUtils.toByteArray(is);
+        }
+    }
+
+    @Test
+    public void testWriteOut_belowThreshold_keepsDataInMemory() throws Exception {
+        // Arrange
+        SpillingScatterGatherBackingStore store = new SpillingScatterGatherBackingStore(directory, 100);
+        byte[] data = bytes(60);
+
+        // Act
+        store.writeOut(data, 0, 50);
+        store.writeOut(data, 50, 10);
+        store.closeForWriting();
+
+        // Assert
+        assertThat(store.hasSpilled()).isFalse();
+        assertThat(directory.listFiles()).isEmpty();
+        assertThat(readAll(store)).isEqualTo(data);
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = { 0, 10, 99 })
+    public void testWriteOut_exceedingThreshold_spillsAllDataToFile(int threshold) throws Exception {
+        // Arrange
+        SpillingScatterGatherBackingStore store = new SpillingScatterGatherBackingStore(directory, threshold);
+        byte[] data = bytes(100);
+
+        // Act
+        store.writeOut(data, 0, 10);
+        store.writeOut(data, 10, 90);
+        store.closeForWriting();
+
+        // Assert
+        assertThat(store.hasSpilled()).isTrue();
+        assertThat(directory.listFiles()).hasSize(1);
+        assertThat(readAll(store)).isEqualTo(data);
+    }
+
+    @Test
+    public void testWriteOut_negativeThreshold_neverSpills() throws Exception {
+        // Arrange
+        SpillingScatterGatherBackingStore store = new SpillingScatterGatherBackingStore(directory, -1);
+        byte[] data = bytes(10000);
+
+        // Act
+        store.writeOut(data, 0, data.length);
+        store.closeForWriting();
+
+        // Assert
+        assertThat(store.hasSpilled()).isFalse();
+        assertThat(readAll(store)).isEqualTo(data);
+    }
+
+    @Test
+    public void testClose_spilled_deletesFile() throws Exception {
+        // Arrange
+        SpillingScatterGatherBackingStore store = new SpillingScatterGatherBackingStore(directory, 0);
+        store.writeOut(bytes(10), 0, 10);
+        store.closeForWriting();
+
+        // Act
+        store.close();
+
+        // Assert
+        assertThat(directory.listFiles()).isEmpty();
+    }
+}
@@ -0,0 +1,203 @@
+package org.vatplanner.archiver.scheduling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+public class AdmissionControllerTest {
+    private static final int BUDGET_MEGABYTES = 100;
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private static AdmissionController createController(int budgetMegabytes) {
+        return new AdmissionController(
+            new SchedulingConfiguration()
+                .setMemoryBudgetMegabytes(budgetMegabytes)
+                .setStarvationTimeout(Duration.ofMinutes(5)) //
+        );
+    }
+
+    private static RequestCost cost(long megabytes) {
+        return new RequestCost(megabytes * MEGABYTE, megabytes);
+    }
+
+    private static CompletableFuture<AdmissionController.Admission> admitAsync(AdmissionController controller, RequestCost cost) {
+        CompletableFuture<AdmissionController.Admission> future = new CompletableFuture<>();
+        new Thread(() -> {
+            try {
+                future.complete(controller.admit(cost));
+            } catch (InterruptedException ex) {
+                future.completeExceptionally(ex);
+            }
+        }).start();
+        return future;
+    }
+
+    private static void awaitWaiting(AdmissionController controller, int numWaiting) throws InterruptedException {
+        while (controller.getNumWaiting() < numWaiting) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testAdmit_disabled_admitsImmediately() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(-1);
+
+        // Act
+        controller.admit(cost(1000));
+        controller.admit(cost(1000));
+
+        // Assert
+        assertThat(controller.getMemoryInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdmit_withinBudget_reservesMemory() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(BUDGET_MEGABYTES);
+
+        // Act
+        controller.admit(cost(40));
+        controller.admit(cost(60));
+
+        // Assert
+        assertThat(controller.getMemoryInUse()).isEqualTo(100 * MEGABYTE);
+    }
+
+    @Test
+    public void testClose_admitted_releasesMemory() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(BUDGET_MEGABYTES);
+        AdmissionController.Admission admission = controller.admit(cost(40));
+
+        // Act
+        admission.close();
+        admission.close();
+
+        // Assert
+        assertThat(controller.getMemoryInUse()).isEqualTo(0);
+    }
+
+    @Test
+    public void testAdmit_exceedingRemainingBudget_waitsForRelease() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(BUDGET_MEGABYTES);
+        AdmissionController.Admission first = controller.admit(cost(60));
+
+        // Act
+        CompletableFuture<AdmissionController.Admission> second = admitAsync(controller, cost(60));
+        awaitWaiting(controller, 1);
+        boolean admittedBeforeRelease = second.isDone();
+        first.close();
+        second.get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(admittedBeforeRelease).isFalse();
+        assertThat(controller.getMemoryInUse()).isEqualTo(60 * MEGABYTE);
+    }
+
+    @Test
+    public void testAdmit_exceedingWholeBudgetWhileIdle_admitsImmediately() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(BUDGET_MEGABYTES);
+
+        // Act
+        controller.admit(cost(500));
+
+        // Assert
+        assertThat(controller.getMemoryInUse()).isEqualTo(500 * MEGABYTE);
+    }
+
+    @Test
+    public void testAdmit_multipleWaiting_admitsCheapestFirst() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(BUDGET_MEGABYTES);
+        AdmissionController.Admission blocking = controller.admit(cost(100));
+        List<Long> admittedOrder = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> expensive = admitAsync(controller, cost(90))
+            .thenAccept(admission -> {
+                admittedOrder.add(90L);
+                admission.close();
+            });
+        awaitWaiting(controller, 1);
+        CompletableFuture<Void> cheap = admitAsync(controller, cost(20))
+            .thenAccept(admission -> {
+                admittedOrder.add(20L);
+                admission.close();
+            });
+        awaitWaiting(controller, 2);
+
+        // Act
+        blocking.close();
+        CompletableFuture.allOf(expensive, cheap).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(admittedOrder).containsExactly(20L, 90L);
+    }
+
+    @Test
+    public void testAdmit_waitingExceedingWholeBudget_admitsRequestsFittingRemainingBudget() throws Exception {
+        // Arrange
+        AdmissionController controller = createController(BUDGET_MEGABYTES);
+        AdmissionController.Admission running = controller.admit(cost(30));
+
+        // estimated work is lower than that of the following request
+        CompletableFuture<AdmissionController.Admission> oversized = admitAsync(
+            controller,
+            new RequestCost(150 * MEGABYTE, 5) //
+        );
+        awaitWaiting(controller, 1);
+
+        // Act
+        AdmissionController.Admission result = controller.admit(cost(20));
+
+        // Assert
+        assertThat(controller.getMemoryInUse()).isEqualTo(50 * MEGABYTE);
+        assertThat(oversized).isNotDone();
+
+        running.close();
+        result.close();
+        oversized.get(5, TimeUnit.SECONDS).close();
+    }
+
+    @Test
+    public void testAdmit_starving_takesPrecedenceOverCheaperRequests() throws Exception {
+        // Arrange
+        AdmissionController controller = new AdmissionController(
+            new SchedulingConfiguration()
+                .setMemoryBudgetMegabytes(BUDGET_MEGABYTES)
+                .setStarvationTimeout(Duration.ZERO) //
+        );
+        AdmissionController.Admission blocking = controller.admit(cost(100));
+        List<Long> admittedOrder = new CopyOnWriteArrayList<>();
+
+        CompletableFuture<Void> expensive = admitAsync(controller, cost(90))
+            .thenAccept(admission -> {
+                admittedOrder.add(90L);
+                admission.close();
+            });
+        awaitWaiting(controller, 1);
+        CompletableFuture<Void> cheap = admitAsync(controller, cost(20))
+            .thenAccept(admission -> {
+                admittedOrder.add(20L);
+                admission.close();
+            });
+        awaitWaiting(controller, 2);
+
+        // Act
+        blocking.close();
+        CompletableFuture.allOf(expensive, cheap).get(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(admittedOrder).containsExactly(90L, 20L);
+    }
+}
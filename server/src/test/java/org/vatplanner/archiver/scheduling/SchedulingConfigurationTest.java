@@ -0,0 +1,47 @@
+package org.vatplanner.archiver.scheduling;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+public class SchedulingConfigurationTest {
+
+    private static final long MAX_MEMORY = Runtime.getRuntime().maxMemory();
+
+    @Test
+    public void testGetMemoryBudget_automaticWithReservedMemory_subtractsReservedMemory() {
+        // Arrange
+        SchedulingConfiguration config = new SchedulingConfiguration().setMemoryBudgetMegabytes(0);
+        long reservedMemory = MAX_MEMORY / 100 * 20;
+
+        // Act
+        long result = config.getMemoryBudget(reservedMemory);
+
+        // Assert
+        assertThat(result).isEqualTo(MAX_MEMORY / 100 * 50 - reservedMemory);
+    }
+
+    @Test
+    public void testGetMemoryBudget_automaticWithExcessiveReservedMemory_keepsMinimum() {
+        // Arrange
+        SchedulingConfiguration config = new SchedulingConfiguration().setMemoryBudgetMegabytes(0);
+
+        // Act
+        long result = config.getMemoryBudget(MAX_MEMORY);
+
+        // Assert
+        assertThat(result).isEqualTo(MAX_MEMORY / 100 * 10);
+    }
+
+    @Test
+    public void testGetMemoryBudget_explicit_ignoresReservedMemory() {
+        // Arrange
+        SchedulingConfiguration config = new SchedulingConfiguration().setMemoryBudgetMegabytes(100);
+
+        // Act
+        long result = config.getMemoryBudget(MAX_MEMORY);
+
+        // Assert
+        assertThat(result).isEqualTo(100L * 1024 * 1024);
+    }
+}
@@ -0,0 +1,142 @@
+package org.vatplanner.archiver.tracing;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+public class TracingTest {
+
+    private final List<Span> exported = new ArrayList<>();
+
+    @AfterEach
+    public void tearDown() {
+        Tracing.setTracer(null);
+    }
+
+    private void enableTracing() {
+        Tracing.setTracer(new Tracer(exported::add));
+    }
+
+    @Test
+    public void testStartSpan_disabled_returnsNonRecordingSpan() {
+        // Arrange (nothing to do)
+
+        // Act
+        Span result;
+        try (Span span = Tracing.startSpan("test")) {
+            span.setAttribute("key", "value");
+            result = span;
+        }
+
+        // Assert
+        assertThat(result.isRecording()).isFalse();
+        assertThat(exported).isEmpty();
+    }
+
+    @Test
+    public void testStartSpan_nested_exportsChildWithParentAndSameTrace() {
+        // Arrange
+        enableTracing();
+
+        // Act
+        try (Span parent = Tracing.startSpan("parent")) {
+            try (Span child = Tracing.startSpan("child")) {
+                child.setAttribute("key", "value");
+            }
+        }
+
+        // Assert
+        assertThat(exported).extracting(Span::getName).containsExactly("child", "parent");
+        Span child = exported.get(0);
+        Span parent = exported.get(1);
+        assertThat(parent.getParentSpanId()).isNull();
+        assertThat(child.getParentSpanId()).isEqualTo(parent.getSpanId());
+        assertThat(child.getTraceId()).isEqualTo(parent.getTraceId())
+                                      .hasSize(32);
+        assertThat(child.getSpanId()).isNotEqualTo(parent.getSpanId())
+                                     .hasSize(16);
+        assertThat(child.getAttributes()).containsEntry("key", "value");
+        assertThat(child.getEndEpochNanos()).isGreaterThanOrEqualTo(child.getStartEpochNanos());
+    }
+
+    @Test
+    public void testClose_nested_restoresParentAsCurrentSpan() {
+        // Arrange
+        enableTracing();
+
+        try (Span parent = Tracing.startSpan("parent")) {
+            Span child = Tracing.startSpan("child");
+
+            // Act
+            child.close();
+
+            // Assert
+            assertThat(Tracing.currentSpan()).isSameAs(parent);
+        }
+    }
+
+    @Test
+    public void testCurrentSpan_allClosed_returnsNonRecordingSpan() {
+        // Arrange
+        enableTracing();
+        Tracing.startSpan("test").close();
+
+        // Act
+        Span result = Tracing.currentSpan();
+
+        // Assert
+        assertThat(result.isRecording()).isFalse();
+    }
+
+    @Test
+    public void testStartSpan_explicitParentOnOtherThread_continuesTrace() throws Exception {
+        // Arrange
+        enableTracing();
+        Span parent = Tracing.startSpan("parent");
+
+        // Act
+        Thread thread = new Thread(() -> Tracing.startSpan("child", parent).close());
+        thread.start();
+        thread.join();
+        parent.close();
+
+        // Assert
+        Span child = exported.get(0);
+        assertThat(child.getName()).isEqualTo("child");
+        assertThat(child.getTraceId()).isEqualTo(parent.getTraceId());
+        assertThat(child.getParentSpanId()).isEqualTo(parent.getSpanId());
+    }
+
+    @Test
+    public void testAddToAttribute_repeated_sumsValues() {
+        // Arrange
+        enableTracing();
+        Span span = Tracing.startSpan("test");
+
+        // Act
+        span.addToAttribute("count", 3);
+        span.addToAttribute("count", 4);
+
+        // Assert
+        assertThat(span.getAttributes()).containsEntry("count", 7L);
+    }
+
+    @Test
+    public void testMaxAttribute_repeated_keepsHighestValue() {
+        // Arrange
+        enableTracing();
+        Span span = Tracing.startSpan("test");
+
+        // Act
+        span.maxAttribute("max", 5);
+        span.maxAttribute("max", 9);
+        span.maxAttribute("max", 2);
+
+        // Assert
+        assertThat(span.getAttributes()).containsEntry("max", 9L);
+    }
+}
@@ -0,0 +1,148 @@
+package org.vatplanner.archiver.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+import org.tukaani.xz.LZMA2Options;
+import org.tukaani.xz.XZInputStream;
+import org.tukaani.xz.XZOutputStream;
+
+public class BoundedArrayCacheTest {
+
+    @Test
+    public void testGetByteArray_sameLengthReturned_reusesArray() {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(1024 * 1024);
+        byte[] returned = cache.getByteArray(100000, false);
+        cache.putArray(returned);
+
+        // Act
+        byte[] result = cache.getByteArray(100000, false);
+
+        // Assert
+        assertThat(result).isSameAs(returned);
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+        assertThat(cache.getRetainedBytes()).isZero();
+    }
+
+    @Test
+    public void testGetByteArray_differentLengthReturned_allocatesExactLength() {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(1024 * 1024);
+        cache.putArray(new byte[100000]);
+
+        // Act
+        byte[] result = cache.getByteArray(90000, false);
+
+        // Assert
+        assertThat(result).hasSize(90000);
+        assertThat(cache.getHits()).isZero();
+        assertThat(cache.getRetainedBytes()).isEqualTo(100000);
+    }
+
+    @Test
+    public void testGetByteArray_fillWithZeros_clearsReusedArray() {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(1024 * 1024);
+        byte[] returned = cache.getByteArray(100000, false);
+        returned[123] = 42;
+        cache.putArray(returned);
+
+        // Act
+        byte[] result = cache.getByteArray(100000, true);
+
+        // Assert
+        assertThat(result).isSameAs(returned);
+        assertThat(result[123]).isZero();
+    }
+
+    @Test
+    public void testGetIntArray_sameLengthReturned_reusesArray() {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(1024 * 1024);
+        int[] returned = cache.getIntArray(20000, false);
+        cache.putArray(returned);
+
+        // Act
+        int[] result = cache.getIntArray(20000, false);
+
+        // Assert
+        assertThat(result).isSameAs(returned);
+    }
+
+    @Test
+    public void testPutArray_exceedingRetainedLimit_dropsArray() {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(150000);
+        byte[] first = new byte[100000];
+        byte[] second = new byte[100000];
+        cache.putArray(first);
+        cache.putArray(second);
+
+        // Act
+        byte[] result1 = cache.getByteArray(100000, false);
+        byte[] result2 = cache.getByteArray(100000, false);
+
+        // Assert
+        assertThat(result1).isSameAs(first);
+        assertThat(result2).isNotSameAs(second);
+    }
+
+    @Test
+    public void testPutArray_small_isNotRetained() {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(1024 * 1024);
+
+        // Act
+        cache.putArray(new byte[1000]);
+
+        // Assert
+        assertThat(cache.getRetainedBytes()).isZero();
+    }
+
+    @Test
+    public void testXZ_consecutiveStreams_reuseArraysAndRoundTrip() throws IOException {
+        // Arrange
+        BoundedArrayCache cache = new BoundedArrayCache(256L * 1024 * 1024);
+        byte[] original = "some data to compress, some data to compress".getBytes(StandardCharsets.UTF_8);
+        byte[] compressed = compress(original, cache);
+        decompress(compressed, cache);
+        long missesAfterFirstRound = cache.getMisses();
+
+        // Act
+        byte[] result = decompress(compress(original, cache), cache);
+
+        // Assert
+        assertThat(result).isEqualTo(original);
+        assertThat(cache.getMisses()).isEqualTo(missesAfterFirstRound);
+        assertThat(cache.getHits()).isPositive();
+    }
+
+    private byte[] compress(byte[] data, BoundedArrayCache cache) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (OutputStream os = new XZOutputStream(baos, new LZMA2Options(), cache)) {
+            os.write(data);
+        }
+        return baos.toByteArray();
+    }
+
+    private byte[] decompress(byte[] data, BoundedArrayCache cache) throws IOException {
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        try (InputStream is = new XZInputStream(new ByteArrayInputStream(data), -1, cache)) {
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = is.read(buffer)) >= 0) {
+                baos.write(buffer, 0, read);
+            }
+        }
+        return baos.toByteArray();
+    }
+}
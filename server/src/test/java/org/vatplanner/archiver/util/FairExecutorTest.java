@@ -0,0 +1,146 @@
+package org.vatplanner.archiver.util;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+
+@Timeout(10)
+public class FairExecutorTest {
+
+    private FairExecutor executor;
+
+    @AfterEach
+    public void tearDown() {
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private CountDownLatch blockSingleThread(ExecutorService lane) throws InterruptedException {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.execute(() -> {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        started.await();
+        return release;
+    }
+
+    @Test
+    public void testExecute_multipleLanes_alternatesBetweenLanes() throws Exception {
+        // Arrange
+        executor = new FairExecutor(1, new NamedDaemonThreadFactory("test"));
+        ExecutorService laneA = executor.createLane();
+        ExecutorService laneB = executor.createLane();
+        List<String> order = new CopyOnWriteArrayList<>();
+        CountDownLatch release = blockSingleThread(laneA);
+
+        laneA.execute(() -> order.add("a1"));
+        laneA.execute(() -> order.add("a2"));
+        laneA.execute(() -> order.add("a3"));
+        laneB.execute(() -> order.add("b1"));
+        laneB.execute(() -> order.add("b2"));
+
+        // Act
+        release.countDown();
+        laneA.shutdown();
+        laneB.shutdown();
+        laneA.awaitTermination(5, TimeUnit.SECONDS);
+        laneB.awaitTermination(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(order).containsExactly("a1", "b1", "a2", "b2", "a3");
+    }
+
+    @Test
+    public void testShutdown_lane_keepsSharedThreadsRunningForOtherLanes() throws Exception {
+        // Arrange
+        executor = new FairExecutor(1, new NamedDaemonThreadFactory("test"));
+        ExecutorService first = executor.createLane();
+        first.submit(() -> 1).get();
+
+        // Act
+        first.shutdown();
+        boolean terminated = first.awaitTermination(5, TimeUnit.SECONDS);
+        Future<Integer> result = executor.createLane().submit(() -> 2);
+
+        // Assert
+        assertThat(terminated).isTrue();
+        assertThat(result.get()).isEqualTo(2);
+    }
+
+    @Test
+    public void testAwaitTermination_tasksPending_waitsForLaneTasks() throws Exception {
+        // Arrange
+        executor = new FairExecutor(1, new NamedDaemonThreadFactory("test"));
+        ExecutorService lane = executor.createLane();
+        CountDownLatch release = blockSingleThread(lane);
+        lane.shutdown();
+
+        // Act
+        boolean terminatedWhileBlocked = lane.awaitTermination(100, TimeUnit.MILLISECONDS);
+        release.countDown();
+        boolean terminatedAfterRelease = lane.awaitTermination(5, TimeUnit.SECONDS);
+
+        // Assert
+        assertThat(terminatedWhileBlocked).isFalse();
+        assertThat(terminatedAfterRelease).isTrue();
+    }
+
+    @Test
+    public void testExecute_laneShutDown_throwsRejectedExecutionException() {
+        // Arrange
+        executor = new FairExecutor(1, new NamedDaemonThreadFactory("test"));
+        ExecutorService lane = executor.createLane();
+        lane.shutdown();
+
+        // Act, Assert
+        assertThatThrownBy(() -> lane.execute(() -> {
+        })).isInstanceOf(RejectedExecutionException.class);
+    }
+
+    @Test
+    public void testShutdownNow_tasksQueued_returnsQueuedAndInterruptsRunningTasks() throws Exception {
+        // Arrange
+        executor = new FairExecutor(1, new NamedDaemonThreadFactory("test"));
+        ExecutorService lane = executor.createLane();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        lane.execute(() -> {
+            started.countDown();
+            try {
+                Thread.sleep(10000);
+            } catch (InterruptedException ex) {
+                interrupted.countDown();
+            }
+        });
+        started.await();
+        Runnable queued = () -> {
+        };
+        lane.execute(queued);
+
+        // Act
+        List<Runnable> result = lane.shutdownNow();
+
+        // Assert
+        assertThat(result).containsExactly(queued);
+        assertThat(interrupted.await(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(lane.awaitTermination(5, TimeUnit.SECONDS)).isTrue();
+    }
+}